@@ -0,0 +1,71 @@
+package de.dennisguse.opentracks.chart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class ChartColumnTest {
+
+    @Test
+    public void add_growsAndKeepsValidity() {
+        // given
+        ChartColumn column = new ChartColumn();
+
+        // when
+        for (int i = 0; i < 1000; i++) {
+            if (i % 3 == 0) {
+                column.addInvalid();
+            } else {
+                column.add(i);
+            }
+        }
+
+        // then
+        assertEquals(1000, column.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 3 != 0, column.isValid(i));
+            if (i % 3 != 0) {
+                assertEquals(i, column.get(i), 0);
+            }
+        }
+    }
+
+    @Test
+    public void clear_resetsValidity() {
+        // given
+        ChartColumn column = new ChartColumn();
+        column.add(1);
+        column.clear();
+
+        // when
+        column.addInvalid();
+
+        // then
+        assertEquals(1, column.size());
+        assertFalse(column.isValid(0));
+    }
+
+    @Test
+    public void lowerBound_upperBound() {
+        // given
+        ChartColumn column = new ChartColumn();
+        column.add(0);
+        column.add(1);
+        column.add(1);
+        column.add(3);
+
+        // then
+        assertEquals(0, column.lowerBound(-1));
+        assertEquals(1, column.lowerBound(1));
+        assertEquals(3, column.upperBound(1));
+        assertEquals(3, column.lowerBound(2));
+        assertEquals(4, column.upperBound(3));
+        assertEquals(4, column.lowerBound(4));
+        assertEquals(0, column.upperBound(-1));
+    }
+}
@@ -119,6 +119,19 @@ public class ChartValueSeriesTest {
         assertEquals(700, series.getMaxMarkerValue());
     }
 
+    @Test
+    public void testUpdateDimension_changedOnlyIfOutsideOfAxis() {
+        series.update(withAltitude(220));
+        series.update(withAltitude(250));
+        assertTrue(series.updateDimension());
+
+        series.update(withAltitude(300));
+        assertFalse(series.updateDimension());
+
+        series.update(withAltitude(901));
+        assertTrue(series.updateDimension());
+    }
+
     static ChartPoint withAltitude(double altitude) {
         return new ChartPoint(
                 0,
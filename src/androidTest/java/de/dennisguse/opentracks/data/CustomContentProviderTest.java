@@ -17,10 +17,19 @@
 package de.dennisguse.opentracks.data;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
+import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
 import android.content.ContentUris;
+import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.ContentObserver;
 import android.net.Uri;
 
 import androidx.test.core.app.ApplicationProvider;
@@ -28,6 +37,16 @@ import androidx.test.core.app.ApplicationProvider;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import de.dennisguse.opentracks.content.data.TestDataUtil;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.data.models.TrackPoint;
 import de.dennisguse.opentracks.data.tables.MarkerColumns;
 import de.dennisguse.opentracks.data.tables.TrackPointsColumns;
 import de.dennisguse.opentracks.data.tables.TracksColumns;
@@ -70,4 +89,122 @@ public class CustomContentProviderTest {
         assertEquals(MarkerColumns.CONTENT_TYPE, customContentProvider.getType(MarkerColumns.CONTENT_URI));
         assertEquals(MarkerColumns.CONTENT_ITEMTYPE, customContentProvider.getType(ContentUris.appendId(MarkerColumns.CONTENT_URI.buildUpon(), 1).build()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void insertTrackPoints_notifiesOnlyTrack() throws InterruptedException {
+        // given
+        ContentProviderUtils contentProviderUtils = new ContentProviderUtils(context);
+        contentProviderUtils.deleteAllTracks(context);
+        Track.Id trackId = new Track.Id(1);
+        Track.Id otherTrackId = new Track.Id(2);
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 0);
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, otherTrackId, 0);
+
+        BlockingQueue<Uri> notifiedUris = new LinkedBlockingQueue<>();
+        ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                notifiedUris.add(uri);
+            }
+        };
+        context.getContentResolver().registerContentObserver(ContentProviderUtils.getTrackPointsUri(trackId), false, observer);
+
+        try {
+            // when
+            contentProviderUtils.insertTrackPoint(TestDataUtil.createTrackPoint(0), otherTrackId);
+            contentProviderUtils.bulkInsertTrackPoint(List.of(TestDataUtil.createTrackPoint(1), TestDataUtil.createTrackPoint(2)), trackId);
+
+            // then
+            Uri uri = notifiedUris.poll(5, TimeUnit.SECONDS);
+            List<TrackPoint> trackPoints = TestDataUtil.getTrackPoints(contentProviderUtils, trackId);
+            assertEquals(trackPoints.get(0).getId(), ContentProviderUtils.parseFirstInsertedTrackPointId(uri));
+            assertEquals(trackPoints.get(1).getId(), ContentProviderUtils.parseLastInsertedTrackPointId(uri));
+            assertNull(notifiedUris.poll(500, TimeUnit.MILLISECONDS));
+        } finally {
+            context.getContentResolver().unregisterContentObserver(observer);
+        }
+    }
+
+    @Test
+    public void applyBatch_notifiesOnlyAfterCommit() throws Exception {
+        // given
+        ContentProviderUtils contentProviderUtils = new ContentProviderUtils(context);
+        contentProviderUtils.deleteAllTracks(context);
+        Track.Id trackId = new Track.Id(1);
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 0);
+        String name = contentProviderUtils.getTrack(trackId).getName();
+
+        BlockingQueue<Uri> notifiedUris = new LinkedBlockingQueue<>();
+        ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                notifiedUris.add(uri);
+            }
+        };
+        context.getContentResolver().registerContentObserver(ContentProviderUtils.getTrackUri(trackId), false, observer);
+
+        ContentValues values = new ContentValues();
+        values.put(TracksColumns.NAME, "renamed");
+        String[] selectionArgs = {Long.toString(trackId.id())};
+        ContentProviderOperation rename = ContentProviderOperation.newUpdate(TracksColumns.CONTENT_URI)
+                .withValues(values)
+                .withSelection(TracksColumns._ID + "=?", selectionArgs)
+                .build();
+
+        try {
+            // when: the second operation fails, so the batch is rolled back
+            ArrayList<ContentProviderOperation> failing = new ArrayList<>(List.of(rename, ContentProviderOperation.newUpdate(TracksColumns.CONTENT_URI)
+                    .withValues(values)
+                    .withSelection(TracksColumns._ID + "=?", selectionArgs)
+                    .withExpectedCount(2)
+                    .build()));
+            assertThrows(OperationApplicationException.class, () -> context.getContentResolver().applyBatch(ContentProviderUtils.getAuthorityPackage(), failing));
+
+            // then
+            assertNull(notifiedUris.poll(500, TimeUnit.MILLISECONDS));
+            assertEquals(name, contentProviderUtils.getTrack(trackId).getName());
+
+            // when
+            context.getContentResolver().applyBatch(ContentProviderUtils.getAuthorityPackage(), new ArrayList<>(List.of(rename)));
+
+            // then
+            assertNotNull(notifiedUris.poll(5, TimeUnit.SECONDS));
+            assertEquals("renamed", contentProviderUtils.getTrack(trackId).getName());
+        } finally {
+            context.getContentResolver().unregisterContentObserver(observer);
+        }
+    }
+
+    @Test
+    public void getModificationStamp_changesWithContent() {
+        // given
+        ContentProviderUtils contentProviderUtils = new ContentProviderUtils(context);
+        contentProviderUtils.deleteAllTracks(context);
+        Track.Id trackId = new Track.Id(1);
+        Set<Track.Id> trackIds = Set.of(trackId);
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 0);
+
+        try (ContentProviderClient client = context.getContentResolver().acquireContentProviderClient(ContentProviderUtils.getAuthorityPackage())) {
+            CustomContentProvider subject = (CustomContentProvider) client.getLocalContentProvider();
+            long stamp = subject.getModificationStamp(trackIds);
+
+            // then
+            assertEquals(stamp, subject.getModificationStamp(trackIds));
+
+            // when
+            Track track = contentProviderUtils.getTrack(trackId);
+            track.setName("renamed");
+            contentProviderUtils.updateTrack(track);
+
+            // then
+            long renamedStamp = subject.getModificationStamp(trackIds);
+            assertNotEquals(stamp, renamedStamp);
+
+            // when
+            contentProviderUtils.insertTrackPoint(TestDataUtil.createTrackPoint(0), trackId);
+
+            // then
+            assertNotEquals(renamedStamp, subject.getModificationStamp(trackIds));
+        }
+    }
+}
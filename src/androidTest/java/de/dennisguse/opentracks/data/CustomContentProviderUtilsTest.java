@@ -51,17 +51,21 @@ import java.util.stream.Collectors;
 
 import de.dennisguse.opentracks.content.data.TestDataUtil;
 import de.dennisguse.opentracks.content.data.TestSensorDataUtil;
+import de.dennisguse.opentracks.data.models.Cadence;
 import de.dennisguse.opentracks.data.models.Distance;
 import de.dennisguse.opentracks.data.models.HeartRate;
 import de.dennisguse.opentracks.data.models.Marker;
+import de.dennisguse.opentracks.data.models.Power;
 import de.dennisguse.opentracks.data.models.Speed;
 import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.data.models.TrackPoint;
 import de.dennisguse.opentracks.data.tables.MarkerColumns;
 import de.dennisguse.opentracks.data.tables.TrackPointsColumns;
 import de.dennisguse.opentracks.data.tables.TracksColumns;
+import de.dennisguse.opentracks.stats.ParallelTrackStatisticsCalculator;
 import de.dennisguse.opentracks.stats.SensorStatistics;
 import de.dennisguse.opentracks.stats.TrackStatistics;
+import de.dennisguse.opentracks.stats.TrackStatisticsUpdater;
 import de.dennisguse.opentracks.util.FileUtils;
 
 /**
@@ -886,6 +890,76 @@ public class CustomContentProviderUtilsTest {
         assertFalse(trackPointIterator.hasNext());
     }
 
+    @Test
+    public void testGetTrackPointCursorView_projection() {
+        // given
+        Track.Id trackId = new Track.Id(System.currentTimeMillis());
+        Pair<Track, List<TrackPoint>> track = TestDataUtil.createTrack(trackId, 10);
+        TestDataUtil.insertTrackWithLocations(contentProviderUtils, track.first, track.second);
+
+        // when
+        try (TrackPointCursor trackPointCursor = contentProviderUtils.getTrackPointCursorView(trackId, null, TrackPointCursor.PROJECTION_LOCATION)) {
+            // then
+            assertEquals(track.second.size(), trackPointCursor.getCount());
+            for (TrackPoint expected : track.second) {
+                assertTrue(trackPointCursor.moveToNext());
+                assertEquals(expected.getType(), trackPointCursor.getType());
+                assertEquals(expected.getTime().toEpochMilli(), trackPointCursor.getTimeEpochMillis());
+                assertEquals(expected.hasLocation(), trackPointCursor.hasLocation());
+                if (expected.hasLocation()) {
+                    assertEquals(expected.getLatitude(), trackPointCursor.getLatitude(), 0.000001);
+                    assertEquals(expected.getLongitude(), trackPointCursor.getLongitude(), 0.000001);
+                }
+
+                // Not projected
+                assertFalse(trackPointCursor.hasAltitude());
+                assertFalse(trackPointCursor.hasSpeed());
+                assertFalse(trackPointCursor.hasHeartRate());
+
+                TrackPoint trackPoint = trackPointCursor.toTrackPoint();
+                assertEquals(expected.getTime(), trackPoint.getTime());
+                assertFalse(trackPoint.hasAltitude());
+            }
+            assertFalse(trackPointCursor.moveToNext());
+        }
+    }
+
+    @Test
+    public void testGetTrackPointCursorView_allColumns() {
+        // given
+        Track.Id trackId = new Track.Id(System.currentTimeMillis());
+        Pair<Track, List<TrackPoint>> track = TestDataUtil.createTrack(trackId, 10);
+        TestDataUtil.insertTrackWithLocations(contentProviderUtils, track.first, track.second);
+
+        // when
+        try (TrackPointIterator trackPointIterator = contentProviderUtils.getTrackPointLocationIterator(trackId, null);
+             TrackPointCursor trackPointCursor = contentProviderUtils.getTrackPointCursorView(trackId, null, null)) {
+            // then
+            while (trackPointIterator.hasNext()) {
+                TrackPoint expected = trackPointIterator.next();
+                assertTrue(trackPointCursor.moveToNext());
+                assertEquals(expected.getId().id(), trackPointCursor.getId());
+                assertEquals(expected.hasAltitude(), trackPointCursor.hasAltitude());
+                if (expected.hasAltitude()) {
+                    assertEquals(expected.getAltitude().toM(), trackPointCursor.getAltitudeM(), 0.01);
+                }
+                assertEquals(expected.hasSpeed(), trackPointCursor.hasSpeed());
+                if (expected.hasSpeed()) {
+                    assertEquals(expected.getSpeed().toMPS(), trackPointCursor.getSpeedMPS(), 0.01);
+                }
+                assertEquals(expected.hasHeartRate(), trackPointCursor.hasHeartRate());
+                if (expected.hasHeartRate()) {
+                    assertEquals(expected.getHeartRate().getBPM(), trackPointCursor.getHeartRateBPM(), 0.01);
+                }
+                assertEquals(expected.hasPower(), trackPointCursor.hasPower());
+                if (expected.hasPower()) {
+                    assertEquals(expected.getPower().getW(), trackPointCursor.getPowerW(), 0.01);
+                }
+            }
+            assertFalse(trackPointCursor.moveToNext());
+        }
+    }
+
     /**
      * Checks the value of a location.
      *
@@ -906,6 +980,33 @@ public class CustomContentProviderUtilsTest {
         assertEquals("42,43,44", ContentProviderUtils.formatIdListForUri(new Track.Id(42), new Track.Id(43), new Track.Id(44)));
     }
 
+    /**
+     * Computes the sensor statistics from all TrackPoints of the track using {@link CustomContentProvider#SENSOR_STATS_QUERY} (ignores the stored sensor statistics).
+     */
+    private SensorStatistics getSensorStatsFromTrackPoints(Track.Id trackId) {
+        SensorStatistics sensorStatistics = null;
+        try (Cursor cursor = context.getContentResolver().query(
+                ContentUris.withAppendedId(TracksColumns.CONTENT_URI_SENSOR_STATS, trackId.id()), null, null, null,
+                null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                final int MAX_HR_INDEX = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALIAS_MAX_HR);
+                final int AVG_HR_INDEX = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALIAS_AVG_HR);
+                final int MAX_CADENCE_INDEX = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALIAS_MAX_CADENCE);
+                final int AVG_CADENCE_INDEX = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALIAS_AVG_CADENCE);
+                final int MAX_POWER_INDEX = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALIAS_MAX_POWER);
+                final int AVG_POWER_INDEX = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALIAS_AVG_POWER);
+                sensorStatistics = new SensorStatistics(
+                        !cursor.isNull(MAX_HR_INDEX) ? HeartRate.of(cursor.getFloat(MAX_HR_INDEX)) : null,
+                        !cursor.isNull(AVG_HR_INDEX) ? HeartRate.of(cursor.getFloat(AVG_HR_INDEX)) : null,
+                        !cursor.isNull(MAX_CADENCE_INDEX) ? Cadence.of(cursor.getFloat(MAX_CADENCE_INDEX)) : null,
+                        !cursor.isNull(AVG_CADENCE_INDEX) ? Cadence.of(cursor.getFloat(AVG_CADENCE_INDEX)) : null,
+                        !cursor.isNull(MAX_POWER_INDEX) ? Power.of(cursor.getFloat(MAX_POWER_INDEX)) : null,
+                        !cursor.isNull(AVG_POWER_INDEX) ? Power.of(cursor.getFloat(AVG_POWER_INDEX)) : null);
+            }
+        }
+        return sensorStatistics;
+    }
+
     @Test
     public void testGetSensorStats_noSensorData() {
         // given
@@ -1206,4 +1307,71 @@ public class CustomContentProviderUtilsTest {
     public void testGetSensorStats_withSeveralRandomStartSegments() {
         testGetSensorStats_randomData(5000, true);
     }
+
+    @Test
+    public void testGetSensorStats_storedWithTrackStatistics() {
+        // given
+        Instant start = Instant.now();
+        TestSensorDataUtil sensorDataUtil = new TestSensorDataUtil();
+        addSensorData(start, sensorDataUtil, TrackPoint.Type.SEGMENT_START_MANUAL);
+
+        TrackStatisticsUpdater trackStatisticsUpdater = new TrackStatisticsUpdater();
+        trackStatisticsUpdater.addTrackPoints(sensorDataUtil.getTrackPointList());
+
+        Track.Id trackId = new Track.Id(start.toEpochMilli());
+        Track track = TestDataUtil.createTrack(trackId);
+        track.setTrackStatistics(trackStatisticsUpdater.getTrackStatistics());
+        TestDataUtil.insertTrackWithLocations(contentProviderUtils, track, sensorDataUtil.getTrackPointList());
+
+        // when
+        SensorStatistics sensorStatistics = contentProviderUtils.getSensorStats(trackId);
+
+        // then
+        assertEquals(trackStatisticsUpdater.getTrackStatistics().getSensorStatistics(), sensorStatistics);
+    }
+
+    /**
+     * The sensor statistics maintained by {@link TrackStatisticsUpdater} must be the same as the ones computed from the TrackPoints (used for tracks without stored sensor statistics).
+     */
+    @Test
+    public void testGetSensorStats_storedEqualsTrackPoints_multipleSegments() {
+        // given
+        Instant start = Instant.now();
+        TestSensorDataUtil sensorDataUtil = new TestSensorDataUtil();
+        addSensorData(start, sensorDataUtil, TrackPoint.Type.SEGMENT_START_MANUAL);
+        // Second segment without heart rate and with a pause before the first TrackPoint.
+        sensorDataUtil.add(start.plus(100, ChronoUnit.SECONDS), null, 60f, 100f, TrackPoint.Type.SEGMENT_START_MANUAL);
+        sensorDataUtil.add(start.plus(130, ChronoUnit.SECONDS), null, 70f, 150f, TrackPoint.Type.TRACKPOINT);
+        sensorDataUtil.add(start.plus(131, ChronoUnit.SECONDS), null, 95f, 500f, TrackPoint.Type.TRACKPOINT);
+        sensorDataUtil.add(start.plus(190, ChronoUnit.SECONDS), null, 65f, 120f, TrackPoint.Type.SEGMENT_END_MANUAL);
+        // Third segment started automatically.
+        sensorDataUtil.add(start.plus(200, ChronoUnit.SECONDS), 130f, 80f, 210f, TrackPoint.Type.SEGMENT_START_AUTOMATIC);
+        sensorDataUtil.add(start.plus(205, ChronoUnit.SECONDS), 135f, 82f, 220f, TrackPoint.Type.TRACKPOINT);
+        sensorDataUtil.add(start.plus(260, ChronoUnit.SECONDS), 140f, 84f, 230f, TrackPoint.Type.SEGMENT_END_MANUAL);
+
+        Track.Id trackId = new Track.Id(start.toEpochMilli());
+        Track track = TestDataUtil.createTrack(trackId);
+        TestDataUtil.insertTrackWithLocations(contentProviderUtils, track, sensorDataUtil.getTrackPointList());
+
+        // when
+        TrackStatisticsUpdater trackStatisticsUpdater = new TrackStatisticsUpdater();
+        trackStatisticsUpdater.addTrackPoints(sensorDataUtil.getTrackPointList());
+        SensorStatistics stored = trackStatisticsUpdater.getTrackStatistics().getSensorStatistics();
+
+        TrackStatistics parallel = new ParallelTrackStatisticsCalculator().calculate(sensorDataUtil.getTrackPointList());
+
+        // then
+        SensorStatistics expected = getSensorStatsFromTrackPoints(trackId);
+        assertSensorStatisticsEquals(expected, stored);
+        assertSensorStatisticsEquals(expected, parallel.getSensorStatistics());
+    }
+
+    private static void assertSensorStatisticsEquals(SensorStatistics expected, SensorStatistics actual) {
+        assertEquals(expected.avgHeartRate().getBPM(), actual.avgHeartRate().getBPM(), 0.01f);
+        assertEquals(expected.maxHeartRate().getBPM(), actual.maxHeartRate().getBPM(), 0f);
+        assertEquals(expected.avgCadence().getRPM(), actual.avgCadence().getRPM(), 0.01f);
+        assertEquals(expected.maxCadence().getRPM(), actual.maxCadence().getRPM(), 0f);
+        assertEquals(expected.avgPower().getW(), actual.avgPower().getW(), 0.01f);
+        assertEquals(expected.maxPower().getW(), actual.maxPower().getW(), 0f);
+    }
 }
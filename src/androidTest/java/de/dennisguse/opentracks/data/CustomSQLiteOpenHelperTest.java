@@ -26,6 +26,7 @@ import java.util.Map;
 
 import de.dennisguse.opentracks.data.tables.MarkerColumns;
 import de.dennisguse.opentracks.data.tables.TrackPointsColumns;
+import de.dennisguse.opentracks.data.tables.TrackPointsLodColumns;
 import de.dennisguse.opentracks.data.tables.TracksColumns;
 
 @RunWith(AndroidJUnit4.class)
@@ -89,9 +90,13 @@ public class CustomSQLiteOpenHelperTest {
 
             assertTrue(hasSqlCreate(db, TrackPointsColumns.CREATE_TABLE));
             assertTrue(hasSqlCreate(db, TrackPointsColumns.CREATE_TABLE_INDEX));
+            assertTrue(hasSqlCreate(db, TrackPointsColumns.CREATE_TABLE_INDEX_TRACKID_TIME));
 
             assertTrue(hasSqlCreate(db, MarkerColumns.CREATE_TABLE));
             assertTrue(hasSqlCreate(db, MarkerColumns.CREATE_TABLE_INDEX));
+
+            assertTrue(hasSqlCreate(db, TrackPointsLodColumns.CREATE_TABLE));
+            assertTrue(hasSqlCreate(db, TrackPointsLodColumns.CREATE_TABLE_INDEX));
         } catch (Exception e) {
             fail("Database could not be created: " + e);
         }
@@ -120,19 +125,23 @@ public class CustomSQLiteOpenHelperTest {
 
 
         // then - verify table structure
-        int tableCount = 3 + 2; //Three with data tables + two SQLite
+        int tableCount = 4 + 2; //Four with data tables + two SQLite
         assertEquals(tableCount, tableByUpgrade.size());
         assertEquals(tableByUpgrade.size(), tablesByCreate.size());
 
         assertEquals(tablesByCreate.get(TracksColumns.TABLE_NAME), tableByUpgrade.get(TracksColumns.TABLE_NAME));
         assertEquals(tablesByCreate.get(TrackPointsColumns.TABLE_NAME), tableByUpgrade.get(TrackPointsColumns.TABLE_NAME));
         assertEquals(tablesByCreate.get(MarkerColumns.TABLE_NAME), tableByUpgrade.get(MarkerColumns.TABLE_NAME));
+        assertEquals(tablesByCreate.get(TrackPointsLodColumns.TABLE_NAME), tableByUpgrade.get(TrackPointsLodColumns.TABLE_NAME));
 
         // then - verify custom indices
-        assertEquals(3, indicesByCreate.size());
+        assertEquals(6, indicesByCreate.size());
+        assertEquals(TrackPointsColumns.CREATE_TABLE_INDEX_TRACKID_TIME, indicesByUpgrade.get("trackpoints_trackid_time_index"));
+        assertEquals(TracksColumns.CREATE_TABLE_INDEX_FINGERPRINT, indicesByUpgrade.get("tracks_fingerprint_index"));
         assertEquals(indicesByUpgrade.get(TracksColumns.TABLE_NAME), indicesByCreate.get(TracksColumns.TABLE_NAME));
         assertEquals(indicesByUpgrade.get(TrackPointsColumns.TABLE_NAME), indicesByCreate.get(TrackPointsColumns.TABLE_NAME));
         assertEquals(indicesByUpgrade.get(MarkerColumns.TABLE_NAME), indicesByCreate.get(MarkerColumns.TABLE_NAME));
+        assertEquals(indicesByUpgrade.get(TrackPointsLodColumns.TABLE_NAME), indicesByCreate.get(TrackPointsLodColumns.TABLE_NAME));
     }
 
     @Test
@@ -0,0 +1,182 @@
+package de.dennisguse.opentracks.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.dennisguse.opentracks.content.data.TestDataUtil;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+
+@RunWith(AndroidJUnit4.class)
+public class DecodedTrackCacheTest {
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private ContentProviderUtils contentProviderUtils;
+
+    private final Track.Id trackId = new Track.Id(1);
+
+    @Before
+    public void setUp() {
+        contentProviderUtils = new ContentProviderUtils(context);
+        contentProviderUtils.deleteAllTracks(context);
+    }
+
+    private List<TrackPoint> getTrackPointsFromCursor(Track.Id trackId) {
+        try (TrackPointIterator trackPointIterator = new TrackPointIterator(contentProviderUtils, trackId, null)) {
+            List<TrackPoint> trackPoints = new ArrayList<>();
+            while (trackPointIterator.hasNext()) {
+                trackPoints.add(trackPointIterator.next());
+            }
+            return trackPoints;
+        }
+    }
+
+    private static void assertTrackPointsEqual(List<TrackPoint> expected, List<TrackPoint> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            TrackPoint e = expected.get(i);
+            TrackPoint a = actual.get(i);
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.getType(), a.getType());
+            assertEquals(e.getTime(), a.getTime());
+            assertEquals(e.getLatitude(), a.getLatitude(), 0);
+            assertEquals(e.getLongitude(), a.getLongitude(), 0);
+            assertEquals(e.getAltitude().toM(), a.getAltitude().toM(), 0);
+            assertEquals(e.getSpeed(), a.getSpeed());
+            assertEquals(e.getHeartRate(), a.getHeartRate());
+            assertEquals(e.hasBearing(), a.hasBearing());
+            assertEquals(e.hasSensorDistance(), a.hasSensorDistance());
+        }
+    }
+
+    @Test
+    public void get_sameAsCursor() {
+        // given
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 100);
+
+        // when
+        List<TrackPoint> trackPoints = TestDataUtil.getTrackPoints(contentProviderUtils, trackId);
+
+        // then
+        assertTrackPointsEqual(getTrackPointsFromCursor(trackId), trackPoints);
+    }
+
+    @Test
+    public void get_fromStartTrackPointId() {
+        // given
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 10);
+        List<TrackPoint> expected = getTrackPointsFromCursor(trackId);
+
+        // when
+        try (TrackPointIterator trackPointIterator = contentProviderUtils.getTrackPointLocationIterator(trackId, expected.get(4).getId())) {
+
+            // then
+            assertEquals(6, trackPointIterator.getCount());
+            assertEquals(expected.get(4).getId(), trackPointIterator.next().getId());
+        }
+    }
+
+    @Test
+    public void get_hitAndAppendsInsertedTrackPoints() {
+        // given
+        DecodedTrackCache cache = DecodedTrackCache.getInstance();
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 10);
+        assertEquals(10, TestDataUtil.getTrackPoints(contentProviderUtils, trackId).size());
+        long hits = cache.getHitCount();
+
+        // when
+        contentProviderUtils.insertTrackPoint(TestDataUtil.createTrackPoint(10), trackId);
+        List<TrackPoint> trackPoints = TestDataUtil.getTrackPoints(contentProviderUtils, trackId);
+
+        // then
+        assertEquals(hits + 1, cache.getHitCount());
+        assertTrackPointsEqual(getTrackPointsFromCursor(trackId), trackPoints);
+    }
+
+    @Test
+    public void deleteTrack_clears() {
+        // given
+        DecodedTrackCache cache = DecodedTrackCache.getInstance();
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 10);
+        TestDataUtil.getTrackPoints(contentProviderUtils, trackId);
+
+        // when
+        contentProviderUtils.deleteTrack(context, trackId);
+
+        // then
+        assertEquals(0, cache.getTrackCount());
+        assertEquals(0, cache.getSizeBytes());
+        assertEquals(0, TestDataUtil.getTrackPoints(contentProviderUtils, trackId).size());
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsed() {
+        // given
+        Track.Id otherTrackId = new Track.Id(2);
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 10);
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, otherTrackId, 10);
+        long trackSizeBytes = new DecodedTrackCache(Long.MAX_VALUE).get(contentProviderUtils, trackId).getSizeBytes();
+        DecodedTrackCache cache = new DecodedTrackCache(trackSizeBytes * 3 / 2);
+        cache.get(contentProviderUtils, trackId);
+
+        // when
+        cache.get(contentProviderUtils, otherTrackId);
+
+        // then
+        assertEquals(1, cache.getTrackCount());
+        assertEquals(trackSizeBytes, cache.getSizeBytes());
+        assertEquals(2, cache.getMissCount());
+
+        cache.get(contentProviderUtils, otherTrackId);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1 / 3d, cache.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void get_trackLargerThanMaxSize_notDecoded() {
+        // given
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 100);
+        DecodedTrackCache cache = new DecodedTrackCache(DecodedTrack.getMaxSizeBytes(100) - 1);
+
+        // when
+        DecodedTrack decodedTrack = cache.get(contentProviderUtils, trackId);
+
+        // then
+        assertNull(decodedTrack);
+        assertEquals(0, cache.getTrackCount());
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    @Test
+    public void getUncachedTrackPointIterator_doesNotUseCache() {
+        // given
+        DecodedTrackCache cache = DecodedTrackCache.getInstance();
+        cache.clear();
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 10);
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+
+        // when
+        List<TrackPoint> trackPoints = getTrackPointsFromCursor(trackId);
+        try (TrackPointIterator trackPointIterator = contentProviderUtils.getUncachedTrackPointIterator(trackId, null)) {
+
+            // then
+            assertEquals(trackPoints.size(), trackPointIterator.getCount());
+        }
+        assertEquals(hits, cache.getHitCount());
+        assertEquals(misses, cache.getMissCount());
+        assertEquals(0, cache.getTrackCount());
+    }
+}
@@ -0,0 +1,165 @@
+package de.dennisguse.opentracks.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import de.dennisguse.opentracks.data.models.Track;
+
+@RunWith(AndroidJUnit4.class)
+public class ExportCacheTest {
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+
+    private File directory;
+    private ExportCache subject;
+
+    @Before
+    public void setUp() {
+        directory = new File(context.getCacheDir(), "ExportCacheTest");
+        subject = new ExportCache(directory, 100);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private File createEntry(int length) throws IOException {
+        File tempFile = subject.createTempFile();
+        try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+            outputStream.write(new byte[length]);
+        }
+        return tempFile;
+    }
+
+    @Test
+    public void get_missing() {
+        assertNull(subject.get("missing"));
+    }
+
+    @Test
+    public void put_get() throws IOException {
+        // given
+        File tempFile = createEntry(10);
+
+        // when
+        subject.put("key", tempFile);
+
+        // then
+        File file = subject.get("key");
+        assertNotNull(file);
+        assertEquals(10, file.length());
+        assertFalse(tempFile.exists());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() throws IOException {
+        // given
+        subject.put("a", createEntry(40));
+        subject.put("b", createEntry(40));
+        new File(directory, "a").setLastModified(1000);
+        new File(directory, "b").setLastModified(2000);
+        subject.get("a");
+
+        // when
+        subject.put("c", createEntry(40));
+
+        // then
+        assertNotNull(subject.get("a"));
+        assertNull(subject.get("b"));
+        assertNotNull(subject.get("c"));
+    }
+
+    @Test
+    public void put_tooLarge() throws IOException {
+        // given
+        File tempFile = createEntry(101);
+
+        // when
+        subject.put("key", tempFile);
+
+        // then
+        assertNull(subject.get("key"));
+        assertFalse(tempFile.exists());
+    }
+
+    @Test
+    public void create_deletesTempFiles() throws IOException {
+        // given
+        File tempFile = createEntry(10);
+
+        // when
+        new ExportCache(directory, 100);
+
+        // then
+        assertFalse(tempFile.exists());
+    }
+
+    @Test
+    public void remove_entriesOfTracks() throws IOException {
+        // given
+        Track.Id trackId1 = new Track.Id(1);
+        Track.Id trackId2 = new Track.Id(2);
+        Track.Id trackId3 = new Track.Id(3);
+        String key1 = ExportCache.createKey(Set.of(trackId1), "GPX");
+        String key12 = ExportCache.createKey(Set.of(trackId1, trackId2), "GPX");
+        String key3 = ExportCache.createKey(Set.of(trackId3), "GPX");
+        subject.put(key1, createEntry(10));
+        subject.put(key12, createEntry(10));
+        subject.put(key3, createEntry(10));
+
+        // when
+        subject.remove(Set.of(trackId2));
+
+        // then
+        assertNotNull(subject.get(key1));
+        assertNull(subject.get(key12));
+        assertNotNull(subject.get(key3));
+
+        // when
+        subject.remove(null);
+
+        // then
+        assertNull(subject.get(key1));
+        assertNull(subject.get(key3));
+    }
+
+    @Test
+    public void remove_manyTracks() throws IOException {
+        // given
+        Set<Track.Id> trackIds = LongStream.range(1_000_000_000_000L, 1_000_000_000_100L).mapToObj(Track.Id::new).collect(Collectors.toSet());
+        String key = ExportCache.createKey(trackIds, "GPX");
+        subject.put(key, createEntry(10));
+
+        // when
+        subject.remove(Set.of(new Track.Id(1)));
+
+        // then: track ids were not part of the key
+        assertNull(subject.get(key));
+    }
+}
@@ -0,0 +1,96 @@
+package de.dennisguse.opentracks.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.dennisguse.opentracks.data.models.TrackPoint;
+import de.dennisguse.opentracks.stats.TrackStatistics;
+
+@RunWith(AndroidJUnit4.class)
+public class LttbTrackPointDownsamplerTest {
+
+    private final List<TrackPoint> sampledIn = new ArrayList<>();
+    private final List<TrackPoint> reported = new ArrayList<>();
+
+    private final TrackPointDownsampler.Output output = new TrackPointDownsampler.Output() {
+        @Override
+        public void onSampledIn(@NonNull TrackPoint trackPoint, @NonNull TrackStatistics trackStatistics) {
+            sampledIn.add(trackPoint);
+            reported.add(trackPoint);
+        }
+
+        @Override
+        public void onSampledOut(@NonNull TrackPoint trackPoint, @NonNull TrackStatistics trackStatistics) {
+            reported.add(trackPoint);
+        }
+    };
+
+    private static TrackPoint createTrackPoint(int i, float heartRate) {
+        return new TrackPoint(TrackPoint.Type.TRACKPOINT, Instant.ofEpochSecond(i))
+                .setHeartRate(heartRate);
+    }
+
+    @Test
+    public void add_reportsAllInOrder() {
+        // given
+        LttbTrackPointDownsampler subject = new LttbTrackPointDownsampler(10, 100);
+        List<TrackPoint> trackPoints = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            trackPoints.add(createTrackPoint(i, 100 + i % 7));
+        }
+
+        // when
+        trackPoints.forEach(it -> subject.add(it, new TrackStatistics(), output));
+        subject.flush(output);
+
+        // then
+        assertEquals(trackPoints, reported);
+        assertEquals(trackPoints.get(0), sampledIn.get(0));
+        assertEquals(trackPoints.get(99), sampledIn.get(sampledIn.size() - 1));
+        assertTrue(sampledIn.size() <= 12);
+    }
+
+    @Test
+    public void add_keepsPeak() {
+        // given
+        LttbTrackPointDownsampler subject = new LttbTrackPointDownsampler(10, 100);
+        TrackPoint peak = createTrackPoint(55, 200);
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            subject.add(i == 55 ? peak : createTrackPoint(i, 100), new TrackStatistics(), output);
+        }
+        subject.flush(output);
+
+        // then
+        assertTrue(sampledIn.contains(peak));
+    }
+
+    @Test
+    public void add_extendsWithoutFlush() {
+        // given
+        LttbTrackPointDownsampler subject = new LttbTrackPointDownsampler(10, 0);
+        assertEquals(1, subject.getBucketSize());
+
+        // when
+        for (int i = 0; i < 12; i++) {
+            subject.add(createTrackPoint(i, 100 + i), new TrackStatistics(), output);
+        }
+
+        // then
+        assertEquals(10, sampledIn.size());
+        assertEquals(2, subject.getBucketSize());
+        // Pending TrackPoints are not reported yet.
+        assertEquals(10, reported.size());
+    }
+}
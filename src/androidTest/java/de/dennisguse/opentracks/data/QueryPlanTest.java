@@ -0,0 +1,266 @@
+package de.dennisguse.opentracks.data;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.location.Location;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import de.dennisguse.opentracks.data.models.Marker;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+import de.dennisguse.opentracks.data.tables.MarkerColumns;
+import de.dennisguse.opentracks.data.tables.TrackPointsColumns;
+import de.dennisguse.opentracks.data.tables.TrackPointsLodColumns;
+import de.dennisguse.opentracks.data.tables.TracksColumns;
+
+/**
+ * Asserts the query plans of the queries issued by {@link ContentProviderUtils}, so that missing indices are detected.
+ * The queries are recorded from the production code and explained on a test database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTest {
+
+    private static final String DATABASE_NAME = "test_query_plan.db";
+
+    // Full table or full index scans of the given tables (also matches the pre SQLite 3.24 format "SCAN TABLE trackpoints AS t").
+    private static final Pattern SCAN_TRACKPOINTS = Pattern.compile("^SCAN (TABLE )?(" + TrackPointsColumns.TABLE_NAME + "|t|t1)( |$)");
+    private static final Pattern SCAN_MARKERS = Pattern.compile("^SCAN (TABLE )?" + MarkerColumns.TABLE_NAME + "( |$)");
+    private static final Pattern SCAN_TRACKPOINTS_LOD = Pattern.compile("^SCAN (TABLE )?" + TrackPointsLodColumns.TABLE_NAME + "( |$)");
+
+    private static final Track.Id TRACK_ID = new Track.Id(1);
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+
+    private SQLiteDatabase db;
+    private RecordingContentProviderUtils contentProviderUtils;
+
+    private record Query(Uri uri, String selection, String[] selectionArgs, String sortOrder) {
+    }
+
+    /**
+     * Records the queries issued by the production code; they are still executed.
+     */
+    private static class RecordingContentProviderUtils extends ContentProviderUtils {
+
+        private final List<Query> queries = new ArrayList<>();
+
+        RecordingContentProviderUtils(Context context) {
+            super(context);
+        }
+
+        @Override
+        Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+            queries.add(new Query(uri, selection, selectionArgs, sortOrder));
+            return super.query(uri, projection, selection, selectionArgs, sortOrder);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        context.deleteDatabase(DATABASE_NAME);
+        db = new CustomSQLiteOpenHelper(context, DATABASE_NAME).getWritableDatabase();
+        contentProviderUtils = new RecordingContentProviderUtils(context);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    private List<String> explain(String sql, String... selectionArgs) {
+        List<String> plan = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs)) {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detailIndex));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Explains the last query issued by {@link #contentProviderUtils} on the test database.
+     */
+    private List<String> explainLastQuery() {
+        assertFalse(contentProviderUtils.queries.isEmpty());
+        Query query = contentProviderUtils.queries.get(contentProviderUtils.queries.size() - 1);
+
+        String table = query.uri().getPathSegments().get(0);
+        return explain(SQLiteQueryBuilder.buildQueryString(false, table, null, query.selection(), null, null, query.sortOrder(), null), query.selectionArgs());
+    }
+
+    private static void close(Cursor cursor) {
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
+
+    private static void assertUsesIndex(List<String> plan, String index) {
+        assertTrue(index + " not used: " + plan, plan.stream().anyMatch(it -> it.contains("INDEX " + index)));
+    }
+
+    private static void assertNoScan(List<String> plan, Pattern scan) {
+        assertFalse("Scan: " + plan, plan.stream().anyMatch(it -> scan.matcher(it).find()));
+    }
+
+    private static void assertNoSort(List<String> plan) {
+        assertFalse("Sort: " + plan, plan.stream().anyMatch(it -> it.contains("TEMP B-TREE")));
+    }
+
+    @Test
+    public void trackPoints_byTrackId() {
+        // when
+        close(contentProviderUtils.getTrackPointCursor(TRACK_ID, null));
+
+        // then
+        List<String> plan = explainLastQuery();
+        assertUsesIndex(plan, "trackpoints_trackid_index");
+        assertNoSort(plan);
+    }
+
+    @Test
+    public void trackPoints_byTrackId_fromId() {
+        // when
+        close(contentProviderUtils.getTrackPointCursor(TRACK_ID, new TrackPoint.Id(1)));
+
+        // then
+        List<String> plan = explainLastQuery();
+        assertUsesIndex(plan, "trackpoints_trackid_index");
+        assertNoScan(plan, SCAN_TRACKPOINTS);
+        assertNoSort(plan);
+    }
+
+    @Test
+    public void trackPoints_byTrackId_orderedByTime() {
+        // when
+        contentProviderUtils.getTrackPointCursorViewOrderedByTime(TRACK_ID).close();
+
+        // then
+        List<String> plan = explainLastQuery();
+        assertUsesIndex(plan, "trackpoints_trackid_time_index");
+        assertNoSort(plan);
+    }
+
+    @Test
+    public void trackPoints_lastId() {
+        // when
+        contentProviderUtils.getLastTrackPointId(TRACK_ID);
+
+        // then
+        List<String> plan = explainLastQuery();
+        assertUsesIndex(plan, "trackpoints_trackid_index");
+        assertNoScan(plan, SCAN_TRACKPOINTS);
+    }
+
+    @Test
+    public void trackPoints_idByTime() {
+        // given
+        Location location = new Location("test");
+        location.setTime(1000);
+
+        // when
+        contentProviderUtils.getTrackPointId(TRACK_ID, location);
+
+        // then
+        List<String> plan = explainLastQuery();
+        assertUsesIndex(plan, "trackpoints_trackid_time_index");
+        assertNoScan(plan, SCAN_TRACKPOINTS);
+    }
+
+    @Test
+    public void trackPoints_lastValid() {
+        // when
+        contentProviderUtils.getLastValidTrackPoint(TRACK_ID);
+
+        // then
+        List<String> plan = explainLastQuery();
+        assertUsesIndex(plan, "trackpoints_trackid_index");
+        assertNoScan(plan, SCAN_TRACKPOINTS);
+    }
+
+    @Test
+    public void trackPoints_sensorStats() {
+        // when
+        List<String> plan = explain(CustomContentProvider.SENSOR_STATS_QUERY, "1", "1");
+
+        // then
+        assertUsesIndex(plan, "trackpoints_trackid_index");
+        assertNoScan(plan, SCAN_TRACKPOINTS);
+    }
+
+    @Test
+    public void tracks_byId() {
+        // when
+        contentProviderUtils.getTrack(TRACK_ID);
+
+        // then
+        List<String> plan = explainLastQuery();
+        assertTrue(plan.toString(), plan.stream().anyMatch(it -> it.contains("INTEGER PRIMARY KEY")));
+    }
+
+    @Test
+    public void tracks_byFingerprint() {
+        // when
+        contentProviderUtils.getTrackIdByFingerprint(1);
+
+        // then
+        List<String> plan = explainLastQuery();
+        assertUsesIndex(plan, "tracks_fingerprint_index");
+        assertNoSort(plan);
+    }
+
+    @Test
+    public void markers_byTrackId() {
+        // when
+        close(contentProviderUtils.getMarkerCursor(TRACK_ID, null, -1));
+
+        // then
+        List<String> plan = explainLastQuery();
+        assertUsesIndex(plan, "markers_trackid_index");
+        assertNoSort(plan);
+    }
+
+    @Test
+    public void markers_byTrackId_fromId() {
+        // when
+        close(contentProviderUtils.getMarkerCursor(TRACK_ID, new Marker.Id(1), -1));
+
+        // then
+        List<String> plan = explainLastQuery();
+        assertUsesIndex(plan, "markers_trackid_index");
+        assertNoScan(plan, SCAN_MARKERS);
+        assertNoSort(plan);
+    }
+
+    @Test
+    public void trackPointsLod_byTrackId() {
+        // when
+        close(contentProviderUtils.getTrackPointsLodCursor(TRACK_ID, 5000));
+
+        // then
+        List<String> plan = explainLastQuery();
+        assertUsesIndex(plan, "trackpoints_lod_trackid_level_index");
+        assertNoScan(plan, SCAN_TRACKPOINTS_LOD);
+        assertNoSort(plan);
+    }
+}
@@ -1,10 +1,14 @@
 package de.dennisguse.opentracks.data;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
+import android.content.Context;
 import android.net.Uri;
 import android.util.Pair;
 
+import androidx.test.core.app.ApplicationProvider;
+
 import org.junit.Test;
 
 import java.util.Set;
@@ -12,6 +16,8 @@ import java.util.Set;
 import de.dennisguse.opentracks.BuildConfig;
 import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.io.file.TrackFileFormat;
+import de.dennisguse.opentracks.settings.PreferencesUtils;
+import de.dennisguse.opentracks.settings.UnitSystem;
 
 public class ShareContentProviderTest {
 
@@ -38,4 +44,24 @@ public class ShareContentProviderTest {
 
         assertEquals(Uri.parse("content://" + BuildConfig.APPLICATION_ID + ".content/tracks/KML_WITH_TRACKDETAIL_AND_SENSORDATA/1/..%2F..%2F%261%3D1"), shareURIandMIME.first);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getExportCacheKey_dependsOnSettings() {
+        // given
+        Context context = ApplicationProvider.getApplicationContext();
+        Set<Track.Id> trackIds = Set.of(new Track.Id(1));
+        PreferencesUtils.setUnit(UnitSystem.METRIC);
+        String metricKey = ShareContentProvider.getExportCacheKey(context, TrackFileFormat.GPX, trackIds, 42);
+
+        // when
+        PreferencesUtils.setUnit(UnitSystem.IMPERIAL_FEET);
+        String imperialKey = ShareContentProvider.getExportCacheKey(context, TrackFileFormat.GPX, trackIds, 42);
+        PreferencesUtils.setUnit(UnitSystem.METRIC);
+
+        // then
+        assertNotEquals(metricKey, imperialKey);
+        assertEquals(metricKey, ShareContentProvider.getExportCacheKey(context, TrackFileFormat.GPX, trackIds, 42));
+        assertNotEquals(metricKey, ShareContentProvider.getExportCacheKey(context, TrackFileFormat.KML_WITH_TRACKDETAIL_AND_SENSORDATA, trackIds, 42));
+        assertNotEquals(metricKey, ShareContentProvider.getExportCacheKey(context, TrackFileFormat.GPX, trackIds, 43));
+    }
+}
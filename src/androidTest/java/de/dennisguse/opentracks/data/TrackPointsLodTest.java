@@ -0,0 +1,162 @@
+package de.dennisguse.opentracks.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import android.content.Context;
+import android.util.Pair;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import de.dennisguse.opentracks.content.data.TestDataUtil;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+
+@RunWith(AndroidJUnit4.class)
+public class TrackPointsLodTest {
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private ContentProviderUtils contentProviderUtils;
+
+    private final Track.Id trackId = new Track.Id(1);
+
+    @Before
+    public void setUp() {
+        contentProviderUtils = new ContentProviderUtils(context);
+        contentProviderUtils.deleteAllTracks(context);
+    }
+
+    @Test
+    public void levels() {
+        assertEquals(0, TrackPointsLod.getMaxLevel(TrackPointsLod.MAX_BUCKETS));
+
+        assertEquals(1, TrackPointsLod.getMinLevel(6000));
+        assertEquals(6, TrackPointsLod.getMaxLevel(6000));
+
+        assertEquals(7, TrackPointsLod.getMinLevel(500000));
+        assertEquals(12, TrackPointsLod.getMaxLevel(500000));
+    }
+
+    @Test
+    public void rebuild_shortTrack() {
+        // given
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 10);
+
+        // when
+        int buckets = new TrackPointsLod(contentProviderUtils).rebuild(trackId);
+
+        // then
+        assertEquals(0, buckets);
+        assertNull(new TrackPointsLod(contentProviderUtils).load(trackId, TrackPointsLod.MAX_BUCKETS, contentProviderUtils.getLastTrackPointId(trackId)));
+    }
+
+    @Test
+    public void rebuild_and_load() {
+        // given
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 6000);
+        TrackPointsLod trackPointsLod = new TrackPointsLod(contentProviderUtils);
+
+        // when
+        int buckets = trackPointsLod.rebuild(trackId);
+        List<TrackPointsLod.Entry> entries = trackPointsLod.load(trackId, TrackPointsLod.MAX_BUCKETS, contentProviderUtils.getLastTrackPointId(trackId));
+
+        // then
+        assertEquals(3000 + 1500 + 750 + 375 + 188 + 94, buckets);
+        assertNotNull(entries);
+        assertEquals(2 * 3000, entries.size());
+
+        List<TrackPoint> trackPoints = TestDataUtil.getTrackPoints(contentProviderUtils, trackId);
+        TrackPoint min = entries.get(0).trackPoint();
+        TrackPoint max = entries.get(1).trackPoint();
+        assertEquals(trackPoints.get(1).getId(), max.getId());
+        assertEquals(trackPoints.get(1).getTime(), max.getTime());
+        assertEquals(trackPoints.get(0).getSpeed().toMPS(), min.getSpeed().toMPS(), 0.01);
+        assertEquals(trackPoints.get(1).getSpeed().toMPS(), max.getSpeed().toMPS(), 0.01);
+        assertEquals(trackPoints.get(0).getHeartRate().getBPM(), min.getHeartRate().getBPM(), 0.01);
+        assertEquals(trackPoints.get(1).getHeartRate().getBPM(), max.getHeartRate().getBPM(), 0.01);
+
+        assertEquals(trackPoints.get(trackPoints.size() - 1).getId(), entries.get(entries.size() - 1).trackPoint().getId());
+    }
+
+    @Test
+    public void load_noLevelFits_coarsestLevel() {
+        // given
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 6000);
+        TrackPointsLod trackPointsLod = new TrackPointsLod(contentProviderUtils);
+        trackPointsLod.rebuild(trackId);
+
+        // when
+        List<TrackPointsLod.Entry> entries = trackPointsLod.load(trackId, 10, contentProviderUtils.getLastTrackPointId(trackId));
+
+        // then
+        assertNotNull(entries);
+        assertEquals(2 * 94, entries.size());
+    }
+
+    @Test
+    public void rebuild_and_load_keepsPeaksInOrder() {
+        // given
+        Pair<Track, List<TrackPoint>> track = TestDataUtil.createTrack(trackId, 6000);
+        track.second.get(2).setHeartRate(250f);
+        track.second.get(3).setHeartRate(50f);
+        TestDataUtil.insertTrackWithLocations(contentProviderUtils, track.first, track.second);
+        TrackPointsLod trackPointsLod = new TrackPointsLod(contentProviderUtils);
+
+        // when
+        trackPointsLod.rebuild(trackId);
+        List<TrackPointsLod.Entry> entries = trackPointsLod.load(trackId, TrackPointsLod.MAX_BUCKETS, contentProviderUtils.getLastTrackPointId(trackId));
+
+        // then
+        assertNotNull(entries);
+        assertEquals(250f, entries.get(4).trackPoint().getHeartRate().getBPM(), 0.01);
+        assertEquals(50f, entries.get(5).trackPoint().getHeartRate().getBPM(), 0.01);
+    }
+
+    @Test
+    public void rebuild_and_load_keepsSegments() {
+        // given
+        Pair<Track, List<TrackPoint>> track = TestDataUtil.createTrack(trackId, 6000);
+        track.second.get(1002).setType(TrackPoint.Type.SEGMENT_END_MANUAL);
+        track.second.get(1003).setType(TrackPoint.Type.SEGMENT_START_MANUAL);
+        TestDataUtil.insertTrackWithLocations(contentProviderUtils, track.first, track.second);
+        TrackPointsLod trackPointsLod = new TrackPointsLod(contentProviderUtils);
+
+        // when
+        trackPointsLod.rebuild(trackId);
+        List<TrackPointsLod.Entry> entries = trackPointsLod.load(trackId, TrackPointsLod.MAX_BUCKETS, contentProviderUtils.getLastTrackPointId(trackId));
+
+        // then
+        assertNotNull(entries);
+        // 501 buckets before the segment end, the segment end alone, and 2499 buckets of the second segment.
+        assertEquals(2 * (501 + 1 + 2499), entries.size());
+
+        List<TrackPoint> trackPoints = TestDataUtil.getTrackPoints(contentProviderUtils, trackId);
+        TrackPoint segmentEnd = entries.get(1003).trackPoint();
+        assertEquals(TrackPoint.Type.SEGMENT_END_MANUAL, segmentEnd.getType());
+        assertEquals(trackPoints.get(1002).getId(), segmentEnd.getId());
+        assertEquals(TrackPoint.Type.SEGMENT_START_MANUAL, entries.get(1004).trackPoint().getType());
+        assertEquals(TrackPoint.Type.TRACKPOINT, entries.get(1005).trackPoint().getType());
+    }
+
+    @Test
+    public void load_outdated() {
+        // given
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 6000);
+        TrackPointsLod trackPointsLod = new TrackPointsLod(contentProviderUtils);
+        trackPointsLod.rebuild(trackId);
+
+        // when
+        contentProviderUtils.insertTrackPoint(TestDataUtil.createTrackPoint(6000), trackId);
+
+        // then
+        assertNull(trackPointsLod.load(trackId, TrackPointsLod.MAX_BUCKETS, contentProviderUtils.getLastTrackPointId(trackId)));
+    }
+}
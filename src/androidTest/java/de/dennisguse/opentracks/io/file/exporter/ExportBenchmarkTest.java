@@ -0,0 +1,93 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import de.dennisguse.opentracks.content.data.TestDataUtil;
+import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.io.file.TrackFileFormat;
+
+/**
+ * Export throughput (TrackPoints/s) of the file formats for a large track.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExportBenchmarkTest {
+
+    private static final String TAG = ExportBenchmarkTest.class.getSimpleName();
+
+    private static final int NUM_TRACKPOINTS = 20000;
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private final ContentProviderUtils contentProviderUtils = new ContentProviderUtils(context);
+
+    private final Track.Id trackId = new Track.Id(System.currentTimeMillis());
+    private Track track;
+
+    @Before
+    public void setUp() {
+        TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, NUM_TRACKPOINTS);
+        track = contentProviderUtils.getTrack(trackId);
+    }
+
+    @After
+    public void tearDown() {
+        contentProviderUtils.deleteTrack(context, trackId);
+    }
+
+    private void benchmark(TrackFileFormat trackFileFormat) {
+        TrackExporter subject = trackFileFormat.createTrackExporter(context, contentProviderUtils);
+
+        // warm up
+        subject.writeTrack(List.of(track), new ByteArrayOutputStream());
+
+        // when
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        long startTime = System.nanoTime();
+        boolean success = subject.writeTrack(List.of(track), outputStream);
+        long durationMillis = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+
+        // then
+        Log.i(TAG, trackFileFormat.name() + ": exported " + NUM_TRACKPOINTS + " TrackPoints (" + outputStream.size() / 1024 + "KiB) in " + durationMillis + "ms: " + NUM_TRACKPOINTS * 1000L / durationMillis + " TrackPoints/s");
+        assertTrue(success);
+        assertTrue(outputStream.size() > 0);
+    }
+
+    @LargeTest
+    @Test
+    public void gpx() {
+        benchmark(TrackFileFormat.GPX);
+    }
+
+    @LargeTest
+    @Test
+    public void kml() {
+        benchmark(TrackFileFormat.KML_WITH_TRACKDETAIL_AND_SENSORDATA);
+    }
+
+    @LargeTest
+    @Test
+    public void csv() {
+        benchmark(TrackFileFormat.CSV);
+    }
+
+    @LargeTest
+    @Test
+    public void binary() {
+        benchmark(TrackFileFormat.BINARY);
+    }
+}
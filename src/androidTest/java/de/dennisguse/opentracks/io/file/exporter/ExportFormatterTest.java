@@ -0,0 +1,120 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.NumberFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.Random;
+
+import de.dennisguse.opentracks.util.StringUtils;
+
+@RunWith(AndroidJUnit4.class)
+public class ExportFormatterTest {
+
+    private static final double[] EDGE_CASES = {
+            0, -0.0, 0.04, -0.04, 0.05, -0.05, 0.15, 0.25, 0.35, 1.005, 2.5, 3.5, -2.5, 0.000_000_5, 0.000_001_5,
+            9.95, 99.95, 999.94, 999.96, 1000, -1000, 1234.5678, 12_345.678, 123_456_789.123, 1E12, -1E12,
+            Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            (float) 72.3, (float) 0.1, 89.999_999_95, -179.999_999_4, 180, 37.000_1, -57.000_1
+    };
+
+    private static NumberFormat createFormat(int maxFractionDigits, int maxIntegerDigits, boolean groupingUsed) {
+        NumberFormat format = NumberFormat.getInstance(Locale.US);
+        format.setMaximumFractionDigits(maxFractionDigits);
+        if (maxIntegerDigits > 0) {
+            format.setMaximumIntegerDigits(maxIntegerDigits);
+        }
+        format.setGroupingUsed(groupingUsed);
+        return format;
+    }
+
+    private static void assertSameAsNumberFormat(ExportFormatter formatter, NumberFormat format, double value) {
+        StringBuilder out = new StringBuilder();
+        formatter.appendNumber(out, format, value);
+        assertEquals("value: " + value, format.format(value), out.toString());
+    }
+
+    @Test
+    public void appendNumber_sameAsNumberFormat() {
+        // given
+        NumberFormat[] formats = {
+                createFormat(0, 0, false),
+                createFormat(1, 0, false),
+                createFormat(2, 0, false),
+                createFormat(6, 3, false),
+                createFormat(3, 0, true), // NumberFormat's default
+                createFormat(9, 0, false)
+        };
+        ExportFormatter subject = new ExportFormatter();
+        Random random = new Random(42);
+
+        for (NumberFormat format : formats) {
+            for (double value : EDGE_CASES) {
+                // when / then
+                assertSameAsNumberFormat(subject, format, value);
+            }
+            for (int i = 0; i < 100_000; i++) {
+                double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(8));
+                // when / then
+                assertSameAsNumberFormat(subject, format, value);
+                assertSameAsNumberFormat(subject, format, (float) value);
+            }
+        }
+    }
+
+    @Test
+    public void appendTime_sameAsStringUtils() {
+        // given
+        ZoneOffset[] zoneOffsets = {ZoneOffset.UTC, ZoneOffset.ofHours(2), ZoneOffset.ofHoursMinutes(-9, -30), ZoneOffset.ofHoursMinutesSeconds(5, 30, 15)};
+        int[] nanos = {0, 1, 500_000_000, 123_000_000, 120_000_000, 123_456_000, 123_456_789, 999_999_999};
+        ExportFormatter subject = new ExportFormatter();
+
+        for (ZoneOffset zoneOffset : zoneOffsets) {
+            // Consecutive seconds, so the cached minute is used and replaced.
+            for (long second = 1_600_000_000L - 3600; second < 1_600_000_000L + 3600; second += 7) {
+                Instant time = Instant.ofEpochSecond(second, nanos[(int) (second % nanos.length)]);
+                assertSameAsStringUtils(subject, time, zoneOffset);
+            }
+
+            Instant[] edgeCases = {Instant.EPOCH, Instant.ofEpochSecond(-1, 1), Instant.parse("0000-01-01T00:00:00Z"),
+                    Instant.parse("9999-12-31T23:59:59Z"), Instant.parse("+10000-01-01T00:00:00Z"), Instant.parse("-0001-12-31T23:59:59Z")};
+            for (Instant time : edgeCases) {
+                assertSameAsStringUtils(subject, time, zoneOffset);
+            }
+        }
+    }
+
+    @Test
+    public void appendTime_epochMillis_sameAsStringUtils() {
+        // given
+        long[] times = {0, 1, 999, -1, -999, 1_600_000_000_123L, Instant.parse("9999-12-31T23:59:59.999Z").toEpochMilli(), Instant.parse("-0001-12-31T23:59:59.500Z").toEpochMilli()};
+        ExportFormatter subject = new ExportFormatter();
+
+        for (ZoneOffset zoneOffset : new ZoneOffset[]{ZoneOffset.UTC, ZoneOffset.ofHoursMinutes(-9, -30)}) {
+            for (long time : times) {
+                // when
+                StringBuilder out = new StringBuilder();
+                subject.appendTime(out, time, zoneOffset);
+
+                // then
+                assertEquals(StringUtils.formatDateTimeIso8601(Instant.ofEpochMilli(time), zoneOffset), out.toString());
+            }
+        }
+    }
+
+    private static void assertSameAsStringUtils(ExportFormatter formatter, Instant time, ZoneOffset zoneOffset) {
+        // when
+        StringBuilder out = new StringBuilder();
+        formatter.appendTime(out, time, zoneOffset);
+
+        // then
+        assertEquals(StringUtils.formatDateTimeIso8601(time, zoneOffset), out.toString());
+    }
+}
@@ -0,0 +1,167 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@RunWith(AndroidJUnit4.class)
+public class PipelinedOutputStreamTest {
+
+    private final ExecutorService writeExecutor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        writeExecutor.shutdownNow();
+    }
+
+    private static byte[] createData(int seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void write_inOrder_sharedExecutor() throws Exception {
+        // given
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        List<byte[]> expected = new ArrayList<>();
+        List<Future<byte[]>> actual = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            byte[] data = createData(i, 1024 * 1024 + i);
+            expected.add(data);
+
+            // when
+            actual.add(producers.submit(() -> {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                try (PipelinedOutputStream subject = new PipelinedOutputStream(outputStream, writeExecutor)) {
+                    // Mixed write sizes incl. single bytes
+                    int offset = 0;
+                    while (offset < data.length) {
+                        int length = Math.min(data.length - offset, 1 + offset % 10_000);
+                        if (length == 1) {
+                            subject.write(data[offset]);
+                        } else {
+                            subject.write(data, offset, length);
+                        }
+                        offset += length;
+                    }
+                }
+                return outputStream.toByteArray();
+            }));
+        }
+
+        // then
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i).get());
+        }
+        producers.shutdown();
+    }
+
+    @Test
+    public void close_closesOutputStream() throws IOException {
+        // given
+        boolean[] closed = {false};
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        PipelinedOutputStream subject = new PipelinedOutputStream(outputStream, writeExecutor);
+        subject.write(createData(0, 10));
+
+        // when
+        subject.close();
+
+        // then
+        assertTrue(closed[0]);
+        assertEquals(10, outputStream.size());
+    }
+
+    @Test
+    public void writeError_isRethrown() {
+        // given
+        OutputStream failingOutputStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        PipelinedOutputStream subject = new PipelinedOutputStream(failingOutputStream, writeExecutor);
+
+        // when / then
+        IOException exception = assertThrows(IOException.class, () -> {
+            subject.write(createData(0, 1024 * 1024));
+            subject.close();
+        });
+        assertEquals("disk full", exception.getMessage());
+    }
+
+    @Test
+    public void writeError_chunksAreReused_closesOutputStream() {
+        // given
+        boolean[] closed = {false};
+        OutputStream failingOutputStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        PipelinedOutputStream subject = new PipelinedOutputStream(failingOutputStream, writeExecutor);
+
+        // when / then: more data than the pending chunks; must not block
+        assertThrows(IOException.class, () -> {
+            for (int i = 0; i < 16; i++) {
+                subject.write(createData(i, 64 * 1024));
+            }
+        });
+        assertThrows(IOException.class, subject::close);
+        assertTrue(closed[0]);
+    }
+
+    @Test
+    public void rejectedWrite_isRethrown_closesOutputStream() {
+        // given
+        boolean[] closed = {false};
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        ExecutorService shutdownExecutor = Executors.newSingleThreadExecutor();
+        shutdownExecutor.shutdown();
+        PipelinedOutputStream subject = new PipelinedOutputStream(outputStream, shutdownExecutor);
+
+        // when / then
+        assertThrows(IOException.class, () -> {
+            for (int i = 0; i < 16; i++) {
+                subject.write(createData(i, 64 * 1024));
+            }
+        });
+        assertThrows(IOException.class, subject::close);
+        assertTrue(closed[0]);
+    }
+}
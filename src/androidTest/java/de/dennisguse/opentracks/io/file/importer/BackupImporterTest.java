@@ -0,0 +1,113 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipInputStream;
+
+import de.dennisguse.opentracks.content.data.TestDataUtil;
+import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.models.Distance;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.io.file.TrackFileFormat;
+import de.dennisguse.opentracks.io.file.exporter.BackupExporter;
+
+/**
+ * Writes a backup with {@link BackupExporter} and restores it with {@link BackupImporter}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BackupImporterTest {
+
+    private static final String TAG = BackupImporterTest.class.getSimpleName();
+
+    private static final int NUM_TRACKS = 5;
+    private static final int NUM_TRACKPOINTS = 100;
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private final ContentProviderUtils contentProviderUtils = new ContentProviderUtils(context);
+
+    private final List<Track.Id> trackIds = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        trackIds.forEach(trackId -> contentProviderUtils.deleteTrack(context, trackId));
+    }
+
+    private void backupAndRestore(TrackFileFormat trackFileFormat, int numTrackPoints) throws IOException, InterruptedException {
+        // given
+        long firstId = System.currentTimeMillis();
+        for (int i = 0; i < NUM_TRACKS; i++) {
+            Track.Id trackId = new Track.Id(firstId + i);
+            TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, numTrackPoints);
+            trackIds.add(trackId);
+        }
+
+        // when
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        BackupExporter.Result result = new BackupExporter(context, contentProviderUtils, trackFileFormat).writeBackup(trackIds, outputStream);
+
+        // then
+        Log.i(TAG, trackFileFormat.name() + ": " + String.format(Locale.US, "%.1f tracks/s, %.2f MB/s", result.tracksPerSecond(), result.megabytesPerSecond()));
+        assertEquals(NUM_TRACKS, result.numTracks());
+        assertEquals(outputStream.size(), result.numBytes());
+
+        int numEntries = 0;
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            while (zipInputStream.getNextEntry() != null) {
+                numEntries++;
+            }
+        }
+        assertEquals(NUM_TRACKS, numEntries);
+
+        // when
+        trackIds.forEach(trackId -> contentProviderUtils.deleteTrack(context, trackId));
+        trackIds.clear();
+
+        BackupImporter subject = new BackupImporter(context, () -> new TrackImporter(context, contentProviderUtils, Distance.of(200), false));
+        List<Track.Id> importedTrackIds = subject.importFile(new ByteArrayInputStream(outputStream.toByteArray()));
+        trackIds.addAll(importedTrackIds);
+
+        // then
+        assertEquals(NUM_TRACKS, importedTrackIds.size());
+        for (Track.Id trackId : importedTrackIds) {
+            assertNotNull(contentProviderUtils.getTrack(trackId));
+            try (Cursor cursor = contentProviderUtils.getTrackPointCursor(trackId, null)) {
+                assertTrue(cursor.getCount() >= numTrackPoints);
+            }
+        }
+    }
+
+    @Test
+    public void gpx() throws IOException, InterruptedException {
+        backupAndRestore(TrackFileFormat.GPX, NUM_TRACKPOINTS);
+    }
+
+    @Test
+    public void gpx_tracksLargerThanChunks() throws IOException, InterruptedException {
+        // Each track is streamed into its ZIP entry in multiple chunks.
+        backupAndRestore(TrackFileFormat.GPX, 5000);
+    }
+
+    @Test
+    public void kmz() throws IOException, InterruptedException {
+        backupAndRestore(TrackFileFormat.KMZ_WITH_TRACKDETAIL_AND_SENSORDATA_AND_PICTURES, NUM_TRACKPOINTS);
+    }
+}
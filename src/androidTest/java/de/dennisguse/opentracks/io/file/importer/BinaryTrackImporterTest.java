@@ -0,0 +1,268 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.dennisguse.opentracks.content.data.TestDataUtil;
+import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.models.ActivityType;
+import de.dennisguse.opentracks.data.models.Distance;
+import de.dennisguse.opentracks.data.models.Marker;
+import de.dennisguse.opentracks.data.models.Speed;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+import de.dennisguse.opentracks.data.tables.TrackPointsColumns;
+import de.dennisguse.opentracks.io.file.TrackFileFormat;
+
+@RunWith(AndroidJUnit4.class)
+public class BinaryTrackImporterTest {
+
+    private static final String TAG = BinaryTrackImporterTest.class.getSimpleName();
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private final ContentProviderUtils contentProviderUtils = new ContentProviderUtils(context);
+
+    private final List<Track.Id> trackIds = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        contentProviderUtils.deleteTracks(context, trackIds);
+    }
+
+    private Track insertTestingTrack() {
+        Track.Id trackId = new Track.Id(System.currentTimeMillis());
+        TestDataUtil.TrackData trackData = TestDataUtil.createTestingTrack(trackId);
+
+        Track track = trackData.track();
+        track.setDescription("the description");
+        track.setActivityType(ActivityType.MOUNTAIN_BIKING);
+        track.setActivityTypeLocalized("the activity type");
+
+        for (TrackPoint trackPoint : trackData.trackPoints()) {
+            if (trackPoint.hasLocation()) {
+                long seconds = trackPoint.getTime().getEpochSecond();
+                // Otherwise the TrackImporter derives them.
+                trackPoint.setBearing(seconds * 7.5f);
+                trackPoint.setSensorDistance(Distance.of(seconds / 3.0));
+
+                // Stored as double: not representable as float.
+                trackPoint.setAltitude(100 + seconds / 7.0);
+                trackPoint.setSpeed(Speed.of(seconds / 11.0));
+                trackPoint.setHorizontalAccuracy(Distance.of(seconds / 13.0));
+                trackPoint.setVerticalAccuracy(Distance.of(seconds / 17.0));
+            }
+        }
+
+        TestDataUtil.insertTrackWithLocations(contentProviderUtils, track, trackData.trackPoints());
+        contentProviderUtils.bulkInsertMarkers(trackData.markers(), trackId);
+        trackIds.add(trackId);
+        return contentProviderUtils.getTrack(trackId);
+    }
+
+    private byte[] export(Track track, TrackFileFormat trackFileFormat) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        assertTrue(trackFileFormat.createTrackExporter(context, contentProviderUtils).writeTrack(List.of(track), outputStream));
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void roundTrip_lossless() throws IOException {
+        // given
+        Track track = insertTestingTrack();
+        byte[] data = export(track, TrackFileFormat.BINARY);
+
+        // when
+        BinaryTrackImporter subject = new BinaryTrackImporter(context, new TrackImporter(context, contentProviderUtils, Distance.of(200), false));
+        List<Track.Id> importedTrackIds = subject.importFile(new ByteArrayInputStream(data));
+        trackIds.addAll(importedTrackIds);
+
+        // then
+        assertEquals(1, importedTrackIds.size());
+        Track importedTrack = contentProviderUtils.getTrack(importedTrackIds.get(0));
+        assertEquals(track.getName(), importedTrack.getName());
+        assertEquals(track.getDescription(), importedTrack.getDescription());
+        assertEquals(track.getActivityType(), importedTrack.getActivityType());
+        assertEquals(track.getActivityTypeLocalized(), importedTrack.getActivityTypeLocalized());
+        assertEquals(track.getZoneOffset(), importedTrack.getZoneOffset());
+
+        assertTrackPointsEqual(track.getId(), importedTrack.getId());
+
+        List<Marker> expectedMarkers = contentProviderUtils.getMarkers(track.getId());
+        List<Marker> actualMarkers = contentProviderUtils.getMarkers(importedTrack.getId());
+        assertEquals(expectedMarkers.size(), actualMarkers.size());
+        for (int i = 0; i < expectedMarkers.size(); i++) {
+            Marker expected = expectedMarkers.get(i);
+            Marker actual = actualMarkers.get(i);
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getCategory(), actual.getCategory());
+            assertEquals(expected.getTime(), actual.getTime());
+            assertEquals(expected.getLatitude(), actual.getLatitude(), 0);
+            assertEquals(expected.getLongitude(), actual.getLongitude(), 0);
+            assertEquals(expected.getAltitude().toM(), actual.getAltitude().toM(), 0);
+            assertEquals(expected.getAccuracy().toM(), actual.getAccuracy().toM(), 0);
+        }
+    }
+
+    /**
+     * Compares the stored values (incl. absent values) at the precision of the database.
+     */
+    private void assertTrackPointsEqual(Track.Id expectedTrackId, Track.Id actualTrackId) {
+        try (Cursor expected = contentProviderUtils.getTrackPointCursor(expectedTrackId, null);
+             Cursor actual = contentProviderUtils.getTrackPointCursor(actualTrackId, null)) {
+            assertEquals(expected.getCount(), actual.getCount());
+            while (expected.moveToNext()) {
+                assertTrue(actual.moveToNext());
+
+                for (String column : expected.getColumnNames()) {
+                    if (column.equals(TrackPointsColumns._ID) || column.equals(TrackPointsColumns.TRACKID)) {
+                        continue;
+                    }
+                    int expectedIndex = expected.getColumnIndexOrThrow(column);
+                    int actualIndex = actual.getColumnIndexOrThrow(column);
+                    assertEquals(column, expected.getType(expectedIndex), actual.getType(actualIndex));
+                    switch (expected.getType(expectedIndex)) {
+                        case Cursor.FIELD_TYPE_INTEGER -> assertEquals(column, expected.getLong(expectedIndex), actual.getLong(actualIndex));
+                        case Cursor.FIELD_TYPE_FLOAT -> assertEquals(column, expected.getDouble(expectedIndex), actual.getDouble(actualIndex), 0);
+                        default -> {
+                        }
+                    }
+                }
+            }
+            assertFalse(actual.moveToNext());
+        }
+    }
+
+    @Test
+    public void truncatedFile_isParserError() {
+        // given
+        Track track = insertTestingTrack();
+        byte[] data = export(track, TrackFileFormat.BINARY);
+        byte[] truncated = Arrays.copyOf(data, data.length / 2);
+        int numTracks = contentProviderUtils.getTracks().size();
+
+        BinaryTrackImporter subject = new BinaryTrackImporter(context, new TrackImporter(context, contentProviderUtils, Distance.of(200), false));
+
+        // when / then
+        assertThrows(ImportParserException.class, () -> subject.importFile(new ByteArrayInputStream(truncated)));
+        assertEquals(numTracks, contentProviderUtils.getTracks().size());
+    }
+
+    @Test
+    public void wrongMagic_isParserError() {
+        // given
+        byte[] data = "<?xml version=\"1.0\"?>".getBytes();
+
+        BinaryTrackImporter subject = new BinaryTrackImporter(context, new TrackImporter(context, contentProviderUtils, Distance.of(200), false));
+
+        // when / then
+        assertThrows(ImportParserException.class, () -> subject.importFile(new ByteArrayInputStream(data)));
+    }
+
+    /**
+     * Only counts the parsed TrackPoints.
+     */
+    private static class CountingTrackImporter extends TrackImporter {
+
+        private int numTrackPoints;
+
+        CountingTrackImporter(Context context) {
+            super(context, new ContentProviderUtils(context), Distance.of(200), false);
+        }
+
+        @Override
+        void newTrack() {
+        }
+
+        @Override
+        void addTrackPoint(TrackPoint trackPoint) {
+            numTrackPoints++;
+        }
+
+        @Override
+        void addMarkers(List<Marker> markers) {
+        }
+
+        @Override
+        void setTrack(Context context, String name, String uuid, String description, String activityTypeLocalized, String activityTypeId, ZoneOffset zoneOffset) {
+        }
+
+        @Override
+        void finish() {
+        }
+    }
+
+    private interface Parser {
+        void parse(TrackImporter trackImporter, byte[] data) throws IOException;
+    }
+
+    private long benchmarkParse(Parser parser, byte[] data, int numTrackPoints) throws IOException {
+        // warm up
+        parser.parse(new CountingTrackImporter(context), data);
+
+        CountingTrackImporter trackImporter = new CountingTrackImporter(context);
+        long startTime = System.nanoTime();
+        parser.parse(trackImporter, data);
+        long durationMillis = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+
+        assertEquals(numTrackPoints, trackImporter.numTrackPoints);
+        return durationMillis;
+    }
+
+    private long benchmarkExport(Track track, TrackFileFormat trackFileFormat) {
+        // warm up
+        export(track, trackFileFormat);
+
+        long startTime = System.nanoTime();
+        export(track, trackFileFormat);
+        return Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    @LargeTest
+    @Test
+    public void sizeAndSpeed_comparedToGpx() throws IOException {
+        // given
+        int numTrackPoints = 20000;
+        Track.Id trackId = new Track.Id(System.currentTimeMillis());
+        trackIds.add(trackId);
+        Track track = TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, numTrackPoints);
+
+        // when
+        byte[] binary = export(track, TrackFileFormat.BINARY);
+        byte[] gpx = export(track, TrackFileFormat.GPX);
+
+        long binaryExportMillis = benchmarkExport(track, TrackFileFormat.BINARY);
+        long gpxExportMillis = benchmarkExport(track, TrackFileFormat.GPX);
+
+        long binaryParseMillis = benchmarkParse((trackImporter, data) -> new BinaryTrackImporter(context, trackImporter).importFile(new ByteArrayInputStream(data)), binary, numTrackPoints);
+        long gpxParseMillis = benchmarkParse((trackImporter, data) -> new XMLImporter(new GpxTrackImporter(context, trackImporter)).importFile(new ByteArrayInputStream(data)), gpx, numTrackPoints);
+
+        // then
+        Log.i(TAG, "Size: binary " + binary.length / 1024 + "KiB, GPX " + gpx.length / 1024 + "KiB");
+        Log.i(TAG, "Export: binary " + numTrackPoints * 1000L / binaryExportMillis + " TrackPoints/s, GPX " + numTrackPoints * 1000L / gpxExportMillis + " TrackPoints/s");
+        Log.i(TAG, "Parse: binary " + numTrackPoints * 1000L / binaryParseMillis + " TrackPoints/s, GPX " + numTrackPoints * 1000L / gpxParseMillis + " TrackPoints/s");
+        assertTrue(binary.length * 5 < gpx.length);
+    }
+}
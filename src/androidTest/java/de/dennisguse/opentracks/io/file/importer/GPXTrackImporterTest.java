@@ -2,8 +2,11 @@ package de.dennisguse.opentracks.io.file.importer;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import android.content.Context;
+import android.database.Cursor;
 
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.filters.LargeTest;
@@ -16,15 +19,26 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import de.dennisguse.opentracks.content.data.TestDataUtil;
 import de.dennisguse.opentracks.data.ContentProviderUtils;
@@ -33,6 +47,7 @@ import de.dennisguse.opentracks.data.models.Distance;
 import de.dennisguse.opentracks.data.models.Speed;
 import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.data.models.TrackPoint;
+import de.dennisguse.opentracks.data.tables.TrackPointsColumns;
 import de.dennisguse.opentracks.io.file.TrackFileFormat;
 import de.dennisguse.opentracks.io.file.exporter.TrackExporter;
 import de.dennisguse.opentracks.stats.TrackStatistics;
@@ -244,4 +259,276 @@ public class GPXTrackImporterTest {
 //
 //        assertEquals(expected, outputStream.toString()); //TODO inputStream.readAllBytes() ?
     }
-}
\ No newline at end of file
+
+    private static InputStream createGpx(List<Integer> seconds) {
+        return createGpx(seconds, null);
+    }
+
+    private static InputStream createGpx(List<Integer> seconds, String uuid) {
+        return createGpx(seconds, uuid, second -> 14.0);
+    }
+
+    private static InputStream createGpx(List<Integer> seconds, String uuid, IntFunction<Double> longitude) {
+        StringBuilder gpx = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<gpx version=\"1.1\" creator=\"test\" xmlns=\"http://www.topografix.com/GPX/1/1\" xmlns:opentracks=\"http://opentracksapp.com/xmlschemas/v1\">\n<trk>\n<name>generated</name>\n");
+        if (uuid != null) {
+            gpx.append("<extensions><opentracks:trackid>").append(uuid).append("</opentracks:trackid></extensions>\n");
+        }
+        gpx.append("<trkseg>\n");
+        for (int second : seconds) {
+            gpx.append("<trkpt lat=\"").append(3 + second / 100000.0).append("\" lon=\"").append(longitude.apply(second)).append("\"><time>").append(Instant.ofEpochSecond(1600000000L + second)).append("</time></trkpt>\n");
+        }
+        gpx.append("</trkseg>\n</trk>\n</gpx>\n");
+        return new ByteArrayInputStream(gpx.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @LargeTest
+    @Test
+    public void gpx_streamed_inBatches() throws IOException {
+        // given
+        int numTrackPoints = TrackImporter.BATCH_SIZE * 2 + 10;
+        int numTracks = contentProviderUtils.getTracks().size();
+        XMLImporter importer = new XMLImporter(new GpxTrackImporter(context, trackImporter));
+
+        // when
+        importTrackId = importer.importFile(createGpx(IntStream.range(0, numTrackPoints).boxed().collect(Collectors.toList()))).get(0);
+
+        // then
+        List<TrackPoint> importedTrackPoints = TestDataUtil.getTrackPoints(contentProviderUtils, importTrackId);
+        assertEquals(numTrackPoints, importedTrackPoints.size());
+        assertEquals(TrackPoint.Type.SEGMENT_START_AUTOMATIC, importedTrackPoints.get(0).getType());
+        assertTrue(importedTrackPoints.get(1).hasSpeed());
+
+        assertEquals(Duration.ofSeconds(numTrackPoints - 1), contentProviderUtils.getTrack(importTrackId).getTrackStatistics().getTotalTime());
+        assertEquals(numTracks + 1, contentProviderUtils.getTracks().size());
+    }
+
+    @LargeTest
+    @Test
+    public void gpx_unordered_isSorted() throws IOException {
+        // given
+        int numTrackPoints = TrackImporter.BATCH_SIZE + 10;
+        List<Integer> ordered = IntStream.range(0, numTrackPoints).boxed().collect(Collectors.toList());
+        List<Integer> reversed = new ArrayList<>(ordered);
+        Collections.reverse(reversed);
+
+        Track.Id expectedTrackId = new XMLImporter(new GpxTrackImporter(context, new TrackImporter(context, contentProviderUtils, Distance.of(200), false)))
+                .importFile(createGpx(ordered)).get(0);
+        List<TrackPoint> expected = TestDataUtil.getTrackPoints(contentProviderUtils, expectedTrackId);
+        TrackStatistics expectedStatistics = contentProviderUtils.getTrack(expectedTrackId).getTrackStatistics();
+        contentProviderUtils.deleteTrack(context, expectedTrackId);
+
+        int numTracks = contentProviderUtils.getTracks().size();
+        XMLImporter importer = new XMLImporter(new GpxTrackImporter(context, trackImporter));
+
+        // when
+        importTrackId = importer.importFile(createGpx(reversed)).get(0);
+
+        // then
+        List<TrackPoint> importedTrackPoints = TestDataUtil.getTrackPoints(contentProviderUtils, importTrackId);
+        assertEquals(numTrackPoints, importedTrackPoints.size());
+        for (int i = 0; i < numTrackPoints; i++) {
+            assertEquals(expected.get(i).getTime(), importedTrackPoints.get(i).getTime());
+            assertEquals(expected.get(i).hasSpeed(), importedTrackPoints.get(i).hasSpeed());
+        }
+        // The first TrackPoint (last in the file) started the segment.
+        assertEquals(TrackPoint.Type.SEGMENT_START_AUTOMATIC, importedTrackPoints.get(numTrackPoints - 1).getType());
+
+        TrackStatistics trackStatistics = contentProviderUtils.getTrack(importTrackId).getTrackStatistics();
+        assertEquals(expectedStatistics.getTotalTime(), trackStatistics.getTotalTime());
+        assertEquals(expectedStatistics.getTotalDistance().toM(), trackStatistics.getTotalDistance().toM(), 0.01);
+
+        // Placeholder of the unordered TrackPoints was removed.
+        assertEquals(numTracks + 1, contentProviderUtils.getTracks().size());
+    }
+
+    @LargeTest
+    @Test
+    public void gpx_unordered_recomputesDerivedValues() throws IOException {
+        // given: one TrackPoint (off the line) arrives after all others, so the TrackPoints before were already adjusted
+        int numTrackPoints = TrackImporter.BATCH_SIZE + 10;
+        int late = TrackImporter.BATCH_SIZE / 2;
+        IntFunction<Double> longitude = second -> second == late ? 14.001 : 14.0;
+        List<Integer> ordered = IntStream.range(0, numTrackPoints).boxed().collect(Collectors.toList());
+        List<Integer> unordered = new ArrayList<>(ordered);
+        unordered.remove(Integer.valueOf(late));
+        unordered.add(late);
+
+        Track.Id expectedTrackId = new XMLImporter(new GpxTrackImporter(context, new TrackImporter(context, contentProviderUtils, Distance.of(200), false)))
+                .importFile(createGpx(ordered, null, longitude)).get(0);
+        List<TrackPoint> expected = TestDataUtil.getTrackPoints(contentProviderUtils, expectedTrackId);
+        contentProviderUtils.deleteTrack(context, expectedTrackId);
+
+        XMLImporter importer = new XMLImporter(new GpxTrackImporter(context, trackImporter));
+
+        // when
+        importTrackId = importer.importFile(createGpx(unordered, null, longitude)).get(0);
+
+        // then
+        List<TrackPoint> importedTrackPoints = TestDataUtil.getTrackPoints(contentProviderUtils, importTrackId);
+        assertEquals(numTrackPoints, importedTrackPoints.size());
+        for (int i = 0; i < numTrackPoints; i++) {
+            TrackPoint expectedTrackPoint = expected.get(i);
+            TrackPoint importedTrackPoint = importedTrackPoints.get(i);
+            assertEquals(expectedTrackPoint.getTime(), importedTrackPoint.getTime());
+            assertEquals(expectedTrackPoint.getType(), importedTrackPoint.getType());
+            assertEquals(expectedTrackPoint.hasSpeed(), importedTrackPoint.hasSpeed());
+            if (expectedTrackPoint.hasSpeed()) {
+                assertEquals(expectedTrackPoint.getSpeed().toMPS(), importedTrackPoint.getSpeed().toMPS(), 0.001);
+            }
+            assertEquals(expectedTrackPoint.hasBearing(), importedTrackPoint.hasBearing());
+            if (expectedTrackPoint.hasBearing()) {
+                assertEquals(expectedTrackPoint.getBearing(), importedTrackPoint.getBearing(), 0.001);
+            }
+        }
+    }
+
+    @LargeTest
+    @Test
+    public void gpx_failure_deletesPlaceholder() throws IOException {
+        // given: the file fails after the first batch was written
+        InputStream gpx = createGpx(IntStream.range(0, TrackImporter.BATCH_SIZE * 2).boxed().collect(Collectors.toList()));
+        int failAfter = gpx.available() * 3 / 4;
+        InputStream failingInputStream = new FilterInputStream(gpx) {
+            private int position = 0;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (position >= failAfter) {
+                    throw new IOException("Connection lost");
+                }
+                int read = super.read(b, off, Math.min(len, failAfter - position));
+                position += read;
+                return read;
+            }
+        };
+        int numTrackPointsBefore = countTrackPoints();
+        XMLImporter importer = new XMLImporter(new GpxTrackImporter(context, trackImporter));
+
+        // when
+        try {
+            importer.importFile(failingInputStream);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+
+        // then
+        assertEquals(numTrackPointsBefore, countTrackPoints());
+    }
+
+    private int countTrackPoints() {
+        try (Cursor cursor = context.getContentResolver().query(TrackPointsColumns.CONTENT_URI_BY_ID, new String[]{TrackPointsColumns._ID}, null, null, null)) {
+            return cursor.getCount();
+        }
+    }
+
+    @LargeTest
+    @Test
+    public void gpx_concurrent_sharedDatabaseWriter() throws Exception {
+        // given
+        int numFiles = 4;
+        int numTrackPoints = TrackImporter.BATCH_SIZE + 10;
+        String duplicateUuid = UUID.randomUUID().toString();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numFiles + 1);
+        List<Track.Id> trackIds = new ArrayList<>();
+        try (ImportDatabaseWriter databaseWriter = new ImportDatabaseWriter()) {
+            List<Callable<List<Track.Id>>> imports = new ArrayList<>();
+            for (int i = 0; i < numFiles; i++) {
+                List<Integer> seconds = IntStream.range(i * numTrackPoints, (i + 1) * numTrackPoints).boxed().collect(Collectors.toList());
+                imports.add(() -> new XMLImporter(new GpxTrackImporter(context, new TrackImporter(context, contentProviderUtils, Distance.of(200), true, databaseWriter)))
+                        .importFile(createGpx(seconds)));
+            }
+            // Same track twice: only one may be imported.
+            List<Integer> seconds = IntStream.range(-numTrackPoints, 0).boxed().collect(Collectors.toList());
+            for (int i = 0; i < 2; i++) {
+                imports.add(() -> {
+                    try {
+                        return new XMLImporter(new GpxTrackImporter(context, new TrackImporter(context, contentProviderUtils, Distance.of(200), true, databaseWriter)))
+                                .importFile(createGpx(seconds, duplicateUuid));
+                    } catch (ImportAlreadyExistsException e) {
+                        return Collections.emptyList();
+                    }
+                });
+            }
+
+            // when
+            for (Future<List<Track.Id>> future : executor.invokeAll(imports)) {
+                trackIds.addAll(future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // then
+        try {
+            assertEquals(numFiles + 1, trackIds.size());
+            for (Track.Id trackId : trackIds) {
+                assertEquals(numTrackPoints, TestDataUtil.getTrackPoints(contentProviderUtils, trackId).size());
+            }
+            assertNotNull(contentProviderUtils.getTrack(UUID.fromString(duplicateUuid)));
+        } finally {
+            contentProviderUtils.deleteTracks(context, trackIds);
+        }
+    }
+
+    @LargeTest
+    @Test
+    public void gpx_preventReimport_byFingerprint() throws IOException {
+        // given
+        List<Integer> seconds = IntStream.range(0, TrackImporter.BATCH_SIZE + 10).boxed().collect(Collectors.toList());
+        importTrackId = new XMLImporter(new GpxTrackImporter(context, trackImporter)).importFile(createGpx(seconds, UUID.randomUUID().toString())).get(0);
+        int numTracks = contentProviderUtils.getTracks().size();
+
+        // when: same content, but different UUID
+        XMLImporter importer = new XMLImporter(new GpxTrackImporter(context, new TrackImporter(context, contentProviderUtils, Distance.of(200), true)));
+        try {
+            importer.importFile(createGpx(seconds, UUID.randomUUID().toString()));
+            fail("Duplicate not detected");
+        } catch (ImportAlreadyExistsException e) {
+            // then
+            assertEquals(numTracks, contentProviderUtils.getTracks().size());
+        }
+    }
+
+    @LargeTest
+    @Test
+    public void gpx_preventReimport_byFingerprint_independentOfOrder() throws IOException {
+        // given
+        List<Integer> seconds = IntStream.range(0, TrackImporter.BATCH_SIZE + 10).boxed().collect(Collectors.toList());
+        importTrackId = new XMLImporter(new GpxTrackImporter(context, trackImporter)).importFile(createGpx(seconds, UUID.randomUUID().toString())).get(0);
+        int numTracks = contentProviderUtils.getTracks().size();
+
+        // when: same content in reverse order and with a different UUID
+        List<Integer> reversed = new ArrayList<>(seconds);
+        Collections.reverse(reversed);
+        XMLImporter importer = new XMLImporter(new GpxTrackImporter(context, new TrackImporter(context, contentProviderUtils, Distance.of(200), true)));
+        try {
+            importer.importFile(createGpx(reversed, UUID.randomUUID().toString()));
+            fail("Duplicate not detected");
+        } catch (ImportAlreadyExistsException e) {
+            // then
+            assertEquals(numTracks, contentProviderUtils.getTracks().size());
+        }
+    }
+
+    @LargeTest
+    @Test
+    public void gpx_preventReimport_sameStartDifferentTrack_isImported() throws IOException {
+        // given
+        List<Integer> seconds = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        importTrackId = new XMLImporter(new GpxTrackImporter(context, trackImporter)).importFile(createGpx(seconds, UUID.randomUUID().toString())).get(0);
+
+        // when: same first TrackPoints (e.g., the same commute), but continued
+        List<Integer> continued = IntStream.range(0, 200).boxed().collect(Collectors.toList());
+        XMLImporter importer = new XMLImporter(new GpxTrackImporter(context, new TrackImporter(context, contentProviderUtils, Distance.of(200), true)));
+        Track.Id trackId = importer.importFile(createGpx(continued, UUID.randomUUID().toString())).get(0);
+
+        // then
+        try {
+            assertEquals(200, TestDataUtil.getTrackPoints(contentProviderUtils, trackId).size());
+        } finally {
+            contentProviderUtils.deleteTrack(context, trackId);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.models.Distance;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+
+/**
+ * Parse throughput of a multi-megabyte GPX file (without storing it).
+ */
+@RunWith(AndroidJUnit4.class)
+public class GpxImportBenchmarkTest {
+
+    private static final String TAG = GpxImportBenchmarkTest.class.getSimpleName();
+
+    private static final int NUM_TRACKPOINTS = 20000;
+    private static final int DESCRIPTION_LENGTH = 1024 * 1024;
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+
+    /**
+     * Only counts the parsed TrackPoints and keeps the track's description.
+     */
+    private static class CountingTrackImporter extends TrackImporter {
+
+        private int numTrackPoints;
+        private String description;
+
+        CountingTrackImporter(Context context) {
+            super(context, new ContentProviderUtils(context), Distance.of(200), false);
+        }
+
+        @Override
+        void newTrack() {
+        }
+
+        @Override
+        void addTrackPoint(TrackPoint trackPoint) {
+            numTrackPoints++;
+        }
+
+        @Override
+        void setTrack(Context context, String name, String uuid, String description, String activityTypeLocalized, String activityTypeId, ZoneOffset zoneOffset) {
+            this.description = description;
+        }
+
+        @Override
+        void finish() {
+        }
+    }
+
+    private static byte[] createGpx(String description) {
+        StringBuilder gpx = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<gpx version=\"1.1\" creator=\"test\" xmlns=\"http://www.topografix.com/GPX/1/1\" xmlns:gpxtpx=\"http://www.garmin.com/xmlschemas/TrackPointExtension/v2\" xmlns:opentracks=\"http://opentracksapp.com/xmlschemas/v1\">\n")
+                .append("<trk>\n<name><![CDATA[benchmark]]></name>\n<desc><![CDATA[").append(description).append("]]></desc>\n<trkseg>\n");
+        for (int i = 0; i < NUM_TRACKPOINTS; i++) {
+            gpx.append("<trkpt lat=\"").append(3 + i / 100000.0).append("\" lon=\"").append(14 + i / 100000.0).append("\">\n")
+                    .append("  <ele>").append(100 + i % 50).append(".5</ele>\n")
+                    .append("  <time>").append(Instant.ofEpochSecond(1600000000L + i)).append("</time>\n")
+                    .append("  <extensions><gpxtpx:TrackPointExtension>\n")
+                    .append("    <gpxtpx:speed>").append(i % 10).append(".25</gpxtpx:speed>\n")
+                    .append("    <gpxtpx:hr>").append(100 + i % 80).append("</gpxtpx:hr>\n")
+                    .append("    <gpxtpx:cad>").append(60 + i % 30).append("</gpxtpx:cad>\n")
+                    .append("  </gpxtpx:TrackPointExtension>\n")
+                    .append("  <opentracks:accuracy_horizontal>").append(i % 20).append(".0</opentracks:accuracy_horizontal>\n")
+                    .append("  </extensions>\n</trkpt>\n");
+        }
+        gpx.append("</trkseg>\n</trk>\n</gpx>\n");
+        return gpx.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @LargeTest
+    @Test
+    public void parse() throws IOException {
+        // given
+        char[] descriptionChars = new char[DESCRIPTION_LENGTH];
+        Arrays.fill(descriptionChars, 'a');
+        String description = new String(descriptionChars);
+        byte[] gpx = createGpx(description);
+
+        // warm up
+        new XMLImporter(new GpxTrackImporter(context, new CountingTrackImporter(context))).importFile(new ByteArrayInputStream(gpx));
+
+        CountingTrackImporter trackImporter = new CountingTrackImporter(context);
+        XMLImporter subject = new XMLImporter(new GpxTrackImporter(context, trackImporter));
+
+        // when
+        long startTime = System.nanoTime();
+        subject.importFile(new ByteArrayInputStream(gpx));
+        long durationMillis = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+
+        // then
+        Log.i(TAG, "Parsed " + gpx.length / 1024 + "KiB (" + NUM_TRACKPOINTS + " TrackPoints) in " + durationMillis + "ms: " + NUM_TRACKPOINTS * 1000L / durationMillis + " TrackPoints/s");
+        assertEquals(NUM_TRACKPOINTS, trackImporter.numTrackPoints);
+        assertEquals(description, trackImporter.description);
+    }
+}
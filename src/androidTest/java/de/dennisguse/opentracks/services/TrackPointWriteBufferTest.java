@@ -0,0 +1,83 @@
+package de.dennisguse.opentracks.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.Duration;
+
+import de.dennisguse.opentracks.content.data.TestDataUtil;
+import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+import de.dennisguse.opentracks.stats.TrackStatisticsUpdater;
+
+@RunWith(AndroidJUnit4.class)
+public class TrackPointWriteBufferTest {
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private ContentProviderUtils contentProviderUtils;
+
+    private Track.Id trackId;
+
+    @Before
+    public void setUp() {
+        contentProviderUtils = new ContentProviderUtils(context);
+        contentProviderUtils.deleteAllTracks(context);
+
+        trackId = contentProviderUtils.insertTrack(TestDataUtil.createTrack(new Track.Id(1)));
+    }
+
+    @Test
+    public void add_fullByCount() {
+        // given
+        TrackPointWriteBuffer buffer = new TrackPointWriteBuffer(contentProviderUtils, trackId, 3, Duration.ofHours(1));
+
+        // when / then
+        assertFalse(buffer.add(TestDataUtil.createTrackPoint(0)));
+        assertFalse(buffer.add(TestDataUtil.createTrackPoint(1)));
+        assertTrue(buffer.add(TestDataUtil.createTrackPoint(2)));
+    }
+
+    @Test
+    public void add_fullByTime() {
+        // given
+        TrackPointWriteBuffer buffer = new TrackPointWriteBuffer(contentProviderUtils, trackId, 100, Duration.ofSeconds(5));
+
+        // when / then
+        assertFalse(buffer.add(TestDataUtil.createTrackPoint(0)));
+        assertFalse(buffer.add(TestDataUtil.createTrackPoint(4)));
+        assertTrue(buffer.add(TestDataUtil.createTrackPoint(5)));
+    }
+
+    @Test
+    public void flush_writesTrackPointsAndStatistics() {
+        // given
+        TrackPointWriteBuffer buffer = new TrackPointWriteBuffer(contentProviderUtils, trackId, 100, Duration.ofHours(1));
+        TrackStatisticsUpdater trackStatisticsUpdater = new TrackStatisticsUpdater();
+        for (int i = 0; i < 10; i++) {
+            TrackPoint trackPoint = TestDataUtil.createTrackPoint(i);
+            trackStatisticsUpdater.addTrackPoint(trackPoint);
+            buffer.add(trackPoint);
+        }
+        assertEquals(0, TestDataUtil.getTrackPoints(contentProviderUtils, trackId).size());
+
+        // when
+        boolean flushed = buffer.flush(trackStatisticsUpdater.getTrackStatistics());
+
+        // then
+        assertTrue(flushed);
+        assertTrue(buffer.isFlushed());
+        assertEquals(10, TestDataUtil.getTrackPoints(contentProviderUtils, trackId).size());
+        assertEquals(trackStatisticsUpdater.getTrackStatistics(), contentProviderUtils.getTrack(trackId).getTrackStatistics());
+    }
+}
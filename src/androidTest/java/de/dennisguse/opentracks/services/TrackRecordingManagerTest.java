@@ -0,0 +1,154 @@
+package de.dennisguse.opentracks.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import de.dennisguse.opentracks.R;
+import de.dennisguse.opentracks.content.data.TestDataUtil;
+import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.models.Distance;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+import de.dennisguse.opentracks.services.handlers.GpsStatusValue;
+import de.dennisguse.opentracks.services.handlers.TrackPointCreator;
+import de.dennisguse.opentracks.settings.PreferencesUtils;
+
+@RunWith(AndroidJUnit4.class)
+public class TrackRecordingManagerTest {
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+
+    private FailingContentProviderUtils contentProviderUtils;
+    private TrackRecordingManager trackRecordingManager;
+
+    private static class FailingContentProviderUtils extends ContentProviderUtils {
+
+        private volatile boolean failWrites = false;
+        private volatile int failNextWrites = 0;
+
+        FailingContentProviderUtils(Context context) {
+            super(context);
+        }
+
+        @Override
+        public int bulkInsertTrackPoint(List<TrackPoint> trackPoints, Track.Id trackId) {
+            if (failNextWrites > 0) {
+                failNextWrites--;
+                throw new SQLiteException("database is locked (code 5 SQLITE_BUSY)");
+            }
+            if (failWrites) {
+                throw new SQLiteException("database is locked (code 5 SQLITE_BUSY)");
+            }
+            return super.bulkInsertTrackPoint(trackPoints, trackId);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        contentProviderUtils = new FailingContentProviderUtils(context);
+        contentProviderUtils.deleteAllTracks(context);
+
+        PreferencesUtils.setString(R.string.recording_distance_interval_key, R.string.recording_distance_interval_default);
+        PreferencesUtils.setString(R.string.max_recording_distance_key, R.string.max_recording_distance_default);
+        PreferencesUtils.setString(R.string.idle_duration_key, "0");
+
+        TrackPointCreator trackPointCreator = new TrackPointCreator(new TrackPointCreator.Callback() {
+            @Override
+            public boolean newTrackPoint(TrackPoint trackPoint, Distance thresholdHorizontalAccuracy) {
+                return false;
+            }
+
+            @Override
+            public void newGpsStatus(GpsStatusValue gpsStatusValue) {
+            }
+        });
+        trackPointCreator.setClock("1970-01-01T00:00:00Z");
+        trackRecordingManager = new TrackRecordingManager(context, contentProviderUtils, trackPointCreator, () -> {
+        }, new Handler(Looper.getMainLooper()), TrackPointWriteBuffer.DEFAULT_MAX_TRACKPOINTS);
+        trackRecordingManager.onSharedPreferenceChanged(null, null);
+    }
+
+    @After
+    public void tearDown() {
+        PreferencesUtils.setString(R.string.idle_duration_key, R.string.idle_duration_default);
+    }
+
+    private Track.Id recordTrackPoints(int numTrackPoints) {
+        Track.Id trackId = trackRecordingManager.startNewTrack();
+        for (int i = 1; i <= numTrackPoints; i++) {
+            assertTrue(trackRecordingManager.onNewTrackPoint(TestDataUtil.createTrackPoint(i)));
+        }
+        return trackId;
+    }
+
+    @Test
+    public void endCurrentTrack_flushes() {
+        // given
+        Track.Id trackId = recordTrackPoints(4);
+        assertFalse(trackRecordingManager.isFlushed());
+
+        // when
+        trackRecordingManager.endCurrentTrack();
+
+        // then
+        assertTrue(trackRecordingManager.isFlushed());
+        // segment start + 4 TrackPoints + segment end
+        assertEquals(6, TestDataUtil.getTrackPoints(contentProviderUtils, trackId).size());
+    }
+
+    @Test
+    public void endCurrentTrack_flushFailsTemporarily_writesBeforeReturning() {
+        // given
+        Track.Id trackId = recordTrackPoints(4);
+        contentProviderUtils.failNextWrites = 3;
+
+        // when
+        trackRecordingManager.endCurrentTrack();
+
+        // then
+        assertTrue(trackRecordingManager.isFlushed());
+        assertEquals(6, TestDataUtil.getTrackPoints(contentProviderUtils, trackId).size());
+    }
+
+    @Test
+    public void endCurrentTrack_flushFails_retriesAndKeepsTrackPoints() throws InterruptedException {
+        // given
+        Track.Id trackId = recordTrackPoints(4);
+        contentProviderUtils.failWrites = true;
+
+        // when
+        trackRecordingManager.endCurrentTrack();
+
+        // then
+        assertFalse(trackRecordingManager.isFlushed());
+        int storedBeforeRetry = TestDataUtil.getTrackPoints(contentProviderUtils, trackId).size();
+        assertTrue(storedBeforeRetry < 6);
+
+        // when
+        contentProviderUtils.failWrites = false;
+        long timeout = System.currentTimeMillis() + 10 * TrackRecordingManager.FLUSH_RETRY_DELAY.toMillis();
+        while (!trackRecordingManager.isFlushed() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+
+        // then
+        assertTrue(trackRecordingManager.isFlushed());
+        assertEquals(6, TestDataUtil.getTrackPoints(contentProviderUtils, trackId).size());
+    }
+}
@@ -0,0 +1,106 @@
+package de.dennisguse.opentracks.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.dennisguse.opentracks.content.data.TestDataUtil;
+import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.stats.TrackStatistics;
+import de.dennisguse.opentracks.stats.TrackStatisticsUpdater;
+
+@RunWith(AndroidJUnit4.class)
+public class TrackStatisticsRecomputerTest {
+
+    private final Context context = ApplicationProvider.getApplicationContext();
+    private ContentProviderUtils contentProviderUtils;
+
+    @Before
+    public void setUp() {
+        contentProviderUtils = new ContentProviderUtils(context);
+        contentProviderUtils.deleteAllTracks(context);
+    }
+
+    private List<Track.Id> createTracksWithStaleStatistics(int numTracks) {
+        List<Track.Id> trackIds = new ArrayList<>();
+        for (int i = 1; i <= numTracks; i++) {
+            Track.Id trackId = new Track.Id(i);
+            TestDataUtil.createTrackAndInsert(contentProviderUtils, trackId, 10 + i);
+            contentProviderUtils.updateTrackStatistics(trackId, new TrackStatistics());
+            trackIds.add(trackId);
+        }
+        return trackIds;
+    }
+
+    @Test
+    public void recompute() {
+        // given
+        List<Track.Id> trackIds = createTracksWithStaleStatistics(TrackStatisticsRecomputer.BATCH_SIZE + 5);
+        List<Integer> progress = new ArrayList<>();
+
+        // when
+        TrackStatisticsRecomputer.Result result = new TrackStatisticsRecomputer(contentProviderUtils, 3)
+                .recompute(contentProviderUtils.getTrackIds(), (done, total) -> progress.add(done));
+
+        // then
+        assertFalse(result.cancelled());
+        assertEquals(trackIds.size(), result.numTracks());
+        assertEquals(List.of(TrackStatisticsRecomputer.BATCH_SIZE, trackIds.size()), progress);
+
+        for (Track.Id trackId : trackIds) {
+            TrackStatisticsUpdater updater = new TrackStatisticsUpdater();
+            updater.addTrackPoints(TestDataUtil.getTrackPoints(contentProviderUtils, trackId));
+            TrackStatistics expected = updater.getTrackStatistics();
+
+            TrackStatistics actual = contentProviderUtils.getTrack(trackId).getTrackStatistics();
+            assertEquals(expected.getTotalDistance().toM(), actual.getTotalDistance().toM(), 0.01);
+            assertEquals(expected.getTotalTime(), actual.getTotalTime());
+            assertEquals(expected.getMaxSpeed().toMPS(), actual.getMaxSpeed().toMPS(), 0.01);
+        }
+    }
+
+    @Test
+    public void recompute_skipsRecordingTrack() {
+        // given
+        List<Track.Id> trackIds = createTracksWithStaleStatistics(3);
+        Track.Id recordingTrackId = trackIds.get(1);
+
+        // when
+        TrackStatisticsRecomputer.Result result = new TrackStatisticsRecomputer(contentProviderUtils, 2)
+                .recompute(trackIds, null, () -> RecordingStatus.record(recordingTrackId));
+
+        // then
+        assertEquals(2, result.numTracks());
+        assertEquals(0, contentProviderUtils.getTrack(recordingTrackId).getTrackStatistics().getTotalDistance().toM(), 0.01);
+        assertTrue(contentProviderUtils.getTrack(trackIds.get(0)).getTrackStatistics().getTotalDistance().toM() > 0);
+    }
+
+    @Test
+    public void recompute_cancelled() {
+        // given
+        List<Track.Id> trackIds = createTracksWithStaleStatistics(5);
+        TrackStatisticsRecomputer subject = new TrackStatisticsRecomputer(contentProviderUtils, 2);
+
+        // when
+        subject.cancel();
+        TrackStatisticsRecomputer.Result result = subject.recompute(trackIds, null);
+
+        // then
+        assertTrue(result.cancelled());
+        assertEquals(0, result.numTracks());
+        assertEquals(0, contentProviderUtils.getTrack(trackIds.get(0)).getTrackStatistics().getTotalDistance().toM(), 0.01);
+    }
+}
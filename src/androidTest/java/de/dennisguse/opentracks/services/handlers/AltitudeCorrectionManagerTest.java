@@ -12,6 +12,7 @@ import org.junit.runners.JUnit4;
 
 import java.io.IOException;
 import java.time.Instant;
+import java.util.List;
 
 import de.dennisguse.opentracks.data.models.TrackPoint;
 
@@ -145,4 +146,46 @@ public class AltitudeCorrectionManagerTest {
         // then
         assertEquals(-85.824, trackPoint.getAltitude().toM(), MAX_ERROR);
     }
+
+    @Test
+    public void correctAltitudes_batch() {
+        // given
+        TrackPoint berlin = new TrackPoint(TrackPoint.Type.TRACKPOINT, Instant.ofEpochMilli(0));
+        berlin.setLatitude(52.530644);
+        berlin.setLongitude(13.383068);
+        berlin.setAltitude(0);
+
+        TrackPoint seattle = new TrackPoint(TrackPoint.Type.TRACKPOINT, Instant.ofEpochMilli(0));
+        seattle.setLatitude(47.63153);
+        seattle.setLongitude(-122.30938);
+        seattle.setAltitude(10);
+
+        TrackPoint noLocation = new TrackPoint(TrackPoint.Type.TRACKPOINT, Instant.ofEpochMilli(0));
+        noLocation.setAltitude(0);
+
+        // when
+        AltitudeCorrectionManager.clearCache();
+        new AltitudeCorrectionManager().correctAltitudes(context, List.of(berlin, seattle, noLocation));
+
+        // then
+        assertEquals(-39.4865, berlin.getAltitude().toM(), MAX_ERROR);
+        assertEquals(10 + 22.99, seattle.getAltitude().toM(), MAX_ERROR);
+        assertEquals(0, noLocation.getAltitude().toM(), 0);
+    }
+
+    @Test
+    public void correctAltitude_onlyOnce() {
+        // given
+        TrackPoint trackPoint = new TrackPoint(TrackPoint.Type.TRACKPOINT, Instant.ofEpochMilli(0));
+        trackPoint.setLatitude(0);
+        trackPoint.setLongitude(0);
+        trackPoint.setAltitude(0);
+
+        // when
+        new AltitudeCorrectionManager().correctAltitude(context, trackPoint);
+        new AltitudeCorrectionManager().correctAltitude(context, trackPoint);
+
+        // then
+        assertEquals(-17.2260, trackPoint.getAltitude().toM(), MAX_ERROR);
+    }
 }
@@ -0,0 +1,194 @@
+package de.dennisguse.opentracks.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import de.dennisguse.opentracks.content.data.TestDataUtil;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+
+@RunWith(AndroidJUnit4.class)
+public class ParallelTrackStatisticsCalculatorTest {
+
+    private static final String TAG = ParallelTrackStatisticsCalculatorTest.class.getSimpleName();
+
+    /**
+     * Segments of numTrackPoints each; every second segment is followed by TrackPoints after its SEGMENT_END_MANUAL.
+     * The track ends idle.
+     */
+    private static List<TrackPoint> createTrackPoints(int numSegments, int numTrackPoints) {
+        List<TrackPoint> trackPoints = new ArrayList<>();
+        int i = 0;
+        for (int segment = 0; segment < numSegments; segment++) {
+            trackPoints.add(TestDataUtil.createTrackPoint(i++, TrackPoint.Type.SEGMENT_START_MANUAL));
+            for (int j = 0; j < numTrackPoints; j++) {
+                trackPoints.add(TestDataUtil.createTrackPoint(i++));
+            }
+            trackPoints.add(new TrackPoint(TrackPoint.Type.SEGMENT_END_MANUAL, Instant.ofEpochSecond(i++)));
+
+            if (segment % 2 == 1) {
+                for (int j = 0; j < 10; j++) {
+                    trackPoints.add(TestDataUtil.createTrackPoint(i++));
+                }
+            }
+        }
+        trackPoints.add(TestDataUtil.createTrackPoint(i++));
+        trackPoints.add(TestDataUtil.createTrackPoint(i, TrackPoint.Type.IDLE));
+        return trackPoints;
+    }
+
+    private static TrackStatistics calculateSequential(List<TrackPoint> trackPoints) {
+        TrackStatisticsUpdater updater = new TrackStatisticsUpdater();
+        updater.addTrackPoints(trackPoints);
+        return updater.getTrackStatistics();
+    }
+
+    private static void assertBitwiseEquals(TrackStatistics expected, TrackStatistics actual) {
+        assertEquals(expected.getStartTime(), actual.getStartTime());
+        assertEquals(expected.getStopTime(), actual.getStopTime());
+        assertEquals(expected.getTotalTime(), actual.getTotalTime());
+        assertEquals(expected.getMovingTime(), actual.getMovingTime());
+        assertEquals(expected.isIdle(), actual.isIdle());
+
+        assertFieldEquals(expected, actual, TrackStatistics::getTotalDistance, it -> it.toM());
+        assertFieldEquals(expected, actual, TrackStatistics::getMaxSpeed, it -> it.toMPS());
+        assertFieldEquals(expected, actual, TrackStatistics::getMinAltitude, it -> it);
+        assertFieldEquals(expected, actual, TrackStatistics::getMaxAltitude, it -> it);
+        assertFieldEquals(expected, actual, TrackStatistics::getTotalAltitudeGain, it -> (double) it);
+        assertFieldEquals(expected, actual, TrackStatistics::getTotalAltitudeLoss, it -> (double) it);
+
+        assertFieldEquals(expected, actual, TrackStatistics::getAverageHeartRate, it -> (double) it.getBPM());
+        assertFieldEquals(expected, actual, TrackStatistics::getAveragePower, it -> (double) it.getW());
+
+        assertFieldEquals(expected, actual, it -> it.getSensorStatistics().avgHeartRate(), it -> (double) it.getBPM());
+        assertFieldEquals(expected, actual, it -> it.getSensorStatistics().maxHeartRate(), it -> (double) it.getBPM());
+        assertFieldEquals(expected, actual, it -> it.getSensorStatistics().avgCadence(), it -> (double) it.getRPM());
+        assertFieldEquals(expected, actual, it -> it.getSensorStatistics().maxCadence(), it -> (double) it.getRPM());
+        assertFieldEquals(expected, actual, it -> it.getSensorStatistics().avgPower(), it -> (double) it.getW());
+        assertFieldEquals(expected, actual, it -> it.getSensorStatistics().maxPower(), it -> (double) it.getW());
+    }
+
+    private static <T> void assertFieldEquals(TrackStatistics expected, TrackStatistics actual, Function<TrackStatistics, T> field, Function<T, Double> value) {
+        T expectedField = field.apply(expected);
+        T actualField = field.apply(actual);
+        if (expectedField == null) {
+            assertNull(actualField);
+            return;
+        }
+        assertNotNull(actualField);
+        assertEquals(Double.doubleToLongBits(value.apply(expectedField)), Double.doubleToLongBits(value.apply(actualField)));
+    }
+
+    @Test
+    public void calculate_equalsSequential_segmentBoundaries() {
+        // given
+        List<TrackPoint> trackPoints = List.of(
+                TestDataUtil.createTrackPoint(0),
+                TestDataUtil.createTrackPoint(1, TrackPoint.Type.SEGMENT_START_MANUAL),
+                TestDataUtil.createTrackPoint(2),
+                new TrackPoint(TrackPoint.Type.SEGMENT_END_MANUAL, Instant.ofEpochSecond(3)),
+                TestDataUtil.createTrackPoint(4),
+                TestDataUtil.createTrackPoint(5, TrackPoint.Type.SEGMENT_START_MANUAL),
+                new TrackPoint(TrackPoint.Type.SEGMENT_END_MANUAL, Instant.ofEpochSecond(6)),
+                TestDataUtil.createTrackPoint(7, TrackPoint.Type.SEGMENT_START_MANUAL),
+                TestDataUtil.createTrackPoint(8)
+        );
+
+        // when
+        TrackStatistics actual = new ParallelTrackStatisticsCalculator(ForkJoinPool.commonPool(), 1).calculate(trackPoints);
+
+        // then
+        assertBitwiseEquals(calculateSequential(trackPoints), actual);
+    }
+
+    @Test
+    public void calculate_equalsSequential_averagesSpanSegments() {
+        // given
+        List<TrackPoint> trackPoints = List.of(
+                TestDataUtil.createTrackPoint(0, TrackPoint.Type.SEGMENT_START_MANUAL),
+                TestDataUtil.createTrackPoint(3),
+                TestDataUtil.createTrackPoint(7),
+                new TrackPoint(TrackPoint.Type.SEGMENT_END_MANUAL, Instant.ofEpochSecond(8)),
+                // Without heart rate and power
+                new TrackPoint(TrackPoint.Type.SEGMENT_START_MANUAL, Instant.ofEpochSecond(10)),
+                new TrackPoint(TrackPoint.Type.TRACKPOINT, Instant.ofEpochSecond(13)),
+                new TrackPoint(TrackPoint.Type.SEGMENT_END_MANUAL, Instant.ofEpochSecond(17)),
+                new TrackPoint(TrackPoint.Type.TRACKPOINT, Instant.ofEpochSecond(18)),
+                TestDataUtil.createTrackPoint(20, TrackPoint.Type.SEGMENT_START_MANUAL),
+                TestDataUtil.createTrackPoint(21),
+                TestDataUtil.createTrackPoint(26)
+        );
+
+        // when
+        TrackStatistics actual = new ParallelTrackStatisticsCalculator(ForkJoinPool.commonPool(), 2).calculate(trackPoints);
+
+        // then
+        assertBitwiseEquals(calculateSequential(trackPoints), actual);
+    }
+
+    @Test
+    public void calculate_equalsSequential() {
+        // given
+        List<TrackPoint> trackPoints = createTrackPoints(9, 3000);
+
+        // when
+        TrackStatistics actual = new ParallelTrackStatisticsCalculator().calculate(trackPoints);
+
+        // then
+        assertBitwiseEquals(calculateSequential(trackPoints), actual);
+    }
+
+    @Test
+    public void calculate_equalsSequential_smallChunks() {
+        // given
+        List<TrackPoint> trackPoints = createTrackPoints(3, 100);
+
+        // when
+        ParallelTrackStatisticsCalculator.Accumulator accumulator = new ParallelTrackStatisticsCalculator(ForkJoinPool.commonPool(), 7).newAccumulator();
+        trackPoints.forEach(accumulator::add);
+        TrackStatistics actual = accumulator.getTrackStatistics();
+
+        // then
+        TrackStatistics expected = calculateSequential(trackPoints);
+        assertTrue(expected.isIdle());
+        assertBitwiseEquals(expected, actual);
+    }
+
+    @Test
+    public void calculate_speedup() {
+        // given
+        List<TrackPoint> trackPoints = createTrackPoints(32, 20000);
+        ParallelTrackStatisticsCalculator subject = new ParallelTrackStatisticsCalculator();
+
+        // warm up
+        calculateSequential(trackPoints);
+        subject.calculate(trackPoints);
+
+        // when
+        long start = System.nanoTime();
+        TrackStatistics expected = calculateSequential(trackPoints);
+        long sequential = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        TrackStatistics actual = subject.calculate(trackPoints);
+        long parallel = System.nanoTime() - start;
+
+        // then
+        Log.i(TAG, trackPoints.size() + " TrackPoints on " + ForkJoinPool.commonPool().getParallelism() + " workers: sequential=" + sequential / 1000000 + "ms parallel=" + parallel / 1000000 + "ms speedup=" + (float) sequential / parallel);
+        assertBitwiseEquals(expected, actual);
+    }
+}
@@ -0,0 +1,85 @@
+package de.dennisguse.opentracks.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.dennisguse.opentracks.content.data.TestDataUtil;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+
+/**
+ * Allocations per loaded TrackPoint when taking a statistics snapshot for every TrackPoint (as TrackDataHub does).
+ */
+@RunWith(AndroidJUnit4.class)
+public class TrackStatisticsSnapshotBenchmarkTest {
+
+    private static final String TAG = TrackStatisticsSnapshotBenchmarkTest.class.getSimpleName();
+
+    private static final int NUM_TRACKPOINTS = 10000;
+
+    private final List<TrackPoint> trackPoints = createTrackPoints();
+
+    private static List<TrackPoint> createTrackPoints() {
+        List<TrackPoint> trackPoints = new ArrayList<>(NUM_TRACKPOINTS);
+        for (int i = 0; i < NUM_TRACKPOINTS; i++) {
+            trackPoints.add(TestDataUtil.createTrackPoint(i));
+        }
+        return trackPoints;
+    }
+
+    @Test
+    public void view_equalsCopy() {
+        // given
+        TrackStatisticsUpdater subject = new TrackStatisticsUpdater();
+
+        for (TrackPoint trackPoint : trackPoints) {
+            // when
+            subject.addTrackPoint(trackPoint);
+
+            // then
+            assertEquals(subject.getTrackStatistics(), subject.getTrackStatisticsView());
+        }
+    }
+
+    @Test
+    public void view_allocatesLessThanCopy() {
+        // warm up
+        countAllocations(true);
+        countAllocations(false);
+
+        // when
+        int copy = countAllocations(true);
+        int view = countAllocations(false);
+
+        // then
+        Log.i(TAG, "Allocations per TrackPoint (incl. addTrackPoint()): copy=" + (float) copy / NUM_TRACKPOINTS + " view=" + (float) view / NUM_TRACKPOINTS);
+        assertTrue(view < copy);
+    }
+
+    @SuppressWarnings("deprecation")
+    private int countAllocations(boolean copy) {
+        TrackStatisticsUpdater subject = new TrackStatisticsUpdater();
+        TrackStatistics trackStatistics = null;
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (TrackPoint trackPoint : trackPoints) {
+            subject.addTrackPoint(trackPoint);
+            trackStatistics = copy ? subject.getTrackStatistics() : subject.getTrackStatisticsView();
+        }
+        Debug.stopAllocCounting();
+
+        assertTrue(trackStatistics.isInitialized());
+        return Debug.getThreadAllocCount();
+    }
+}
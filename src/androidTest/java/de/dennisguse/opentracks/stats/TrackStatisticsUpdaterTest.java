@@ -350,4 +350,45 @@ public class TrackStatisticsUpdaterTest {
         assertEquals(55.287, subject.getTrackStatistics().getTotalDistance().toM(), 0.01);
         assertEquals(55.287, copy.getTrackStatistics().getTotalDistance().toM(), 0.01);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void addTrackPoint_sensorStatistics() {
+        // given
+        TrackStatisticsUpdater subject = new TrackStatisticsUpdater();
+
+        TrackPoint tp1 = new TrackPoint(TrackPoint.Type.SEGMENT_START_MANUAL, Instant.ofEpochMilli(1000));
+        TrackPoint tp2 = new TrackPoint(TrackPoint.Type.TRACKPOINT, Instant.ofEpochMilli(2000));
+        tp2.setHeartRate(100f);
+        tp2.setCadence(60f);
+        tp2.setPower(200f);
+        TrackPoint tp3 = new TrackPoint(TrackPoint.Type.TRACKPOINT, Instant.ofEpochMilli(5000));
+        tp3.setHeartRate(140f);
+        tp3.setCadence(80f);
+        tp3.setPower(100f);
+
+        // when
+        subject.addTrackPoint(tp1);
+        subject.addTrackPoint(tp2);
+        subject.addTrackPoint(tp3);
+
+        // then
+        // Each value is weighted by the time until the next TrackPoint (as SENSOR_STATS_QUERY); tp3 has none yet.
+        SensorStatistics sensorStatistics = subject.getTrackStatistics().getSensorStatistics();
+        assertEquals(100f, sensorStatistics.avgHeartRate().getBPM(), 0.01);
+        assertEquals(140f, sensorStatistics.maxHeartRate().getBPM(), 0.01);
+        assertEquals(60f, sensorStatistics.avgCadence().getRPM(), 0.01);
+        assertEquals(80f, sensorStatistics.maxCadence().getRPM(), 0.01);
+        assertEquals(200f, sensorStatistics.avgPower().getW(), 0.01);
+        assertEquals(200f, sensorStatistics.maxPower().getW(), 0.01);
+
+        // when
+        TrackPoint tp4 = new TrackPoint(TrackPoint.Type.TRACKPOINT, Instant.ofEpochMilli(6000));
+        subject.addTrackPoint(tp4);
+
+        // then
+        sensorStatistics = subject.getTrackStatistics().getSensorStatistics();
+        assertEquals(110f, sensorStatistics.avgHeartRate().getBPM(), 0.01);
+        assertEquals(65f, sensorStatistics.avgCadence().getRPM(), 0.01);
+        assertEquals(175f, sensorStatistics.avgPower().getW(), 0.01);
+    }
+}
@@ -17,6 +17,7 @@ import java.util.List;
 
 import de.dennisguse.opentracks.content.data.TestDataUtil;
 import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.TrackPointCursor;
 import de.dennisguse.opentracks.data.TrackPointIterator;
 import de.dennisguse.opentracks.data.models.Distance;
 import de.dennisguse.opentracks.data.models.Track;
@@ -141,6 +142,39 @@ public class IntervalStatisticsTest {
         whenAndThen(trackWithStats, numberOfPoints, distanceInterval);
     }
 
+    @Test
+    public void addTrackPoints_cursor_sameAsIterator() {
+        // given
+        Distance distanceInterval = Distance.of(1000);
+        Track.Id trackId = TestDataUtil.buildTrackWithTrackPoints(contentProviderUtils, 1000).first;
+        IntervalStatistics expected = new IntervalStatistics(distanceInterval);
+        IntervalStatistics actual = new IntervalStatistics(distanceInterval);
+
+        // when
+        TrackPoint.Id expectedLastTrackPointId;
+        try (TrackPointIterator trackPointIterator = contentProviderUtils.getTrackPointLocationIterator(trackId, null)) {
+            expectedLastTrackPointId = expected.addTrackPoints(trackPointIterator);
+        }
+        TrackPoint.Id actualLastTrackPointId;
+        try (TrackPointCursor trackPointCursor = contentProviderUtils.getTrackPointCursorView(trackId, null, TrackPointCursor.PROJECTION_STATISTICS)) {
+            actualLastTrackPointId = actual.addTrackPoints(trackPointCursor);
+        }
+
+        // then
+        assertEquals(expectedLastTrackPointId, actualLastTrackPointId);
+        assertEquals(expected.getIntervalList().size(), actual.getIntervalList().size());
+        for (int i = 0; i < expected.getIntervalList().size(); i++) {
+            IntervalStatistics.Interval expectedInterval = expected.getIntervalList().get(i);
+            IntervalStatistics.Interval actualInterval = actual.getIntervalList().get(i);
+            assertEquals(expectedInterval.getDistance(), actualInterval.getDistance());
+            assertEquals(expectedInterval.getSpeed(), actualInterval.getSpeed());
+            assertEquals(expectedInterval.getGain_m(), actualInterval.getGain_m());
+            assertEquals(expectedInterval.getLoss_m(), actualInterval.getLoss_m());
+            assertEquals(expectedInterval.getAverageHeartRate(), actualInterval.getAverageHeartRate());
+            assertEquals(expectedInterval.getAveragePower(), actualInterval.getAveragePower());
+        }
+    }
+
     private void whenAndThen(int numberOfPoints, float distanceInterval) {
         Pair<Track.Id, TrackStatistics> trackWithStats = TestDataUtil.buildTrackWithTrackPoints(contentProviderUtils, numberOfPoints);
         whenAndThen(trackWithStats, numberOfPoints, distanceInterval);
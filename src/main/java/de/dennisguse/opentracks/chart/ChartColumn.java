@@ -0,0 +1,98 @@
+package de.dennisguse.opentracks.chart;
+
+import java.util.Arrays;
+
+/**
+ * A growable column of primitive values with a validity bitmap.
+ * {@link ChartView} keeps one column for the x values and one per {@link ChartValueSeries}, so that large tracks neither box every value nor allocate one object per point.
+ */
+class ChartColumn {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private double[] values = new double[INITIAL_CAPACITY];
+    private long[] validity = new long[INITIAL_CAPACITY / Long.SIZE];
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void add(double value) {
+        ensureCapacity();
+        values[size] = value;
+        validity[size >>> 6] |= 1L << size;
+        size++;
+    }
+
+    void addInvalid() {
+        ensureCapacity();
+        validity[size >>> 6] &= ~(1L << size);
+        size++;
+    }
+
+    boolean isValid(int index) {
+        return (validity[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Only meaningful if {@link #isValid(int)}.
+     */
+    double get(int index) {
+        return values[index];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Requires the values to be valid and sorted ascending (like the x values).
+     *
+     * @return index of the first value >= the given value or {@link #size()}.
+     */
+    int lowerBound(double value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Requires the values to be valid and sorted ascending (like the x values).
+     *
+     * @return index of the first value > the given value or {@link #size()}.
+     */
+    int upperBound(double value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void ensureCapacity() {
+        if (size < values.length) {
+            return;
+        }
+        values = Arrays.copyOf(values, values.length * 2);
+        validity = Arrays.copyOf(validity, values.length / Long.SIZE);
+    }
+}
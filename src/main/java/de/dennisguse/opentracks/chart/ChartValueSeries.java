@@ -51,8 +51,20 @@ abstract class ChartValueSeries {
     private final Paint titlePaint;
     private final Paint markerPaint;
     private final ExtremityMonitor extremityMonitor = new ExtremityMonitor();
+    private final ChartColumn values = new ChartColumn();
     private final NumberFormat numberFormat = NumberFormat.getIntegerInstance();
+    // Path to be drawn: linePath, the pending pixel and the lines to close the area.
     private final Path path = new Path();
+    // Completed pixels; only appended to while the axes do not change.
+    private final Path linePath = new Path();
+
+    // Pending pixel: values mapping to the same x position are folded into one vertical line.
+    private boolean hasPixel = false;
+    private int pixelX;
+    private int pixelFirstY;
+    private int pixelMinY;
+    private int pixelMaxY;
+    private int pixelLastY;
 
     private int interval = 1;
     private int minMarkerValue = 0;
@@ -116,27 +128,115 @@ abstract class ChartValueSeries {
     }
 
     /**
-     * Updates the series with a new {@link ChartPoint}.
+     * Appends the value of a new {@link ChartPoint}.
      */
     void update(ChartPoint chartPoint) {
-        if (isChartPointValid(chartPoint)) {
-            extremityMonitor.update(extractDataFromChartPoint(chartPoint));
+        Double value = extractDataFromChartPoint(chartPoint);
+        if (value != null) {
+            values.add(value);
+            extremityMonitor.update(value);
+        } else {
+            values.addInvalid();
         }
     }
 
     abstract Double extractDataFromChartPoint(@NonNull ChartPoint chartPoint);
 
-    boolean isChartPointValid(@NonNull ChartPoint chartPoint) {
-        return extractDataFromChartPoint(chartPoint) != null;
+    /**
+     * Removes all values and the path.
+     */
+    void clear() {
+        values.clear();
+        extremityMonitor.reset();
+        rewindPath();
+    }
+
+    /**
+     * Returns true if the value of the point at index is present.
+     */
+    boolean isValid(int index) {
+        return values.isValid(index);
+    }
+
+    double getValue(int index) {
+        return values.get(index);
     }
 
     protected abstract boolean drawIfChartPointHasNoData();
 
+    /**
+     * Starts a new path; to be followed by {@link #addToPath(int, int, int)} and {@link #closePath(int)}.
+     */
+    void rewindPath() {
+        linePath.rewind();
+        path.rewind();
+        hasPixel = false;
+    }
+
+    /**
+     * Appends a point (in pixels) to the path; x must not decrease.
+     * Points with the same x are folded into one vertical line (first, min, max and last y), so the path size is bound by the width in pixels.
+     *
+     * @param yCorner the y position of the x axis
+     */
+    void addToPath(int x, int y, int yCorner) {
+        if (hasPixel && x == pixelX) {
+            pixelMinY = Math.min(pixelMinY, y);
+            pixelMaxY = Math.max(pixelMaxY, y);
+            pixelLastY = y;
+            return;
+        }
+
+        if (hasPixel) {
+            addPixel(linePath);
+        } else {
+            // start from lower left corner
+            linePath.moveTo(x, yCorner);
+        }
+
+        hasPixel = true;
+        pixelX = x;
+        pixelFirstY = y;
+        pixelMinY = y;
+        pixelMaxY = y;
+        pixelLastY = y;
+    }
+
+    /**
+     * Updates the path to be drawn from the points added so far; more points can be added afterwards.
+     *
+     * @param yCorner the y position of the x axis
+     */
+    void closePath(int yCorner) {
+        path.set(linePath);
+
+        // last point: move to lower right
+        if (hasPixel) {
+            addPixel(path);
+            path.lineTo(pixelX, yCorner);
+        }
+
+        // back to lower left corner
+        path.close();
+    }
+
+    private void addPixel(Path target) {
+        target.lineTo(pixelX, pixelFirstY);
+        if (pixelMinY != pixelMaxY) {
+            target.lineTo(pixelX, pixelMinY);
+            target.lineTo(pixelX, pixelMaxY);
+            target.lineTo(pixelX, pixelLastY);
+        }
+    }
+
+    /**
+     * The path must only be drawn by the caller after it is copied while holding the lock of {@link ChartView}.
+     */
     Path getPath() {
         return path;
     }
 
-    void drawPath(Canvas canvas, boolean shouldFillPathArea) {
+    void drawPath(Canvas canvas, Path path, boolean shouldFillPathArea) {
         if (shouldFillPathArea) {
             canvas.drawPath(path, fillPaint);
         }
@@ -145,8 +245,13 @@ abstract class ChartValueSeries {
 
     /**
      * Updates the y axis dimension.
+     *
+     * @return true if the y axis changed
      */
-    void updateDimension() {
+    boolean updateDimension() {
+        int oldInterval = interval;
+        int oldMinMarkerValue = minMarkerValue;
+
         double min = hasData() ? extremityMonitor.getMin() : 0.0;
         double max = hasData() ? extremityMonitor.getMax() : 1.0;
         min = Math.max(min, absoluteMin);
@@ -154,6 +259,7 @@ abstract class ChartValueSeries {
         interval = getInterval(min, max);
         minMarkerValue = getMinMarkerValue(min, interval);
         maxMarkerValue = minMarkerValue + interval * ChartView.Y_AXIS_INTERVALS;
+        return interval != oldInterval || minMarkerValue != oldMinMarkerValue;
     }
 
     /**
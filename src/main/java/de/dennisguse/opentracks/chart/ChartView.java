@@ -18,7 +18,9 @@ package de.dennisguse.opentracks.chart;
 
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.DashPathEffect;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
@@ -27,6 +29,7 @@ import android.graphics.Path;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
+import android.util.SparseArray;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
@@ -40,10 +43,16 @@ import androidx.core.view.GestureDetectorCompat;
 
 import java.text.NumberFormat;
 import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import de.dennisguse.opentracks.R;
 import de.dennisguse.opentracks.data.models.Marker;
@@ -64,10 +73,25 @@ import de.dennisguse.opentracks.util.StringUtils;
  */
 public class ChartView extends View {
 
+    private static final String TAG = ChartView.class.getSimpleName();
+
+    // Renders the tiles of all ChartViews.
+    private static final ExecutorService TILE_RENDERER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
     static final int Y_AXIS_INTERVALS = 5;
 
     private static final int TARGET_X_AXIS_INTERVALS = 4;
 
+    // While recording, the x axis is extended by this fraction, so that it (and thus the paths) only changes every now and then.
+    private static final double RECORDING_X_AXIS_HEADROOM = 0.25;
+
+    // Visible tiles (at most two) and their neighbours.
+    private static final int MAX_FREE_TILE_BITMAPS = 4;
+
     private static final int MIN_ZOOM_LEVEL = 1;
     private static final int MAX_ZOOM_LEVEL = 10;
 
@@ -91,7 +115,8 @@ public class ChartView extends View {
     private final ChartValueSeries paceSeries;
     private final ChartValueSeries heartRateSeries;
 
-    private final LinkedList<ChartPoint> chartPoints = new LinkedList<>();
+    // x values of all points; the y values are stored per ChartValueSeries.
+    private final ChartColumn xValues = new ChartColumn();
     private final List<Marker> markers = new LinkedList<>();
     private final ExtremityMonitor xExtremityMonitor = new ExtremityMonitor();
     private final int backgroundColor;
@@ -107,6 +132,25 @@ public class ChartView extends View {
     private double maxX = 1.0;
     private int zoomLevel = 1;
 
+    // Range of the graph area (in pixels from its start) for which the paths of the series were built.
+    private int pathsFromX = 0;
+    private int pathsToX = 0;
+    // Index after the last point in the paths.
+    private int pathsToIndex = 0;
+
+    // Incremented whenever the position of points on the chart or what is drawn changes; all tiles become invalid.
+    private volatile int tilesVersion = 0;
+    // Number of points when the data was changed the last time.
+    private volatile int dataSize = 0;
+    // Rendered tiles of the current tilesVersion by index; only accessed on the UI thread.
+    private final SparseArray<Tile> tiles = new SparseArray<>();
+    private final Set<Integer> pendingTiles = new HashSet<>();
+    private int tilesCacheVersion = 0;
+    // Bitmaps of tiles that were drawn before, but are no longer; reusable after the next draw (the last drawn frame may still reference them).
+    private final List<Bitmap> retiredTileBitmaps = new ArrayList<>();
+    // Bitmaps that can be reused for rendering tiles; guarded by itself.
+    private final Deque<Bitmap> freeTileBitmaps = new ArrayDeque<>();
+
     private int leftBorder = BORDER;
     private int topBorder = BORDER;
     private int bottomBorder = BORDER;
@@ -398,6 +442,7 @@ public class ChartView extends View {
         if (!showPaceOrSpeed) {
             paceSeries.setEnabled(false);
             speedSeries.setEnabled(false);
+            invalidateTiles();
             return true;
         }
 
@@ -405,12 +450,14 @@ public class ChartView extends View {
             if (!speedSeries.isEnabled()) {
                 speedSeries.setEnabled(true);
                 paceSeries.setEnabled(false);
+                invalidateTiles();
                 return true;
             }
         } else {
             if (!paceSeries.isEnabled()) {
                 speedSeries.setEnabled(false);
                 paceSeries.setEnabled(true);
+                invalidateTiles();
                 return true;
             }
         }
@@ -420,6 +467,7 @@ public class ChartView extends View {
 
     void setShowElevation(boolean value) {
         elevationSeries.setEnabled(value);
+        invalidateTiles();
     }
     void setShowPaceOrSpeed(boolean value) {
         showPaceOrSpeed = value;
@@ -430,23 +478,37 @@ public class ChartView extends View {
     }
     void setShowHeartRate(boolean value) {
         heartRateSeries.setEnabled(value);
+        invalidateTiles();
     }
 
     public void setShowPointer(boolean value) {
         showPointer = value;
     }
 
+    /**
+     * Appends data points (e.g., while recording).
+     * If the axes do not change, the new points are appended to the existing paths; otherwise all paths are rebuilt.
+     */
     public void addChartPoints(List<ChartPoint> dataPoints) {
-        synchronized (chartPoints) {
-            chartPoints.addAll(dataPoints);
+        synchronized (xValues) {
+            int oldSize = xValues.size();
             for (ChartPoint dataPoint : dataPoints) {
+                xValues.add(dataPoint.timeOrDistance());
                 xExtremityMonitor.update(dataPoint.timeOrDistance());
                 for (ChartValueSeries i : seriesList) {
                     i.update(dataPoint);
                 }
             }
-            updateDimensions();
-            updateSeries();
+            boolean dimensionsChanged = updateDimensions();
+            if (dimensionsChanged || pathsToIndex != oldSize) {
+                updateSeries();
+            } else {
+                extendSeries();
+            }
+            if (dimensionsChanged) {
+                tilesVersion++;
+            }
+            dataSize = xValues.size();
         }
     }
 
@@ -454,11 +516,17 @@ public class ChartView extends View {
      * Clears all data.
      */
     public void reset() {
-        synchronized (chartPoints) {
-            chartPoints.clear();
+        synchronized (xValues) {
+            xValues.clear();
+            for (ChartValueSeries chartValueSeries : seriesList) {
+                chartValueSeries.clear();
+            }
+            pathsToIndex = 0;
             xExtremityMonitor.reset();
             zoomLevel = 1;
             updateDimensions();
+            tilesVersion++;
+            dataSize = 0;
         }
     }
 
@@ -494,6 +562,7 @@ public class ChartView extends View {
         if (canZoomIn()) {
             zoomLevel++;
             updateSeries();
+            invalidateTiles();
             invalidate();
         }
     }
@@ -509,6 +578,7 @@ public class ChartView extends View {
                 scrollTo(scrollX, 0);
             }
             updateSeries();
+            invalidateTiles();
             invalidate();
         }
     }
@@ -591,53 +661,235 @@ public class ChartView extends View {
 
     @Override
     protected void onDraw(Canvas canvas) {
-        synchronized (chartPoints) {
-            canvas.save();
+        canvas.save();
 
-            canvas.drawColor(backgroundColor);
+        canvas.drawColor(backgroundColor);
 
-            canvas.save();
+        canvas.save();
 
-            clipToGraphArea(canvas);
-            drawDataSeries(canvas);
-            drawGrid(canvas);
+        clipToGraphArea(canvas);
+        drawTiles(canvas);
+        drawGrid(canvas);
 
-            canvas.restore();
+        canvas.restore();
 
-            drawSeriesTitles(canvas);
-            drawXAxis(canvas);
-            drawYAxis(canvas);
+        drawSeriesTitles(canvas);
+        drawXAxis(canvas);
+        drawYAxis(canvas);
 
-            canvas.restore();
+        canvas.restore();
 
-            if (showPointer) {
+        if (showPointer) {
+            synchronized (xValues) {
                 drawPointer(canvas);
             }
         }
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        tiles.clear();
+        retiredTileBitmaps.clear();
+        synchronized (freeTileBitmaps) {
+            freeTileBitmaps.clear();
+        }
+    }
+
     /**
-     * Clips a canvas to the graph area.
+     * A part of the graph area (data series only) with the width of the graph area; tile i starts i widths from the start of the graph area.
      *
-     * @param canvas the canvas
+     * @param dataSize   number of points when rendered
+     * @param lastPointX x position (in pixels from the start of the graph area) of the last point when rendered
      */
-    private void clipToGraphArea(Canvas canvas) {
-        int x = getScrollX() + leftBorder;
-        int y = topBorder;
-        canvas.clipRect(x, y, x + effectiveWidth, y + effectiveHeight);
+    private record Tile(int index, int version, int dataSize, int lastPointX, Bitmap bitmap) {
+
+        /**
+         * New points only change a tile if the previous last point is left of its end.
+         */
+        boolean isOutdated(int currentDataSize, int tileWidth) {
+            return currentDataSize != dataSize && lastPointX < (index + 1) * tileWidth;
+        }
+    }
+
+    private void invalidateTiles() {
+        synchronized (xValues) {
+            tilesVersion++;
+        }
     }
 
     /**
-     * Draws the data series.
+     * Draws the rendered tiles of the visible part and requests the rendering of missing and outdated tiles (including the neighbours).
+     * Outdated tiles are drawn until the new one is rendered, as only new points are missing.
+     * To be called on the UI thread.
      *
      * @param canvas the canvas
      */
-    private void drawDataSeries(Canvas canvas) {
-        for (ChartValueSeries chartValueSeries : seriesList) {
-            if (chartValueSeries.isEnabled() && chartValueSeries.hasData()) {
-                chartValueSeries.drawPath(canvas, titleDimensions.titlePositions.size() < 3 );
+    private void drawTiles(Canvas canvas) {
+        int tileWidth = effectiveWidth;
+        if (tileWidth <= 0 || effectiveHeight <= 0) {
+            return;
+        }
+
+        // Not referenced by the last drawn frame anymore.
+        retiredTileBitmaps.forEach(this::releaseTileBitmap);
+        retiredTileBitmaps.clear();
+
+        int version = tilesVersion;
+        if (version != tilesCacheVersion) {
+            for (int i = 0; i < tiles.size(); i++) {
+                retiredTileBitmaps.add(tiles.valueAt(i).bitmap());
+            }
+            tiles.clear();
+            tilesCacheVersion = version;
+        }
+
+        int firstIndex = getScrollX() / tileWidth;
+        int lastIndex = (getScrollX() + tileWidth - 1) / tileWidth;
+        int currentDataSize = dataSize;
+
+        // Only keep the visible tiles and their neighbours.
+        for (int i = tiles.size() - 1; i >= 0; i--) {
+            int index = tiles.keyAt(i);
+            if (index < firstIndex - 1 || index > lastIndex + 1) {
+                retiredTileBitmaps.add(tiles.valueAt(i).bitmap());
+                tiles.removeAt(i);
+            }
+        }
+
+        for (int index = firstIndex; index <= lastIndex; index++) {
+            Tile tile = tiles.get(index);
+            if (tile == null || tile.isOutdated(currentDataSize, tileWidth)) {
+                requestTile(index, version);
+            }
+            if (tile != null) {
+                canvas.drawBitmap(tile.bitmap(), leftBorder + index * tileWidth, topBorder, null);
+            }
+        }
+
+        // Prefetch for scrolling.
+        for (int index : new int[]{firstIndex - 1, lastIndex + 1}) {
+            if (index >= 0 && index < zoomLevel && tiles.get(index) == null) {
+                requestTile(index, version);
+            }
+        }
+    }
+
+    /**
+     * Renders the tile on the TILE_RENDERER unless it is already pending.
+     * If the rendered tile is outdated (version changed meanwhile), it is discarded and the view redrawn, which requests it again for the current version.
+     */
+    private void requestTile(int index, int version) {
+        if (!pendingTiles.add(index)) {
+            return;
+        }
+        TILE_RENDERER.execute(() -> {
+            Tile tile = renderTile(index, version);
+            post(() -> {
+                pendingTiles.remove(index);
+                if (tile != null && tile.version() == tilesVersion) {
+                    Tile previous = tiles.get(index);
+                    if (previous != null) {
+                        retiredTileBitmaps.add(previous.bitmap());
+                    }
+                    tiles.put(index, tile);
+                } else if (tile != null) {
+                    // Never drawn.
+                    releaseTileBitmap(tile.bitmap());
+                }
+                invalidate();
+            });
+        });
+    }
+
+    /**
+     * To be called on the TILE_RENDERER.
+     *
+     * @return a cleared bitmap of the given size; reused if possible.
+     */
+    private Bitmap obtainTileBitmap(int width, int height) {
+        synchronized (freeTileBitmaps) {
+            Bitmap bitmap;
+            while ((bitmap = freeTileBitmaps.poll()) != null) {
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                    bitmap.eraseColor(Color.TRANSPARENT);
+                    return bitmap;
+                }
+                // Size of the graph area changed.
+                bitmap.recycle();
             }
         }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * The bitmap must not be drawn anymore.
+     */
+    private void releaseTileBitmap(Bitmap bitmap) {
+        synchronized (freeTileBitmaps) {
+            if (freeTileBitmaps.size() < MAX_FREE_TILE_BITMAPS) {
+                freeTileBitmaps.add(bitmap);
+            } else {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * Renders a tile; the paths are only copied while holding the lock.
+     * To be called on the TILE_RENDERER.
+     *
+     * @return the tile or null if the version is outdated
+     */
+    private Tile renderTile(int index, int version) {
+        int tileWidth;
+        int tileHeight;
+        int tileDataSize;
+        int lastPointX;
+        boolean shouldFillPathArea;
+        List<ChartValueSeries> series = new ArrayList<>();
+        List<Path> paths = new ArrayList<>();
+        synchronized (xValues) {
+            tileWidth = effectiveWidth;
+            tileHeight = effectiveHeight;
+            if (version != tilesVersion || tileWidth <= 0 || tileHeight <= 0) {
+                return null;
+            }
+
+            int tileFromX = index * tileWidth;
+            if (tileFromX < pathsFromX || tileFromX + tileWidth > pathsToX) {
+                updateSeries(tileFromX);
+            }
+
+            for (ChartValueSeries chartValueSeries : seriesList) {
+                if (chartValueSeries.isEnabled() && chartValueSeries.hasData()) {
+                    series.add(chartValueSeries);
+                    paths.add(new Path(chartValueSeries.getPath()));
+                }
+            }
+            shouldFillPathArea = titleDimensions.titlePositions.size() < 3;
+            tileDataSize = xValues.size();
+            lastPointX = xValues.isEmpty() ? 0 : getX(xValues.get(tileDataSize - 1)) - leftBorder;
+        }
+
+        Bitmap bitmap = obtainTileBitmap(tileWidth, tileHeight);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.translate(-(leftBorder + index * tileWidth), -topBorder);
+        for (int i = 0; i < series.size(); i++) {
+            series.get(i).drawPath(canvas, paths.get(i), shouldFillPathArea);
+        }
+        return new Tile(index, version, tileDataSize, lastPointX, bitmap);
+    }
+
+    /**
+     * Clips a canvas to the graph area.
+     *
+     * @param canvas the canvas
+     */
+    private void clipToGraphArea(Canvas canvas) {
+        int x = getScrollX() + leftBorder;
+        int y = topBorder;
+        canvas.clipRect(x, y, x + effectiveWidth, y + effectiveHeight);
     }
 
     /**
@@ -872,21 +1124,21 @@ public class ChartView extends View {
     }
 
     private void drawPointer(Canvas canvas) {
-        if (chartPoints.isEmpty()) {
+        if (xValues.isEmpty()) {
             return;
         }
-        ChartPoint last = chartPoints.getLast();
+        int last = xValues.size() - 1;
 
         ChartValueSeries firstChartValueSeries = null;
         for (ChartValueSeries chartValueSeries : seriesList) {
-            if (chartValueSeries.isEnabled() && chartValueSeries.hasData() && chartValueSeries.isChartPointValid(last)) {
+            if (chartValueSeries.isEnabled() && chartValueSeries.hasData() && chartValueSeries.isValid(last)) {
                 firstChartValueSeries = chartValueSeries;
                 break;
             }
         }
-        if (firstChartValueSeries != null && !chartPoints.isEmpty()) {
-            int dx = getX(maxX) - pointer.getIntrinsicWidth() / 2;
-            double value = firstChartValueSeries.extractDataFromChartPoint(last);
+        if (firstChartValueSeries != null) {
+            int dx = getX(xValues.get(last)) - pointer.getIntrinsicWidth() / 2;
+            double value = firstChartValueSeries.getValue(last);
             int dy = getY(firstChartValueSeries, value) - pointer.getIntrinsicHeight();
             canvas.translate(dx, dy);
             pointer.draw(canvas);
@@ -897,48 +1149,59 @@ public class ChartView extends View {
      * The path needs to be updated any time after the data or the dimensions change.
      */
     private void updateSeries() {
-        synchronized (chartPoints) {
-            seriesList.stream().forEach(this::updateSerie);
-        }
+        updateSeries(getScrollX());
     }
 
-    private void updateSerie(ChartValueSeries series) {
-        final int yCorner = topBorder + effectiveHeight;
-        final Path path = series.getPath();
-
-        boolean drawFirstPoint = false;
-        path.rewind();
-
-        Integer finalX = null;
-
-        for (ChartPoint point : chartPoints) {
-            if (!series.isChartPointValid(point)) {
-                continue;
+    /**
+     * Only the points around the given part of the graph area are added: one width to either side, so that the paths can be reused for the neighbouring tiles.
+     *
+     * @param fromX start of the part (in pixels from the start of the graph area)
+     */
+    private void updateSeries(int fromX) {
+        synchronized (xValues) {
+            pathsFromX = fromX - effectiveWidth;
+            pathsToX = fromX + 2 * effectiveWidth;
+
+            int fromIndex = 0;
+            int toIndex = xValues.size();
+            double pixelsPerValue = effectiveWidth * zoomLevel / maxX;
+            if (pixelsPerValue > 0) {
+                // Include one point outside on each side, so that the lines leave the part.
+                fromIndex = Math.max(0, xValues.lowerBound(pathsFromX / pixelsPerValue) - 1);
+                toIndex = Math.min(xValues.size(), xValues.upperBound(pathsToX / pixelsPerValue) + 1);
             }
 
-            double value = series.extractDataFromChartPoint(point);
-            int x = getX(point.timeOrDistance());
-            int y = getY(series, value);
+            pathsToIndex = toIndex;
 
-            // start from lower left corner
-            if (!drawFirstPoint) {
-                path.moveTo(x, yCorner);
-                drawFirstPoint = true;
+            final int yCorner = topBorder + effectiveHeight;
+            for (ChartValueSeries chartValueSeries : seriesList) {
+                chartValueSeries.rewindPath();
+                addToPath(chartValueSeries, fromIndex, toIndex, yCorner);
+                chartValueSeries.closePath(yCorner);
             }
-
-            // draw graph
-            path.lineTo(x, y);
-
-            finalX = x;
         }
+    }
 
-        // last point: move to lower right
-        if (finalX != null) {
-            path.lineTo(finalX, yCorner);
+    /**
+     * Appends the points added since the last path update; only valid if the dimensions did not change and the paths contain the last point.
+     */
+    private void extendSeries() {
+        synchronized (xValues) {
+            final int yCorner = topBorder + effectiveHeight;
+            for (ChartValueSeries chartValueSeries : seriesList) {
+                addToPath(chartValueSeries, pathsToIndex, xValues.size(), yCorner);
+                chartValueSeries.closePath(yCorner);
+            }
+            pathsToIndex = xValues.size();
         }
+    }
 
-        // back to lower left corner
-        path.close();
+    private void addToPath(ChartValueSeries series, int fromIndex, int toIndex, int yCorner) {
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (series.isValid(i)) {
+                series.addToPath(getX(xValues.get(i)), getY(series, series.getValue(i)), yCorner);
+            }
+        }
     }
 
     /// expected number of Y-axis markers on the first line if the Y-axis markers are split to two lines
@@ -947,11 +1210,27 @@ public class ChartView extends View {
     }
     /**
      * Updates the chart dimensions.
+     *
+     * @return true if the position of any point on the chart changed
      */
-    private void updateDimensions() {
-        maxX = xExtremityMonitor.hasData() ? xExtremityMonitor.getMax() : 1.0;
+    private boolean updateDimensions() {
+        double oldMaxX = maxX;
+        int oldLeftBorder = leftBorder;
+        int oldTopBorder = topBorder;
+        int oldEffectiveWidth = effectiveWidth;
+        int oldEffectiveHeight = effectiveHeight;
+        int oldTitleCount = titleDimensions == null ? 0 : titleDimensions.titlePositions.size();
+
+        double dataMaxX = xExtremityMonitor.hasData() ? xExtremityMonitor.getMax() : 1.0;
+        if (!showPointer || !xExtremityMonitor.hasData()) {
+            maxX = dataMaxX;
+        } else if (dataMaxX > maxX || dataMaxX * (1 + RECORDING_X_AXIS_HEADROOM) < maxX) {
+            maxX = dataMaxX * (1 + RECORDING_X_AXIS_HEADROOM);
+        }
+
+        boolean yAxisChanged = false;
         for (ChartValueSeries chartValueSeries : seriesList) {
-            chartValueSeries.updateDimension();
+            yAxisChanged |= chartValueSeries.updateDimension();
         }
         float density = getResources().getDisplayMetrics().density;
         spacerValue = (int) (density * SPACER);
@@ -987,6 +1266,10 @@ public class ChartView extends View {
         leftBorder = (int) (density * BORDER + allMarkerLength);
         rightBorder = (int) (density * BORDER + spacerValue);
         updateEffectiveDimensions();
+
+        return yAxisChanged || maxX != oldMaxX || leftBorder != oldLeftBorder || topBorder != oldTopBorder
+                || effectiveWidth != oldEffectiveWidth || effectiveHeight != oldEffectiveHeight
+                || titleDimensions.titlePositions.size() != oldTitleCount;
     }
 
     /**
@@ -1007,8 +1290,11 @@ public class ChartView extends View {
         if (width != newWidth || height != newHeight) {
             width = newWidth;
             height = newHeight;
-            updateEffectiveDimensions();
-            updateSeries();
+            synchronized (xValues) {
+                updateEffectiveDimensions();
+                updateSeries();
+                tilesVersion++;
+            }
         }
     }
 
@@ -1054,7 +1340,7 @@ public class ChartView extends View {
      * Returns true if the index is allowed when the chartData is empty.
      */
     private boolean allowIfEmpty(ChartValueSeries chartValueSeries) {
-        if (!chartPoints.isEmpty()) {
+        if (!xValues.isEmpty()) {
             return false;
         }
 
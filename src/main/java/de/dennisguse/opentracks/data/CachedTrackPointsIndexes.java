@@ -6,6 +6,7 @@ import de.dennisguse.opentracks.data.tables.TrackPointsColumns;
 
 /**
  * A cache of track points indexes.
+ * Columns that are not part of the cursor's projection have the index -1.
  */
 class CachedTrackPointsIndexes {
     final int idIndex;
@@ -28,19 +29,26 @@ class CachedTrackPointsIndexes {
     CachedTrackPointsIndexes(Cursor cursor) {
         idIndex = cursor.getColumnIndex(TrackPointsColumns._ID);
         typeIndex = cursor.getColumnIndex(TrackPointsColumns.TYPE);
-        longitudeIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.LONGITUDE);
-        latitudeIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.LATITUDE);
-        timeIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.TIME);
-        altitudeIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALTITUDE);
-        accuracyIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.HORIZONTAL_ACCURACY);
-        accuracyVerticalIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.VERTICAL_ACCURACY);
-        speedIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.SPEED);
-        bearingIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.BEARING);
-        sensorHeartRateIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.SENSOR_HEARTRATE);
-        sensorCadenceIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.SENSOR_CADENCE);
-        sensorDistanceIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.SENSOR_DISTANCE);
-        sensorPowerIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.SENSOR_POWER);
-        altitudeGainIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALTITUDE_GAIN);
-        altitudeLossIndex = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALTITUDE_LOSS);
+        longitudeIndex = cursor.getColumnIndex(TrackPointsColumns.LONGITUDE);
+        latitudeIndex = cursor.getColumnIndex(TrackPointsColumns.LATITUDE);
+        timeIndex = cursor.getColumnIndex(TrackPointsColumns.TIME);
+        altitudeIndex = cursor.getColumnIndex(TrackPointsColumns.ALTITUDE);
+        accuracyIndex = cursor.getColumnIndex(TrackPointsColumns.HORIZONTAL_ACCURACY);
+        accuracyVerticalIndex = cursor.getColumnIndex(TrackPointsColumns.VERTICAL_ACCURACY);
+        speedIndex = cursor.getColumnIndex(TrackPointsColumns.SPEED);
+        bearingIndex = cursor.getColumnIndex(TrackPointsColumns.BEARING);
+        sensorHeartRateIndex = cursor.getColumnIndex(TrackPointsColumns.SENSOR_HEARTRATE);
+        sensorCadenceIndex = cursor.getColumnIndex(TrackPointsColumns.SENSOR_CADENCE);
+        sensorDistanceIndex = cursor.getColumnIndex(TrackPointsColumns.SENSOR_DISTANCE);
+        sensorPowerIndex = cursor.getColumnIndex(TrackPointsColumns.SENSOR_POWER);
+        altitudeGainIndex = cursor.getColumnIndex(TrackPointsColumns.ALTITUDE_GAIN);
+        altitudeLossIndex = cursor.getColumnIndex(TrackPointsColumns.ALTITUDE_LOSS);
+    }
+
+    /**
+     * @return true if the column is part of the projection and not null in the current row.
+     */
+    static boolean hasValue(Cursor cursor, int columnIndex) {
+        return columnIndex >= 0 && !cursor.isNull(columnIndex);
     }
 }
@@ -16,13 +16,16 @@
 
 package de.dennisguse.opentracks.data;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.location.Location;
 import android.net.Uri;
+import android.os.RemoteException;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -56,6 +59,7 @@ import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.data.models.TrackPoint;
 import de.dennisguse.opentracks.data.tables.MarkerColumns;
 import de.dennisguse.opentracks.data.tables.TrackPointsColumns;
+import de.dennisguse.opentracks.data.tables.TrackPointsLodColumns;
 import de.dennisguse.opentracks.data.tables.TracksColumns;
 import de.dennisguse.opentracks.stats.SensorStatistics;
 import de.dennisguse.opentracks.stats.TrackStatistics;
@@ -74,6 +78,9 @@ public class ContentProviderUtils {
     private static final String WHERE = " WHERE ";
     private static final String SELECT_MAX = "=(SELECT MAX(";
 
+    @VisibleForTesting
+    static final String TRACKPOINTS_ORDER_BY_TIME = TrackPointsColumns.TIME + ", " + TrackPointsColumns._ID;
+
     // The authority (the first part of the URI) for the app's content provider.
     @VisibleForTesting
     public static final String AUTHORITY_PACKAGE = BuildConfig.APPLICATION_ID + ".content";
@@ -83,19 +90,35 @@ public class ContentProviderUtils {
 
     private static final String ID_SEPARATOR = ",";
 
+    private static final String URI_PARAMETER_FIRST_TRACKPOINT_ID = "firstTrackPointId";
+    private static final String URI_PARAMETER_LAST_TRACKPOINT_ID = "lastTrackPointId";
+
     private final ContentResolver contentResolver;
 
+    @Nullable
+    private final DecodedTrackCache decodedTrackCache;
+
     public interface ContentProviderSelectionInterface {
         SelectionData buildSelection();
     }
 
     public ContentProviderUtils(Context context) {
         contentResolver = context.getContentResolver();
+        decodedTrackCache = DecodedTrackCache.getInstance();
     }
 
     @VisibleForTesting
     public ContentProviderUtils(ContentResolver contentResolver) {
         this.contentResolver = contentResolver;
+        this.decodedTrackCache = null;
+    }
+
+    /**
+     * All queries are issued here, so tests can inspect the SQL that is actually used.
+     */
+    @VisibleForTesting
+    Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        return contentResolver.query(uri, projection, selection, selectionArgs, sortOrder);
     }
 
     // Adding this method to get the authority package for production use
@@ -149,9 +172,32 @@ public class ContentProviderUtils {
                 val -> trackStatistics.setTotalAltitudeGain(cursor.getFloat(val)));
         setIfNotNull(cursor, columnIndices.get(TracksColumns.ALTITUDE_LOSS),
                 val -> trackStatistics.setTotalAltitudeLoss(cursor.getFloat(val)));
+        trackStatistics.setSensorStatistics(createSensorStatistics(cursor, columnIndices.get(TracksColumns.MAX_HEARTRATE), columnIndices.get(TracksColumns.AVG_HEARTRATE),
+                columnIndices.get(TracksColumns.MAX_CADENCE), columnIndices.get(TracksColumns.AVG_CADENCE),
+                columnIndices.get(TracksColumns.MAX_POWER), columnIndices.get(TracksColumns.AVG_POWER)));
         return track;
     }
 
+    /**
+     * @return null if all values are NULL.
+     */
+    @Nullable
+    private static SensorStatistics createSensorStatistics(Cursor cursor, int maxHeartRateIndex, int avgHeartRateIndex, int maxCadenceIndex, int avgCadenceIndex, int maxPowerIndex, int avgPowerIndex) {
+        SensorStatistics sensorStatistics = new SensorStatistics(
+                !cursor.isNull(maxHeartRateIndex) ? HeartRate.of(cursor.getFloat(maxHeartRateIndex)) : null,
+                !cursor.isNull(avgHeartRateIndex) ? HeartRate.of(cursor.getFloat(avgHeartRateIndex)) : null,
+                !cursor.isNull(maxCadenceIndex) ? Cadence.of(cursor.getFloat(maxCadenceIndex)) : null,
+                !cursor.isNull(avgCadenceIndex) ? Cadence.of(cursor.getFloat(avgCadenceIndex)) : null,
+                !cursor.isNull(maxPowerIndex) ? Power.of(cursor.getFloat(maxPowerIndex)) : null,
+                !cursor.isNull(avgPowerIndex) ? Power.of(cursor.getFloat(avgPowerIndex)) : null);
+        if (sensorStatistics.maxHeartRate() == null && sensorStatistics.avgHeartRate() == null
+                && sensorStatistics.maxCadence() == null && sensorStatistics.avgCadence() == null
+                && sensorStatistics.maxPower() == null && sensorStatistics.avgPower() == null) {
+            return null;
+        }
+        return sensorStatistics;
+    }
+
     /**
      * Helper method to map column names to their indices.
      */
@@ -163,7 +209,8 @@ public class ContentProviderUtils {
                 TracksColumns.STARTTIME_OFFSET, TracksColumns.STOPTIME, TracksColumns.TOTALDISTANCE,
                 TracksColumns.TOTALTIME, TracksColumns.MOVINGTIME, TracksColumns.MAXSPEED,
                 TracksColumns.MIN_ALTITUDE, TracksColumns.MAX_ALTITUDE, TracksColumns.ALTITUDE_GAIN,
-                TracksColumns.ALTITUDE_LOSS
+                TracksColumns.ALTITUDE_LOSS, TracksColumns.AVG_HEARTRATE, TracksColumns.MAX_HEARTRATE,
+                TracksColumns.AVG_CADENCE, TracksColumns.MAX_CADENCE, TracksColumns.AVG_POWER, TracksColumns.MAX_POWER
         };
         for (String column : columns) {
             columnIndices.put(column, cursor.getColumnIndexOrThrow(column));
@@ -271,7 +318,7 @@ public class ContentProviderUtils {
             selectionArgs = new String[] { "%" + searchQuery + "%", "%" + searchQuery + "%", "%" + searchQuery + "%" };
         }
 
-        return contentResolver.query(TracksColumns.CONTENT_URI, PROJECTION, selection, selectionArgs, sortOrder);
+        return query(TracksColumns.CONTENT_URI, PROJECTION, selection, selectionArgs, sortOrder);
     }
 
     public Track getTrack(Track.Id trackId) {
@@ -299,6 +346,42 @@ public class ContentProviderUtils {
         return null;
     }
 
+    /**
+     * The tracks with the same hash of the first TrackPoints are candidates; a candidate is only returned if its TrackPoints match (see {@link TrackFingerprint#matches(TrackFingerprint)}).
+     *
+     * @return the id of a track with the same content; null if there is none.
+     */
+    @Nullable
+    public Track.Id getTrackIdByFingerprint(@NonNull TrackFingerprint fingerprint) {
+        List<Track.Id> candidates = new ArrayList<>();
+        try (Cursor cursor = query(TracksColumns.CONTENT_URI, new String[]{TracksColumns._ID}, TracksColumns.FINGERPRINT + "=?", new String[]{Long.toString(fingerprint.get())}, null)) {
+            while (cursor != null && cursor.moveToNext()) {
+                candidates.add(new Track.Id(cursor.getLong(cursor.getColumnIndexOrThrow(TracksColumns._ID))));
+            }
+        }
+
+        for (Track.Id candidate : candidates) {
+            if (fingerprint.matches(getTrackFingerprint(candidate))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    @NonNull
+    private TrackFingerprint getTrackFingerprint(@NonNull Track.Id trackId) {
+        TrackFingerprint fingerprint = new TrackFingerprint();
+        String[] projection = {TrackPointsColumns.TIME, TrackPointsColumns.LATITUDE, TrackPointsColumns.LONGITUDE};
+        try (Cursor cursor = getTrackPointCursor(trackId, null, projection)) {
+            while (cursor != null && cursor.moveToNext()) {
+                if (!cursor.isNull(1) && !cursor.isNull(2)) {
+                    fingerprint.add(cursor.getLong(0), cursor.getInt(1), cursor.getInt(2));
+                }
+            }
+        }
+        return fingerprint;
+    }
+
     /**
      * Gets a track cursor.
      * The caller owns the returned cursor and is responsible for closing it.
@@ -308,7 +391,7 @@ public class ContentProviderUtils {
      * @param sortOrder     the sort order. Can be null
      */
     public Cursor getTrackCursor(String selection, String[] selectionArgs, String sortOrder) {
-        return contentResolver.query(TracksColumns.CONTENT_URI, null, selection, selectionArgs, sortOrder);
+        return query(TracksColumns.CONTENT_URI, null, selection, selectionArgs, sortOrder);
     }
 
     /**
@@ -323,6 +406,32 @@ public class ContentProviderUtils {
         return new Track.Id(ContentUris.parseId(uri));
     }
 
+    /**
+     * Inserts a track that is hidden from all track queries until {@link #finishImportingTrack(Track, Long)}.
+     * If the import does not finish (e.g., the process is killed), the track is deleted on the next start.
+     */
+    public Track.Id insertImportingTrack(Track track) {
+        ContentValues values = createContentValues(track);
+        values.put(TracksColumns.IMPORTING, 1);
+        Uri uri = contentResolver.insert(TracksColumns.CONTENT_URI, values);
+        return new Track.Id(ContentUris.parseId(uri));
+    }
+
+    /**
+     * Stores the imported track including its content fingerprint (if present) and makes it visible.
+     *
+     * @param track the track; its id is the id returned by {@link #insertImportingTrack(Track)}
+     */
+    public void finishImportingTrack(@NonNull Track track, @Nullable Long fingerprint) {
+        ContentValues values = createContentValues(track);
+        if (fingerprint != null) {
+            values.put(TracksColumns.FINGERPRINT, fingerprint);
+        }
+        values.putNull(TracksColumns.IMPORTING);
+        contentResolver.update(TracksColumns.CONTENT_URI, values, TracksColumns._ID + "=?",
+                new String[] { Long.toString(track.getId().id()) });
+    }
+
     /**
      * Updates a track.
      * NOTE: This doesn't update any trackPoints.
@@ -338,6 +447,37 @@ public class ContentProviderUtils {
         contentResolver.update(TracksColumns.CONTENT_URI, createContentValues(trackStatistics),
                 TracksColumns._ID + "=?", new String[] { Long.toString(trackId.id()) });
     }
+
+    /**
+     * Updates the statistics of multiple tracks in one transaction.
+     */
+    public void updateTrackStatistics(@NonNull Map<Track.Id, TrackStatistics> trackStatistics) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(trackStatistics.size());
+        for (Map.Entry<Track.Id, TrackStatistics> entry : trackStatistics.entrySet()) {
+            operations.add(ContentProviderOperation.newUpdate(TracksColumns.CONTENT_URI)
+                    .withValues(createContentValues(entry.getValue()))
+                    .withSelection(TracksColumns._ID + "=?", new String[] { Long.toString(entry.getKey().id()) })
+                    .build());
+        }
+        try {
+            contentResolver.applyBatch(AUTHORITY_PACKAGE, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            throw new RuntimeException("Could not update track statistics", e);
+        }
+    }
+
+    public List<Track.Id> getTrackIds() {
+        ArrayList<Track.Id> trackIds = new ArrayList<>();
+        try (Cursor cursor = query(TracksColumns.CONTENT_URI, new String[] { TracksColumns._ID }, null, null, TracksColumns._ID)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                trackIds.ensureCapacity(cursor.getCount());
+                do {
+                    trackIds.add(new Track.Id(cursor.getLong(0)));
+                } while (cursor.moveToNext());
+            }
+        }
+        return trackIds;
+    }
     // private void populateTrackStatistics(ContentValues values, TrackStatistics
     // trackStatistics) {
     // if (trackStatistics.getStartTime() != null) {
@@ -410,6 +550,13 @@ public class ContentProviderUtils {
         values.put(TracksColumns.MAX_ALTITUDE, trackStatistics.getMaxAltitude());
         values.put(TracksColumns.ALTITUDE_GAIN, trackStatistics.getTotalAltitudeGain());
         values.put(TracksColumns.ALTITUDE_LOSS, trackStatistics.getTotalAltitudeLoss());
+        SensorStatistics sensorStatistics = trackStatistics.getSensorStatistics();
+        values.put(TracksColumns.AVG_HEARTRATE, sensorStatistics != null && sensorStatistics.avgHeartRate() != null ? sensorStatistics.avgHeartRate().getBPM() : null);
+        values.put(TracksColumns.MAX_HEARTRATE, sensorStatistics != null && sensorStatistics.maxHeartRate() != null ? sensorStatistics.maxHeartRate().getBPM() : null);
+        values.put(TracksColumns.AVG_CADENCE, sensorStatistics != null && sensorStatistics.avgCadence() != null ? sensorStatistics.avgCadence().getRPM() : null);
+        values.put(TracksColumns.MAX_CADENCE, sensorStatistics != null && sensorStatistics.maxCadence() != null ? sensorStatistics.maxCadence().getRPM() : null);
+        values.put(TracksColumns.AVG_POWER, sensorStatistics != null && sensorStatistics.avgPower() != null ? sensorStatistics.avgPower().getW() : null);
+        values.put(TracksColumns.MAX_POWER, sensorStatistics != null && sensorStatistics.maxPower() != null ? sensorStatistics.maxPower().getW() : null);
         // populateTrackStatistics(values, trackStatistics);
         return values;
     }
@@ -613,7 +760,7 @@ public class ContentProviderUtils {
         if (maxCount >= 0) {
             sortOrder += " LIMIT " + maxCount;
         }
-        return contentResolver.query(MarkerColumns.CONTENT_URI, projection, selection, selectionArgs, sortOrder);
+        return query(MarkerColumns.CONTENT_URI, projection, selection, selectionArgs, sortOrder);
     }
 
     public List<Marker> searchMarkers(Track.Id trackId, String query) {
@@ -647,6 +794,7 @@ public class ContentProviderUtils {
 
     /**
      * Fills a {@link TrackPoint} from a cursor.
+     * The projection must contain at least {@link TrackPointsColumns#TIME} and {@link TrackPointsColumns#TYPE}; other columns are optional.
      *
      * @param cursor  the cursor pointing to a trackPoint.
      * @param indexes the cached trackPoints indexes
@@ -654,47 +802,49 @@ public class ContentProviderUtils {
     static TrackPoint fillTrackPoint(Cursor cursor, CachedTrackPointsIndexes indexes) {
         Instant time = Instant.ofEpochMilli(cursor.getLong(indexes.timeIndex));
         TrackPoint trackPoint = new TrackPoint(TrackPoint.Type.getById(cursor.getInt(indexes.typeIndex)), time);
-        trackPoint.setId(new TrackPoint.Id(cursor.getInt(indexes.idIndex)));
+        if (indexes.idIndex >= 0) {
+            trackPoint.setId(new TrackPoint.Id(cursor.getInt(indexes.idIndex)));
+        }
 
-        if (!cursor.isNull(indexes.longitudeIndex)) {
+        if (CachedTrackPointsIndexes.hasValue(cursor, indexes.longitudeIndex)) {
             trackPoint.setLongitude(((double) cursor.getInt(indexes.longitudeIndex)) / 1E6);
         }
-        if (!cursor.isNull(indexes.latitudeIndex)) {
+        if (CachedTrackPointsIndexes.hasValue(cursor, indexes.latitudeIndex)) {
             trackPoint.setLatitude(((double) cursor.getInt(indexes.latitudeIndex)) / 1E6);
         }
-        if (!cursor.isNull(indexes.altitudeIndex)) {
+        if (CachedTrackPointsIndexes.hasValue(cursor, indexes.altitudeIndex)) {
             trackPoint.setAltitude(Altitude.WGS84.of(cursor.getFloat(indexes.altitudeIndex)));
         }
-        if (!cursor.isNull(indexes.accuracyIndex)) {
+        if (CachedTrackPointsIndexes.hasValue(cursor, indexes.accuracyIndex)) {
             trackPoint.setHorizontalAccuracy(Distance.of(cursor.getFloat(indexes.accuracyIndex)));
         }
-        if (!cursor.isNull(indexes.accuracyVerticalIndex)) {
+        if (CachedTrackPointsIndexes.hasValue(cursor, indexes.accuracyVerticalIndex)) {
             trackPoint.setVerticalAccuracy(Distance.of(cursor.getFloat(indexes.accuracyVerticalIndex)));
         }
-        if (!cursor.isNull(indexes.speedIndex)) {
+        if (CachedTrackPointsIndexes.hasValue(cursor, indexes.speedIndex)) {
             trackPoint.setSpeed(Speed.of(cursor.getFloat(indexes.speedIndex)));
         }
-        if (!cursor.isNull(indexes.bearingIndex)) {
+        if (CachedTrackPointsIndexes.hasValue(cursor, indexes.bearingIndex)) {
             trackPoint.setBearing(cursor.getFloat(indexes.bearingIndex));
         }
 
-        if (!cursor.isNull(indexes.sensorHeartRateIndex)) {
+        if (CachedTrackPointsIndexes.hasValue(cursor, indexes.sensorHeartRateIndex)) {
             trackPoint.setHeartRate(cursor.getFloat(indexes.sensorHeartRateIndex));
         }
-        if (!cursor.isNull(indexes.sensorCadenceIndex)) {
+        if (CachedTrackPointsIndexes.hasValue(cursor, indexes.sensorCadenceIndex)) {
             trackPoint.setCadence(cursor.getFloat(indexes.sensorCadenceIndex));
         }
-        if (!cursor.isNull(indexes.sensorDistanceIndex)) {
+        if (CachedTrackPointsIndexes.hasValue(cursor, indexes.sensorDistanceIndex)) {
             trackPoint.setSensorDistance(Distance.of(cursor.getFloat(indexes.sensorDistanceIndex)));
         }
-        if (!cursor.isNull(indexes.sensorPowerIndex)) {
+        if (CachedTrackPointsIndexes.hasValue(cursor, indexes.sensorPowerIndex)) {
             trackPoint.setPower(cursor.getFloat(indexes.sensorPowerIndex));
         }
 
-        if (!cursor.isNull(indexes.altitudeGainIndex)) {
+        if (CachedTrackPointsIndexes.hasValue(cursor, indexes.altitudeGainIndex)) {
             trackPoint.setAltitudeGain(cursor.getFloat(indexes.altitudeGainIndex));
         }
-        if (!cursor.isNull(indexes.altitudeLossIndex)) {
+        if (CachedTrackPointsIndexes.hasValue(cursor, indexes.altitudeLossIndex)) {
             trackPoint.setAltitudeLoss(cursor.getFloat(indexes.altitudeLossIndex));
         }
 
@@ -786,6 +936,36 @@ public class ContentProviderUtils {
      */
     @NonNull
     public Cursor getTrackPointCursor(@NonNull Track.Id trackId, TrackPoint.Id startTrackPointId) {
+        return getTrackPointCursor(trackId, startTrackPointId, null);
+    }
+
+    /**
+     * Creates a read-only view on the TrackPoints of a track that reads only the given columns.
+     * The caller owns the returned view and is responsible for closing it.
+     *
+     * @param trackId           the track id
+     * @param startTrackPointId the starting trackPoint id. `null` to ignore
+     * @param projection        the columns to read (see {@link TrackPointCursor#PROJECTION_LOCATION}); `null` for all.
+     */
+    @NonNull
+    public TrackPointCursor getTrackPointCursorView(@NonNull Track.Id trackId, @Nullable TrackPoint.Id startTrackPointId, @Nullable String[] projection) {
+        return new TrackPointCursor(getTrackPointCursor(trackId, startTrackPointId, projection));
+    }
+
+    /**
+     * Creates a read-only view on all TrackPoints of a track ordered by time; TrackPoints with the same time keep their insertion order.
+     * Uses the (trackid, time) index, so no sorting is needed.
+     * The caller owns the returned view and is responsible for closing it.
+     *
+     * @param trackId the track id
+     */
+    @NonNull
+    public TrackPointCursor getTrackPointCursorViewOrderedByTime(@NonNull Track.Id trackId) {
+        return new TrackPointCursor(getTrackPointCursor(null, TrackPointsColumns.TRACKID + "=?", new String[] { Long.toString(trackId.id()) },
+                TRACKPOINTS_ORDER_BY_TIME));
+    }
+
+    private Cursor getTrackPointCursor(@NonNull Track.Id trackId, TrackPoint.Id startTrackPointId, @Nullable String[] projection) {
         String selection;
         String[] selectionArgs;
         if (startTrackPointId != null) {
@@ -796,7 +976,7 @@ public class ContentProviderUtils {
             selectionArgs = new String[] { Long.toString(trackId.id()) };
         }
 
-        return getTrackPointCursor(null, selection, selectionArgs, TrackPointsColumns.DEFAULT_SORT_ORDER);
+        return getTrackPointCursor(projection, selection, selectionArgs, TrackPointsColumns.DEFAULT_SORT_ORDER);
     }
 
     /**
@@ -887,15 +1067,44 @@ public class ContentProviderUtils {
      * Each call to {@link TrackPointIterator#next()} may advance to the next DB
      * record.
      * When done with iteration, {@link TrackPointIterator#close()} must be called.
+     * The TrackPoints are served from the {@link DecodedTrackCache} (if available and the track is not too large for it).
+     * For readers that read a track only once, use {@link #getUncachedTrackPointIterator(Track.Id, TrackPoint.Id)}.
      *
      * @param trackId           the track id
      * @param startTrackPointId the starting trackPoint id. `null` to ignore
      */
     public TrackPointIterator getTrackPointLocationIterator(final Track.Id trackId,
             final TrackPoint.Id startTrackPointId) {
+        if (decodedTrackCache != null) {
+            DecodedTrack decodedTrack = decodedTrackCache.get(this, trackId);
+            if (decodedTrack != null) {
+                return new TrackPointIterator(decodedTrack, startTrackPointId);
+            }
+        }
+        return getUncachedTrackPointIterator(trackId, startTrackPointId);
+    }
+
+    /**
+     * Creates a new read-only iterator over a given track's points that reads the cursor.
+     * For readers that read a track only once (e.g., export and backup): neither uses nor fills the {@link DecodedTrackCache}, so it does not evict the tracks being viewed.
+     * When done with iteration, {@link TrackPointIterator#close()} must be called.
+     *
+     * @param trackId           the track id
+     * @param startTrackPointId the starting trackPoint id. `null` to ignore
+     */
+    public TrackPointIterator getUncachedTrackPointIterator(@NonNull Track.Id trackId, @Nullable TrackPoint.Id startTrackPointId) {
         return new TrackPointIterator(this, trackId, startTrackPointId);
     }
 
+    /**
+     * @return the number of TrackPoints of the track; only reads the ids.
+     */
+    int getTrackPointCount(@NonNull Track.Id trackId) {
+        try (Cursor cursor = getTrackPointCursor(trackId, null, new String[]{TrackPointsColumns._ID})) {
+            return cursor != null ? cursor.getCount() : 0;
+        }
+    }
+
     @Deprecated
     private TrackPoint findTrackPointBy(String selection, String[] selectionArgs) {
         try (Cursor cursor = getTrackPointCursor(null, selection, selectionArgs, TrackPointsColumns._ID)) {
@@ -916,10 +1125,46 @@ public class ContentProviderUtils {
      */
     private Cursor getTrackPointCursor(String[] projection, String selection, String[] selectionArgs,
             String sortOrder) {
-        return contentResolver.query(TrackPointsColumns.CONTENT_URI_BY_ID, projection, selection, selectionArgs,
+        return query(TrackPointsColumns.CONTENT_URI_BY_ID, projection, selection, selectionArgs,
                 sortOrder);
     }
 
+    /**
+     * Gets the buckets of the finest level-of-detail of a track with at most maxBuckets buckets.
+     * If all stored levels have more buckets (segment boundaries close buckets early), the coarsest level is used.
+     * The caller owns the returned cursor and is responsible for closing it.
+     *
+     * @param trackId    the track id
+     * @param maxBuckets the maximal number of buckets
+     */
+    public Cursor getTrackPointsLodCursor(@NonNull Track.Id trackId, int maxBuckets) {
+        String selection = TrackPointsLodColumns.TRACKID + "=? AND " + TrackPointsLodColumns.LEVEL + "=COALESCE("
+                + "(SELECT MIN(" + TrackPointsLodColumns.LEVEL + ") FROM " + TrackPointsLodColumns.TABLE_NAME + WHERE + TrackPointsLodColumns.TRACKID + "=? AND " + TrackPointsLodColumns.BUCKETS + "<=?), "
+                + "(SELECT MAX(" + TrackPointsLodColumns.LEVEL + ") FROM " + TrackPointsLodColumns.TABLE_NAME + WHERE + TrackPointsLodColumns.TRACKID + "=?))";
+        String[] selectionArgs = new String[] { Long.toString(trackId.id()), Long.toString(trackId.id()), Integer.toString(maxBuckets), Long.toString(trackId.id()) };
+        return query(TrackPointsLodColumns.CONTENT_URI, null, selection, selectionArgs, TrackPointsLodColumns.DEFAULT_SORT_ORDER);
+    }
+
+    /**
+     * Replaces all buckets of a track's level-of-detail in one transaction.
+     */
+    public void replaceTrackPointsLod(@NonNull Track.Id trackId, @NonNull List<ContentValues> values) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(values.size() + 1);
+        operations.add(ContentProviderOperation.newDelete(TrackPointsLodColumns.CONTENT_URI)
+                .withSelection(TrackPointsLodColumns.TRACKID + "=?", new String[] { Long.toString(trackId.id()) })
+                .build());
+        for (ContentValues value : values) {
+            operations.add(ContentProviderOperation.newInsert(TrackPointsLodColumns.CONTENT_URI)
+                    .withValues(value)
+                    .build());
+        }
+        try {
+            contentResolver.applyBatch(AUTHORITY_PACKAGE, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            throw new RuntimeException("Could not replace level-of-detail of track " + trackId.id(), e);
+        }
+    }
+
     public static String formatIdListForUri(Track.Id... trackIds) {
         long[] ids = new long[trackIds.length];
         for (int i = 0; i < trackIds.length; i++) {
@@ -950,11 +1195,89 @@ public class ContentProviderUtils {
         return TextUtils.split(url.getLastPathSegment(), ID_SEPARATOR);
     }
 
+    /**
+     * URI notified by {@link CustomContentProvider} if the track is changed; to observe only this track.
+     */
+    public static Uri getTrackUri(@NonNull Track.Id trackId) {
+        return ContentUris.withAppendedId(TracksColumns.CONTENT_URI, trackId.id());
+    }
+
+    /**
+     * URI notified by {@link CustomContentProvider} if TrackPoints of the track are changed; to observe only this track.
+     * For inserted TrackPoints, the notified URI contains the range of their ids (see {@link #parseFirstInsertedTrackPointId(Uri)}).
+     */
+    public static Uri getTrackPointsUri(@NonNull Track.Id trackId) {
+        return ContentUris.withAppendedId(TrackPointsColumns.CONTENT_URI_BY_TRACKID, trackId.id());
+    }
+
+    /**
+     * URI notified by {@link CustomContentProvider} if Markers of the track are changed; to observe only this track.
+     */
+    public static Uri getMarkersUri(@NonNull Track.Id trackId) {
+        return ContentUris.withAppendedId(MarkerColumns.CONTENT_URI_BY_TRACKID, trackId.id());
+    }
+
+    static Uri getTrackPointsInsertedUri(@NonNull Track.Id trackId, @NonNull TrackPoint.Id firstTrackPointId, @NonNull TrackPoint.Id lastTrackPointId) {
+        return getTrackPointsUri(trackId).buildUpon()
+                .appendQueryParameter(URI_PARAMETER_FIRST_TRACKPOINT_ID, Long.toString(firstTrackPointId.id()))
+                .appendQueryParameter(URI_PARAMETER_LAST_TRACKPOINT_ID, Long.toString(lastTrackPointId.id()))
+                .build();
+    }
+
+    /**
+     * @return the id of the first inserted TrackPoint or null if the notified change was not an insert.
+     */
+    @Nullable
+    public static TrackPoint.Id parseFirstInsertedTrackPointId(@Nullable Uri url) {
+        return parseTrackPointIdParameter(url, URI_PARAMETER_FIRST_TRACKPOINT_ID);
+    }
+
+    /**
+     * @return the id of the last inserted TrackPoint or null if the notified change was not an insert.
+     */
+    @Nullable
+    public static TrackPoint.Id parseLastInsertedTrackPointId(@Nullable Uri url) {
+        return parseTrackPointIdParameter(url, URI_PARAMETER_LAST_TRACKPOINT_ID);
+    }
+
+    @Nullable
+    private static TrackPoint.Id parseTrackPointIdParameter(@Nullable Uri url, String parameter) {
+        if (url == null || url.isOpaque()) {
+            return null;
+        }
+        String value = url.getQueryParameter(parameter);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new TrackPoint.Id(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid TrackPoint id in " + url);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the sensor statistics that are stored with the track (maintained while recording / importing).
+     * If none are stored (e.g., the track has no sensor data), they are computed from the TrackPoints.
+     *
+     * @return null if the track does not exist.
+     */
+    @Nullable
     public SensorStatistics getSensorStats(@NonNull Track.Id trackId) {
-        SensorStatistics sensorStatistics = null;
-        try (Cursor cursor = contentResolver.query(
-                ContentUris.withAppendedId(TracksColumns.CONTENT_URI_SENSOR_STATS, trackId.id()), null, null, null,
-                null)) {
+        Track track = getTrack(trackId);
+        if (track == null) {
+            return null;
+        }
+        SensorStatistics sensorStatistics = track.getTrackStatistics().getSensorStatistics();
+        return sensorStatistics != null ? sensorStatistics : getSensorStatsFromTrackPoints(trackId);
+    }
+
+    /**
+     * Computes the sensor statistics from all TrackPoints of the track (full scan).
+     */
+    private SensorStatistics getSensorStatsFromTrackPoints(@NonNull Track.Id trackId) {
+        try (Cursor cursor = query(ContentUris.withAppendedId(TracksColumns.CONTENT_URI_SENSOR_STATS, trackId.id()), null, null, null, null)) {
             if (cursor != null && cursor.moveToFirst()) {
                 final int MAX_HR_INDEX = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALIAS_MAX_HR);
                 final int AVG_HR_INDEX = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALIAS_AVG_HR);
@@ -962,7 +1285,7 @@ public class ContentProviderUtils {
                 final int AVG_CADENCE_INDEX = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALIAS_AVG_CADENCE);
                 final int MAX_POWER_INDEX = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALIAS_MAX_POWER);
                 final int AVG_POWER_INDEX = cursor.getColumnIndexOrThrow(TrackPointsColumns.ALIAS_AVG_POWER);
-                sensorStatistics = new SensorStatistics(
+                return new SensorStatistics(
                         !cursor.isNull(MAX_HR_INDEX) ? HeartRate.of(cursor.getFloat(MAX_HR_INDEX)) : null,
                         !cursor.isNull(AVG_HR_INDEX) ? HeartRate.of(cursor.getFloat(AVG_HR_INDEX)) : null,
                         !cursor.isNull(MAX_CADENCE_INDEX) ? Cadence.of(cursor.getFloat(MAX_CADENCE_INDEX)) : null,
@@ -970,8 +1293,7 @@ public class ContentProviderUtils {
                         !cursor.isNull(MAX_POWER_INDEX) ? Power.of(cursor.getFloat(MAX_POWER_INDEX)) : null,
                         !cursor.isNull(AVG_POWER_INDEX) ? Power.of(cursor.getFloat(AVG_POWER_INDEX)) : null);
             }
-
         }
-        return sensorStatistics;
+        return null;
     }
 }
\ No newline at end of file
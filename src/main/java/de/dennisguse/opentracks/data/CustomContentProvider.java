@@ -18,9 +18,13 @@
 package de.dennisguse.opentracks.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.SQLException;
@@ -32,25 +36,37 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.data.models.TrackPoint;
 import de.dennisguse.opentracks.data.tables.MarkerColumns;
 import de.dennisguse.opentracks.data.tables.TrackPointsColumns;
+import de.dennisguse.opentracks.data.tables.TrackPointsLodColumns;
 import de.dennisguse.opentracks.data.tables.TracksColumns;
 import de.dennisguse.opentracks.settings.PreferencesUtils;
 
 /**
- * A {@link ContentProvider} that handles access to track points, tracks, and markers tables.
+ * A {@link ContentProvider} that handles access to track points, tracks, markers, and track points level-of-detail tables.
  * <p>
  * Data consistency is enforced using Foreign Key Constraints within the database incl. cascading deletes.
  *
@@ -68,6 +84,12 @@ public class CustomContentProvider extends ContentProvider {
 
     private SQLiteDatabase db;
 
+    // Changes of the batch running on this thread (see applyBatch()).
+    private final ThreadLocal<PendingChanges> pendingChanges = new ThreadLocal<>();
+
+    // Modification stamps by track ids (see getModificationStamp()); replaced on every change.
+    private volatile Map<Set<Track.Id>, Long> modificationStamps = new ConcurrentHashMap<>();
+
     private static final String TIME_SELECT_CLAUSE = ", (SELECT time_value FROM time_select)), t.";
 
     private static final String COALESCE_MAX = " * (COALESCE(MAX(t.";
@@ -79,7 +101,8 @@ public class CustomContentProvider extends ContentProvider {
      * It computes the average for heart rate, cadence and power (duration-based average) and the maximum for heart rate, cadence and power.
      * Finally, it ignores manual pause (SEGMENT_START_MANUAL).
      */
-    private final String SENSOR_STATS_QUERY =
+    @VisibleForTesting
+    static final String SENSOR_STATS_QUERY =
             "WITH time_select as " +
                     "(SELECT t1." + TrackPointsColumns.TIME + " * (t1." + TrackPointsColumns.TYPE + " NOT IN (" + TrackPoint.Type.SEGMENT_START_MANUAL.type_db + ")) time_value " +
                     "FROM " + TrackPointsColumns.TABLE_NAME + " t1 " +
@@ -121,6 +144,7 @@ public class CustomContentProvider extends ContentProvider {
         uriMatcher.addURI(ContentProviderUtils.getAuthorityPackage(), MarkerColumns.CONTENT_URI.getPath(), UrlType.MARKERS.ordinal());
         uriMatcher.addURI(ContentProviderUtils.getAuthorityPackage(), MarkerColumns.CONTENT_URI.getPath() + "/#", UrlType.MARKERS_BY_ID.ordinal());
         uriMatcher.addURI(ContentProviderUtils.getAuthorityPackage(), MarkerColumns.CONTENT_URI_BY_TRACKID.getPath() + "/*", UrlType.MARKERS_BY_TRACKID.ordinal());
+        uriMatcher.addURI(ContentProviderUtils.getAuthorityPackage(), TrackPointsLodColumns.CONTENT_URI.getPath(), UrlType.TRACKPOINTS_LOD.ordinal());
     }
 
     @Override
@@ -141,6 +165,8 @@ public class CustomContentProvider extends ContentProvider {
             db = databaseHelper.getWritableDatabase();
             // Necessary to enable cascade deletion from Track to TrackPoints and Markers
             db.setForeignKeyConstraintsEnabled(true);
+            // Imports that did not finish (e.g., the process was killed); no import is running yet.
+            db.delete(TracksColumns.TABLE_NAME, TracksColumns.IMPORTING + "=1", null);
         } catch (SQLiteException e) {
             Log.e(TAG, "Unable to open database for writing.", e);
         }
@@ -153,6 +179,7 @@ public class CustomContentProvider extends ContentProvider {
             case TRACKPOINTS -> TrackPointsColumns.TABLE_NAME;
             case TRACKS -> TracksColumns.TABLE_NAME;
             case MARKERS -> MarkerColumns.TABLE_NAME;
+            case TRACKPOINTS_LOD -> TrackPointsLodColumns.TABLE_NAME;
             default -> throw new IllegalArgumentException("Unknown URL " + url);
         };
 
@@ -160,15 +187,26 @@ public class CustomContentProvider extends ContentProvider {
 
         int totalChangesBefore = getTotalChanges();
         int deletedRowsFromTable;
+        Set<Track.Id> trackIds;
         try {
             db.beginTransaction();
-            deletedRowsFromTable = db.delete(table, sanitizeWhereClause(where), getSafeSelectionArgs(selectionArgs));
+            String safeWhere = sanitizeWhereClause(where);
+            String[] safeSelectionArgs = getSafeSelectionArgs(selectionArgs);
+            trackIds = queryTrackIds(table, safeWhere, safeSelectionArgs);
+            deletedRowsFromTable = db.delete(table, safeWhere, safeSelectionArgs);
             Log.i(TAG, "Deleted " + deletedRowsFromTable + " rows of table " + table);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
-        getContext().getContentResolver().notifyChange(url, null, false);
+        if (table.equals(TrackPointsColumns.TABLE_NAME) || table.equals(TracksColumns.TABLE_NAME)) {
+            invalidateCache(() -> DecodedTrackCache.getInstance().remove(trackIds));
+        }
+        if (table.equals(TracksColumns.TABLE_NAME)) {
+            // Do not keep shared exports of deleted tracks.
+            invalidateCache(() -> ExportCache.getInstance(getContext()).remove(trackIds));
+        }
+        notifyChange(url, table, trackIds);
 
         int totalChanges = getTotalChanges() - totalChangesBefore;
         Log.i(TAG, "Deleted " + totalChanges + " total rows from database");
@@ -215,6 +253,7 @@ public class CustomContentProvider extends ContentProvider {
             case TRACKS_BY_ID -> TracksColumns.CONTENT_ITEMTYPE;
             case MARKERS -> MarkerColumns.CONTENT_TYPE;
             case MARKERS_BY_ID, MARKERS_BY_TRACKID -> MarkerColumns.CONTENT_ITEMTYPE;
+            case TRACKPOINTS_LOD -> TrackPointsLodColumns.CONTENT_TYPE;
             default -> throw new IllegalArgumentException("Unknown URL " + url);
         };
     }
@@ -224,41 +263,118 @@ public class CustomContentProvider extends ContentProvider {
         if (initialValues == null) {
             initialValues = new ContentValues();
         }
+        UrlType urlType = getUrlType(url);
+        Map<Track.Id, long[]> insertedIds = new HashMap<>();
         Uri result;
         try {
             db.beginTransaction();
-            result = insertContentValues(url, getUrlType(url), initialValues);
+            result = insertContentValues(url, urlType, initialValues);
+            addInsertedId(insertedIds, urlType, initialValues, result);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
-        getContext().getContentResolver().notifyChange(url, null, false);
+        notifyInserted(url, urlType, insertedIds);
         return result;
     }
 
     @Override
     public int bulkInsert(@NonNull Uri url, @NonNull ContentValues[] valuesBulk) {
+        UrlType urlType = getUrlType(url);
+        Map<Track.Id, long[]> insertedIds = new HashMap<>();
         int numInserted;
         try {
             // Use a transaction in order to make the insertions run as a single batch
             db.beginTransaction();
 
-            UrlType urlType = getUrlType(url);
             for (numInserted = 0; numInserted < valuesBulk.length; numInserted++) {
                 ContentValues contentValues = valuesBulk[numInserted];
                 if (contentValues == null) {
                     contentValues = new ContentValues();
                 }
-                insertContentValues(url, urlType, contentValues);
+                Uri result = insertContentValues(url, urlType, contentValues);
+                addInsertedId(insertedIds, urlType, contentValues, result);
             }
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
-        getContext().getContentResolver().notifyChange(url, null, false);
+        notifyInserted(url, urlType, insertedIds);
         return numInserted;
     }
 
+    /**
+     * The changes of the operations are only notified (and the caches invalidated) after the batch was committed; nothing is notified if it is rolled back.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+        if (pendingChanges.get() != null) {
+            // Nested: part of the outer batch.
+            return super.applyBatch(operations);
+        }
+
+        PendingChanges changes = new PendingChanges();
+        ContentProviderResult[] results;
+        pendingChanges.set(changes);
+        try {
+            // Use a transaction in order to make the operations run as a single batch
+            db.beginTransaction();
+            try {
+                results = super.applyBatch(operations);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            pendingChanges.remove();
+        }
+
+        changes.commit(getContext().getContentResolver());
+        return results;
+    }
+
+    /**
+     * Changes of a running {@link #applyBatch(ArrayList)}; cache invalidations and then notifications.
+     */
+    private static class PendingChanges {
+        private final List<Runnable> cacheInvalidations = new ArrayList<>();
+        private final Set<Uri> notifications = new LinkedHashSet<>();
+
+        private void commit(ContentResolver contentResolver) {
+            cacheInvalidations.forEach(Runnable::run);
+            for (Uri uri : notifications) {
+                contentResolver.notifyChange(uri, null, false);
+            }
+        }
+    }
+
+    /**
+     * Invalidates a cache now or, while a batch is running on this thread, after it was committed.
+     * Must be called before the change is notified.
+     */
+    private void invalidateCache(@NonNull Runnable invalidation) {
+        PendingChanges changes = pendingChanges.get();
+        if (changes != null) {
+            changes.cacheInvalidations.add(invalidation);
+        } else {
+            invalidation.run();
+        }
+    }
+
+    /**
+     * Notifies observers of the uri now or, while a batch is running on this thread, after it was committed.
+     */
+    private void notifyChange(@NonNull Uri uri) {
+        invalidateCache(() -> modificationStamps = new ConcurrentHashMap<>());
+        PendingChanges changes = pendingChanges.get();
+        if (changes != null) {
+            changes.notifications.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null, false);
+        }
+    }
+
     private String[] validateProjection(String[] projection, String tableName) {
         if (projection == null) {
             return null;
@@ -276,6 +392,9 @@ public class CustomContentProvider extends ContentProvider {
             case MarkerColumns.TABLE_NAME:
                 allowedColumns = new HashSet<>(Arrays.asList(MarkerColumns.ALL_COLUMNS));
                 break;
+            case TrackPointsLodColumns.TABLE_NAME:
+                allowedColumns = new HashSet<>(Arrays.asList(TrackPointsLodColumns.ALL_COLUMNS));
+                break;
             default:
                 throw new IllegalArgumentException("Unknown table: " + tableName);
         }
@@ -441,6 +560,8 @@ public class CustomContentProvider extends ContentProvider {
                 } else {
                     queryBuilder.setTables(TracksColumns.TABLE_NAME);
                 }
+                // Tracks are hidden while being imported.
+                queryBuilder.appendWhere(TracksColumns.IMPORTING + " IS NULL");
                 sortOrder = sort != null ? validateSortOrder(sort, TrackPointsColumns.ALL_COLUMNS) : TracksColumns.DEFAULT_SORT_ORDER;
                 break;
             }
@@ -479,6 +600,11 @@ public class CustomContentProvider extends ContentProvider {
                 }
                 break;
             }
+            case TRACKPOINTS_LOD: {
+                queryBuilder.setTables(TrackPointsLodColumns.TABLE_NAME);
+                sortOrder = sort != null ? validateSortOrder(sort, TrackPointsLodColumns.ALL_COLUMNS) : TrackPointsLodColumns.DEFAULT_SORT_ORDER;
+                break;
+            }
             default:
                 throw new IllegalArgumentException("Unknown url " + url);
         }
@@ -490,6 +616,59 @@ public class CustomContentProvider extends ContentProvider {
         return cursor;
     }
 
+    /**
+     * Stamp of the content of the given tracks incl. their TrackPoints and Markers; changes if any of them is modified.
+     * TrackPoints are only appended (or deleted with their track), so their number and highest id represent them.
+     * It is computed once until the next change (e.g., for the size and the content of one share request).
+     */
+    long getModificationStamp(@NonNull Set<Track.Id> trackIds) {
+        // A stamp computed while a change is committed is stored in the replaced map, so it is not reused.
+        Map<Set<Track.Id>, Long> stamps = modificationStamps;
+        Long stamp = stamps.get(trackIds);
+        if (stamp == null) {
+            stamp = computeModificationStamp(trackIds);
+            stamps.put(Set.copyOf(trackIds), stamp);
+        }
+        return stamp;
+    }
+
+    private long computeModificationStamp(@NonNull Set<Track.Id> trackIds) {
+        String[] selectionArgs = trackIds.stream().sorted(Comparator.comparingLong(Track.Id::id)).map(trackId -> String.valueOf(trackId.id())).toArray(String[]::new);
+        String placeholders = TextUtils.join(SQL_LIST_DELIMITER, Collections.nCopies(selectionArgs.length, "?"));
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        digest.update(TextUtils.join(SQL_LIST_DELIMITER, selectionArgs).getBytes(StandardCharsets.UTF_8));
+
+        updateDigest(digest, "SELECT * FROM " + TracksColumns.TABLE_NAME + " WHERE " + TracksColumns._ID + " IN (" + placeholders + ") ORDER BY " + TracksColumns._ID, selectionArgs);
+        updateDigest(digest, "SELECT COUNT(*), MAX(" + TrackPointsColumns._ID + ") FROM " + TrackPointsColumns.TABLE_NAME + " WHERE " + TrackPointsColumns.TRACKID + " IN (" + placeholders + ")", selectionArgs);
+        updateDigest(digest, "SELECT * FROM " + MarkerColumns.TABLE_NAME + " WHERE " + MarkerColumns.TRACKID + " IN (" + placeholders + ") ORDER BY " + MarkerColumns._ID, selectionArgs);
+
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    private void updateDigest(MessageDigest digest, String sql, String[] selectionArgs) {
+        try (Cursor cursor = db.rawQuery(sql, selectionArgs)) {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    switch (cursor.getType(i)) {
+                        case Cursor.FIELD_TYPE_NULL -> digest.update((byte) 0);
+                        case Cursor.FIELD_TYPE_INTEGER -> digest.update(ByteBuffer.allocate(Long.BYTES).putLong(cursor.getLong(i)).array());
+                        case Cursor.FIELD_TYPE_FLOAT -> digest.update(ByteBuffer.allocate(Double.BYTES).putDouble(cursor.getDouble(i)).array());
+                        case Cursor.FIELD_TYPE_BLOB -> digest.update(cursor.getBlob(i));
+                        default -> digest.update(cursor.getString(i).getBytes(StandardCharsets.UTF_8));
+                    }
+                    // Separator: adjacent values must not be ambiguous.
+                    digest.update((byte) 0x1F);
+                }
+            }
+        }
+    }
+
     @Override
     public int update(@NonNull Uri url, ContentValues values, String where, String[] selectionArgs) {
         String table;
@@ -519,20 +698,118 @@ public class CustomContentProvider extends ContentProvider {
         }
         qb.setTables(table);
         int count;
+        Set<Track.Id> trackIds;
 
         try {
             db.beginTransaction();
 
+            trackIds = queryTrackIds(table, whereClause, selectionArgs);
             count = safeUpdate(db, qb.getTables(), values, whereClause, selectionArgs);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
 
-        getContext().getContentResolver().notifyChange(url, null, false);
+        if (table.equals(TrackPointsColumns.TABLE_NAME)) {
+            invalidateCache(() -> DecodedTrackCache.getInstance().remove(trackIds));
+        }
+        notifyChange(url, table, trackIds);
         return count;
     }
 
+    /**
+     * Tracks of the rows selected by where; to be called before these rows are changed.
+     *
+     * @return null if all tracks may be affected.
+     */
+    @Nullable
+    private Set<Track.Id> queryTrackIds(@NonNull String table, String where, String[] selectionArgs) {
+        String trackIdColumn = switch (table) {
+            case TracksColumns.TABLE_NAME -> TracksColumns._ID;
+            case TrackPointsColumns.TABLE_NAME -> TrackPointsColumns.TRACKID;
+            case MarkerColumns.TABLE_NAME -> MarkerColumns.TRACKID;
+            default -> null;
+        };
+        if (trackIdColumn == null || where == null) {
+            return null;
+        }
+
+        Set<Track.Id> trackIds = new HashSet<>();
+        try (Cursor cursor = db.query(true, table, new String[]{trackIdColumn}, where, selectionArgs, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                trackIds.add(new Track.Id(cursor.getLong(0)));
+            }
+        }
+        return trackIds;
+    }
+
+    /**
+     * Notifies the change only for the changed tracks (e.g., {@link ContentProviderUtils#getTrackPointsUri(Track.Id)}), so observers of other tracks are not notified.
+     * Observers of the table that also observe descendant URIs (like Cursors) are still notified.
+     *
+     * @param trackIds the changed tracks; null notifies the url and thus all observers of the table.
+     */
+    private void notifyChange(@NonNull Uri url, @NonNull String table, @Nullable Set<Track.Id> trackIds) {
+        if (trackIds == null) {
+            notifyChange(url);
+            return;
+        }
+        for (Track.Id trackId : trackIds) {
+            Uri trackUri = switch (table) {
+                case TracksColumns.TABLE_NAME -> ContentProviderUtils.getTrackUri(trackId);
+                case TrackPointsColumns.TABLE_NAME -> ContentProviderUtils.getTrackPointsUri(trackId);
+                case MarkerColumns.TABLE_NAME -> ContentProviderUtils.getMarkersUri(trackId);
+                default -> url;
+            };
+            notifyChange(trackUri);
+        }
+    }
+
+    /**
+     * Like {@link #notifyChange(Uri, String, Set)}, but for inserted TrackPoints the notified URI also contains the range of their ids.
+     *
+     * @param insertedIds the first and last inserted id per track (null key: unknown track).
+     */
+    private void notifyInserted(@NonNull Uri url, @NonNull UrlType urlType, @NonNull Map<Track.Id, long[]> insertedIds) {
+        String table = switch (urlType) {
+            case TRACKPOINTS -> TrackPointsColumns.TABLE_NAME;
+            case TRACKS -> TracksColumns.TABLE_NAME;
+            case MARKERS -> MarkerColumns.TABLE_NAME;
+            default -> TrackPointsLodColumns.TABLE_NAME;
+        };
+        if (insertedIds.containsKey(null)) {
+            if (urlType == UrlType.TRACKPOINTS) {
+                invalidateCache(() -> DecodedTrackCache.getInstance().clear());
+            }
+            notifyChange(url, table, null);
+            return;
+        }
+        if (urlType != UrlType.TRACKPOINTS) {
+            notifyChange(url, table, insertedIds.keySet());
+            return;
+        }
+
+        for (Map.Entry<Track.Id, long[]> entry : insertedIds.entrySet()) {
+            invalidateCache(() -> DecodedTrackCache.getInstance().onTrackPointsInserted(entry.getKey()));
+            long[] range = entry.getValue();
+            notifyChange(ContentProviderUtils.getTrackPointsInsertedUri(entry.getKey(), new TrackPoint.Id(range[0]), new TrackPoint.Id(range[1])));
+        }
+    }
+
+    private static void addInsertedId(@NonNull Map<Track.Id, long[]> insertedIds, @NonNull UrlType urlType, @NonNull ContentValues values, @NonNull Uri insertedUri) {
+        long rowId = ContentUris.parseId(insertedUri);
+        Long trackId = switch (urlType) {
+            case TRACKS -> rowId;
+            case TRACKPOINTS -> values.getAsLong(TrackPointsColumns.TRACKID);
+            case MARKERS -> values.getAsLong(MarkerColumns.TRACKID);
+            default -> null;
+        };
+
+        long[] range = insertedIds.computeIfAbsent(trackId != null ? new Track.Id(trackId) : null, key -> new long[]{rowId, rowId});
+        range[0] = Math.min(range[0], rowId);
+        range[1] = Math.max(range[1], rowId);
+    }
+
     /**
      * A safe update method that rejects unsafe whereClause.
      *
@@ -585,6 +862,7 @@ public class CustomContentProvider extends ContentProvider {
             case TRACKPOINTS -> insertTrackPoint(url, contentValues);
             case TRACKS -> insertTrack(url, contentValues);
             case MARKERS -> insertMarker(url, contentValues);
+            case TRACKPOINTS_LOD -> insertTrackPointLod(url, contentValues);
             default -> throw new IllegalArgumentException("Unknown url " + url);
         };
     }
@@ -618,6 +896,14 @@ public class CustomContentProvider extends ContentProvider {
         throw new SQLException("Failed to insert a marker " + url);
     }
 
+    private Uri insertTrackPointLod(Uri url, ContentValues contentValues) {
+        long rowId = db.insert(TrackPointsLodColumns.TABLE_NAME, TrackPointsLodColumns._ID, contentValues);
+        if (rowId >= 0) {
+            return ContentUris.appendId(TrackPointsLodColumns.CONTENT_URI.buildUpon(), rowId).build();
+        }
+        throw new SQLException("Failed to insert a track point level-of-detail " + url);
+    }
+
     @VisibleForTesting
     enum UrlType {
         TRACKPOINTS,
@@ -628,6 +914,7 @@ public class CustomContentProvider extends ContentProvider {
         TRACKS_SENSOR_STATS,
         MARKERS,
         MARKERS_BY_ID,
-        MARKERS_BY_TRACKID
+        MARKERS_BY_TRACKID,
+        TRACKPOINTS_LOD
     }
 }
\ No newline at end of file
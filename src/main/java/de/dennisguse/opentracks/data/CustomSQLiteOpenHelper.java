@@ -20,6 +20,7 @@ import de.dennisguse.opentracks.data.models.ActivityType;
 import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.data.tables.MarkerColumns;
 import de.dennisguse.opentracks.data.tables.TrackPointsColumns;
+import de.dennisguse.opentracks.data.tables.TrackPointsLodColumns;
 import de.dennisguse.opentracks.data.tables.TracksColumns;
 
 /**
@@ -29,7 +30,7 @@ class CustomSQLiteOpenHelper extends SQLiteOpenHelper {
 
     private static final String TAG = CustomSQLiteOpenHelper.class.getSimpleName();
 
-    private static final int DATABASE_VERSION = 38;
+    private static final int DATABASE_VERSION = 44;
 
     private final Context context;
 
@@ -53,12 +54,17 @@ class CustomSQLiteOpenHelper extends SQLiteOpenHelper {
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(TrackPointsColumns.CREATE_TABLE);
         db.execSQL(TrackPointsColumns.CREATE_TABLE_INDEX);
+        db.execSQL(TrackPointsColumns.CREATE_TABLE_INDEX_TRACKID_TIME);
 
         db.execSQL(TracksColumns.CREATE_TABLE);
         db.execSQL(TracksColumns.CREATE_TABLE_INDEX);
+        db.execSQL(TracksColumns.CREATE_TABLE_INDEX_FINGERPRINT);
 
         db.execSQL(MarkerColumns.CREATE_TABLE);
         db.execSQL(MarkerColumns.CREATE_TABLE_INDEX);
+
+        db.execSQL(TrackPointsLodColumns.CREATE_TABLE);
+        db.execSQL(TrackPointsLodColumns.CREATE_TABLE_INDEX);
     }
 
     @Override
@@ -82,6 +88,12 @@ class CustomSQLiteOpenHelper extends SQLiteOpenHelper {
                 case 36 -> upgradeFrom35to36(db);
                 case 37 -> upgradeFrom36to37(db);
                 case 38 -> upgradeFrom37to38(db);
+                case 39 -> upgradeFrom38to39(db);
+                case 40 -> upgradeFrom39to40(db);
+                case 41 -> upgradeFrom40to41(db);
+                case 42 -> upgradeFrom41to42(db);
+                case 43 -> upgradeFrom42to43(db);
+                case 44 -> upgradeFrom43to44(db);
                 default -> throw new RuntimeException("Not implemented: upgrade to " + toVersion);
             }
         }
@@ -107,6 +119,12 @@ class CustomSQLiteOpenHelper extends SQLiteOpenHelper {
                 case 35 -> downgradeFrom36to35(db);
                 case 36 -> downgradeFrom37to36(db);
                 case 37 -> downgradeFrom38to37(db);
+                case 38 -> downgradeFrom39to38(db);
+                case 39 -> downgradeFrom40to39(db);
+                case 40 -> downgradeFrom41to40(db);
+                case 41 -> downgradeFrom42to41(db);
+                case 42 -> downgradeFrom43to42(db);
+                case 43 -> downgradeFrom44to43(db);
                 default -> throw new RuntimeException("Not implemented: downgrade to " + toVersion);
             }
         }
@@ -670,4 +688,219 @@ class CustomSQLiteOpenHelper extends SQLiteOpenHelper {
         db.endTransaction();
     }
 
+    private void upgradeFrom38to39(SQLiteDatabase db) {
+        db.beginTransaction();
+
+        db.execSQL("CREATE TABLE trackpoints_lod (_id INTEGER PRIMARY KEY AUTOINCREMENT, trackid INTEGER NOT NULL, level INTEGER NOT NULL, buckets INTEGER NOT NULL, last_trackpoint_id INTEGER NOT NULL, trackpoints INTEGER NOT NULL, time INTEGER, longitude INTEGER, latitude INTEGER, total_distance FLOAT, total_time INTEGER, elevation_min FLOAT, elevation_max FLOAT, elevation_avg FLOAT, speed_min FLOAT, speed_max FLOAT, speed_avg FLOAT, sensor_heartrate_min FLOAT, sensor_heartrate_max FLOAT, sensor_heartrate_avg FLOAT, sensor_cadence_min FLOAT, sensor_cadence_max FLOAT, sensor_cadence_avg FLOAT, sensor_power_min FLOAT, sensor_power_max FLOAT, sensor_power_avg FLOAT, FOREIGN KEY (trackid) REFERENCES tracks(_id) ON UPDATE CASCADE ON DELETE CASCADE)");
+        db.execSQL("CREATE INDEX trackpoints_lod_trackid_level_index ON trackpoints_lod(trackid, level)");
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+    }
+
+    private void downgradeFrom39to38(SQLiteDatabase db) {
+        db.beginTransaction();
+
+        db.execSQL("DROP INDEX trackpoints_lod_trackid_level_index");
+        db.execSQL("DROP TABLE trackpoints_lod");
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+    }
+
+    private void upgradeFrom39to40(SQLiteDatabase db) {
+        db.beginTransaction();
+
+        db.execSQL("CREATE INDEX trackpoints_trackid_time_index ON trackpoints(trackid, time)");
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+    }
+
+    private void downgradeFrom40to39(SQLiteDatabase db) {
+        db.beginTransaction();
+
+        db.execSQL("DROP INDEX trackpoints_trackid_time_index");
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+    }
+
+    /**
+     * Adds the sensor statistics to tracks and computes them once from the TrackPoints.
+     */
+    private void upgradeFrom40to41(SQLiteDatabase db) {
+        db.beginTransaction();
+
+        db.execSQL("ALTER TABLE tracks ADD COLUMN avgheartrate FLOAT");
+        db.execSQL("ALTER TABLE tracks ADD COLUMN maxheartrate FLOAT");
+        db.execSQL("ALTER TABLE tracks ADD COLUMN avgcadence FLOAT");
+        db.execSQL("ALTER TABLE tracks ADD COLUMN maxcadence FLOAT");
+        db.execSQL("ALTER TABLE tracks ADD COLUMN avgpower FLOAT");
+        db.execSQL("ALTER TABLE tracks ADD COLUMN maxpower FLOAT");
+
+        try (Cursor cursor = db.query("tracks", new String[]{"_id"}, null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                String trackId = String.valueOf(cursor.getLong(0));
+                try (Cursor sensorStats = db.rawQuery(CustomContentProvider.SENSOR_STATS_QUERY, new String[]{trackId, trackId})) {
+                    if (!sensorStats.moveToFirst()) {
+                        continue;
+                    }
+                    ContentValues cv = new ContentValues();
+                    putFloatOrNull(cv, "avgheartrate", sensorStats, TrackPointsColumns.ALIAS_AVG_HR);
+                    putFloatOrNull(cv, "maxheartrate", sensorStats, TrackPointsColumns.ALIAS_MAX_HR);
+                    putFloatOrNull(cv, "avgcadence", sensorStats, TrackPointsColumns.ALIAS_AVG_CADENCE);
+                    putFloatOrNull(cv, "maxcadence", sensorStats, TrackPointsColumns.ALIAS_MAX_CADENCE);
+                    putFloatOrNull(cv, "avgpower", sensorStats, TrackPointsColumns.ALIAS_AVG_POWER);
+                    putFloatOrNull(cv, "maxpower", sensorStats, TrackPointsColumns.ALIAS_MAX_POWER);
+                    db.update("tracks", cv, "_id = ?", new String[]{trackId});
+                }
+            }
+        }
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+    }
+
+    private static void putFloatOrNull(ContentValues cv, String key, Cursor cursor, String column) {
+        int index = cursor.getColumnIndexOrThrow(column);
+        if (cursor.isNull(index)) {
+            cv.putNull(key);
+        } else {
+            cv.put(key, cursor.getFloat(index));
+        }
+    }
+
+    private void downgradeFrom41to40(SQLiteDatabase db) {
+        db.beginTransaction();
+
+        db.execSQL("DROP INDEX tracks_uuid_index");
+
+        db.execSQL("ALTER TABLE tracks RENAME TO tracks_old");
+        db.execSQL("CREATE TABLE tracks (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, description TEXT, category TEXT, starttime INTEGER, stoptime INTEGER, numpoints INTEGER, totaldistance FLOAT, totaltime INTEGER, movingtime INTEGER, avgspeed FLOAT, avgmovingspeed FLOAT, maxspeed FLOAT, minelevation FLOAT, maxelevation FLOAT, elevationgain FLOAT, icon TEXT, uuid BLOB, elevationloss FLOAT, starttime_offset INTEGER, activity_type TEXT)");
+        db.execSQL("INSERT INTO tracks SELECT _id, name, description, category, starttime, stoptime, numpoints, totaldistance, totaltime, movingtime, avgspeed, avgmovingspeed, maxspeed, minelevation, maxelevation, elevationgain, icon, uuid, elevationloss, starttime_offset, activity_type FROM tracks_old");
+        db.execSQL("DROP TABLE tracks_old");
+
+        db.execSQL("CREATE UNIQUE INDEX tracks_uuid_index ON tracks(uuid)");
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+    }
+
+    /**
+     * Adds the content fingerprint to tracks and computes it from the stored TrackPoints.
+     */
+    private void upgradeFrom41to42(SQLiteDatabase db) {
+        db.beginTransaction();
+
+        db.execSQL("ALTER TABLE tracks ADD COLUMN fingerprint INTEGER");
+        db.execSQL("CREATE INDEX tracks_fingerprint_index ON tracks(fingerprint)");
+
+        try (Cursor cursor = db.query("tracks", new String[]{"_id"}, null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                String trackId = String.valueOf(cursor.getLong(0));
+                TrackFingerprint fingerprint = new TrackFingerprint();
+                // Ordered by time (uses the (trackid, time) index); TrackFingerprint defines the order of TrackPoints with the same time.
+                try (Cursor trackPoints = db.query("trackpoints", new String[]{"time", "latitude", "longitude"}, "trackid = ? AND latitude IS NOT NULL AND longitude IS NOT NULL", new String[]{trackId}, null, null, "time")) {
+                    while (trackPoints.moveToNext() && !fingerprint.isFinal(trackPoints.getLong(0))) {
+                        fingerprint.add(trackPoints.getLong(0), trackPoints.getInt(1), trackPoints.getInt(2));
+                    }
+                }
+                if (fingerprint.isEmpty()) {
+                    continue;
+                }
+                ContentValues cv = new ContentValues();
+                cv.put("fingerprint", fingerprint.get());
+                db.update("tracks", cv, "_id = ?", new String[]{trackId});
+            }
+        }
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+    }
+
+    private void downgradeFrom42to41(SQLiteDatabase db) {
+        db.beginTransaction();
+
+        db.execSQL("DROP INDEX tracks_fingerprint_index");
+        db.execSQL("DROP INDEX tracks_uuid_index");
+
+        db.execSQL("ALTER TABLE tracks RENAME TO tracks_old");
+        db.execSQL("CREATE TABLE tracks (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, description TEXT, category TEXT, starttime INTEGER, stoptime INTEGER, numpoints INTEGER, totaldistance FLOAT, totaltime INTEGER, movingtime INTEGER, avgspeed FLOAT, avgmovingspeed FLOAT, maxspeed FLOAT, minelevation FLOAT, maxelevation FLOAT, elevationgain FLOAT, icon TEXT, uuid BLOB, elevationloss FLOAT, starttime_offset INTEGER, activity_type TEXT, avgheartrate FLOAT, maxheartrate FLOAT, avgcadence FLOAT, maxcadence FLOAT, avgpower FLOAT, maxpower FLOAT)");
+        db.execSQL("INSERT INTO tracks SELECT _id, name, description, category, starttime, stoptime, numpoints, totaldistance, totaltime, movingtime, avgspeed, avgmovingspeed, maxspeed, minelevation, maxelevation, elevationgain, icon, uuid, elevationloss, starttime_offset, activity_type, avgheartrate, maxheartrate, avgcadence, maxcadence, avgpower, maxpower FROM tracks_old");
+        db.execSQL("DROP TABLE tracks_old");
+
+        db.execSQL("CREATE UNIQUE INDEX tracks_uuid_index ON tracks(uuid)");
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+    }
+
+    /**
+     * Adds segment boundaries and the order of the extremes to the level-of-detail buckets.
+     * Existing buckets may span segment boundaries, so they are dropped (derived data) and rebuilt on demand.
+     */
+    private void upgradeFrom42to43(SQLiteDatabase db) {
+        db.beginTransaction();
+
+        db.execSQL("DROP INDEX trackpoints_lod_trackid_level_index");
+        db.execSQL("DROP TABLE trackpoints_lod");
+        db.execSQL("CREATE TABLE trackpoints_lod (_id INTEGER PRIMARY KEY AUTOINCREMENT, trackid INTEGER NOT NULL, level INTEGER NOT NULL, buckets INTEGER NOT NULL, last_trackpoint_id INTEGER NOT NULL, trackpoints INTEGER NOT NULL, time INTEGER, longitude INTEGER, latitude INTEGER, total_distance FLOAT, total_time INTEGER, first_type INTEGER NOT NULL, last_type INTEGER NOT NULL, extremes_order INTEGER NOT NULL, elevation_min FLOAT, elevation_max FLOAT, elevation_avg FLOAT, speed_min FLOAT, speed_max FLOAT, speed_avg FLOAT, sensor_heartrate_min FLOAT, sensor_heartrate_max FLOAT, sensor_heartrate_avg FLOAT, sensor_cadence_min FLOAT, sensor_cadence_max FLOAT, sensor_cadence_avg FLOAT, sensor_power_min FLOAT, sensor_power_max FLOAT, sensor_power_avg FLOAT, FOREIGN KEY (trackid) REFERENCES tracks(_id) ON UPDATE CASCADE ON DELETE CASCADE)");
+        db.execSQL("CREATE INDEX trackpoints_lod_trackid_level_index ON trackpoints_lod(trackid, level)");
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+    }
+
+    private void downgradeFrom43to42(SQLiteDatabase db) {
+        db.beginTransaction();
+
+        db.execSQL("DROP INDEX trackpoints_lod_trackid_level_index");
+
+        db.execSQL("ALTER TABLE trackpoints_lod RENAME TO trackpoints_lod_old");
+        db.execSQL("CREATE TABLE trackpoints_lod (_id INTEGER PRIMARY KEY AUTOINCREMENT, trackid INTEGER NOT NULL, level INTEGER NOT NULL, buckets INTEGER NOT NULL, last_trackpoint_id INTEGER NOT NULL, trackpoints INTEGER NOT NULL, time INTEGER, longitude INTEGER, latitude INTEGER, total_distance FLOAT, total_time INTEGER, elevation_min FLOAT, elevation_max FLOAT, elevation_avg FLOAT, speed_min FLOAT, speed_max FLOAT, speed_avg FLOAT, sensor_heartrate_min FLOAT, sensor_heartrate_max FLOAT, sensor_heartrate_avg FLOAT, sensor_cadence_min FLOAT, sensor_cadence_max FLOAT, sensor_cadence_avg FLOAT, sensor_power_min FLOAT, sensor_power_max FLOAT, sensor_power_avg FLOAT, FOREIGN KEY (trackid) REFERENCES tracks(_id) ON UPDATE CASCADE ON DELETE CASCADE)");
+        db.execSQL("INSERT INTO trackpoints_lod SELECT _id, trackid, level, buckets, last_trackpoint_id, trackpoints, time, longitude, latitude, total_distance, total_time, elevation_min, elevation_max, elevation_avg, speed_min, speed_max, speed_avg, sensor_heartrate_min, sensor_heartrate_max, sensor_heartrate_avg, sensor_cadence_min, sensor_cadence_max, sensor_cadence_avg, sensor_power_min, sensor_power_max, sensor_power_avg FROM trackpoints_lod_old");
+        db.execSQL("DROP TABLE trackpoints_lod_old");
+
+        db.execSQL("CREATE INDEX trackpoints_lod_trackid_level_index ON trackpoints_lod(trackid, level)");
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+    }
+
+    /**
+     * Marks tracks that are being imported, so they can be hidden until the import is finished.
+     */
+    private void upgradeFrom43to44(SQLiteDatabase db) {
+        db.beginTransaction();
+
+        db.execSQL("ALTER TABLE tracks ADD COLUMN importing INTEGER");
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+    }
+
+    private void downgradeFrom44to43(SQLiteDatabase db) {
+        db.beginTransaction();
+
+        // Unfinished imports
+        db.execSQL("DELETE FROM trackpoints WHERE trackid IN (SELECT _id FROM tracks WHERE importing = 1)");
+        db.execSQL("DELETE FROM markers WHERE trackid IN (SELECT _id FROM tracks WHERE importing = 1)");
+        db.execSQL("DELETE FROM trackpoints_lod WHERE trackid IN (SELECT _id FROM tracks WHERE importing = 1)");
+        db.execSQL("DELETE FROM tracks WHERE importing = 1");
+
+        db.execSQL("DROP INDEX tracks_fingerprint_index");
+        db.execSQL("DROP INDEX tracks_uuid_index");
+
+        db.execSQL("ALTER TABLE tracks RENAME TO tracks_old");
+        db.execSQL("CREATE TABLE tracks (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, description TEXT, category TEXT, starttime INTEGER, stoptime INTEGER, numpoints INTEGER, totaldistance FLOAT, totaltime INTEGER, movingtime INTEGER, avgspeed FLOAT, avgmovingspeed FLOAT, maxspeed FLOAT, minelevation FLOAT, maxelevation FLOAT, elevationgain FLOAT, icon TEXT, uuid BLOB, elevationloss FLOAT, starttime_offset INTEGER, activity_type TEXT, avgheartrate FLOAT, maxheartrate FLOAT, avgcadence FLOAT, maxcadence FLOAT, avgpower FLOAT, maxpower FLOAT, fingerprint INTEGER)");
+        db.execSQL("INSERT INTO tracks SELECT _id, name, description, category, starttime, stoptime, numpoints, totaldistance, totaltime, movingtime, avgspeed, avgmovingspeed, maxspeed, minelevation, maxelevation, elevationgain, icon, uuid, elevationloss, starttime_offset, activity_type, avgheartrate, maxheartrate, avgcadence, maxcadence, avgpower, maxpower, fingerprint FROM tracks_old");
+        db.execSQL("DROP TABLE tracks_old");
+
+        db.execSQL("CREATE UNIQUE INDEX tracks_uuid_index ON tracks(uuid)");
+        db.execSQL("CREATE INDEX tracks_fingerprint_index ON tracks(fingerprint)");
+
+        db.setTransactionSuccessful();
+        db.endTransaction();
+    }
 }
@@ -0,0 +1,252 @@
+package de.dennisguse.opentracks.data;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+import de.dennisguse.opentracks.data.models.Altitude;
+import de.dennisguse.opentracks.data.models.Distance;
+import de.dennisguse.opentracks.data.models.Speed;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+
+/**
+ * All {@link TrackPoint}s of a track (ordered by id) in compact form: one primitive array per column and a bitmask per TrackPoint of the present values.
+ * Columns without any value are not allocated.
+ * <p>
+ * Instances are immutable: {@link #append(Cursor)} returns a new instance that may share the arrays, as it only writes behind the size of this instance.
+ * So, an instance can be read by multiple threads while the next one is created.
+ */
+final class DecodedTrack {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final int LATITUDE = 0;
+    private static final int LONGITUDE = 1;
+
+    // Float columns; their presence bit is (channel + 2).
+    private static final int ALTITUDE = 0;
+    private static final int HORIZONTAL_ACCURACY = 1;
+    private static final int VERTICAL_ACCURACY = 2;
+    private static final int SPEED = 3;
+    private static final int BEARING = 4;
+    private static final int HEART_RATE = 5;
+    private static final int CADENCE = 6;
+    private static final int SENSOR_DISTANCE = 7;
+    private static final int POWER = 8;
+    private static final int ALTITUDE_GAIN = 9;
+    private static final int ALTITUDE_LOSS = 10;
+    private static final int NUM_CHANNELS = 11;
+
+    // Columns that are always allocated: id, time, type, present, latitude, and longitude.
+    private static final int BYTES_PER_TRACKPOINT = Long.BYTES + Long.BYTES + Byte.BYTES + Short.BYTES + Integer.BYTES + Integer.BYTES;
+
+    static final DecodedTrack EMPTY = new DecodedTrack(new long[0], new long[0], new byte[0], new short[0], new int[0], new int[0], new float[NUM_CHANNELS][], 0);
+
+    private final long[] ids;
+    private final long[] times;
+    private final byte[] types;
+    private final short[] present;
+    private final int[] latitudesE6;
+    private final int[] longitudesE6;
+    private final float[][] channels;
+    private final int size;
+
+    private DecodedTrack(long[] ids, long[] times, byte[] types, short[] present, int[] latitudesE6, int[] longitudesE6, float[][] channels, int size) {
+        this.ids = ids;
+        this.times = times;
+        this.types = types;
+        this.present = present;
+        this.latitudesE6 = latitudesE6;
+        this.longitudesE6 = longitudesE6;
+        this.channels = channels;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return id of the last TrackPoint or null if empty.
+     */
+    @Nullable
+    TrackPoint.Id getLastId() {
+        return size > 0 ? new TrackPoint.Id(ids[size - 1]) : null;
+    }
+
+    /**
+     * @return index of the first TrackPoint with an id >= startTrackPointId (0 if null).
+     */
+    int indexOf(@Nullable TrackPoint.Id startTrackPointId) {
+        if (startTrackPointId == null) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(ids, 0, size, startTrackPointId.id());
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Creates the TrackPoint exactly like {@link ContentProviderUtils#fillTrackPoint(Cursor, CachedTrackPointsIndexes)} of a cursor with all columns.
+     */
+    @NonNull
+    TrackPoint get(int index) {
+        TrackPoint trackPoint = new TrackPoint(TrackPoint.Type.getById(types[index]), Instant.ofEpochMilli(times[index]));
+        trackPoint.setId(new TrackPoint.Id(ids[index]));
+
+        int bits = present[index];
+        if (isPresent(bits, LONGITUDE)) {
+            trackPoint.setLongitude(((double) longitudesE6[index]) / 1E6);
+        }
+        if (isPresent(bits, LATITUDE)) {
+            trackPoint.setLatitude(((double) latitudesE6[index]) / 1E6);
+        }
+        if (isChannelPresent(bits, ALTITUDE)) {
+            trackPoint.setAltitude(Altitude.WGS84.of(channels[ALTITUDE][index]));
+        }
+        if (isChannelPresent(bits, HORIZONTAL_ACCURACY)) {
+            trackPoint.setHorizontalAccuracy(Distance.of(channels[HORIZONTAL_ACCURACY][index]));
+        }
+        if (isChannelPresent(bits, VERTICAL_ACCURACY)) {
+            trackPoint.setVerticalAccuracy(Distance.of(channels[VERTICAL_ACCURACY][index]));
+        }
+        if (isChannelPresent(bits, SPEED)) {
+            trackPoint.setSpeed(Speed.of(channels[SPEED][index]));
+        }
+        if (isChannelPresent(bits, BEARING)) {
+            trackPoint.setBearing(channels[BEARING][index]);
+        }
+        if (isChannelPresent(bits, HEART_RATE)) {
+            trackPoint.setHeartRate(channels[HEART_RATE][index]);
+        }
+        if (isChannelPresent(bits, CADENCE)) {
+            trackPoint.setCadence(channels[CADENCE][index]);
+        }
+        if (isChannelPresent(bits, SENSOR_DISTANCE)) {
+            trackPoint.setSensorDistance(Distance.of(channels[SENSOR_DISTANCE][index]));
+        }
+        if (isChannelPresent(bits, POWER)) {
+            trackPoint.setPower(channels[POWER][index]);
+        }
+        if (isChannelPresent(bits, ALTITUDE_GAIN)) {
+            trackPoint.setAltitudeGain(channels[ALTITUDE_GAIN][index]);
+        }
+        if (isChannelPresent(bits, ALTITUDE_LOSS)) {
+            trackPoint.setAltitudeLoss(channels[ALTITUDE_LOSS][index]);
+        }
+        return trackPoint;
+    }
+
+    /**
+     * @return upper bound of {@link #getSizeBytes()} for the given number of TrackPoints (all columns present, no spare capacity).
+     */
+    static long getMaxSizeBytes(int numTrackPoints) {
+        return (long) numTrackPoints * (BYTES_PER_TRACKPOINT + NUM_CHANNELS * Float.BYTES);
+    }
+
+    /**
+     * @return approximate memory usage in bytes.
+     */
+    long getSizeBytes() {
+        long bytes = (long) ids.length * BYTES_PER_TRACKPOINT;
+        for (float[] channel : channels) {
+            if (channel != null) {
+                bytes += (long) channel.length * Float.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Appends the TrackPoints of a cursor with all columns (must be ordered by id and start after the last TrackPoint).
+     *
+     * @return a new instance; this instance is not changed.
+     */
+    @NonNull
+    DecodedTrack append(@NonNull Cursor cursor) {
+        int count = cursor.getCount();
+        if (count <= 0) {
+            return this;
+        }
+
+        int newSize = size + count;
+        int capacity = ids.length;
+        long[] newIds = ids;
+        long[] newTimes = times;
+        byte[] newTypes = types;
+        short[] newPresent = present;
+        int[] newLatitudesE6 = latitudesE6;
+        int[] newLongitudesE6 = longitudesE6;
+        float[][] newChannels = channels.clone();
+        if (newSize > capacity) {
+            capacity = Math.max(INITIAL_CAPACITY, Math.max(newSize, capacity + capacity / 2));
+            newIds = Arrays.copyOf(ids, capacity);
+            newTimes = Arrays.copyOf(times, capacity);
+            newTypes = Arrays.copyOf(types, capacity);
+            newPresent = Arrays.copyOf(present, capacity);
+            newLatitudesE6 = Arrays.copyOf(latitudesE6, capacity);
+            newLongitudesE6 = Arrays.copyOf(longitudesE6, capacity);
+            for (int channel = 0; channel < NUM_CHANNELS; channel++) {
+                if (newChannels[channel] != null) {
+                    newChannels[channel] = Arrays.copyOf(newChannels[channel], capacity);
+                }
+            }
+        }
+
+        CachedTrackPointsIndexes indexes = new CachedTrackPointsIndexes(cursor);
+        int[] channelIndexes = {
+                indexes.altitudeIndex,
+                indexes.accuracyIndex,
+                indexes.accuracyVerticalIndex,
+                indexes.speedIndex,
+                indexes.bearingIndex,
+                indexes.sensorHeartRateIndex,
+                indexes.sensorCadenceIndex,
+                indexes.sensorDistanceIndex,
+                indexes.sensorPowerIndex,
+                indexes.altitudeGainIndex,
+                indexes.altitudeLossIndex
+        };
+
+        int index = size;
+        while (index < newSize && cursor.moveToNext()) {
+            newIds[index] = cursor.getLong(indexes.idIndex);
+            newTimes[index] = cursor.getLong(indexes.timeIndex);
+            newTypes[index] = (byte) cursor.getInt(indexes.typeIndex);
+
+            int bits = 0;
+            if (CachedTrackPointsIndexes.hasValue(cursor, indexes.latitudeIndex)) {
+                newLatitudesE6[index] = cursor.getInt(indexes.latitudeIndex);
+                bits |= 1 << LATITUDE;
+            }
+            if (CachedTrackPointsIndexes.hasValue(cursor, indexes.longitudeIndex)) {
+                newLongitudesE6[index] = cursor.getInt(indexes.longitudeIndex);
+                bits |= 1 << LONGITUDE;
+            }
+            for (int channel = 0; channel < NUM_CHANNELS; channel++) {
+                if (CachedTrackPointsIndexes.hasValue(cursor, channelIndexes[channel])) {
+                    if (newChannels[channel] == null) {
+                        newChannels[channel] = new float[capacity];
+                    }
+                    newChannels[channel][index] = cursor.getFloat(channelIndexes[channel]);
+                    bits |= 1 << (channel + 2);
+                }
+            }
+            newPresent[index] = (short) bits;
+            index++;
+        }
+
+        return new DecodedTrack(newIds, newTimes, newTypes, newPresent, newLatitudesE6, newLongitudesE6, newChannels, index);
+    }
+
+    private static boolean isPresent(int bits, int bit) {
+        return (bits & (1 << bit)) != 0;
+    }
+
+    private static boolean isChannelPresent(int bits, int channel) {
+        return isPresent(bits, channel + 2);
+    }
+}
@@ -0,0 +1,244 @@
+package de.dennisguse.opentracks.data;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+
+/**
+ * Process-wide, memory-bounded LRU cache of the {@link TrackPoint}s of tracks as {@link DecodedTrack}s.
+ * Used by {@link ContentProviderUtils#getTrackPointLocationIterator(Track.Id, TrackPoint.Id)}, so that the readers of a track (e.g., chart, statistics, and intervals) do not read the same rows again.
+ * <p>
+ * {@link CustomContentProvider} reports changes synchronously (before its change notifications are delivered), so readers reacting to a notification never get outdated TrackPoints:
+ * inserted TrackPoints are appended to the cached track on its next use; any other change of TrackPoints or deleted tracks remove the affected tracks.
+ * <p>
+ * Tracks that may not fit into the cache are not decoded; they are read from the cursor.
+ */
+public class DecodedTrackCache {
+
+    private static final String TAG = DecodedTrackCache.class.getSimpleName();
+
+    private static final int MAX_SIZE_FRACTION_OF_HEAP = 16;
+
+    private static DecodedTrackCache instance;
+
+    private final long maxSizeBytes;
+
+    // Access order: the first entry is the least recently used.
+    private final Map<Track.Id, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes = 0;
+
+    // Incremented whenever TrackPoints were inserted.
+    private long trackPointsGeneration = 0;
+    // Incremented whenever tracks are removed; loads started before must not be added.
+    private long clearCount = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    private static class Entry {
+        private DecodedTrack decodedTrack;
+        // trackPointsGeneration when decodedTrack was loaded.
+        private long generation;
+        // trackPointsGeneration of the last insert into this track.
+        private long insertedGeneration;
+
+        private Entry(DecodedTrack decodedTrack, long generation, long insertedGeneration) {
+            this.decodedTrack = decodedTrack;
+            this.generation = generation;
+            this.insertedGeneration = insertedGeneration;
+        }
+
+        private boolean isUpToDate() {
+            return generation >= insertedGeneration;
+        }
+    }
+
+    @VisibleForTesting
+    DecodedTrackCache(long maxSizeBytes) {
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    @NonNull
+    public static synchronized DecodedTrackCache getInstance() {
+        if (instance == null) {
+            instance = new DecodedTrackCache(Runtime.getRuntime().maxMemory() / MAX_SIZE_FRACTION_OF_HEAP);
+        }
+        return instance;
+    }
+
+    /**
+     * @return all TrackPoints of the track (empty if the track does not exist) or null if the track is too large to be cached.
+     */
+    @Nullable
+    DecodedTrack get(@NonNull ContentProviderUtils contentProviderUtils, @NonNull Track.Id trackId) {
+        Entry entry;
+        long generation;
+        long clearCountBefore;
+        synchronized (this) {
+            entry = entries.get(trackId);
+            generation = trackPointsGeneration;
+            clearCountBefore = clearCount;
+            if (entry != null) {
+                hitCount++;
+                if (entry.isUpToDate()) {
+                    return entry.decodedTrack;
+                }
+            } else {
+                missCount++;
+            }
+        }
+
+        if (entry != null) {
+            // Only one thread appends to an entry; the others wait for the result.
+            synchronized (entry) {
+                DecodedTrack decodedTrack;
+                synchronized (this) {
+                    if (entry.isUpToDate()) {
+                        return entry.decodedTrack;
+                    }
+                    decodedTrack = entry.decodedTrack;
+                    generation = trackPointsGeneration;
+                }
+                decodedTrack = load(contentProviderUtils, trackId, decodedTrack);
+                synchronized (this) {
+                    if (clearCount == clearCountBefore && entries.get(trackId) == entry) {
+                        if (decodedTrack.getSizeBytes() > maxSizeBytes) {
+                            // Grew too large (e.g., while recording); read from the cursor from now on.
+                            entries.remove(trackId);
+                            sizeBytes -= entry.decodedTrack.getSizeBytes();
+                        } else {
+                            sizeBytes += decodedTrack.getSizeBytes() - entry.decodedTrack.getSizeBytes();
+                            entry.decodedTrack = decodedTrack;
+                            entry.generation = generation;
+                            evict(trackId);
+                        }
+                    }
+                }
+                return decodedTrack;
+            }
+        }
+
+        // Counting only reads the ids; do not decode a track that would not be cached anyway.
+        if (DecodedTrack.getMaxSizeBytes(contentProviderUtils.getTrackPointCount(trackId)) > maxSizeBytes) {
+            return null;
+        }
+
+        DecodedTrack decodedTrack = load(contentProviderUtils, trackId, DecodedTrack.EMPTY);
+        synchronized (this) {
+            if (clearCount == clearCountBefore && !entries.containsKey(trackId) && decodedTrack.getSizeBytes() <= maxSizeBytes) {
+                // TrackPoints inserted while loading (into any track) may be missing.
+                entries.put(trackId, new Entry(decodedTrack, generation, trackPointsGeneration));
+                sizeBytes += decodedTrack.getSizeBytes();
+                evict(trackId);
+            }
+        }
+        return decodedTrack;
+    }
+
+    /**
+     * Reads the TrackPoints after the last one of decodedTrack.
+     */
+    private static DecodedTrack load(ContentProviderUtils contentProviderUtils, Track.Id trackId, DecodedTrack decodedTrack) {
+        TrackPoint.Id lastId = decodedTrack.getLastId();
+        TrackPoint.Id startTrackPointId = lastId != null ? new TrackPoint.Id(lastId.id() + 1) : null;
+        try (Cursor cursor = contentProviderUtils.getTrackPointCursor(trackId, startTrackPointId)) {
+            return cursor != null ? decodedTrack.append(cursor) : decodedTrack;
+        }
+    }
+
+    private void evict(Track.Id keep) {
+        Iterator<Map.Entry<Track.Id, Entry>> iterator = entries.entrySet().iterator();
+        while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+            Map.Entry<Track.Id, Entry> eldest = iterator.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            sizeBytes -= eldest.getValue().decodedTrack.getSizeBytes();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * TrackPoints were inserted into the track; to be called before the change is notified.
+     */
+    synchronized void onTrackPointsInserted(@NonNull Track.Id trackId) {
+        trackPointsGeneration++;
+        Entry entry = entries.get(trackId);
+        if (entry != null) {
+            entry.insertedGeneration = trackPointsGeneration;
+        }
+    }
+
+    /**
+     * TrackPoints of the tracks were changed or deleted (including deleted tracks); to be called before the change is notified.
+     *
+     * @param trackIds null for all tracks
+     */
+    synchronized void remove(@Nullable Set<Track.Id> trackIds) {
+        if (trackIds == null) {
+            clear();
+            return;
+        }
+        for (Track.Id trackId : trackIds) {
+            Entry entry = entries.remove(trackId);
+            if (entry != null) {
+                sizeBytes -= entry.decodedTrack.getSizeBytes();
+            }
+        }
+        clearCount++;
+    }
+
+    /**
+     * Removes all tracks.
+     */
+    public synchronized void clear() {
+        if (!entries.isEmpty()) {
+            Log.d(TAG, "Clearing " + entries.size() + " tracks.");
+        }
+        entries.clear();
+        sizeBytes = 0;
+        clearCount++;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return hits / (hits + misses) or 0 if unused.
+     */
+    public synchronized double getHitRate() {
+        long total = hitCount + missCount;
+        return total > 0 ? (double) hitCount / total : 0;
+    }
+
+    /**
+     * @return approximate memory used by the cached tracks in bytes.
+     */
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public long getMaxSizeBytes() {
+        return maxSizeBytes;
+    }
+
+    public synchronized int getTrackCount() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,171 @@
+package de.dennisguse.opentracks.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import de.dennisguse.opentracks.data.models.Track;
+
+/**
+ * Disk cache for exported files (e.g., shared via {@link ShareContentProvider}).
+ * <p>
+ * Entries are files named by their key; the key must change if the content changes (e.g., include a modification stamp).
+ * Keys start with the exported tracks (see {@link #createKey(Set, String)}), so the entries of deleted tracks can be removed.
+ * If the cache exceeds its maximum size, the least recently used entries are deleted (usage is tracked via {@link File#lastModified()}).
+ */
+class ExportCache {
+
+    private static final String TAG = ExportCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "share";
+    private static final long MAX_SIZE_BYTES = 64 * 1024 * 1024;
+
+    private static final String TEMP_FILE_PREFIX = ".tmp-";
+
+    private static final String KEY_DELIMITER = "-";
+    private static final String TRACK_ID_DELIMITER = "_";
+    // Keys are filenames: if the track ids are too long, the entry is removed if any track is deleted.
+    private static final int MAX_TRACK_IDS_LENGTH = 128;
+    private static final String MANY_TRACKS = "many";
+
+    private static ExportCache instance;
+
+    private final File directory;
+    private final long maxSizeBytes;
+
+    /**
+     * Shared by all ContentProviders (deleting tracks removes their entries).
+     */
+    static synchronized ExportCache getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new ExportCache(new File(context.getCacheDir(), DIRECTORY), MAX_SIZE_BYTES);
+        }
+        return instance;
+    }
+
+    ExportCache(@NonNull File directory, long maxSizeBytes) {
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Could not create " + directory);
+        }
+        // Left over from an interrupted export.
+        File[] tempFiles = directory.listFiles((dir, name) -> name.startsWith(TEMP_FILE_PREFIX));
+        if (tempFiles != null) {
+            for (File tempFile : tempFiles) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * @param key identifies the content of the tracks and how they are exported.
+     */
+    @NonNull
+    static String createKey(@NonNull Set<Track.Id> trackIds, @NonNull String key) {
+        String trackIdsKey = trackIds.stream()
+                .map(Track.Id::id)
+                .sorted()
+                .map(String::valueOf)
+                .collect(Collectors.joining(TRACK_ID_DELIMITER));
+        if (trackIdsKey.length() > MAX_TRACK_IDS_LENGTH) {
+            trackIdsKey = MANY_TRACKS;
+        }
+        return trackIdsKey + KEY_DELIMITER + key;
+    }
+
+    /**
+     * @return the cached file (read-only use) or null.
+     */
+    @Nullable
+    synchronized File get(@NonNull String key) {
+        File file = new File(directory, key);
+        if (!file.isFile()) {
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * @return a new file to write an entry to; it is either added with {@link #put(String, File)} or must be deleted.
+     */
+    @NonNull
+    File createTempFile() throws IOException {
+        return File.createTempFile(TEMP_FILE_PREFIX, null, directory);
+    }
+
+    /**
+     * Adds the completely written tempFile and evicts the least recently used entries if necessary.
+     */
+    synchronized void put(@NonNull String key, @NonNull File tempFile) {
+        File file = new File(directory, key);
+        if (tempFile.length() > maxSizeBytes || !tempFile.renameTo(file)) {
+            tempFile.delete();
+            return;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        evict();
+    }
+
+    /**
+     * Removes the entries that contain any of the given tracks.
+     *
+     * @param trackIds null for all tracks
+     */
+    synchronized void remove(@Nullable Set<Track.Id> trackIds) {
+        if (trackIds != null && trackIds.isEmpty()) {
+            return;
+        }
+        Set<String> removedTrackIds = trackIds == null ? null : trackIds.stream().map(trackId -> String.valueOf(trackId.id())).collect(Collectors.toSet());
+        File[] files = directory.listFiles((dir, name) -> !name.startsWith(TEMP_FILE_PREFIX));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String trackIdsKey = file.getName().split(KEY_DELIMITER, 2)[0];
+            if (removedTrackIds == null || trackIdsKey.equals(MANY_TRACKS) || Arrays.stream(trackIdsKey.split(TRACK_ID_DELIMITER)).anyMatch(removedTrackIds::contains)) {
+                if (!file.delete()) {
+                    Log.w(TAG, "Could not delete " + file);
+                }
+            }
+        }
+    }
+
+    private void evict() {
+        File[] files = directory.listFiles((dir, name) -> !name.startsWith(TEMP_FILE_PREFIX));
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= maxSizeBytes) {
+            return;
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (size <= maxSizeBytes) {
+                break;
+            }
+            long length = file.length();
+            // An open ParcelFileDescriptor stays readable after deletion.
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package de.dennisguse.opentracks.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import de.dennisguse.opentracks.data.models.TrackPoint;
+import de.dennisguse.opentracks.stats.TrackStatistics;
+
+/**
+ * Streaming Largest-Triangle-Three-Buckets downsampler.
+ * <p>
+ * TrackPoints are grouped into buckets of {@link #bucketSize} TrackPoints.
+ * From each bucket the TrackPoint is sampled in that forms the largest triangle with the previously sampled in TrackPoint and the average of the next bucket.
+ * Thus, peaks (e.g., maximal heart rate, sprints, summits) are kept rather than skipped as by picking every n-th TrackPoint.
+ * The triangle areas of altitude, speed, heart rate, cadence, and power are normalized by their range and summed up.
+ * <p>
+ * A bucket is decided once the next bucket is complete.
+ * To keep the output growing slowly while recording, the bucket size doubles after every {@link #targetNumPoints} sampled in TrackPoints.
+ * Already sampled in TrackPoints keep their resolution.
+ * <p>
+ * Pending TrackPoints are kept in pooled entries (incl. a copy of their {@link TrackStatistics}), so adding a TrackPoint does not allocate once the pool is warm.
+ */
+public class LttbTrackPointDownsampler implements TrackPointDownsampler {
+
+    public static final Factory FACTORY = LttbTrackPointDownsampler::new;
+
+    private static final int NUM_CHANNELS = 5;
+
+    private final int targetNumPoints;
+    private int bucketSize;
+    private int sampledInWithBucketSize = 0;
+
+    private final double[] channelMin = new double[NUM_CHANNELS];
+    private final double[] channelMax = new double[NUM_CHANNELS];
+
+    private Entry lastSampledIn;
+    private List<Entry> previousBucket = new ArrayList<>();
+    private List<Entry> currentBucket = new ArrayList<>();
+
+    private final Deque<Entry> pool = new ArrayDeque<>();
+    private final Entry nextAverage = new Entry();
+    private final int[] averageCount = new int[NUM_CHANNELS];
+
+    public LttbTrackPointDownsampler(int targetNumPoints, int expectedNumPoints) {
+        if (targetNumPoints < 1) {
+            throw new IllegalArgumentException("targetNumPoints must be at least 1");
+        }
+        this.targetNumPoints = targetNumPoints;
+        this.bucketSize = Math.max(1, (expectedNumPoints + targetNumPoints - 1) / targetNumPoints);
+        for (int i = 0; i < NUM_CHANNELS; i++) {
+            channelMin[i] = Double.NaN;
+            channelMax[i] = Double.NaN;
+        }
+    }
+
+    @VisibleForTesting
+    int getBucketSize() {
+        return bucketSize;
+    }
+
+    @Override
+    public void add(@NonNull TrackPoint trackPoint, @NonNull TrackStatistics trackStatistics, @NonNull Output output) {
+        Entry entry = pool.isEmpty() ? new Entry() : pool.pop();
+        entry.set(trackPoint, trackStatistics);
+        updateRange(entry);
+
+        if (lastSampledIn == null) {
+            // The first TrackPoint is always sampled in.
+            sampleIn(entry, output);
+            return;
+        }
+
+        currentBucket.add(entry);
+        if (currentBucket.size() >= bucketSize) {
+            if (!previousBucket.isEmpty()) {
+                decide(previousBucket, average(currentBucket), output);
+            }
+            List<Entry> decided = previousBucket;
+            previousBucket = currentBucket;
+            currentBucket = decided;
+        }
+    }
+
+    @Override
+    public void flush(@NonNull Output output) {
+        List<Entry> lastBucket = previousBucket;
+        if (!currentBucket.isEmpty()) {
+            if (!previousBucket.isEmpty()) {
+                decide(previousBucket, average(currentBucket), output);
+            }
+            lastBucket = currentBucket;
+        }
+
+        // The last TrackPoint is always sampled in.
+        for (int i = 0; i < lastBucket.size() - 1; i++) {
+            Entry entry = lastBucket.get(i);
+            output.onSampledOut(entry.trackPoint, entry.trackStatistics);
+            release(entry);
+        }
+        if (!lastBucket.isEmpty()) {
+            sampleIn(lastBucket.get(lastBucket.size() - 1), output);
+        }
+
+        previousBucket.clear();
+        currentBucket.clear();
+    }
+
+    private void decide(List<Entry> bucket, Entry next, Output output) {
+        Entry selected = bucket.get(0);
+        double selectedArea = -1;
+        for (Entry candidate : bucket) {
+            double area = area(lastSampledIn, candidate, next);
+            if (area > selectedArea) {
+                selected = candidate;
+                selectedArea = area;
+            }
+        }
+
+        for (Entry entry : bucket) {
+            if (entry == selected) {
+                sampleIn(entry, output);
+            } else {
+                output.onSampledOut(entry.trackPoint, entry.trackStatistics);
+                release(entry);
+            }
+        }
+        bucket.clear();
+    }
+
+    private void sampleIn(Entry entry, Output output) {
+        output.onSampledIn(entry.trackPoint, entry.trackStatistics);
+        if (lastSampledIn != null) {
+            release(lastSampledIn);
+        }
+        lastSampledIn = entry;
+
+        sampledInWithBucketSize++;
+        if (sampledInWithBucketSize >= targetNumPoints) {
+            bucketSize *= 2;
+            sampledInWithBucketSize = 0;
+        }
+    }
+
+    private double area(Entry a, Entry b, Entry c) {
+        double area = 0;
+        for (int i = 0; i < NUM_CHANNELS; i++) {
+            double range = channelMax[i] - channelMin[i];
+            if (Double.isNaN(a.y[i]) || Double.isNaN(b.y[i]) || Double.isNaN(c.y[i]) || !(range > 0)) {
+                continue;
+            }
+            area += Math.abs((a.x - c.x) * (b.y[i] - a.y[i]) - (a.x - b.x) * (c.y[i] - a.y[i])) / range;
+        }
+        return area;
+    }
+
+    private void updateRange(Entry entry) {
+        for (int i = 0; i < NUM_CHANNELS; i++) {
+            double value = entry.y[i];
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            if (Double.isNaN(channelMin[i]) || value < channelMin[i]) {
+                channelMin[i] = value;
+            }
+            if (Double.isNaN(channelMax[i]) || value > channelMax[i]) {
+                channelMax[i] = value;
+            }
+        }
+    }
+
+    private void release(Entry entry) {
+        entry.trackPoint = null;
+        pool.push(entry);
+    }
+
+    private Entry average(List<Entry> bucket) {
+        double x = 0;
+        double[] sum = nextAverage.y;
+        for (int i = 0; i < NUM_CHANNELS; i++) {
+            sum[i] = 0;
+            averageCount[i] = 0;
+        }
+        for (Entry entry : bucket) {
+            x += entry.x;
+            for (int i = 0; i < NUM_CHANNELS; i++) {
+                if (!Double.isNaN(entry.y[i])) {
+                    sum[i] += entry.y[i];
+                    averageCount[i]++;
+                }
+            }
+        }
+
+        for (int i = 0; i < NUM_CHANNELS; i++) {
+            nextAverage.y[i] = averageCount[i] > 0 ? sum[i] / averageCount[i] : Double.NaN;
+        }
+        nextAverage.x = x / bucket.size();
+        return nextAverage;
+    }
+
+    private static class Entry {
+        private TrackPoint trackPoint;
+        private final TrackStatistics trackStatistics = new TrackStatistics();
+
+        private double x;
+        private final double[] y = new double[NUM_CHANNELS];
+
+        void set(TrackPoint trackPoint, TrackStatistics trackStatistics) {
+            this.trackPoint = trackPoint;
+            this.trackStatistics.set(trackStatistics);
+            x = trackPoint.getTime().toEpochMilli();
+            y[0] = trackPoint.hasAltitude() ? trackPoint.getAltitude().toM() : Double.NaN;
+            y[1] = trackPoint.hasSpeed() ? trackPoint.getSpeed().toMPS() : Double.NaN;
+            y[2] = trackPoint.hasHeartRate() ? trackPoint.getHeartRate().getBPM() : Double.NaN;
+            y[3] = trackPoint.hasCadence() ? trackPoint.getCadence().getRPM() : Double.NaN;
+            y[4] = trackPoint.hasPower() ? trackPoint.getPower().getW() : Double.NaN;
+        }
+    }
+}
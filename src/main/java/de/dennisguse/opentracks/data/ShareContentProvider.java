@@ -14,10 +14,13 @@ import android.util.Pair;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -26,10 +29,12 @@ import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import de.dennisguse.opentracks.BuildConfig;
 import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.data.tables.TracksColumns;
 import de.dennisguse.opentracks.io.file.TrackFileFormat;
 import de.dennisguse.opentracks.io.file.exporter.TrackExporter;
+import de.dennisguse.opentracks.settings.PreferencesUtils;
 
 /**
  * A content provider that mimics the behavior of {@link androidx.core.content.FileProvider}, which shares virtual (non-existing) KML-files.
@@ -55,6 +60,7 @@ public class ShareContentProvider extends CustomContentProvider {
     private static final int URI_KMZ_WITH_TRACKDETAIL_AND_SENSORDATA = 6;
     private static final int URI_KMZ_WITH_TRACKDETAIL_SENSORDATA_AND_PICTURES = 7;
     private static final int URI_CSV = 8;
+    private static final int URI_BINARY = 9;
 
     private static final UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
     private static final String TRACKID_DELIMITER = "_";
@@ -67,6 +73,7 @@ public class ShareContentProvider extends CustomContentProvider {
         uriMatcher.addURI(ContentProviderUtils.AUTHORITY_PACKAGE, TracksColumns.TABLE_NAME + "/" + TrackFileFormat.KMZ_WITH_TRACKDETAIL_AND_SENSORDATA.getPreferenceId() + "/*/*", URI_KMZ_WITH_TRACKDETAIL_AND_SENSORDATA);
         uriMatcher.addURI(ContentProviderUtils.AUTHORITY_PACKAGE, TracksColumns.TABLE_NAME + "/" + TrackFileFormat.KMZ_WITH_TRACKDETAIL_AND_SENSORDATA_AND_PICTURES.getPreferenceId() + "/*/*", URI_KMZ_WITH_TRACKDETAIL_SENSORDATA_AND_PICTURES);
         uriMatcher.addURI(ContentProviderUtils.AUTHORITY_PACKAGE, TracksColumns.TABLE_NAME + "/" + TrackFileFormat.CSV.getPreferenceId() + "/*/*", URI_CSV);
+        uriMatcher.addURI(ContentProviderUtils.AUTHORITY_PACKAGE, TracksColumns.TABLE_NAME + "/" + TrackFileFormat.BINARY.getPreferenceId() + "/*/*", URI_BINARY);
     }
 
     /**
@@ -138,6 +145,7 @@ public class ShareContentProvider extends CustomContentProvider {
             case URI_KMZ_WITH_TRACKDETAIL_SENSORDATA_AND_PICTURES ->
                     TrackFileFormat.KMZ_WITH_TRACKDETAIL_AND_SENSORDATA_AND_PICTURES;
             case URI_CSV -> TrackFileFormat.CSV;
+            case URI_BINARY -> TrackFileFormat.BINARY;
             default ->
                     throw new RuntimeException("Could not derive TrackFileFormat from Uri " + uri);
         };
@@ -170,7 +178,9 @@ public class ShareContentProvider extends CustomContentProvider {
                 }
                 case OpenableColumns.SIZE -> {
                     cols[i] = OpenableColumns.SIZE;
-                    values[i++] = -1; //Report unknown size; if applications need to know, one need to generate the file here also (count bytes that are written to OutputStream.
+                    Set<Track.Id> trackIds = parseURI(uri);
+                    File cachedFile = ExportCache.getInstance(getContext()).get(getExportCacheKey(getContext(), getTrackFileFormat(uri), trackIds, getModificationStamp(trackIds)));
+                    values[i++] = cachedFile != null ? cachedFile.length() : -1; //Report unknown size if not yet exported.
                 }
             }
         }
@@ -194,10 +204,36 @@ public class ShareContentProvider extends CustomContentProvider {
         return super.getType(uri);
     }
 
+    /**
+     * Besides the content, the export depends on the app version (exporters), the format, and the settings used by the exporters (e.g., the language of KML labels).
+     */
+    @VisibleForTesting
+    static String getExportCacheKey(@NonNull Context context, @NonNull TrackFileFormat trackFileFormat, @NonNull Set<Track.Id> trackIds, long modificationStamp) {
+        String key = BuildConfig.VERSION_CODE
+                + "-" + trackFileFormat.getPreferenceId()
+                + "-" + context.getResources().getConfiguration().getLocales().get(0).toLanguageTag()
+                + "-" + PreferencesUtils.getUnitSystem().name()
+                + "-" + Long.toHexString(modificationStamp);
+        return ExportCache.createKey(trackIds, key);
+    }
+
+    /**
+     * Served from {@link ExportCache} if possible; otherwise, the export is streamed and cached.
+     */
     @Nullable
     @Override
     public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
         Set<Track.Id> trackIds = parseURI(uri);
+        TrackFileFormat trackFileFormat = getTrackFileFormat(uri);
+        String cacheKey = getExportCacheKey(getContext(), trackFileFormat, trackIds, getModificationStamp(trackIds));
+        ExportCache exportCache = ExportCache.getInstance(getContext());
+
+        File cachedFile = exportCache.get(cacheKey);
+        if (cachedFile != null) {
+            Log.d(TAG, "Sharing cached export " + cacheKey);
+            return ParcelFileDescriptor.open(cachedFile, ParcelFileDescriptor.MODE_READ_ONLY);
+        }
+
         final ArrayList<Track> tracks = new ArrayList<>();
         String[] trackIdsString = trackIds.stream().map(id -> String.valueOf(id.id())).toArray(String[]::new);
         String whereClause = String.format(TracksColumns._ID + " IN (%s)", TextUtils.join(",", Collections.nCopies(trackIds.size(), "?")));
@@ -208,17 +244,79 @@ public class ShareContentProvider extends CustomContentProvider {
             }
         }
 
-        final TrackExporter trackExporter = getTrackFileFormat(uri).createTrackExporter(getContext(), new ContentProviderUtils(getContext()));
+        final TrackExporter trackExporter = trackFileFormat.createTrackExporter(getContext(), new ContentProviderUtils(getContext()));
 
         PipeDataWriter<String> pipeDataWriter = (output, uri1, mimeType, opts, args) -> {
+            File tempFile = null;
             try (FileOutputStream fileOutputStream = new FileOutputStream(output.getFileDescriptor())) {
-                // TODO handle failure (i.e., do not export an empty file)
-                trackExporter.writeTrack(tracks, fileOutputStream);
+                tempFile = exportCache.createTempFile();
+                CachingOutputStream cachingOutputStream = new CachingOutputStream(fileOutputStream, new FileOutputStream(tempFile));
+                boolean success;
+                try (cachingOutputStream) {
+                    success = trackExporter.writeTrack(tracks, cachingOutputStream);
+                }
+                // A failed export is not cached, so it is not shared again; the receiving app cannot be told (openPipeHelper's pipe only closes).
+                // Exporters using a PrintWriter do not report write errors.
+                if (success && !cachingOutputStream.cacheFailed) {
+                    // Before closing the pipe, so the receiving app can re-open the file from the cache.
+                    exportCache.put(cacheKey, tempFile);
+                    tempFile = null;
+                } else {
+                    Log.w(TAG, "Export of " + uri1 + " failed; not cached.");
+                }
             } catch (IOException e) {
                 Log.w(TAG, "there occurred an error while sharing a file: " + e);
+            } finally {
+                if (tempFile != null) {
+                    tempFile.delete();
+                }
             }
         };
 
         return openPipeHelper(uri, getType(uri), null, null, pipeDataWriter);
     }
+
+    /**
+     * Writes to the receiving app and the cache file.
+     * If the receiving app stops reading (e.g., after a preview), the export is still completed for the cache.
+     */
+    private static class CachingOutputStream extends OutputStream {
+
+        private OutputStream pipe;
+        private final OutputStream cache;
+        private boolean cacheFailed;
+
+        CachingOutputStream(OutputStream pipe, OutputStream cache) {
+            this.pipe = pipe;
+            this.cache = cache;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            try {
+                cache.write(b, off, len);
+            } catch (IOException e) {
+                cacheFailed = true;
+                throw e;
+            }
+            if (pipe != null) {
+                try {
+                    pipe.write(b, off, len);
+                } catch (IOException e) {
+                    Log.d(TAG, "Receiving app closed the file; continue export for cache.");
+                    pipe = null;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            cache.close();
+        }
+    }
 }
@@ -20,6 +20,7 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.database.ContentObserver;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.util.Log;
@@ -27,16 +28,16 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import de.dennisguse.opentracks.data.models.Marker;
 import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.data.models.TrackPoint;
-import de.dennisguse.opentracks.data.tables.MarkerColumns;
-import de.dennisguse.opentracks.data.tables.TrackPointsColumns;
-import de.dennisguse.opentracks.data.tables.TracksColumns;
 import de.dennisguse.opentracks.services.RecordingStatus;
 import de.dennisguse.opentracks.services.TrackRecordingService;
 import de.dennisguse.opentracks.services.handlers.AltitudeCorrectionManager;
@@ -47,11 +48,13 @@ import de.dennisguse.opentracks.stats.TrackStatisticsUpdater;
  * Track data hub.
  * Receives data from {@link CustomContentProvider} and distributes it to {@link Listener} after some processing.
  * <p>
- * {@link TrackPoint}s are filtered/downsampled with a dynamic sampling frequency.
+ * {@link TrackPoint}s are downsampled with a streaming {@link TrackPointDownsampler}; while recording, new TrackPoints only extend the output.
+ * For long tracks that are not recording, the precomputed {@link TrackPointsLod} is used instead of reading all {@link TrackPoint}s.
+ * <p>
+ * Only changes of the selected track are observed (see {@link ContentProviderUtils#getTrackPointsUri(Track.Id)}).
  *
  * @author Rodrigo Damazio
  */
-//TODO register contentobserver only for exact URL (incl. trackId) to not filter here.
 public class TrackDataHub {
 
     /**
@@ -66,15 +69,23 @@ public class TrackDataHub {
     @VisibleForTesting
     private static final int MAX_DISPLAYED_MARKERS = 128;
 
+    /**
+     * Number of TrackPoints whose altitude is corrected at once (see {@link AltitudeCorrectionManager#correctAltitudes(Context, List)}).
+     */
+    private static final int ALTITUDE_CORRECTION_BATCH_SIZE = 1000;
+
     private static final String TAG = TrackDataHub.class.getSimpleName();
 
     private final Context context;
     private final Set<Listener> listeners;
     private final ContentProviderUtils contentProviderUtils;
     private final int targetNumPoints;
+    private final TrackPointDownsampler.Factory downsamplerFactory;
 
     private final AltitudeCorrectionManager egm2008Correction = new AltitudeCorrectionManager();
 
+    private final TrackPointsLod trackPointsLod;
+
     //TODO Check if this is needed.
     private HandlerThread handlerThread;
     private Handler handler;
@@ -85,9 +96,11 @@ public class TrackDataHub {
 
     // Track points sampling state
     private int numLoadedPoints;
-    private TrackPoint.Id firstSeenTrackPointId;
+    private TrackPointDownsampler downsampler;
     private TrackPoint.Id lastSeenTrackPointId;
     private TrackStatisticsUpdater trackStatisticsUpdater;
+    // Sampling state was loaded from TrackPointsLod; trackStatisticsUpdater is not usable.
+    private boolean loadedFromLod;
 
     // Registered listeners
     private ContentObserver tracksTableObserver;
@@ -95,15 +108,17 @@ public class TrackDataHub {
     private ContentObserver trackPointsTableObserver;
 
     public TrackDataHub(Context context) {
-        this(context, new ContentProviderUtils(context), TARGET_DISPLAYED_TRACKPOINTS);
+        this(context, new ContentProviderUtils(context), TARGET_DISPLAYED_TRACKPOINTS, LttbTrackPointDownsampler.FACTORY);
     }
 
     @VisibleForTesting
-    private TrackDataHub(Context context, ContentProviderUtils contentProviderUtils, int targetNumPoints) {
+    TrackDataHub(Context context, ContentProviderUtils contentProviderUtils, int targetNumPoints, TrackPointDownsampler.Factory downsamplerFactory) {
         this.context = context;
         this.listeners = new HashSet<>();
         this.contentProviderUtils = contentProviderUtils;
         this.targetNumPoints = targetNumPoints;
+        this.downsamplerFactory = downsamplerFactory;
+        this.trackPointsLod = new TrackPointsLod(contentProviderUtils);
         resetSamplingState();
     }
 
@@ -116,15 +131,13 @@ public class TrackDataHub {
         handlerThread.start();
         handler = new Handler(handlerThread.getLooper());
 
-        //register listeners
-        ContentResolver contentResolver = context.getContentResolver();
+        // Registered for the selected track by loadTrack()
         tracksTableObserver = new ContentObserver(handler) {
             @Override
             public void onChange(boolean selfChange) {
                 notifyTracksTableUpdate(listeners);
             }
         };
-        contentResolver.registerContentObserver(TracksColumns.CONTENT_URI, false, tracksTableObserver);
 
         markersTableObserver = new ContentObserver(handler) {
             @Override
@@ -132,28 +145,48 @@ public class TrackDataHub {
                 notifyMarkersTableUpdate(listeners);
             }
         };
-        contentResolver.registerContentObserver(MarkerColumns.CONTENT_URI, false, markersTableObserver);
 
         trackPointsTableObserver = new ContentObserver(handler) {
             @Override
-            public void onChange(boolean selfChange) {
+            public void onChange(boolean selfChange, Uri uri) {
+                TrackPoint.Id lastInsertedTrackPointId = ContentProviderUtils.parseLastInsertedTrackPointId(uri);
+                if (lastInsertedTrackPointId != null && lastSeenTrackPointId != null && lastInsertedTrackPointId.id() <= lastSeenTrackPointId.id()) {
+                    // Already loaded.
+                    return;
+                }
                 notifyTrackPointsTableUpdate(true, listeners);
             }
         };
-        contentResolver.registerContentObserver(TrackPointsColumns.CONTENT_URI_BY_ID, false, trackPointsTableObserver);
     }
 
-    public void stop() {
+    /**
+     * Observes only the selected track; to be run in the {@link #handler} thread.
+     */
+    private void registerContentObservers() {
         if (!isStarted()) {
-            Log.i(TAG, "TrackDataHub not started, ignoring stop.");
             return;
         }
-
-        //Unregister listeners
         ContentResolver contentResolver = context.getContentResolver();
+        unregisterContentObservers(contentResolver);
+        contentResolver.registerContentObserver(ContentProviderUtils.getTrackUri(selectedTrackId), false, tracksTableObserver);
+        contentResolver.registerContentObserver(ContentProviderUtils.getMarkersUri(selectedTrackId), false, markersTableObserver);
+        contentResolver.registerContentObserver(ContentProviderUtils.getTrackPointsUri(selectedTrackId), false, trackPointsTableObserver);
+    }
+
+    private void unregisterContentObservers(ContentResolver contentResolver) {
         contentResolver.unregisterContentObserver(tracksTableObserver);
         contentResolver.unregisterContentObserver(markersTableObserver);
         contentResolver.unregisterContentObserver(trackPointsTableObserver);
+    }
+
+    public void stop() {
+        if (!isStarted()) {
+            Log.i(TAG, "TrackDataHub not started, ignoring stop.");
+            return;
+        }
+
+        //Unregister listeners
+        unregisterContentObservers(context.getContentResolver());
 
         if (handlerThread != null) {
             handlerThread.getLooper().quit();
@@ -170,6 +203,7 @@ public class TrackDataHub {
                 return;
             }
             selectedTrackId = trackId;
+            registerContentObservers();
             loadDataForAll();
         });
     }
@@ -301,9 +335,16 @@ public class TrackDataHub {
             return;
         }
 
-        if (updateSamplingState && numLoadedPoints >= targetNumPoints) {
-            // Reload and resample the track at a lower frequency.
-            Log.i(TAG, "Resampling track after " + numLoadedPoints + " points.");
+        if (updateSamplingState && loadedFromLod && selectedTrackId != null
+                && lastSeenTrackPointId.equals(contentProviderUtils.getLastTrackPointId(selectedTrackId))) {
+            // No TrackPoints were added to the selected track.
+            listeners.stream().forEach(Listener::onNewTrackPointsDone);
+            return;
+        }
+
+        if (updateSamplingState && loadedFromLod) {
+            // Buckets cannot be extended: reload.
+            Log.i(TAG, "Reloading track after " + numLoadedPoints + " buckets.");
             resetSamplingState();
             for (Listener listener : listeners) {
                 listener.clearTrackPoints();
@@ -311,7 +352,6 @@ public class TrackDataHub {
         }
 
         int localNumLoadedTrackPoints = updateSamplingState ? numLoadedPoints : 0;
-        TrackPoint.Id localFirstSeenTrackPointId = updateSamplingState ? firstSeenTrackPointId : null;
         TrackPoint.Id localLastSeenTrackPointIdId = updateSamplingState ? lastSeenTrackPointId : null;
         TrackPoint.Id maxPointId = updateSamplingState ? null : lastSeenTrackPointId;
 
@@ -320,85 +360,143 @@ public class TrackDataHub {
             return;
         }
 
-        TrackPoint.Id lastTrackPointId = contentProviderUtils.getLastTrackPointId(selectedTrackId);
-        int samplingFrequency = -1;
-
+        boolean lodMissing = false;
+        if (localLastSeenTrackPointIdId == null && (updateSamplingState || loadedFromLod) && !isSelectedTrackRecording()) {
+            if (notifyTrackPointsFromLod(contentProviderUtils.getLastTrackPointId(selectedTrackId), updateSamplingState, listeners)) {
+                return;
+            }
+            lodMissing = true;
+        }
 
         TrackPoint.Id next = null;
         if (localLastSeenTrackPointIdId != null) {
             next = new TrackPoint.Id(localLastSeenTrackPointIdId.id() + 1); //TODO startTrackPointId + 1 is an assumption assumption; should be derived from the DB.
         }
 
+        TrackPointDownsampler.Output output = new TrackPointDownsampler.Output() {
+            @Override
+            public void onSampledIn(@NonNull TrackPoint trackPoint, @NonNull TrackStatistics trackStatistics) {
+                for (Listener trackDataListener : listeners) {
+                    trackDataListener.onSampledInTrackPoint(trackPoint, trackStatistics);
+                }
+            }
+
+            @Override
+            public void onSampledOut(@NonNull TrackPoint trackPoint, @NonNull TrackStatistics trackStatistics) {
+                for (Listener trackDataListener : listeners) {
+                    trackDataListener.onSampledOutTrackPoint(trackPoint, trackStatistics);
+                }
+            }
+        };
+
+        TrackPointDownsampler localDownsampler = updateSamplingState ? downsampler : null;
+        TrackStatisticsUpdater localUpdater = updateSamplingState ? trackStatisticsUpdater : new TrackStatisticsUpdater();
+        if (localUpdater == null) {
+            // stop() is happening while notifyTrackPointsTableUpdate()
+            return;
+        }
+
         TrackPoint trackPoint = null;
         try (TrackPointIterator trackPointIterator = contentProviderUtils.getTrackPointLocationIterator(selectedTrackId, next)) {
+            if (lodMissing && TrackPointsLod.isStored(trackPointIterator.getCount())) {
+                // Missing or outdated (e.g., dropped by a database upgrade); available next time.
+                trackPointsLod.rebuildAsync(selectedTrackId);
+            }
+            if (localDownsampler == null) {
+                localDownsampler = downsamplerFactory.create(targetNumPoints, trackPointIterator.getCount());
+            }
 
-            while (trackPointIterator.hasNext()) {
-                //Prevents a NPE if stop() is happening while notifyTrackPointsTableUpdate()
-                TrackStatisticsUpdater currentUpdater = trackStatisticsUpdater;
-
+            List<TrackPoint> batch = new ArrayList<>(ALTITUDE_CORRECTION_BATCH_SIZE);
+            boolean pastMaxPointId = false;
+            while (!pastMaxPointId && trackPointIterator.hasNext()) {
                 if (!isStarted()) {
                     return;
                 }
 
-                trackPoint = trackPointIterator.next();
-                TrackPoint.Id trackPointId = trackPoint.getId();
-
-                // Stop if past the last wanted point
-                if (maxPointId != null && trackPointId.id() > maxPointId.id()) {
-                    break;
-                }
+                batch.clear();
+                while (batch.size() < ALTITUDE_CORRECTION_BATCH_SIZE && trackPointIterator.hasNext()) {
+                    TrackPoint nextTrackPoint = trackPointIterator.next();
 
-                egm2008Correction.correctAltitude(context, trackPoint);
-
-                if (localFirstSeenTrackPointId == null) {
-                    localFirstSeenTrackPointId = trackPointId;
+                    // Stop if past the last wanted point
+                    if (maxPointId != null && nextTrackPoint.getId().id() > maxPointId.id()) {
+                        pastMaxPointId = true;
+                        break;
+                    }
+                    batch.add(nextTrackPoint);
                 }
 
-                if (samplingFrequency == -1) {
-                    long numTotalPoints = Math.max(0L, lastTrackPointId.id() - localFirstSeenTrackPointId.id()); //TODO That is an assumption; should be derived from the DB.
-                    samplingFrequency = 1 + (int) (numTotalPoints / targetNumPoints);
-                }
+                egm2008Correction.correctAltitudes(context, batch);
 
-                currentUpdater.addTrackPoint(trackPoint);
+                for (TrackPoint batchTrackPoint : batch) {
+                    trackPoint = batchTrackPoint;
+                    localUpdater.addTrackPoint(trackPoint);
+                    localDownsampler.add(trackPoint, localUpdater.getTrackStatisticsView(), output);
 
-                // Also include the last point if the selected track is not recording.
-                if ((localNumLoadedTrackPoints % samplingFrequency == 0) || (trackPointId == lastTrackPointId && !isSelectedTrackRecording())) {
-                    for (Listener trackDataListener : listeners) {
-                        trackDataListener.onSampledInTrackPoint(trackPoint, currentUpdater.getTrackStatistics());
-                    }
-                } else {
-                    for (Listener trackDataListener : listeners) {
-                        trackDataListener.onSampledOutTrackPoint(trackPoint, currentUpdater.getTrackStatistics());
-                    }
+                    localNumLoadedTrackPoints++;
                 }
-
-                localNumLoadedTrackPoints++;
             }
         }
 
+        // While recording, pending TrackPoints are decided once more TrackPoints arrive.
+        if (!updateSamplingState || !isSelectedTrackRecording()) {
+            localDownsampler.flush(output);
+        }
+
         if (trackPoint != null) {
             localLastSeenTrackPointIdId = trackPoint.getId();
         }
 
         if (updateSamplingState) {
             numLoadedPoints = localNumLoadedTrackPoints;
-            firstSeenTrackPointId = localFirstSeenTrackPointId;
+            downsampler = localDownsampler;
             lastSeenTrackPointId = localLastSeenTrackPointIdId;
         }
 
         listeners.stream().forEach(Listener::onNewTrackPointsDone);
     }
 
+    /**
+     * Sends the buckets of the {@link TrackPointsLod} as sampled in track points; to be run in the {@link #handler} thread.
+     *
+     * @return false if the {@link TrackPointsLod} is missing or outdated.
+     */
+    private boolean notifyTrackPointsFromLod(TrackPoint.Id lastTrackPointId, boolean updateSamplingState, Set<Listener> listeners) {
+        // Each bucket is sent as two TrackPoints (minimum and maximum).
+        List<TrackPointsLod.Entry> entries = trackPointsLod.load(selectedTrackId, targetNumPoints / 2, lastTrackPointId);
+        if (entries == null) {
+            return false;
+        }
+
+        egm2008Correction.correctAltitudes(context, entries.stream().map(TrackPointsLod.Entry::trackPoint).collect(Collectors.toList()));
 
+        for (TrackPointsLod.Entry entry : entries) {
+            if (!isStarted()) {
+                return true;
+            }
+            for (Listener trackDataListener : listeners) {
+                trackDataListener.onSampledInTrackPoint(entry.trackPoint(), entry.trackStatistics());
+            }
+        }
+
+        if (updateSamplingState) {
+            numLoadedPoints = entries.size();
+            lastSeenTrackPointId = lastTrackPointId;
+            loadedFromLod = true;
+        }
+
+        listeners.stream().forEach(Listener::onNewTrackPointsDone);
+        return true;
+    }
 
     /**
      * Resets the track points sampling states.
      */
     private void resetSamplingState() {
         numLoadedPoints = 0;
-        firstSeenTrackPointId = null;
+        downsampler = null;
         lastSeenTrackPointId = null;
         trackStatisticsUpdater = new TrackStatisticsUpdater();
+        loadedFromLod = false;
     }
 
     private boolean isStarted() {
@@ -426,7 +524,8 @@ public class TrackDataHub {
         /**
          * Called when a sampled in track point is read.
          *
-         * @param trackPoint the trackPoint
+         * @param trackPoint      the trackPoint
+         * @param trackStatistics the statistics up to the trackPoint; only valid during this call (it is reused), copy it to keep it.
          */
         default void onSampledInTrackPoint(@NonNull TrackPoint trackPoint, @NonNull TrackStatistics trackStatistics) {
         }
@@ -434,7 +533,8 @@ public class TrackDataHub {
         /**
          * Called when a sampled out track point is read.
          *
-         * @param trackPoint the trackPoint
+         * @param trackPoint      the trackPoint
+         * @param trackStatistics the statistics up to the trackPoint; only valid during this call (it is reused), copy it to keep it.
          */
         default void onSampledOutTrackPoint(@NonNull TrackPoint trackPoint, @NonNull TrackStatistics trackStatistics) {
         }
@@ -0,0 +1,158 @@
+package de.dennisguse.opentracks.data;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import de.dennisguse.opentracks.data.models.TrackPoint;
+
+/**
+ * Fingerprint of a track's content to detect duplicate imports independent of the track's UUID (e.g., files not exported by OpenTracks).
+ * <p>
+ * {@link #get()} is the hash of time and location (as stored: 1E6 degrees) of the {@link #NUM_TRACKPOINTS} earliest TrackPoints with a valid location.
+ * They are hashed ordered by time (then location), so the fingerprint does not depend on the order in which the TrackPoints are added (file or database order).
+ * If the TrackPoints are added ordered by time, it is known after reading the first TrackPoints (see {@link #isFinal(long)}).
+ * <p>
+ * Tracks with the same start (e.g., a recording split in two) have the same hash; so it only identifies candidates.
+ * {@link #matches(TrackFingerprint)} confirms a candidate by also comparing the number of TrackPoints, the start and end time, and the {@link #NUM_TRACKPOINTS} latest TrackPoints.
+ */
+public class TrackFingerprint {
+
+    public static final int NUM_TRACKPOINTS = 32;
+
+    private final Points earliest = new Points(false);
+    private final Points latest = new Points(true);
+
+    // Number of TrackPoints with a valid location.
+    private int numTrackPoints;
+
+    /**
+     * The first TrackPoints in order (time, then location); if reversed, the last TrackPoints in reverse order.
+     */
+    private static class Points {
+
+        private final boolean reversed;
+
+        // Sorted.
+        private final long[] times = new long[NUM_TRACKPOINTS];
+        private final int[] latitudesE6 = new int[NUM_TRACKPOINTS];
+        private final int[] longitudesE6 = new int[NUM_TRACKPOINTS];
+
+        private int count;
+
+        private Points(boolean reversed) {
+            this.reversed = reversed;
+        }
+
+        private boolean add(long timeEpochMillis, int latitudeE6, int longitudeE6) {
+            if (isComplete() && compareTo(NUM_TRACKPOINTS - 1, timeEpochMillis, latitudeE6, longitudeE6) <= 0) {
+                return false;
+            }
+
+            // Insertion sort; if complete, the last TrackPoint is dropped.
+            int index = isComplete() ? NUM_TRACKPOINTS - 1 : count++;
+            while (index > 0 && compareTo(index - 1, timeEpochMillis, latitudeE6, longitudeE6) > 0) {
+                times[index] = times[index - 1];
+                latitudesE6[index] = latitudesE6[index - 1];
+                longitudesE6[index] = longitudesE6[index - 1];
+                index--;
+            }
+            times[index] = timeEpochMillis;
+            latitudesE6[index] = latitudeE6;
+            longitudesE6[index] = longitudeE6;
+            return true;
+        }
+
+        private int compareTo(int index, long timeEpochMillis, int latitudeE6, int longitudeE6) {
+            int result = Long.compare(times[index], timeEpochMillis);
+            if (result == 0) {
+                result = Integer.compare(latitudesE6[index], latitudeE6);
+            }
+            if (result == 0) {
+                result = Integer.compare(longitudesE6[index], longitudeE6);
+            }
+            return reversed ? -result : result;
+        }
+
+        private boolean isComplete() {
+            return count == NUM_TRACKPOINTS;
+        }
+
+        private long hash() {
+            ByteBuffer buffer = ByteBuffer.allocate(count * (Long.BYTES + 2 * Integer.BYTES));
+            for (int i = 0; i < count; i++) {
+                buffer.putLong(times[i]).putInt(latitudesE6[i]).putInt(longitudesE6[i]);
+            }
+            try {
+                return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(buffer.array())).getLong();
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * @return true if the TrackPoint is one of the earliest TrackPoints (so far).
+     */
+    public boolean add(@NonNull TrackPoint trackPoint) {
+        if (!trackPoint.hasLocation()) {
+            return false;
+        }
+        return add(trackPoint.getTime().toEpochMilli(), (int) (trackPoint.getLatitude() * 1E6), (int) (trackPoint.getLongitude() * 1E6));
+    }
+
+    /**
+     * @return true if the TrackPoint is one of the earliest TrackPoints (so far).
+     */
+    public boolean add(long timeEpochMillis, int latitudeE6, int longitudeE6) {
+        if (Math.abs(latitudeE6) > 90_000_000 || Math.abs(longitudeE6) > 180_000_000) {
+            return false;
+        }
+        numTrackPoints++;
+        latest.add(timeEpochMillis, latitudeE6, longitudeE6);
+        return earliest.add(timeEpochMillis, latitudeE6, longitudeE6);
+    }
+
+    public boolean isEmpty() {
+        return numTrackPoints == 0;
+    }
+
+    public boolean isComplete() {
+        return earliest.isComplete();
+    }
+
+    /**
+     * For TrackPoints that are added ordered by time.
+     *
+     * @return true if TrackPoints at or after the given time cannot change {@link #get()} anymore.
+     */
+    public boolean isFinal(long nextTimeEpochMillis) {
+        return isComplete() && nextTimeEpochMillis > earliest.times[NUM_TRACKPOINTS - 1];
+    }
+
+    /**
+     * @return the hash of the earliest TrackPoints.
+     */
+    public long get() {
+        if (isEmpty()) {
+            throw new IllegalStateException("No TrackPoints with location were added.");
+        }
+        return earliest.hash();
+    }
+
+    /**
+     * @return true if both contain the same TrackPoints as far as can be told: same earliest and latest TrackPoints, same number of TrackPoints.
+     */
+    public boolean matches(@NonNull TrackFingerprint other) {
+        if (isEmpty() || other.isEmpty()) {
+            return false;
+        }
+        return numTrackPoints == other.numTrackPoints
+                && earliest.times[0] == other.earliest.times[0]
+                && latest.times[0] == other.latest.times[0]
+                && get() == other.get()
+                && latest.hash() == other.latest.hash();
+    }
+}
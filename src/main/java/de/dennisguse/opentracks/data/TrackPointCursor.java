@@ -0,0 +1,208 @@
+package de.dennisguse.opentracks.data;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+
+import de.dennisguse.opentracks.data.models.TrackPoint;
+import de.dennisguse.opentracks.data.tables.TrackPointsColumns;
+
+/**
+ * Read-only view on the TrackPoints of a cursor: the getters read the current row directly and return primitives, so iterating does not create a {@link TrackPoint} (or any other object) per row.
+ * Columns that are not part of the projection are reported as absent (has...() returns false).
+ * <p>
+ * Values must only be read if the corresponding has...() returned true.
+ * They are returned as stored, while {@link TrackPoint} reads altitude, accuracy, speed, and sensor distance as float.
+ * The caller owns the instance and is responsible for closing it.
+ */
+public class TrackPointCursor implements AutoCloseable {
+
+    /**
+     * Only what is needed to draw a track.
+     */
+    public static final String[] PROJECTION_LOCATION = {
+            TrackPointsColumns._ID,
+            TrackPointsColumns.TYPE,
+            TrackPointsColumns.TIME,
+            TrackPointsColumns.LATITUDE,
+            TrackPointsColumns.LONGITUDE
+    };
+
+    /**
+     * What {@link de.dennisguse.opentracks.stats.TrackStatisticsUpdater} reads.
+     */
+    public static final String[] PROJECTION_STATISTICS = {
+            TrackPointsColumns._ID,
+            TrackPointsColumns.TYPE,
+            TrackPointsColumns.TIME,
+            TrackPointsColumns.LATITUDE,
+            TrackPointsColumns.LONGITUDE,
+            TrackPointsColumns.ALTITUDE,
+            TrackPointsColumns.SPEED,
+            TrackPointsColumns.SENSOR_HEARTRATE,
+            TrackPointsColumns.SENSOR_CADENCE,
+            TrackPointsColumns.SENSOR_POWER,
+            TrackPointsColumns.SENSOR_DISTANCE,
+            TrackPointsColumns.ALTITUDE_GAIN,
+            TrackPointsColumns.ALTITUDE_LOSS
+    };
+
+    private final Cursor cursor;
+    private final CachedTrackPointsIndexes indexes;
+
+    TrackPointCursor(@NonNull Cursor cursor) {
+        this.cursor = cursor;
+        this.indexes = new CachedTrackPointsIndexes(cursor);
+    }
+
+    public int getCount() {
+        return cursor.getCount();
+    }
+
+    public boolean moveToNext() {
+        return cursor.moveToNext();
+    }
+
+    public long getId() {
+        return cursor.getLong(indexes.idIndex);
+    }
+
+    @NonNull
+    public TrackPoint.Type getType() {
+        return TrackPoint.Type.getById(cursor.getInt(indexes.typeIndex));
+    }
+
+    public long getTimeEpochMillis() {
+        return cursor.getLong(indexes.timeIndex);
+    }
+
+    public boolean hasLocation() {
+        return CachedTrackPointsIndexes.hasValue(cursor, indexes.latitudeIndex) && CachedTrackPointsIndexes.hasValue(cursor, indexes.longitudeIndex);
+    }
+
+    public double getLatitude() {
+        return ((double) cursor.getInt(indexes.latitudeIndex)) / 1E6;
+    }
+
+    public double getLongitude() {
+        return ((double) cursor.getInt(indexes.longitudeIndex)) / 1E6;
+    }
+
+    /**
+     * @return latitude as stored (1E6 degrees).
+     */
+    public int getLatitudeE6() {
+        return cursor.getInt(indexes.latitudeIndex);
+    }
+
+    /**
+     * @return longitude as stored (1E6 degrees).
+     */
+    public int getLongitudeE6() {
+        return cursor.getInt(indexes.longitudeIndex);
+    }
+
+    public boolean hasAltitude() {
+        return CachedTrackPointsIndexes.hasValue(cursor, indexes.altitudeIndex);
+    }
+
+    /**
+     * @return altitude (WGS84) in meters.
+     */
+    public double getAltitudeM() {
+        return cursor.getDouble(indexes.altitudeIndex);
+    }
+
+    public boolean hasHorizontalAccuracy() {
+        return CachedTrackPointsIndexes.hasValue(cursor, indexes.accuracyIndex);
+    }
+
+    public double getHorizontalAccuracyM() {
+        return cursor.getDouble(indexes.accuracyIndex);
+    }
+
+    public boolean hasVerticalAccuracy() {
+        return CachedTrackPointsIndexes.hasValue(cursor, indexes.accuracyVerticalIndex);
+    }
+
+    public double getVerticalAccuracyM() {
+        return cursor.getDouble(indexes.accuracyVerticalIndex);
+    }
+
+    public boolean hasSpeed() {
+        return CachedTrackPointsIndexes.hasValue(cursor, indexes.speedIndex);
+    }
+
+    public double getSpeedMPS() {
+        return cursor.getDouble(indexes.speedIndex);
+    }
+
+    public boolean hasBearing() {
+        return CachedTrackPointsIndexes.hasValue(cursor, indexes.bearingIndex);
+    }
+
+    public float getBearing() {
+        return cursor.getFloat(indexes.bearingIndex);
+    }
+
+    public boolean hasHeartRate() {
+        return CachedTrackPointsIndexes.hasValue(cursor, indexes.sensorHeartRateIndex);
+    }
+
+    public float getHeartRateBPM() {
+        return cursor.getFloat(indexes.sensorHeartRateIndex);
+    }
+
+    public boolean hasCadence() {
+        return CachedTrackPointsIndexes.hasValue(cursor, indexes.sensorCadenceIndex);
+    }
+
+    public float getCadenceRPM() {
+        return cursor.getFloat(indexes.sensorCadenceIndex);
+    }
+
+    public boolean hasPower() {
+        return CachedTrackPointsIndexes.hasValue(cursor, indexes.sensorPowerIndex);
+    }
+
+    public float getPowerW() {
+        return cursor.getFloat(indexes.sensorPowerIndex);
+    }
+
+    public boolean hasSensorDistance() {
+        return CachedTrackPointsIndexes.hasValue(cursor, indexes.sensorDistanceIndex);
+    }
+
+    public double getSensorDistanceM() {
+        return cursor.getDouble(indexes.sensorDistanceIndex);
+    }
+
+    public boolean hasAltitudeGain() {
+        return CachedTrackPointsIndexes.hasValue(cursor, indexes.altitudeGainIndex);
+    }
+
+    public float getAltitudeGain() {
+        return cursor.getFloat(indexes.altitudeGainIndex);
+    }
+
+    public boolean hasAltitudeLoss() {
+        return CachedTrackPointsIndexes.hasValue(cursor, indexes.altitudeLossIndex);
+    }
+
+    public float getAltitudeLoss() {
+        return cursor.getFloat(indexes.altitudeLossIndex);
+    }
+
+    /**
+     * Creates a {@link TrackPoint} of the current row (only the projected columns are set).
+     */
+    @NonNull
+    public TrackPoint toTrackPoint() {
+        return ContentProviderUtils.fillTrackPoint(cursor, indexes);
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+}
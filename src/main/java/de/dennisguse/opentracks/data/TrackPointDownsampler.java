@@ -0,0 +1,44 @@
+package de.dennisguse.opentracks.data;
+
+import androidx.annotation.NonNull;
+
+import de.dennisguse.opentracks.data.models.TrackPoint;
+import de.dennisguse.opentracks.stats.TrackStatistics;
+
+/**
+ * Streaming downsampler used by {@link TrackDataHub}.
+ * <p>
+ * Every added {@link TrackPoint} is eventually reported exactly once as sampled in or sampled out (in order).
+ * Decisions may be delayed until more TrackPoints were added; {@link #flush(Output)} forces all pending decisions.
+ * Already reported TrackPoints are never revoked, so the output can be extended while a track is being recorded.
+ */
+public interface TrackPointDownsampler {
+
+    /**
+     * @param trackStatistics the statistics up to the trackPoint; may be reused by the caller after this call.
+     */
+    void add(@NonNull TrackPoint trackPoint, @NonNull TrackStatistics trackStatistics, @NonNull Output output);
+
+    /**
+     * Decides all pending TrackPoints; the last added TrackPoint is sampled in.
+     * Adding TrackPoints afterwards is allowed.
+     */
+    void flush(@NonNull Output output);
+
+    /**
+     * The passed TrackStatistics are only valid during the call.
+     */
+    interface Output {
+        void onSampledIn(@NonNull TrackPoint trackPoint, @NonNull TrackStatistics trackStatistics);
+
+        void onSampledOut(@NonNull TrackPoint trackPoint, @NonNull TrackStatistics trackStatistics);
+    }
+
+    interface Factory {
+        /**
+         * @param targetNumPoints   the number of sampled in TrackPoints to aim for
+         * @param expectedNumPoints the number of TrackPoints known to be added right away
+         */
+        TrackPointDownsampler create(int targetNumPoints, int expectedNumPoints);
+    }
+}
@@ -3,7 +3,6 @@ package de.dennisguse.opentracks.data;
 import android.database.Cursor;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.VisibleForTesting;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -12,7 +11,7 @@ import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.data.models.TrackPoint;
 
 /**
- * A lightweight wrapper around the original {@link Cursor}.
+ * A lightweight wrapper around the original {@link Cursor} or a {@link DecodedTrack} (see {@link DecodedTrackCache}).
  */
 public class TrackPointIterator implements Iterator<TrackPoint>, AutoCloseable {
 
@@ -23,12 +22,29 @@ public class TrackPointIterator implements Iterator<TrackPoint>, AutoCloseable {
     private final CachedTrackPointsIndexes indexes;
     private Cursor cursor;
 
+    private final DecodedTrack decodedTrack;
+    private final int startIndex;
+    private int index;
+
     public TrackPointIterator(ContentProviderUtils contentProviderUtils, Track.Id trackId, TrackPoint.Id startTrackPointId) {
         this.contentProviderUtils = contentProviderUtils;
         this.trackId = trackId;
 
         cursor = getCursor(startTrackPointId);
         indexes = new CachedTrackPointsIndexes(cursor);
+
+        decodedTrack = null;
+        startIndex = 0;
+    }
+
+    TrackPointIterator(@NonNull DecodedTrack decodedTrack, TrackPoint.Id startTrackPointId) {
+        this.contentProviderUtils = null;
+        this.trackId = null;
+        this.indexes = null;
+
+        this.decodedTrack = decodedTrack;
+        startIndex = decodedTrack.indexOf(startTrackPointId);
+        index = startIndex;
     }
 
     private Cursor getCursor(TrackPoint.Id trackPointId) {
@@ -37,6 +53,9 @@ public class TrackPointIterator implements Iterator<TrackPoint>, AutoCloseable {
 
     @Override
     public boolean hasNext() {
+        if (decodedTrack != null) {
+            return index < decodedTrack.size();
+        }
         if (cursor == null) {
             return false;
         }
@@ -46,14 +65,22 @@ public class TrackPointIterator implements Iterator<TrackPoint>, AutoCloseable {
     @Override
     @NonNull
     public TrackPoint next() {
+        if (decodedTrack != null) {
+            if (index >= decodedTrack.size()) {
+                throw new NoSuchElementException();
+            }
+            return decodedTrack.get(index++);
+        }
         if (cursor == null || !cursor.moveToNext()) {
             throw new NoSuchElementException();
         }
         return ContentProviderUtils.fillTrackPoint(cursor, indexes);
     }
 
-    @VisibleForTesting
     public int getCount() {
+        if (decodedTrack != null) {
+            return decodedTrack.size() - startIndex;
+        }
         return cursor.getCount();
     }
 
@@ -0,0 +1,426 @@
+package de.dennisguse.opentracks.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+import de.dennisguse.opentracks.data.models.Altitude;
+import de.dennisguse.opentracks.data.models.Distance;
+import de.dennisguse.opentracks.data.models.Speed;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+import de.dennisguse.opentracks.data.tables.TrackPointsLodColumns;
+import de.dennisguse.opentracks.stats.TrackStatistics;
+import de.dennisguse.opentracks.stats.TrackStatisticsUpdater;
+
+/**
+ * Multi-resolution pyramid of a track's {@link TrackPoint}s (see {@link TrackPointsLodColumns}).
+ * <p>
+ * Level L aggregates up to 2^L consecutive TrackPoints per bucket (min/max/avg of altitude, speed, heart rate, cadence, and power).
+ * Buckets are closed early at segment boundaries, so segments are never merged.
+ * Only levels having between {@link #MIN_BUCKETS} and {@link #MAX_BUCKETS} buckets are stored; short tracks do not get a pyramid at all.
+ * <p>
+ * The pyramid is built in the background once a track is complete (recording finished or import done).
+ * A pyramid is only used if its last bucket ends with the track's last TrackPoint; otherwise the TrackPoints must be read.
+ */
+public class TrackPointsLod {
+
+    private static final String TAG = TrackPointsLod.class.getSimpleName();
+
+    @VisibleForTesting
+    static final int MAX_BUCKETS = 5000;
+
+    @VisibleForTesting
+    static final int MIN_BUCKETS = 64;
+
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ContentProviderUtils contentProviderUtils;
+
+    public TrackPointsLod(@NonNull ContentProviderUtils contentProviderUtils) {
+        this.contentProviderUtils = contentProviderUtils;
+    }
+
+    // Tracks whose rebuild is queued but not yet started.
+    private static final Set<Track.Id> QUEUED = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Rebuilds the pyramid on a background thread; a request for a track that is already queued is dropped.
+     */
+    public void rebuildAsync(@NonNull Track.Id trackId) {
+        if (!QUEUED.add(trackId)) {
+            return;
+        }
+        WORKER.execute(() -> {
+            QUEUED.remove(trackId);
+            rebuild(trackId);
+        });
+    }
+
+    /**
+     * Rebuilds the pyramid by reading all TrackPoints once; the old pyramid is replaced in one transaction.
+     *
+     * @return number of stored buckets (all levels).
+     */
+    public int rebuild(@NonNull Track.Id trackId) {
+        try {
+            List<ContentValues> rows = new ArrayList<>();
+            // One-off scan: do not evict the cached tracks being viewed.
+            try (TrackPointIterator trackPointIterator = contentProviderUtils.getUncachedTrackPointIterator(trackId, null)) {
+                int numTrackPoints = trackPointIterator.getCount();
+                if (!isStored(numTrackPoints)) {
+                    Log.d(TAG, "Track " + trackId.id() + " is too short for a pyramid: " + numTrackPoints + " TrackPoints.");
+                    contentProviderUtils.replaceTrackPointsLod(trackId, rows);
+                    return 0;
+                }
+
+                int minLevel = getMinLevel(numTrackPoints);
+                Bucket[] buckets = new Bucket[getMaxLevel(numTrackPoints) - minLevel + 1];
+                for (int i = 0; i < buckets.length; i++) {
+                    buckets[i] = new Bucket(trackId, minLevel + i);
+                }
+
+                TrackStatisticsUpdater trackStatisticsUpdater = new TrackStatisticsUpdater();
+                while (trackPointIterator.hasNext()) {
+                    TrackPoint trackPoint = trackPointIterator.next();
+                    if (isSegmentStartType(trackPoint.getType())) {
+                        closeBuckets(buckets, trackStatisticsUpdater, false);
+                    }
+
+                    trackStatisticsUpdater.addTrackPoint(trackPoint);
+                    for (Bucket bucket : buckets) {
+                        bucket.add(trackPoint);
+                    }
+
+                    boolean closeAll = trackPoint.isSegmentManualEnd() || !trackPointIterator.hasNext();
+                    closeBuckets(buckets, trackStatisticsUpdater, !closeAll);
+                }
+
+                for (Bucket bucket : buckets) {
+                    bucket.putNumBuckets();
+                    rows.addAll(bucket.rows);
+                }
+            }
+
+            contentProviderUtils.replaceTrackPointsLod(trackId, rows);
+            Log.i(TAG, "Stored " + rows.size() + " buckets for track " + trackId.id());
+            return rows.size();
+        } catch (RuntimeException e) {
+            // Derived data: without a pyramid the TrackPoints are read.
+            Log.e(TAG, "Could not build pyramid for track " + trackId.id(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Closes the non-empty buckets.
+     *
+     * @param onlyComplete only close buckets that reached their size.
+     */
+    private static void closeBuckets(Bucket[] buckets, TrackStatisticsUpdater trackStatisticsUpdater, boolean onlyComplete) {
+        TrackStatistics trackStatistics = null;
+        for (Bucket bucket : buckets) {
+            if (bucket.isEmpty() || (onlyComplete && !bucket.isComplete())) {
+                continue;
+            }
+            if (trackStatistics == null) {
+                trackStatistics = trackStatisticsUpdater.getTrackStatistics();
+            }
+            bucket.close(trackStatistics);
+        }
+    }
+
+    /**
+     * Loads the finest level with at most maxBuckets buckets; if there is none, the coarsest level.
+     *
+     * @param lastTrackPointId the track's current last TrackPoint; used to detect outdated pyramids.
+     * @return null if there is no pyramid or it is outdated.
+     */
+    @Nullable
+    public List<Entry> load(@NonNull Track.Id trackId, int maxBuckets, @Nullable TrackPoint.Id lastTrackPointId) {
+        if (lastTrackPointId == null) {
+            return null;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        try (Cursor cursor = contentProviderUtils.getTrackPointsLodCursor(trackId, maxBuckets)) {
+            if (cursor == null || !cursor.moveToFirst()) {
+                return null;
+            }
+            do {
+                addEntries(cursor, entries);
+            } while (cursor.moveToNext());
+        }
+
+        if (!lastTrackPointId.equals(entries.get(entries.size() - 1).trackPoint().getId())) {
+            Log.i(TAG, "Pyramid of track " + trackId.id() + " is outdated.");
+            return null;
+        }
+        return entries;
+    }
+
+    /**
+     * Half of a bucket as synthetic {@link TrackPoint} with the track's {@link TrackStatistics} at the end of the bucket.
+     * Only total distance and total time of the {@link TrackStatistics} are available.
+     */
+    public record Entry(@NonNull TrackPoint trackPoint, @NonNull TrackStatistics trackStatistics) {
+    }
+
+    /**
+     * Adds a bucket as two synthetic {@link TrackPoint}s carrying each channel's minimum and maximum in the order they occurred, so peaks survive drawing.
+     * The first TrackPoint keeps a segment start, the second one a segment end and the bucket's last TrackPoint id; both are located at the end of the bucket.
+     */
+    private static void addEntries(Cursor cursor, List<Entry> entries) {
+        TrackPoint.Type firstType = TrackPoint.Type.getById(cursor.getInt(cursor.getColumnIndexOrThrow(TrackPointsLodColumns.FIRST_TYPE)));
+        TrackPoint.Type lastType = TrackPoint.Type.getById(cursor.getInt(cursor.getColumnIndexOrThrow(TrackPointsLodColumns.LAST_TYPE)));
+
+        TrackPoint first = createTrackPoint(cursor, isSegmentStartType(firstType) ? firstType : TrackPoint.Type.TRACKPOINT);
+        TrackPoint second = createTrackPoint(cursor, isSegmentStartType(lastType) ? TrackPoint.Type.TRACKPOINT : lastType);
+        second.setId(new TrackPoint.Id(cursor.getLong(cursor.getColumnIndexOrThrow(TrackPointsLodColumns.LAST_TRACKPOINT_ID))));
+
+        int extremesOrder = cursor.getInt(cursor.getColumnIndexOrThrow(TrackPointsLodColumns.EXTREMES_ORDER));
+        setExtremes(cursor, first, second, TrackPointsLodColumns.ALTITUDE_MIN, TrackPointsLodColumns.ALTITUDE_MAX, extremesOrder, TrackPointsLodColumns.EXTREMES_ORDER_ALTITUDE, (trackPoint, value) -> trackPoint.setAltitude(Altitude.WGS84.of(value)));
+        setExtremes(cursor, first, second, TrackPointsLodColumns.SPEED_MIN, TrackPointsLodColumns.SPEED_MAX, extremesOrder, TrackPointsLodColumns.EXTREMES_ORDER_SPEED, (trackPoint, value) -> trackPoint.setSpeed(Speed.of(value)));
+        setExtremes(cursor, first, second, TrackPointsLodColumns.HEARTRATE_MIN, TrackPointsLodColumns.HEARTRATE_MAX, extremesOrder, TrackPointsLodColumns.EXTREMES_ORDER_HEARTRATE, TrackPoint::setHeartRate);
+        setExtremes(cursor, first, second, TrackPointsLodColumns.CADENCE_MIN, TrackPointsLodColumns.CADENCE_MAX, extremesOrder, TrackPointsLodColumns.EXTREMES_ORDER_CADENCE, TrackPoint::setCadence);
+        setExtremes(cursor, first, second, TrackPointsLodColumns.POWER_MIN, TrackPointsLodColumns.POWER_MAX, extremesOrder, TrackPointsLodColumns.EXTREMES_ORDER_POWER, TrackPoint::setPower);
+
+        TrackStatistics trackStatistics = new TrackStatistics();
+        trackStatistics.setTotalDistance(Distance.of(cursor.getDouble(cursor.getColumnIndexOrThrow(TrackPointsLodColumns.TOTAL_DISTANCE))));
+        trackStatistics.setTotalTime(Duration.ofMillis(cursor.getLong(cursor.getColumnIndexOrThrow(TrackPointsLodColumns.TOTAL_TIME))));
+
+        entries.add(new Entry(first, trackStatistics));
+        entries.add(new Entry(second, trackStatistics));
+    }
+
+    private static TrackPoint createTrackPoint(Cursor cursor, TrackPoint.Type type) {
+        TrackPoint trackPoint = new TrackPoint(type, Instant.ofEpochMilli(cursor.getLong(cursor.getColumnIndexOrThrow(TrackPointsLodColumns.TIME))));
+
+        int longitudeIndex = cursor.getColumnIndexOrThrow(TrackPointsLodColumns.LONGITUDE);
+        int latitudeIndex = cursor.getColumnIndexOrThrow(TrackPointsLodColumns.LATITUDE);
+        if (!cursor.isNull(longitudeIndex) && !cursor.isNull(latitudeIndex)) {
+            trackPoint.setLongitude(((double) cursor.getInt(longitudeIndex)) / 1E6);
+            trackPoint.setLatitude(((double) cursor.getInt(latitudeIndex)) / 1E6);
+        }
+        return trackPoint;
+    }
+
+    private static void setExtremes(Cursor cursor, TrackPoint first, TrackPoint second, String minColumn, String maxColumn, int extremesOrder, int channel, BiConsumer<TrackPoint, Float> setter) {
+        int minIndex = cursor.getColumnIndexOrThrow(minColumn);
+        int maxIndex = cursor.getColumnIndexOrThrow(maxColumn);
+        if (cursor.isNull(minIndex) || cursor.isNull(maxIndex)) {
+            return;
+        }
+        boolean maxFirst = (extremesOrder & channel) != 0;
+        setter.accept(first, cursor.getFloat(maxFirst ? maxIndex : minIndex));
+        setter.accept(second, cursor.getFloat(maxFirst ? minIndex : maxIndex));
+    }
+
+    private static boolean isSegmentStartType(TrackPoint.Type type) {
+        return type == TrackPoint.Type.SEGMENT_START_MANUAL || type == TrackPoint.Type.SEGMENT_START_AUTOMATIC;
+    }
+
+    /**
+     * @return true if a track with numTrackPoints TrackPoints gets a pyramid.
+     */
+    public static boolean isStored(int numTrackPoints) {
+        return getMinLevel(numTrackPoints) <= getMaxLevel(numTrackPoints);
+    }
+
+    /**
+     * @return the finest level with at most {@link #MAX_BUCKETS} buckets; level 0 (no aggregation) is never stored.
+     */
+    @VisibleForTesting
+    static int getMinLevel(int numTrackPoints) {
+        int level = 1;
+        while (getNumBuckets(numTrackPoints, level) > MAX_BUCKETS) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @return the coarsest level with at least {@link #MIN_BUCKETS} buckets.
+     */
+    @VisibleForTesting
+    static int getMaxLevel(int numTrackPoints) {
+        if (numTrackPoints <= MAX_BUCKETS) {
+            // Reading the TrackPoints directly is cheap enough.
+            return 0;
+        }
+        int level = 0;
+        while (getNumBuckets(numTrackPoints, level + 1) >= MIN_BUCKETS) {
+            level++;
+        }
+        return level;
+    }
+
+    private static int getNumBuckets(int numTrackPoints, int level) {
+        int bucketSize = 1 << level;
+        return (numTrackPoints + bucketSize - 1) / bucketSize;
+    }
+
+    private static class Bucket {
+        private final Track.Id trackId;
+        private final int level;
+        private final int bucketSize;
+        private final List<ContentValues> rows = new ArrayList<>();
+
+        private int count;
+        private TrackPoint first;
+        private TrackPoint last;
+        private TrackPoint lastLocated;
+        private final Aggregate altitude = new Aggregate();
+        private final Aggregate speed = new Aggregate();
+        private final Aggregate heartRate = new Aggregate();
+        private final Aggregate cadence = new Aggregate();
+        private final Aggregate power = new Aggregate();
+
+        Bucket(Track.Id trackId, int level) {
+            this.trackId = trackId;
+            this.level = level;
+            this.bucketSize = 1 << level;
+        }
+
+        void add(TrackPoint trackPoint) {
+            if (count == 0) {
+                first = trackPoint;
+            }
+            count++;
+            last = trackPoint;
+            if (trackPoint.hasLocation()) {
+                lastLocated = trackPoint;
+            }
+            if (trackPoint.hasAltitude()) {
+                altitude.add(trackPoint.getAltitude().toM());
+            }
+            if (trackPoint.hasSpeed()) {
+                speed.add(trackPoint.getSpeed().toMPS());
+            }
+            if (trackPoint.hasHeartRate()) {
+                heartRate.add(trackPoint.getHeartRate().getBPM());
+            }
+            if (trackPoint.hasCadence()) {
+                cadence.add(trackPoint.getCadence().getRPM());
+            }
+            if (trackPoint.hasPower()) {
+                power.add(trackPoint.getPower().getW());
+            }
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        boolean isComplete() {
+            return count == bucketSize;
+        }
+
+        void close(TrackStatistics trackStatistics) {
+            rows.add(toContentValues(trackStatistics));
+
+            count = 0;
+            first = null;
+            last = null;
+            lastLocated = null;
+            altitude.reset();
+            speed.reset();
+            heartRate.reset();
+            cadence.reset();
+            power.reset();
+        }
+
+        /**
+         * The number of buckets is only known once all TrackPoints were added, as segment boundaries close buckets early.
+         */
+        void putNumBuckets() {
+            for (ContentValues values : rows) {
+                values.put(TrackPointsLodColumns.BUCKETS, rows.size());
+            }
+        }
+
+        private ContentValues toContentValues(TrackStatistics trackStatistics) {
+            ContentValues values = new ContentValues();
+            values.put(TrackPointsLodColumns.TRACKID, trackId.id());
+            values.put(TrackPointsLodColumns.LEVEL, level);
+            values.put(TrackPointsLodColumns.LAST_TRACKPOINT_ID, last.getId().id());
+            values.put(TrackPointsLodColumns.TRACKPOINTS, count);
+            values.put(TrackPointsLodColumns.TIME, last.getTime().toEpochMilli());
+            if (lastLocated != null) {
+                values.put(TrackPointsLodColumns.LONGITUDE, (int) (lastLocated.getLongitude() * 1E6));
+                values.put(TrackPointsLodColumns.LATITUDE, (int) (lastLocated.getLatitude() * 1E6));
+            }
+            values.put(TrackPointsLodColumns.TOTAL_DISTANCE, trackStatistics.getTotalDistance().toM());
+            values.put(TrackPointsLodColumns.TOTAL_TIME, trackStatistics.getTotalTime().toMillis());
+            values.put(TrackPointsLodColumns.FIRST_TYPE, first.getType().type_db);
+            values.put(TrackPointsLodColumns.LAST_TYPE, last.getType().type_db);
+
+            int extremesOrder = 0;
+            extremesOrder |= altitude.put(values, TrackPointsLodColumns.ALTITUDE_MIN, TrackPointsLodColumns.ALTITUDE_MAX, TrackPointsLodColumns.ALTITUDE_AVG) ? TrackPointsLodColumns.EXTREMES_ORDER_ALTITUDE : 0;
+            extremesOrder |= speed.put(values, TrackPointsLodColumns.SPEED_MIN, TrackPointsLodColumns.SPEED_MAX, TrackPointsLodColumns.SPEED_AVG) ? TrackPointsLodColumns.EXTREMES_ORDER_SPEED : 0;
+            extremesOrder |= heartRate.put(values, TrackPointsLodColumns.HEARTRATE_MIN, TrackPointsLodColumns.HEARTRATE_MAX, TrackPointsLodColumns.HEARTRATE_AVG) ? TrackPointsLodColumns.EXTREMES_ORDER_HEARTRATE : 0;
+            extremesOrder |= cadence.put(values, TrackPointsLodColumns.CADENCE_MIN, TrackPointsLodColumns.CADENCE_MAX, TrackPointsLodColumns.CADENCE_AVG) ? TrackPointsLodColumns.EXTREMES_ORDER_CADENCE : 0;
+            extremesOrder |= power.put(values, TrackPointsLodColumns.POWER_MIN, TrackPointsLodColumns.POWER_MAX, TrackPointsLodColumns.POWER_AVG) ? TrackPointsLodColumns.EXTREMES_ORDER_POWER : 0;
+            values.put(TrackPointsLodColumns.EXTREMES_ORDER, extremesOrder);
+            return values;
+        }
+    }
+
+    private static class Aggregate {
+        private int count;
+        private double min;
+        private double max;
+        private double sum;
+        private int minPosition;
+        private int maxPosition;
+
+        void add(double value) {
+            if (count == 0 || value < min) {
+                min = value;
+                minPosition = count;
+            }
+            if (count == 0 || value > max) {
+                max = value;
+                maxPosition = count;
+            }
+            sum += value;
+            count++;
+        }
+
+        void reset() {
+            count = 0;
+            sum = 0;
+        }
+
+        /**
+         * @return true if the maximum occurred before the minimum.
+         */
+        boolean put(ContentValues values, String minColumn, String maxColumn, String avgColumn) {
+            if (count == 0) {
+                return false;
+            }
+            values.put(minColumn, min);
+            values.put(maxColumn, max);
+            values.put(avgColumn, sum / count);
+            return maxPosition < minPosition;
+        }
+    }
+}
@@ -80,8 +80,11 @@ public class TrackPoint {
             return name() + "(" + type_db + ")";
         }
 
+        // values() returns a new array on every call.
+        private static final Type[] VALUES = values();
+
         public static Type getById(int id) {
-            for (Type e : values()) {
+            for (Type e : VALUES) {
                 if (e.type_db == id)
                     return e;
             }
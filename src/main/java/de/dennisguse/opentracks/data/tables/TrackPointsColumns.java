@@ -109,4 +109,9 @@ public interface TrackPointsColumns extends BaseColumns {
             + ")";
 
     String CREATE_TABLE_INDEX = "CREATE INDEX " + TABLE_NAME + "_" + TRACKID + "_index ON " + TABLE_NAME + "(" + TRACKID + ")";
+
+    /**
+     * NOTE: {@link #CREATE_TABLE_INDEX} already is an index on (trackid, _id) as _id is the rowid.
+     */
+    String CREATE_TABLE_INDEX_TRACKID_TIME = "CREATE INDEX " + TABLE_NAME + "_" + TRACKID + "_" + TIME + "_index ON " + TABLE_NAME + "(" + TRACKID + ", " + TIME + ")";
 }
@@ -0,0 +1,128 @@
+package de.dennisguse.opentracks.data.tables;
+
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import de.dennisguse.opentracks.data.ContentProviderUtils;
+
+/**
+ * Constants for the track points level-of-detail table.
+ * <p>
+ * Each row aggregates up to 2^{@link #LEVEL} consecutive track points of a track (a bucket).
+ * Buckets do not span segment boundaries: a segment start always begins a new bucket and a segment end always closes one.
+ * All buckets of one level together cover the whole track; the coarser levels form a pyramid.
+ * Rows are derived data and rebuilt from the track points table at any time.
+ */
+public interface TrackPointsLodColumns extends BaseColumns {
+
+    String TABLE_NAME = "trackpoints_lod";
+
+    Uri CONTENT_URI = Uri.parse(ContentProviderUtils.CONTENT_BASE_URI + "/" + TABLE_NAME);
+
+    String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.de.dennisguse.trackpoint_lod";
+    String DEFAULT_SORT_ORDER = _ID;
+
+    // Columns
+    String TRACKID = "trackid"; // track id
+    String LEVEL = "level"; // log2 of the number of track points per bucket
+    String BUCKETS = "buckets"; // number of buckets of this level
+    String LAST_TRACKPOINT_ID = "last_trackpoint_id"; // id of the bucket's last track point
+    String TRACKPOINTS = "trackpoints"; // number of track points in the bucket
+    String TIME = "time"; // time of the bucket's last track point
+    String LONGITUDE = "longitude"; // longitude of the bucket's last located track point
+    String LATITUDE = "latitude"; // latitude of the bucket's last located track point
+    String TOTAL_DISTANCE = "total_distance"; // cumulative distance at the end of the bucket
+    String TOTAL_TIME = "total_time"; // cumulative time at the end of the bucket
+    String FIRST_TYPE = "first_type"; // type of the bucket's first track point
+    String LAST_TYPE = "last_type"; // type of the bucket's last track point
+    String EXTREMES_ORDER = "extremes_order"; // bitmask of the channels (EXTREMES_ORDER_*) whose maximum occurred before their minimum
+
+    int EXTREMES_ORDER_ALTITUDE = 1;
+    int EXTREMES_ORDER_SPEED = 1 << 1;
+    int EXTREMES_ORDER_HEARTRATE = 1 << 2;
+    int EXTREMES_ORDER_CADENCE = 1 << 3;
+    int EXTREMES_ORDER_POWER = 1 << 4;
+
+    String ALTITUDE_MIN = "elevation_min";
+    String ALTITUDE_MAX = "elevation_max";
+    String ALTITUDE_AVG = "elevation_avg";
+    String SPEED_MIN = "speed_min";
+    String SPEED_MAX = "speed_max";
+    String SPEED_AVG = "speed_avg";
+    String HEARTRATE_MIN = "sensor_heartrate_min";
+    String HEARTRATE_MAX = "sensor_heartrate_max";
+    String HEARTRATE_AVG = "sensor_heartrate_avg";
+    String CADENCE_MIN = "sensor_cadence_min";
+    String CADENCE_MAX = "sensor_cadence_max";
+    String CADENCE_AVG = "sensor_cadence_avg";
+    String POWER_MIN = "sensor_power_min";
+    String POWER_MAX = "sensor_power_max";
+    String POWER_AVG = "sensor_power_avg";
+
+    String[] ALL_COLUMNS = {
+            _ID,
+            TRACKID,
+            LEVEL,
+            BUCKETS,
+            LAST_TRACKPOINT_ID,
+            TRACKPOINTS,
+            TIME,
+            LONGITUDE,
+            LATITUDE,
+            TOTAL_DISTANCE,
+            TOTAL_TIME,
+            FIRST_TYPE,
+            LAST_TYPE,
+            EXTREMES_ORDER,
+            ALTITUDE_MIN,
+            ALTITUDE_MAX,
+            ALTITUDE_AVG,
+            SPEED_MIN,
+            SPEED_MAX,
+            SPEED_AVG,
+            HEARTRATE_MIN,
+            HEARTRATE_MAX,
+            HEARTRATE_AVG,
+            CADENCE_MIN,
+            CADENCE_MAX,
+            CADENCE_AVG,
+            POWER_MIN,
+            POWER_MAX,
+            POWER_AVG
+    };
+
+    String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " ("
+            + _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + TRACKID + " INTEGER NOT NULL, "
+            + LEVEL + " INTEGER NOT NULL, "
+            + BUCKETS + " INTEGER NOT NULL, "
+            + LAST_TRACKPOINT_ID + " INTEGER NOT NULL, "
+            + TRACKPOINTS + " INTEGER NOT NULL, "
+            + TIME + " INTEGER, "
+            + LONGITUDE + " INTEGER, "
+            + LATITUDE + " INTEGER, "
+            + TOTAL_DISTANCE + " FLOAT, "
+            + TOTAL_TIME + " INTEGER, "
+            + FIRST_TYPE + " INTEGER NOT NULL, "
+            + LAST_TYPE + " INTEGER NOT NULL, "
+            + EXTREMES_ORDER + " INTEGER NOT NULL, "
+            + ALTITUDE_MIN + " FLOAT, "
+            + ALTITUDE_MAX + " FLOAT, "
+            + ALTITUDE_AVG + " FLOAT, "
+            + SPEED_MIN + " FLOAT, "
+            + SPEED_MAX + " FLOAT, "
+            + SPEED_AVG + " FLOAT, "
+            + HEARTRATE_MIN + " FLOAT, "
+            + HEARTRATE_MAX + " FLOAT, "
+            + HEARTRATE_AVG + " FLOAT, "
+            + CADENCE_MIN + " FLOAT, "
+            + CADENCE_MAX + " FLOAT, "
+            + CADENCE_AVG + " FLOAT, "
+            + POWER_MIN + " FLOAT, "
+            + POWER_MAX + " FLOAT, "
+            + POWER_AVG + " FLOAT, "
+            + "FOREIGN KEY (" + TRACKID + ") REFERENCES " + TracksColumns.TABLE_NAME + "(" + TracksColumns._ID + ") ON UPDATE CASCADE ON DELETE CASCADE"
+            + ")";
+
+    String CREATE_TABLE_INDEX = "CREATE INDEX " + TABLE_NAME + "_" + TRACKID + "_" + LEVEL + "_index ON " + TABLE_NAME + "(" + TRACKID + ", " + LEVEL + ")";
+}
@@ -62,6 +62,16 @@ public interface TracksColumns extends BaseColumns {
     String ALTITUDE_GAIN = "elevationgain"; // altitude gain //TODO RENAME column
     String ALTITUDE_LOSS = "elevationloss"; // altitude loss //TODO RENAME column
 
+    String AVG_HEARTRATE = "avgheartrate"; // average heart rate
+    String MAX_HEARTRATE = "maxheartrate"; // maximum heart rate
+    String AVG_CADENCE = "avgcadence"; // average cadence
+    String MAX_CADENCE = "maxcadence"; // maximum cadence
+    String AVG_POWER = "avgpower"; // average power
+    String MAX_POWER = "maxpower"; // maximum power
+
+    String FINGERPRINT = "fingerprint"; // hash of the track's content (detect re-import); see TrackFingerprint
+    String IMPORTING = "importing"; // 1 while the track is imported (hidden from queries); NULL otherwise
+
     String[] ALL_COLUMNS = {
         _ID,
         UUID,
@@ -84,7 +94,15 @@ public interface TracksColumns extends BaseColumns {
         MIN_ALTITUDE,
         MAX_ALTITUDE,
         ALTITUDE_GAIN,
-        ALTITUDE_LOSS
+        ALTITUDE_LOSS,
+        AVG_HEARTRATE,
+        MAX_HEARTRATE,
+        AVG_CADENCE,
+        MAX_CADENCE,
+        AVG_POWER,
+        MAX_POWER,
+        FINGERPRINT,
+        IMPORTING
     };
 
     String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " ("
@@ -108,8 +126,18 @@ public interface TracksColumns extends BaseColumns {
             + UUID + " BLOB, "
             + ALTITUDE_LOSS + " FLOAT, "
             + STARTTIME_OFFSET + " INTEGER, "
-            + ACTIVITY_TYPE + " TEXT)";
+            + ACTIVITY_TYPE + " TEXT, "
+            + AVG_HEARTRATE + " FLOAT, "
+            + MAX_HEARTRATE + " FLOAT, "
+            + AVG_CADENCE + " FLOAT, "
+            + MAX_CADENCE + " FLOAT, "
+            + AVG_POWER + " FLOAT, "
+            + MAX_POWER + " FLOAT, "
+            + FINGERPRINT + " INTEGER, "
+            + IMPORTING + " INTEGER)";
 
     String CREATE_TABLE_INDEX = "CREATE UNIQUE INDEX " + TABLE_NAME + "_" + UUID + "_index ON " + TABLE_NAME + "(" + UUID + ")";
 
+    String CREATE_TABLE_INDEX_FINGERPRINT = "CREATE INDEX " + TABLE_NAME + "_" + FINGERPRINT + "_index ON " + TABLE_NAME + "(" + FINGERPRINT + ")";
+
 }
@@ -12,6 +12,7 @@ import java.util.Map;
 
 import de.dennisguse.opentracks.R;
 import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter;
 import de.dennisguse.opentracks.io.file.exporter.CSVTrackExporter;
 import de.dennisguse.opentracks.io.file.exporter.GPXTrackExporter;
 import de.dennisguse.opentracks.io.file.exporter.KMLTrackExporter;
@@ -80,6 +81,24 @@ public enum TrackFileFormat {
         public String getExtension() {
             return "csv";
         }
+    },
+
+    BINARY("BINARY") {
+        @Override
+        public TrackExporter createTrackExporter(@NonNull Context context,
+                @NonNull ContentProviderUtils contentProviderUtils) {
+            return new BinaryTrackExporter(contentProviderUtils);
+        }
+
+        @Override
+        public String getMimeType() {
+            return "application/octet-stream";
+        }
+
+        @Override
+        public String getExtension() {
+            return "otb";
+        }
     };
 
     private static final String MIME_KMZ = "application/vnd.google-earth.kmz";
@@ -0,0 +1,306 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.data.tables.TracksColumns;
+import de.dennisguse.opentracks.io.file.TrackFileFormat;
+import de.dennisguse.opentracks.io.file.TrackFilenameGenerator;
+import de.dennisguse.opentracks.settings.PreferencesUtils;
+import de.dennisguse.opentracks.util.FileUtils;
+
+/**
+ * Writes a backup of tracks as one ZIP file with one entry per track in the given {@link TrackFileFormat} (incl. photos for KMZ).
+ * The backup can be restored by importing the ZIP file.
+ * <p>
+ * Three pipelined stages with bounded queues:
+ * 1. reading the tracks from the database (track cursor),
+ * 2. encoding each track with its {@link TrackExporter} (incl. reading its TrackPoints and Markers),
+ * 3. compressing and writing the ZIP (calling thread).
+ * The encoded tracks are streamed to stage 3 in chunks, so at most {@link #MAX_PENDING_CHUNKS} chunks are in memory independent of the size of a track.
+ */
+public class BackupExporter {
+
+    private static final String TAG = BackupExporter.class.getSimpleName();
+
+    public static final String FILE_EXTENSION = "zip";
+    public static final String MIME_TYPE = "application/zip";
+
+    private static final int MAX_PENDING_TRACKS = 16;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // Encoded data is kept in memory until compressed.
+    private static final int MAX_PENDING_CHUNKS = 16;
+
+    private static final Track END_OF_TRACKS = new Track();
+    private static final Chunk END_OF_ENTRIES = new Chunk(null, null, 0);
+
+    /**
+     * Either starts a new ZIP entry (name) or contains data of the current entry.
+     */
+    private record Chunk(String name, byte[] data, int length) {
+
+        static Chunk startEntry(@NonNull String name) {
+            return new Chunk(name, null, 0);
+        }
+    }
+
+    public record Result(int numTracks, long numBytes, long durationMillis) {
+
+        public double tracksPerSecond() {
+            return numTracks * 1000.0 / Math.max(1, durationMillis);
+        }
+
+        public double megabytesPerSecond() {
+            return numBytes / (1024.0 * 1024.0) * 1000.0 / Math.max(1, durationMillis);
+        }
+    }
+
+    private final Context context;
+    private final ContentProviderUtils contentProviderUtils;
+    private final TrackFileFormat trackFileFormat;
+
+    public BackupExporter(Context context, ContentProviderUtils contentProviderUtils, TrackFileFormat trackFileFormat) {
+        this.context = context;
+        this.contentProviderUtils = contentProviderUtils;
+        this.trackFileFormat = trackFileFormat;
+    }
+
+    public static String getFilename(@NonNull String name) {
+        return FileUtils.sanitizeFileName(name + "." + FILE_EXTENSION);
+    }
+
+    /**
+     * @param trackIds the tracks to be exported (in the order of their ids).
+     */
+    @NonNull
+    public Result writeBackup(@NonNull List<Track.Id> trackIds, @NonNull OutputStream outputStream) throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+
+        BlockingQueue<Track> tracks = new ArrayBlockingQueue<>(MAX_PENDING_TRACKS);
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(MAX_PENDING_CHUNKS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<?> reader = executor.submit(() -> {
+                readTracks(trackIds, tracks);
+                return null;
+            });
+            Future<?> encoder = executor.submit(() -> {
+                try {
+                    encodeTracks(tracks, chunks);
+                } catch (Exception e) {
+                    // Don't leave the writer waiting.
+                    chunks.clear();
+                    chunks.put(END_OF_ENTRIES);
+                    throw e;
+                }
+                chunks.put(END_OF_ENTRIES);
+                return null;
+            });
+
+            CountingOutputStream countingOutputStream = new CountingOutputStream(outputStream);
+            int numTracks = writeZip(chunks, countingOutputStream);
+
+            // If the encoder failed, the reader might be blocked (it is interrupted by shutdownNow()).
+            encoder.get();
+            reader.get();
+
+            Result result = new Result(numTracks, countingOutputStream.count, System.currentTimeMillis() - startTime);
+            Log.i(TAG, "Backup of " + result.numTracks() + " tracks (" + result.numBytes() / 1024 + "KiB) in " + result.durationMillis() + "ms: "
+                    + String.format(Locale.US, "%.1f", result.tracksPerSecond()) + " tracks/s, " + String.format(Locale.US, "%.2f", result.megabytesPerSecond()) + " MB/s");
+            return result;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof InterruptedException interruptedException) {
+                throw interruptedException;
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Stage 1
+     */
+    private void readTracks(List<Track.Id> trackIds, BlockingQueue<Track> tracks) throws InterruptedException {
+        Set<Track.Id> selectedTrackIds = new HashSet<>(trackIds);
+        try (Cursor cursor = contentProviderUtils.getTrackCursor(null, null, TracksColumns._ID)) {
+            while (cursor != null && cursor.moveToNext()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                Track track = ContentProviderUtils.createTrack(cursor);
+                if (selectedTrackIds.contains(track.getId())) {
+                    tracks.put(track);
+                }
+            }
+        } finally {
+            tracks.put(END_OF_TRACKS);
+        }
+    }
+
+    /**
+     * Stage 2
+     */
+    private void encodeTracks(BlockingQueue<Track> tracks, BlockingQueue<Chunk> chunks) throws InterruptedException, IOException {
+        TrackFilenameGenerator filenameGenerator = PreferencesUtils.getTrackFileformatGenerator();
+        TrackExporter trackExporter = trackFileFormat.createTrackExporter(context, contentProviderUtils);
+
+        Track track;
+        while ((track = tracks.take()) != END_OF_TRACKS) {
+            chunks.put(Chunk.startEntry(filenameGenerator.format(track, trackFileFormat)));
+            try (ChunkOutputStream data = new ChunkOutputStream(chunks)) {
+                if (!trackExporter.writeTrack(List.of(track), data)) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedException();
+                    }
+                    throw new IOException("Unable to export track " + track.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stage 3
+     *
+     * @return number of written tracks
+     */
+    private static int writeZip(BlockingQueue<Chunk> chunks, OutputStream outputStream) throws IOException, InterruptedException {
+        int numTracks = 0;
+        Set<String> names = new HashSet<>();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            Chunk chunk;
+            while ((chunk = chunks.take()) != END_OF_ENTRIES) {
+                if (chunk.name() != null) {
+                    // Closes the previous entry.
+                    zipOutputStream.putNextEntry(new ZipEntry(uniqueName(chunk.name(), names)));
+                    numTracks++;
+                } else {
+                    zipOutputStream.write(chunk.data(), 0, chunk.length());
+                }
+            }
+        }
+        return numTracks;
+    }
+
+    /**
+     * Tracks may have the same filename (e.g., same name).
+     */
+    private static String uniqueName(String name, Set<String> names) {
+        String uniqueName = name;
+        int extensionStart = name.lastIndexOf('.');
+        for (int i = 1; !names.add(uniqueName); i++) {
+            uniqueName = extensionStart < 0
+                    ? name + " (" + i + ")"
+                    : name.substring(0, extensionStart) + " (" + i + ")" + name.substring(extensionStart);
+        }
+        return uniqueName;
+    }
+
+    /**
+     * Hands the data to stage 3 in chunks; blocks while {@link #MAX_PENDING_CHUNKS} chunks are pending.
+     */
+    private static class ChunkOutputStream extends OutputStream {
+
+        private final BlockingQueue<Chunk> chunks;
+
+        private byte[] data = new byte[CHUNK_SIZE];
+        private int count;
+
+        ChunkOutputStream(BlockingQueue<Chunk> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == data.length) {
+                flush();
+            }
+            data[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == data.length) {
+                    flush();
+                }
+                int length = Math.min(len, data.length - count);
+                System.arraycopy(b, off, data, count, length);
+                count += length;
+                off += length;
+                len -= length;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            try {
+                chunks.put(new Chunk(null, data, count));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the ZIP stage.");
+            }
+            data = new byte[CHUNK_SIZE];
+            count = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.TrackPointCursor;
+import de.dennisguse.opentracks.data.models.Marker;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+
+/**
+ * Exports tracks into a compact binary format; the data is stored as in the database, so an import is lossless.
+ * <p>
+ * File: {@link #MAGIC}, {@link #VERSION}, then per track {@link #TAG_TRACK} followed by its {@link #TAG_SEGMENT}s and {@link #TAG_MARKER}s; ends with {@link #TAG_END}.
+ * <p>
+ * TrackPoints are stored column by column in segments (split at segment starts and after {@link #MAX_SEGMENT_SIZE} TrackPoints); each segment can be decoded on its own:
+ * 1. number of TrackPoints
+ * 2. {@link TrackPoint.Type}s
+ * 3. present fields ({@link #FIELD_LOCATION}, ...)
+ * 4. time (delta to previous TrackPoint)
+ * 5. latitude and longitude in 1E6 degrees (delta to previous location)
+ * 6. per channel (altitude, ...): encoding and the double bits XOR the channel's previous value (the database stores all of them as REAL, i.e., 64-bit)
+ * <p>
+ * Integers are varints (7 bits per byte, least significant first); signed integers are zigzag-encoded.
+ * <p>
+ * NOTE: photos are not exported.
+ */
+public class BinaryTrackExporter implements TrackExporter {
+
+    private static final String TAG = BinaryTrackExporter.class.getSimpleName();
+
+    public static final byte[] MAGIC = {'O', 'T', 'B', 'T'};
+    public static final int VERSION = 2;
+
+    public static final int TAG_END = 0;
+    public static final int TAG_TRACK = 1;
+    public static final int TAG_SEGMENT = 2;
+    public static final int TAG_MARKER = 3;
+
+    public static final int MAX_SEGMENT_SIZE = 1024;
+
+    public static final int FIELD_LOCATION = 1;
+    // Channels: field is 1 << (channel + 1)
+    public static final int CHANNEL_ALTITUDE = 0;
+    public static final int CHANNEL_HORIZONTAL_ACCURACY = 1;
+    public static final int CHANNEL_VERTICAL_ACCURACY = 2;
+    public static final int CHANNEL_SPEED = 3;
+    public static final int CHANNEL_BEARING = 4;
+    public static final int CHANNEL_HEART_RATE = 5;
+    public static final int CHANNEL_CADENCE = 6;
+    public static final int CHANNEL_POWER = 7;
+    public static final int CHANNEL_SENSOR_DISTANCE = 8;
+    public static final int CHANNEL_ALTITUDE_GAIN = 9;
+    public static final int CHANNEL_ALTITUDE_LOSS = 10;
+    public static final int NUM_CHANNELS = 11;
+
+    /**
+     * The double bits XOR the previous value: similar values share sign, exponent and the high mantissa bits.
+     */
+    public static final int ENCODING_XOR = 0;
+    /**
+     * Like {@link #ENCODING_XOR}, but bit-reversed: better for values with few mantissa bits (e.g., heart rate or values stored from a float).
+     */
+    public static final int ENCODING_XOR_REVERSED = 1;
+
+    private final ContentProviderUtils contentProviderUtils;
+
+    private OutputStream out;
+
+    // Current segment
+    private int size;
+    private final int[] types = new int[MAX_SEGMENT_SIZE];
+    private final int[] fields = new int[MAX_SEGMENT_SIZE];
+    private final long[] times = new long[MAX_SEGMENT_SIZE];
+    private final int[] latitudes = new int[MAX_SEGMENT_SIZE];
+    private final int[] longitudes = new int[MAX_SEGMENT_SIZE];
+    private final long[][] channels = new long[NUM_CHANNELS][MAX_SEGMENT_SIZE];
+
+    public BinaryTrackExporter(ContentProviderUtils contentProviderUtils) {
+        this.contentProviderUtils = contentProviderUtils;
+    }
+
+    public static int getChannelField(int channel) {
+        return 1 << (channel + 1);
+    }
+
+    @Override
+    public boolean writeTrack(@NonNull List<Track> tracks, @NonNull OutputStream outputStream) {
+        try {
+            out = new BufferedOutputStream(outputStream, 64 * 1024);
+            out.write(MAGIC);
+            writeVarint(VERSION);
+
+            for (Track track : tracks) {
+                writeTrackInfo(track);
+                writeTrackPoints(track);
+                writeMarkers(track);
+            }
+
+            writeVarint(TAG_END);
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write track", e);
+            return false;
+        } catch (InterruptedException e) {
+            Log.e(TAG, "Thread interrupted", e);
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            out = null;
+        }
+    }
+
+    private void writeTrackInfo(Track track) throws IOException {
+        writeVarint(TAG_TRACK);
+        writeString(track.getUuid() != null ? track.getUuid().toString() : null);
+        writeString(track.getName());
+        writeString(track.getDescription());
+        writeString(track.getActivityTypeLocalized());
+        writeString(track.getActivityType() != null ? track.getActivityType().getId() : null);
+        writeVarint(zigzag(track.getZoneOffset().getTotalSeconds()));
+    }
+
+    private void writeTrackPoints(Track track) throws IOException, InterruptedException {
+        size = 0;
+        try (TrackPointCursor cursor = contentProviderUtils.getTrackPointCursorView(track.getId(), null, null)) {
+            while (cursor.moveToNext()) {
+                if (Thread.interrupted()) throw new InterruptedException();
+
+                TrackPoint.Type type = cursor.getType();
+                boolean segmentStart = type == TrackPoint.Type.SEGMENT_START_MANUAL || type == TrackPoint.Type.SEGMENT_START_AUTOMATIC;
+                if (size == MAX_SEGMENT_SIZE || (segmentStart && size > 0)) {
+                    writeSegment();
+                }
+                addTrackPoint(cursor, type);
+            }
+        }
+        if (size > 0) {
+            writeSegment();
+        }
+    }
+
+    private void addTrackPoint(TrackPointCursor cursor, TrackPoint.Type type) {
+        int i = size++;
+        types[i] = type.type_db;
+        times[i] = cursor.getTimeEpochMillis();
+
+        int field = 0;
+        if (cursor.hasLocation()) {
+            field |= FIELD_LOCATION;
+            latitudes[i] = cursor.getLatitudeE6();
+            longitudes[i] = cursor.getLongitudeE6();
+        }
+        if (cursor.hasAltitude()) field |= setChannel(CHANNEL_ALTITUDE, i, cursor.getAltitudeM());
+        if (cursor.hasHorizontalAccuracy()) field |= setChannel(CHANNEL_HORIZONTAL_ACCURACY, i, cursor.getHorizontalAccuracyM());
+        if (cursor.hasVerticalAccuracy()) field |= setChannel(CHANNEL_VERTICAL_ACCURACY, i, cursor.getVerticalAccuracyM());
+        if (cursor.hasSpeed()) field |= setChannel(CHANNEL_SPEED, i, cursor.getSpeedMPS());
+        if (cursor.hasBearing()) field |= setChannel(CHANNEL_BEARING, i, cursor.getBearing());
+        if (cursor.hasHeartRate()) field |= setChannel(CHANNEL_HEART_RATE, i, cursor.getHeartRateBPM());
+        if (cursor.hasCadence()) field |= setChannel(CHANNEL_CADENCE, i, cursor.getCadenceRPM());
+        if (cursor.hasPower()) field |= setChannel(CHANNEL_POWER, i, cursor.getPowerW());
+        if (cursor.hasSensorDistance()) field |= setChannel(CHANNEL_SENSOR_DISTANCE, i, cursor.getSensorDistanceM());
+        if (cursor.hasAltitudeGain()) field |= setChannel(CHANNEL_ALTITUDE_GAIN, i, cursor.getAltitudeGain());
+        if (cursor.hasAltitudeLoss()) field |= setChannel(CHANNEL_ALTITUDE_LOSS, i, cursor.getAltitudeLoss());
+        fields[i] = field;
+    }
+
+    private int setChannel(int channel, int i, double value) {
+        channels[channel][i] = Double.doubleToRawLongBits(value);
+        return getChannelField(channel);
+    }
+
+    private void writeSegment() throws IOException {
+        writeVarint(TAG_SEGMENT);
+        writeVarint(size);
+
+        for (int i = 0; i < size; i++) {
+            writeVarint(zigzag(types[i]));
+        }
+        for (int i = 0; i < size; i++) {
+            writeVarint(fields[i]);
+        }
+
+        long previousTime = 0;
+        for (int i = 0; i < size; i++) {
+            writeVarint(zigzag(times[i] - previousTime));
+            previousTime = times[i];
+        }
+
+        writeLocationColumn(latitudes);
+        writeLocationColumn(longitudes);
+
+        for (int channel = 0; channel < NUM_CHANNELS; channel++) {
+            writeChannel(channel);
+        }
+
+        size = 0;
+    }
+
+    private void writeLocationColumn(int[] values) throws IOException {
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            if ((fields[i] & FIELD_LOCATION) != 0) {
+                writeVarint(zigzag(values[i] - previous));
+                previous = values[i];
+            }
+        }
+    }
+
+    private void writeChannel(int channel) throws IOException {
+        int field = getChannelField(channel);
+        long[] values = channels[channel];
+
+        // Choose the shorter encoding for this segment.
+        int sizeXor = 0;
+        int sizeXorReversed = 0;
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            if ((fields[i] & field) != 0) {
+                long xor = values[i] ^ previous;
+                sizeXor += varintSize(xor);
+                sizeXorReversed += varintSize(Long.reverse(xor));
+                previous = values[i];
+            }
+        }
+        boolean reversed = sizeXorReversed < sizeXor;
+        writeVarint(reversed ? ENCODING_XOR_REVERSED : ENCODING_XOR);
+
+        previous = 0;
+        for (int i = 0; i < size; i++) {
+            if ((fields[i] & field) != 0) {
+                long xor = values[i] ^ previous;
+                writeVarint(reversed ? Long.reverse(xor) : xor);
+                previous = values[i];
+            }
+        }
+    }
+
+    private void writeMarkers(Track track) throws IOException, InterruptedException {
+        try (Cursor cursor = contentProviderUtils.getMarkerCursor(track.getId(), null, -1)) {
+            while (cursor != null && cursor.moveToNext()) {
+                if (Thread.interrupted()) throw new InterruptedException();
+
+                writeMarker(contentProviderUtils.createMarker(cursor));
+            }
+        }
+    }
+
+    private void writeMarker(Marker marker) throws IOException {
+        writeVarint(TAG_MARKER);
+        writeVarint(zigzag(marker.getTime().toEpochMilli()));
+        writeString(marker.getName());
+        writeString(marker.getDescription());
+        writeString(marker.getCategory());
+
+        int field = 0;
+        if (marker.hasLocation()) field |= FIELD_LOCATION;
+        if (marker.hasAltitude()) field |= getChannelField(CHANNEL_ALTITUDE);
+        if (marker.hasAccuracy()) field |= getChannelField(CHANNEL_HORIZONTAL_ACCURACY);
+        if (marker.hasBearing()) field |= getChannelField(CHANNEL_BEARING);
+        writeVarint(field);
+
+        if (marker.hasLocation()) {
+            // Stored as 1E6 degrees; undo the division.
+            writeVarint(zigzag(Math.round(marker.getLatitude() * 1E6)));
+            writeVarint(zigzag(Math.round(marker.getLongitude() * 1E6)));
+        }
+        if (marker.hasAltitude()) writeDouble(marker.getAltitude().toM());
+        if (marker.hasAccuracy()) writeDouble(marker.getAccuracy().toM());
+        if (marker.hasBearing()) writeDouble(marker.getBearing());
+    }
+
+    private void writeDouble(double value) throws IOException {
+        writeVarint(Long.reverse(Double.doubleToRawLongBits(value)));
+    }
+
+    /**
+     * null is written as empty String.
+     */
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        writeVarint(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -21,24 +21,25 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.text.NumberFormat;
 import java.util.List;
 import java.util.Locale;
-import java.util.function.Function;
+import java.util.function.BiConsumer;
 
 import de.dennisguse.opentracks.data.ContentProviderUtils;
-import de.dennisguse.opentracks.data.TrackPointIterator;
+import de.dennisguse.opentracks.data.TrackPointCursor;
 import de.dennisguse.opentracks.data.models.Marker;
+import de.dennisguse.opentracks.data.models.Speed;
 import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.data.models.TrackPoint;
-import de.dennisguse.opentracks.util.StringUtils;
 
 /**
  * Exports the {@link TrackPoint} into a CSV.
  * * decimal separator: .
  * * column separator: ,
  * <p>
+ * TrackPoints are read with a {@link TrackPointCursor}; values that {@link TrackPoint} stores as float are rounded the same way.
+ * <p>
  * NOTE:
  * * {@link Track} data is not exported.
  * * {@link Marker} data is not exported.
@@ -81,7 +82,7 @@ public class CSVTrackExporter implements TrackExporter {
 
     private final ContentProviderUtils contentProviderUtils;
 
-    private PrintWriter printWriter;
+    private ExportWriter printWriter;
 
     public CSVTrackExporter(ContentProviderUtils contentProviderUtils) {
         this.contentProviderUtils = contentProviderUtils;
@@ -91,20 +92,20 @@ public class CSVTrackExporter implements TrackExporter {
     public boolean writeTrack(@NonNull List<Track> tracks, @NonNull OutputStream outputStream) {
         List<Column> columns = List.of(
                 new Column("time", null),
-                new Column("trackpoint_type", t -> quote(t.getType().name())),
-                new Column("latitude", t -> t.hasLocation() ? COORDINATE_FORMAT.format(t.getLatitude()) : ""),
-                new Column("longitude", t -> t.hasLocation() ? COORDINATE_FORMAT.format(t.getLongitude()) : ""),
-                new Column("altitude", t -> t.hasAltitude() ? COORDINATE_FORMAT.format(t.getAltitude().toM()) : ""),
-                new Column("accuracy_horizontal", t -> t.hasHorizontalAccuracy() ? DISTANCE_FORMAT.format(t.getHorizontalAccuracy().toM()) : ""),
-                new Column("accuracy_vertical", t -> t.hasVerticalAccuracy() ? DISTANCE_FORMAT.format(t.getVerticalAccuracy().toM()) : ""),
-
-                new Column("speed", t -> t.hasSpeed() ? SPEED_FORMAT.format(t.getSpeed().toKMH()) : ""),
-                new Column("altitude_gain", t -> t.hasAltitudeGain() ? DISTANCE_FORMAT.format(t.getAltitudeGain()) : ""),
-                new Column("altitude_loss", t -> t.hasAltitudeLoss() ? DISTANCE_FORMAT.format(t.getAltitudeLoss()) : ""),
-                new Column("sensor_distance", t -> t.hasSensorDistance() ? DISTANCE_FORMAT.format(t.getSensorDistance().toM()) : ""),
-                new Column("heartrate", t -> t.hasHeartRate() ? HEARTRATE_FORMAT.format(t.getHeartRate().getBPM()) : ""),
-                new Column("cadence", t -> t.hasCadence() ? CADENCE_FORMAT.format(t.getCadence().getRPM()) : ""),
-                new Column("power", t -> t.hasPower() ? ALTITUDE_FORMAT.format(t.getPower().getW()) : ""));
+                new Column("trackpoint_type", (w, t) -> quote(w, t.getType().name())),
+                new Column("latitude", (w, t) -> { if (t.hasLocation()) w.printNumber(COORDINATE_FORMAT, t.getLatitude()); }),
+                new Column("longitude", (w, t) -> { if (t.hasLocation()) w.printNumber(COORDINATE_FORMAT, t.getLongitude()); }),
+                new Column("altitude", (w, t) -> { if (t.hasAltitude()) w.printNumber(COORDINATE_FORMAT, (float) t.getAltitudeM()); }),
+                new Column("accuracy_horizontal", (w, t) -> { if (t.hasHorizontalAccuracy()) w.printNumber(DISTANCE_FORMAT, (float) t.getHorizontalAccuracyM()); }),
+                new Column("accuracy_vertical", (w, t) -> { if (t.hasVerticalAccuracy()) w.printNumber(DISTANCE_FORMAT, (float) t.getVerticalAccuracyM()); }),
+
+                new Column("speed", (w, t) -> { if (t.hasSpeed()) w.printNumber(SPEED_FORMAT, Speed.of((float) t.getSpeedMPS()).toKMH()); }),
+                new Column("altitude_gain", (w, t) -> { if (t.hasAltitudeGain()) w.printNumber(DISTANCE_FORMAT, t.getAltitudeGain()); }),
+                new Column("altitude_loss", (w, t) -> { if (t.hasAltitudeLoss()) w.printNumber(DISTANCE_FORMAT, t.getAltitudeLoss()); }),
+                new Column("sensor_distance", (w, t) -> { if (t.hasSensorDistance()) w.printNumber(DISTANCE_FORMAT, (float) t.getSensorDistanceM()); }),
+                new Column("heartrate", (w, t) -> { if (t.hasHeartRate()) w.printNumber(HEARTRATE_FORMAT, t.getHeartRateBPM()); }),
+                new Column("cadence", (w, t) -> { if (t.hasCadence()) w.printNumber(CADENCE_FORMAT, t.getCadenceRPM()); }),
+                new Column("power", (w, t) -> { if (t.hasPower()) w.printNumber(ALTITUDE_FORMAT, t.getPowerW()); }));
 
         try {
             prepare(outputStream);
@@ -112,7 +113,11 @@ public class CSVTrackExporter implements TrackExporter {
             boolean headerWritten = false;
 
             for (Track track : tracks) {
-                columns.get(0).extractor = t -> quote(StringUtils.formatDateTimeIso8601(t.getTime(), track.getZoneOffset()));
+                columns.get(0).writer = (w, t) -> {
+                    w.print('"');
+                    w.printTime(t.getTimeEpochMillis(), track.getZoneOffset());
+                    w.print('"');
+                };
 
                 if (!headerWritten) {
                     writeHeader(columns);
@@ -133,17 +138,17 @@ public class CSVTrackExporter implements TrackExporter {
     }
 
     private void writeTrackPoints(List<Column> columns, Track track) throws InterruptedException {
-        try (TrackPointIterator trackPointIterator = contentProviderUtils.getTrackPointLocationIterator(track.getId(), null)) {
-            while (trackPointIterator.hasNext()) {
+        try (TrackPointCursor trackPointCursor = contentProviderUtils.getTrackPointCursorView(track.getId(), null, null)) {
+            while (trackPointCursor.moveToNext()) {
                 if (Thread.interrupted()) throw new InterruptedException();
 
-                 writeTrackPoint(columns, trackPointIterator.next());
+                writeTrackPoint(columns, trackPointCursor);
             }
         }
     }
 
     public void prepare(OutputStream outputStream) {
-        this.printWriter = new PrintWriter(outputStream);
+        this.printWriter = new ExportWriter(outputStream);
     }
 
     public void close() {
@@ -156,22 +161,33 @@ public class CSVTrackExporter implements TrackExporter {
         printWriter.println("#" + columnNames);
     }
 
-    public void writeTrackPoint(List<Column> columns, TrackPoint trackPoint) {
-        String columnNames = columns.stream().map(c -> c.extractor.apply(trackPoint)).reduce((s, s2) -> s + "," + s2).orElseThrow(() -> new RuntimeException("No columns defined"));
-        printWriter.println(columnNames);
+    public void writeTrackPoint(List<Column> columns, TrackPointCursor trackPoint) {
+        if (columns.isEmpty()) {
+            throw new RuntimeException("No columns defined");
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                printWriter.print(',');
+            }
+            columns.get(i).writer.accept(printWriter, trackPoint);
+        }
+        printWriter.println();
     }
 
     private static class Column {
         final String columnName;
-        Function<TrackPoint, String> extractor;
+        BiConsumer<ExportWriter, TrackPointCursor> writer;
 
-        Column(String columnName, Function<TrackPoint, String> extractor) {
+        Column(String columnName, BiConsumer<ExportWriter, TrackPointCursor> writer) {
             this.columnName = columnName;
-            this.extractor = extractor;
+            this.writer = writer;
         }
     }
 
-    private static String quote(String content) {
-        return '"' + content + '"';
+    private static void quote(ExportWriter writer, String content) {
+        writer.print('"');
+        writer.print(content);
+        writer.print('"');
     }
+
 }
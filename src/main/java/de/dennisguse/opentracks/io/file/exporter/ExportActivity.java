@@ -63,6 +63,7 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
 
     public static final String EXTRA_DIRECTORY_URI_KEY = "directory_uri";
     public static final String EXTRA_ONE_FILE_KEY = "one_file";
+    public static final String EXTRA_BACKUP_KEY = "backup";
     public static final String EXTRA_TRACKFILEFORMAT_KEY = "trackfileformat";
 
     private static final String BUNDLE_AUTO_CONFLICT = "auto_conflict";
@@ -73,8 +74,11 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
     private static final String BUNDLE_TOTAL_COUNT = "track_export_total_count";
     private static final String BUNDLE_DIRECTORY_FILES = "track_directory_files";
     private static final String BUNDLE_TRACK_ERRORS = "track_errors";
+    private static final String BUNDLE_BACKUP_SUMMARY = "backup_summary";
 
     private static final String BUNDLE_EXPORT_TASKS = "export_tasks";
+    private static final String BUNDLE_EXPORT_ID = "export_id";
+    private static final String BUNDLE_ENQUEUED_EXPORT_TASKS = "enqueued_export_tasks";
 
     private enum ConflictResolutionStrategy {
         CONFLICT_NONE,
@@ -101,6 +105,9 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
 
     private ArrayList<String> trackErrors = new ArrayList<>();
 
+    // Throughput of a backup; shown when completed.
+    private String backupSummary;
+
     private ConflictResolutionStrategy autoConflict;
 
     private ContentProviderUtils contentProviderUtils;
@@ -108,6 +115,10 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
     // List of tracks to be exported.
     private ArrayList<ExportTask> exportTasks;
 
+    // Id of the export in the ExportService and the tasks that were enqueued.
+    private String exportId;
+    private ArrayList<ExportTask> enqueuedExportTasks = new ArrayList<>();
+
     private final LinkedBlockingQueue<PendingConflict> conflictsQueue = new LinkedBlockingQueue<>();
     private final Handler conflictsHandler = new Handler();
 
@@ -158,6 +169,7 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
         directoryUri = getIntent().getParcelableExtra(EXTRA_DIRECTORY_URI_KEY);
         trackFileFormat = (TrackFileFormat) getIntent().getSerializableExtra(EXTRA_TRACKFILEFORMAT_KEY);
         boolean allInOneFile = getIntent().getBooleanExtra(EXTRA_ONE_FILE_KEY, false);
+        boolean backup = getIntent().getBooleanExtra(EXTRA_BACKUP_KEY, false);
 
         contentProviderUtils = new ContentProviderUtils(this);
 
@@ -168,12 +180,13 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
 
         if (savedInstanceState == null) {
             autoConflict = ConflictResolutionStrategy.CONFLICT_NONE;
+            exportId = ExportService.create(resultReceiver);
             setProgress();
             new Thread(() -> {
                 directoryFiles = ExportUtils.getAllFiles(ExportActivity.this, documentFile.getUri());
                 runOnUiThread(() -> {
-                    createExportTasks(allInOneFile);
-                    nextExport(null);
+                    createExportTasks(allInOneFile, backup);
+                    startExports();
                 });
             }).start();
         } else {
@@ -185,9 +198,16 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
             trackExportTotalCount = savedInstanceState.getInt(BUNDLE_TOTAL_COUNT);
             directoryFiles = savedInstanceState.getStringArrayList(BUNDLE_DIRECTORY_FILES);
             trackErrors = savedInstanceState.getStringArrayList(BUNDLE_TRACK_ERRORS);
+            backupSummary = savedInstanceState.getString(BUNDLE_BACKUP_SUMMARY);
             exportTasks = new ArrayList<>(savedInstanceState.getParcelableArrayList(BUNDLE_EXPORT_TASKS));
-            setProgress();
-            nextExport(null);
+            exportId = savedInstanceState.getString(BUNDLE_EXPORT_ID);
+            enqueuedExportTasks = savedInstanceState.getParcelableArrayList(BUNDLE_ENQUEUED_EXPORT_TASKS);
+            if (!ExportService.attach(exportId, resultReceiver)) {
+                // The process was restarted: enqueue all remaining tasks again.
+                exportId = ExportService.create(resultReceiver);
+                enqueuedExportTasks.clear();
+            }
+            startExports();
         }
 
         viewBinding.exportActivityToolbar.setTitle(getString(R.string.export_progress_message, directoryDisplayName));
@@ -204,12 +224,19 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
         outState.putInt(BUNDLE_TOTAL_COUNT, trackExportTotalCount);
         outState.putStringArrayList(BUNDLE_DIRECTORY_FILES, (ArrayList<String>) directoryFiles);
         outState.putStringArrayList(BUNDLE_TRACK_ERRORS, trackErrors);
+        outState.putString(BUNDLE_BACKUP_SUMMARY, backupSummary);
         outState.putParcelableArrayList(BUNDLE_EXPORT_TASKS, exportTasks);
+        outState.putString(BUNDLE_EXPORT_ID, exportId);
+        outState.putParcelableArrayList(BUNDLE_ENQUEUED_EXPORT_TASKS, enqueuedExportTasks);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        // If the activity is recreated (e.g., configuration change), the export continues and its results are sent to the new activity.
+        if (isFinishing()) {
+            ExportService.cancel(exportId);
+        }
         conflictsQueue.clear();
         exportTasks.clear();
     }
@@ -227,10 +254,13 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
         new Handler().postDelayed(() -> doubleBackToCancel = false, 2000);
     }
 
-    private void createExportTasks(boolean allInOneFile) {
+    private void createExportTasks(boolean allInOneFile, boolean backup) {
         List<Track> tracks = contentProviderUtils.getTracks();
         exportTasks = new ArrayList<>();
-        if (allInOneFile) {
+        if (backup) {
+            String filename = "OpenTracks-Backup";
+            exportTasks.add(new ExportTask(filename, trackFileFormat, tracks.stream().map(Track::getId).collect(Collectors.toList()), true));
+        } else if (allInOneFile) {
             String filename = "OpenTracks-Backup";
             exportTasks.add(new ExportTask(filename, trackFileFormat, tracks.stream().map(Track::getId).collect(Collectors.toList())));
         } else {
@@ -239,6 +269,33 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
         trackExportTotalCount = exportTasks.size();
     }
 
+    /**
+     * Enqueues all tasks without a conflict at once, so these are exported in parallel; conflicts are resolved one by one.
+     */
+    private void startExports() {
+        ArrayList<ExportTask> exportTasksWithoutConflict = new ArrayList<>();
+        for (ExportTask exportTask : new ArrayList<>(exportTasks)) {
+            if (enqueuedExportTasks.contains(exportTask)) {
+                continue;
+            }
+            boolean fileExists = exportFileExists(exportTask);
+            if (fileExists && autoConflict == ConflictResolutionStrategy.CONFLICT_NONE) {
+                conflict(exportTask);
+            } else if (fileExists && autoConflict == ConflictResolutionStrategy.CONFLICT_SKIP) {
+                trackExportSkippedCount++;
+                exportTasks.remove(exportTask);
+            } else {
+                exportTasksWithoutConflict.add(exportTask);
+            }
+        }
+
+        if (!exportTasksWithoutConflict.isEmpty()) {
+            enqueue(exportTasksWithoutConflict);
+        }
+
+        exportDone(null);
+    }
+
     /**
      * Enqueue track identified by UUID to be exported if not exported already or there is a conflict resolution.
      */
@@ -249,12 +306,17 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
             conflict(exportTask);
         } else if (fileExists && conflictResolution == ConflictResolutionStrategy.CONFLICT_SKIP) {
             trackExportSkippedCount++;
-            nextExport(exportTask);
+            exportDone(exportTask);
         } else {
-            ExportService.enqueue(this, resultReceiver, exportTask, directoryUri);
+            enqueue(new ArrayList<>(List.of(exportTask)));
         }
     }
 
+    private void enqueue(ArrayList<ExportTask> exportTasks) {
+        enqueuedExportTasks.addAll(exportTasks);
+        ExportService.enqueue(this, exportId, exportTasks, directoryUri);
+    }
+
     private void export(ExportTask exportTask) {
         export(exportTask, autoConflict);
     }
@@ -262,7 +324,9 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
     @Deprecated //TODO Check should be done in ExportService
     private boolean exportFileExists(ExportTask exportTask) {
         String filename;
-        if (exportTask.isMultiExport()) {
+        if (exportTask.isBackup()) {
+            filename = BackupExporter.getFilename(exportTask.getFilename());
+        } else if (exportTask.isMultiExport()) {
             filename = TrackFilenameGenerator.format(exportTask.getFilename(), exportTask.getTrackFileFormat());
         } else {
             Track track = contentProviderUtils.getTrack(exportTask.getTrackIds().get(0));
@@ -298,15 +362,13 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
         viewBinding.exportProgressSummaryErrorsGroup.setVisibility(trackExportErrorCount > 0 ? View.VISIBLE : View.GONE);
     }
 
-    private void nextExport(@Nullable ExportTask exportTask) {
+    private void exportDone(@Nullable ExportTask exportTask) {
         exportTasks.remove(exportTask);
 
         setProgress();
         if (exportTasks.isEmpty()) {
             onExportEnded();
-            return;
         }
-        export(exportTasks.get(0));
     }
 
     private void onExportEnded() {
@@ -326,23 +388,34 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
         } else {
             viewBinding.exportProgressLeftButton.setVisibility(View.GONE);
             viewBinding.exportProgressAlertIcon.setImageDrawable(ContextCompat.getDrawable(this, R.drawable.ic_dialog_success_24dp));
-            viewBinding.exportProgressAlertMsg.setText(getString(R.string.generic_completed));
+            viewBinding.exportProgressAlertMsg.setText(backupSummary != null ? backupSummary : getString(R.string.generic_completed));
         }
     }
 
     @Override
-    public void onExportSuccess(ExportTask exportTask) {
+    public void onExportSuccess(ExportTask exportTask, @Nullable BackupExporter.Result backupResult) {
+        if (!exportTasks.contains(exportTask)) {
+            // Result was already received before the activity was recreated.
+            return;
+        }
+        if (backupResult != null) {
+            backupSummary = getString(R.string.export_backup_completed, backupResult.numTracks(), backupResult.tracksPerSecond(), backupResult.megabytesPerSecond());
+        }
         if (exportFileExists(exportTask)) {
             trackExportOverwrittenCount++;
         } else {
             trackExportSuccessCount++;
         }
 
-        nextExport(exportTask);
+        exportDone(exportTask);
     }
 
     @Override
     public void onExportError(ExportTask exportTask, String errorMessage) {
+        if (!exportTasks.contains(exportTask)) {
+            // Result was already received before the activity was recreated.
+            return;
+        }
         trackExportErrorCount++;
         String name;
         if (exportTask.isMultiExport()) {
@@ -353,7 +426,7 @@ public class ExportActivity extends AppCompatActivity implements ExportService.E
         Log.e(TAG, "Error exporting " + name + ": " + errorMessage);
         trackErrors.add(name);
 
-        nextExport(exportTask);
+        exportDone(exportTask);
     }
 
     private void conflict(ExportTask exportTask) {
@@ -0,0 +1,211 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import androidx.annotation.NonNull;
+
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import de.dennisguse.opentracks.util.StringUtils;
+
+/**
+ * Formats numbers and timestamps for the exporters into a {@link StringBuilder} without creating intermediate objects.
+ * <p>
+ * The output is the same as of {@link NumberFormat#format(double)} and {@link StringUtils#formatDateTimeIso8601(Instant, ZoneOffset)}:
+ * * numbers are rounded to the NumberFormat's fraction digits; if the result might differ (e.g., ties, grouping, truncated integer digits, -0, NaN), the NumberFormat is used.
+ * * the date and time up to the minute is cached, as consecutive TrackPoints are typically within the same minute.
+ * <p>
+ * Not thread-safe (except for using the same NumberFormats); the NumberFormats must not be modified after first use.
+ */
+class ExportFormatter {
+
+    private static final int MAX_FRACTION_DIGITS = 9;
+    private static final int MAX_INTEGER_DIGITS = 9;
+
+    // Rounding is exact as long as the scaled value has enough bits for the fraction.
+    private static final double MAX_SCALED = 1E9;
+    private static final double TIE_TOLERANCE = 1E-6;
+
+    // 0000-01-01T00:00:00 and 9999-12-31T23:59:59
+    private static final long MIN_FOUR_DIGIT_YEAR_SECONDS = -62167219200L;
+    private static final long MAX_FOUR_DIGIT_YEAR_SECONDS = 253402300799L;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_INTEGER_DIGITS + MAX_FRACTION_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * @param roundedLimit the rounded and scaled values must be smaller to be formatted by {@link #appendFixed(StringBuilder, DecimalSpec, double)}.
+     */
+    private record DecimalSpec(int fractionDigits, long roundedLimit) {
+    }
+
+    private static final DecimalSpec UNSUPPORTED = new DecimalSpec(0, 0);
+
+    private final Map<NumberFormat, DecimalSpec> decimalSpecs = new IdentityHashMap<>();
+
+    private long cachedMinute = Long.MIN_VALUE;
+    private final StringBuilder cachedMinutePrefix = new StringBuilder();
+
+    void appendNumber(@NonNull StringBuilder out, @NonNull NumberFormat format, double value) {
+        DecimalSpec spec = decimalSpecs.get(format);
+        if (spec == null) {
+            spec = createDecimalSpec(format);
+            decimalSpecs.put(format, spec);
+        }
+
+        if (!appendFixed(out, spec, value)) {
+            // The exporters share their NumberFormats, which are not thread-safe.
+            synchronized (format) {
+                out.append(format.format(value));
+            }
+        }
+    }
+
+    /**
+     * @return false if nothing was appended as the result might differ from the NumberFormat.
+     */
+    private static boolean appendFixed(StringBuilder out, DecimalSpec spec, double value) {
+        double scaled = Math.abs(value) * POWERS_OF_TEN[spec.fractionDigits];
+        if (!(scaled < MAX_SCALED)) {
+            // Also NaN and infinity
+            return false;
+        }
+
+        double floor = Math.floor(scaled);
+        double remainder = scaled - floor;
+        if (Math.abs(remainder - 0.5) < TIE_TOLERANCE) {
+            return false;
+        }
+        long rounded = (long) floor + (remainder > 0.5 ? 1 : 0);
+        if (rounded >= spec.roundedLimit) {
+            return false;
+        }
+
+        if (Double.doubleToRawLongBits(value) < 0) {
+            if (rounded == 0) {
+                // NumberFormat keeps the sign: -0
+                return false;
+            }
+            out.append('-');
+        }
+
+        long unit = POWERS_OF_TEN[spec.fractionDigits];
+        out.append(rounded / unit);
+
+        long fraction = rounded % unit;
+        if (fraction != 0) {
+            int digits = spec.fractionDigits;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            out.append('.');
+            appendPadded(out, fraction, digits);
+        }
+        return true;
+    }
+
+    @NonNull
+    private static DecimalSpec createDecimalSpec(NumberFormat format) {
+        if (!(format instanceof DecimalFormat decimalFormat)) {
+            return UNSUPPORTED;
+        }
+
+        DecimalFormatSymbols symbols = decimalFormat.getDecimalFormatSymbols();
+        int fractionDigits = decimalFormat.getMaximumFractionDigits();
+        if (fractionDigits > MAX_FRACTION_DIGITS
+                || decimalFormat.getMinimumFractionDigits() != 0
+                || decimalFormat.getMinimumIntegerDigits() != 1
+                || decimalFormat.isDecimalSeparatorAlwaysShown()
+                || decimalFormat.getRoundingMode() != RoundingMode.HALF_EVEN
+                || decimalFormat.getMultiplier() != 1
+                || !decimalFormat.getPositivePrefix().isEmpty()
+                || !decimalFormat.getPositiveSuffix().isEmpty()
+                || !"-".equals(decimalFormat.getNegativePrefix())
+                || !decimalFormat.getNegativeSuffix().isEmpty()
+                || symbols.getDecimalSeparator() != '.'
+                || symbols.getZeroDigit() != '0') {
+            return UNSUPPORTED;
+        }
+
+        int integerDigits = Math.min(decimalFormat.getMaximumIntegerDigits(), MAX_INTEGER_DIGITS);
+        if (decimalFormat.isGroupingUsed() && decimalFormat.getGroupingSize() > 0) {
+            integerDigits = Math.min(integerDigits, decimalFormat.getGroupingSize());
+        }
+        return new DecimalSpec(fractionDigits, POWERS_OF_TEN[integerDigits + fractionDigits]);
+    }
+
+    void appendTime(@NonNull StringBuilder out, @NonNull Instant time, @NonNull ZoneOffset zoneOffset) {
+        appendTime(out, time.getEpochSecond(), time.getNano(), zoneOffset);
+    }
+
+    /**
+     * Same as {@link #appendTime(StringBuilder, Instant, ZoneOffset)} without creating an {@link Instant}.
+     */
+    void appendTime(@NonNull StringBuilder out, long timeEpochMillis, @NonNull ZoneOffset zoneOffset) {
+        appendTime(out, Math.floorDiv(timeEpochMillis, 1000), (int) Math.floorMod(timeEpochMillis, 1000) * 1_000_000, zoneOffset);
+    }
+
+    private void appendTime(@NonNull StringBuilder out, long epochSecond, int nano, @NonNull ZoneOffset zoneOffset) {
+        long localSeconds = epochSecond + zoneOffset.getTotalSeconds();
+        if (localSeconds < MIN_FOUR_DIGIT_YEAR_SECONDS || localSeconds > MAX_FOUR_DIGIT_YEAR_SECONDS) {
+            // ISO 8601 uses a sign for other years
+            out.append(StringUtils.formatDateTimeIso8601(Instant.ofEpochSecond(epochSecond, nano), zoneOffset));
+            return;
+        }
+
+        long minute = Math.floorDiv(localSeconds, 60);
+        if (minute != cachedMinute) {
+            LocalDateTime dateTime = LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+            cachedMinutePrefix.setLength(0);
+            appendPadded(cachedMinutePrefix, dateTime.getYear(), 4);
+            cachedMinutePrefix.append('-');
+            appendPadded(cachedMinutePrefix, dateTime.getMonthValue(), 2);
+            cachedMinutePrefix.append('-');
+            appendPadded(cachedMinutePrefix, dateTime.getDayOfMonth(), 2);
+            cachedMinutePrefix.append('T');
+            appendPadded(cachedMinutePrefix, dateTime.getHour(), 2);
+            cachedMinutePrefix.append(':');
+            appendPadded(cachedMinutePrefix, dateTime.getMinute(), 2);
+            cachedMinutePrefix.append(':');
+            cachedMinute = minute;
+        }
+
+        out.append(cachedMinutePrefix);
+        appendPadded(out, Math.floorMod(localSeconds, 60), 2);
+
+        if (nano != 0) {
+            int digits = 9;
+            while (nano % 10 == 0) {
+                nano /= 10;
+                digits--;
+            }
+            out.append('.');
+            appendPadded(out, nano, digits);
+        }
+
+        out.append(zoneOffset.getId());
+    }
+
+    /**
+     * Appends a non-negative value with leading zeros.
+     */
+    private static void appendPadded(StringBuilder out, long value, int digits) {
+        for (int i = digits - 1; i > 0 && value < POWERS_OF_TEN[i]; i--) {
+            out.append('0');
+        }
+        out.append(value);
+    }
+}
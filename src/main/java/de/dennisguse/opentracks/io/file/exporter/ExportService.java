@@ -7,56 +7,296 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.ResultReceiver;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.core.app.JobIntentService;
 import androidx.documentfile.provider.DocumentFile;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
 import de.dennisguse.opentracks.R;
 import de.dennisguse.opentracks.util.ExportUtils;
 
+/**
+ * Exports {@link ExportTask}s: multiple tasks are exported concurrently (each by its own {@link TrackExporter}), while the files are written by a separate stage (see {@link PipelinedOutputStream}).
+ * The result of each task is sent individually.
+ * <p>
+ * The tasks of an export (see {@link #create(ExportServiceResultReceiver)}) are enqueued as work items of {@link #TASKS_PER_WORK} tasks each.
+ * If the job is stopped (JobScheduler limits its execution time), the tasks that were not started are exported when the job is resumed.
+ */
 public class ExportService extends JobIntentService {
 
+    private static final String TAG = ExportService.class.getSimpleName();
+
     private static final int JOB_ID = 1;
 
-    private static final String EXTRA_RECEIVER = "extra_receiver";
-    private static final String EXTRA_EXPORT_TASK = "export_task";
+    @VisibleForTesting
+    static final int TASKS_PER_WORK = 8;
+
+    private static final String EXTRA_EXPORT_ID = "extra_export_id";
+    private static final String EXTRA_EXPORT_TASKS = "export_tasks";
     private static final String EXTRA_DIRECTORY_URI = "extra_directory_uri";
 
+    // Exports by id (see create()).
+    private static final Map<String, Export> exports = new ConcurrentHashMap<>();
+
+    private volatile boolean stopped;
+
+    private static class Export {
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        private final AtomicInteger numTasks = new AtomicInteger();
+        private final Set<ExportTask> done = ConcurrentHashMap.newKeySet();
+
+        // Sent again to a new receiver (see attach()); guarded by this.
+        private final List<Result> results = new ArrayList<>();
+        private ResultReceiver resultReceiver;
+
+        // If released, the export is removed once all tasks are done.
+        private volatile boolean released;
+
+        // Exports the tasks of the current work item.
+        private volatile ExecutorService executor;
+
+        private Export(@Nullable ResultReceiver resultReceiver, boolean released) {
+            this.resultReceiver = resultReceiver;
+            this.released = released;
+        }
+    }
+
+    private record Result(int resultCode, Bundle bundle) {
+    }
+
+    /**
+     * The state of the export is kept until {@link #cancel(String)}.
+     *
+     * @return the id of a new export.
+     */
+    public static String create(@NonNull ExportServiceResultReceiver receiver) {
+        String exportId = UUID.randomUUID().toString();
+        exports.put(exportId, new Export(receiver, false));
+        return exportId;
+    }
+
+    /**
+     * Exports one task; the state of the export is removed after the result was sent.
+     */
     public static void enqueue(Context context, ExportServiceResultReceiver receiver, ExportTask exportTask, Uri directoryUri) {
-        Intent intent = new Intent(context, JobService.class);
-        intent.putExtra(EXTRA_RECEIVER, receiver);
-        intent.putExtra(EXTRA_EXPORT_TASK, exportTask);
-        intent.putExtra(EXTRA_DIRECTORY_URI, directoryUri);
-        enqueueWork(context, ExportService.class, JOB_ID, intent);
+        String exportId = UUID.randomUUID().toString();
+        exports.put(exportId, new Export(receiver, true));
+        enqueue(context, exportId, new ArrayList<>(List.of(exportTask)), directoryUri);
+    }
+
+    public static void enqueue(Context context, @NonNull String exportId, ArrayList<ExportTask> exportTasks, Uri directoryUri) {
+        Export export = exports.get(exportId);
+        if (export != null) {
+            export.numTasks.addAndGet(exportTasks.size());
+        }
+        for (int i = 0; i < exportTasks.size(); i += TASKS_PER_WORK) {
+            Intent intent = new Intent(context, JobService.class);
+            intent.putExtra(EXTRA_EXPORT_ID, exportId);
+            intent.putParcelableArrayListExtra(EXTRA_EXPORT_TASKS, new ArrayList<>(exportTasks.subList(i, Math.min(i + TASKS_PER_WORK, exportTasks.size()))));
+            intent.putExtra(EXTRA_DIRECTORY_URI, directoryUri);
+            enqueueWork(context, ExportService.class, JOB_ID, intent);
+        }
+    }
+
+    /**
+     * Sends the results to a new receiver (e.g., of a recreated activity) including the results that were already sent.
+     *
+     * @return false if the export is not known (e.g., the process was restarted).
+     */
+    public static boolean attach(@NonNull String exportId, @NonNull ExportServiceResultReceiver receiver) {
+        Export export = exports.get(exportId);
+        if (export == null || export.cancelled.get()) {
+            return false;
+        }
+        synchronized (export) {
+            export.resultReceiver = receiver;
+            export.results.forEach(result -> receiver.send(result.resultCode(), result.bundle()));
+        }
+        return true;
+    }
+
+    /**
+     * Running exports are interrupted (their files are deleted) and not started exports are skipped; no result is sent for them.
+     * Afterwards, the state of the export is removed.
+     */
+    public static void cancel(@NonNull String exportId) {
+        Export export = exports.get(exportId);
+        if (export == null) {
+            return;
+        }
+        export.cancelled.set(true);
+        export.released = true;
+        synchronized (export) {
+            export.resultReceiver = null;
+            export.results.clear();
+        }
+        ExecutorService executor = export.executor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        removeIfDone(exportId, export);
     }
 
     @Override
     protected void onHandleWork(@NonNull Intent intent) {
-        // Get all data.
-        ResultReceiver resultReceiver = intent.getParcelableExtra(EXTRA_RECEIVER);
-        ExportTask exportTask = intent.getParcelableExtra(EXTRA_EXPORT_TASK);
-        Uri directoryUri = intent.getParcelableExtra(EXTRA_DIRECTORY_URI);
+        stopped = false;
+        String exportId = intent.getStringExtra(EXTRA_EXPORT_ID);
+        // If the process was restarted, the state of the export is lost (incl. the number of tasks, so it is kept until the process ends).
+        Export export = exports.computeIfAbsent(exportId, id -> {
+            Export restarted = new Export(null, true);
+            restarted.numTasks.set(Integer.MAX_VALUE);
+            return restarted;
+        });
 
-        // Prepare resultCode and bundle to send to the receiver.
-        Bundle bundle = new Bundle();
-        bundle.putParcelable(ExportServiceResultReceiver.RESULT_EXTRA_EXPORT_TASK, exportTask);
+        // A work item is delivered again if the job was stopped; its tasks that have a result are skipped.
+        List<ExportTask> exportTasks = intent.<ExportTask>getParcelableArrayListExtra(EXTRA_EXPORT_TASKS).stream()
+                .filter(exportTask -> !export.done.contains(exportTask))
+                .collect(Collectors.toList());
+        if (export.cancelled.get()) {
+            exportTasks.forEach(exportTask -> setDone(exportId, export, exportTask));
+            return;
+        }
+        if (exportTasks.isEmpty()) {
+            return;
+        }
 
         // Build directory file.
+        Uri directoryUri = intent.getParcelableExtra(EXTRA_DIRECTORY_URI);
         DocumentFile directoryFile = DocumentFile.fromTreeUri(this, directoryUri);
         if (directoryFile == null || !directoryFile.canWrite()) {
-            bundle.putString(ExportServiceResultReceiver.EXTRA_EXPORT_ERROR_MESSAGE, getString(R.string.export_cannot_write_to_dir) + ": " + directoryFile);
-            resultReceiver.send(ExportServiceResultReceiver.RESULT_CODE_ERROR, bundle);
+            for (ExportTask exportTask : exportTasks) {
+                sendResult(exportId, export, exportTask, getString(R.string.export_cannot_write_to_dir) + ": " + directoryFile, null);
+            }
+            return;
+        }
+
+        int numWorkers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), exportTasks.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers, runnable -> {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorService writeExecutor = Executors.newFixedThreadPool(numWorkers, runnable -> {
+            Thread thread = new Thread(runnable, TAG + "-write");
+            thread.setDaemon(true);
+            return thread;
+        });
+        export.executor = executor;
+        try {
+            for (ExportTask exportTask : exportTasks) {
+                if (export.cancelled.get()) {
+                    // cancel() might have been called before export.executor was set.
+                    executor.shutdownNow();
+                    break;
+                }
+                executor.execute(() -> exportTask(exportId, export, directoryFile, exportTask, writeExecutor));
+            }
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Export was cancelled.");
+        }
+
+        try {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted while exporting.");
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            export.executor = null;
+            writeExecutor.shutdown();
+        }
+
+        if (export.cancelled.get()) {
+            exportTasks.forEach(exportTask -> setDone(exportId, export, exportTask));
+        }
+    }
+
+    private void exportTask(String exportId, Export export, DocumentFile directoryFile, ExportTask exportTask, Executor writeExecutor) {
+        if (export.cancelled.get() || stopped) {
             return;
         }
 
         // Export and send result
         try {
-            ExportUtils.exportTrack(this, directoryFile, exportTask);
-            resultReceiver.send(ExportServiceResultReceiver.RESULT_CODE_SUCCESS, bundle);
+            BackupExporter.Result backupResult = null;
+            if (exportTask.isBackup()) {
+                backupResult = ExportUtils.exportBackup(this, directoryFile, exportTask, writeExecutor);
+            } else {
+                ExportUtils.exportTrack(this, directoryFile, exportTask, writeExecutor);
+            }
+            sendResult(exportId, export, exportTask, null, backupResult);
         } catch (Exception e) {
-            bundle.putString(ExportServiceResultReceiver.EXTRA_EXPORT_ERROR_MESSAGE, e.getMessage());
-            resultReceiver.send(ExportServiceResultReceiver.RESULT_CODE_ERROR, bundle);
+            if (!export.cancelled.get()) {
+                sendResult(exportId, export, exportTask, e.getMessage(), null);
+            }
+        }
+    }
+
+    /**
+     * Running exports are finished; the tasks that were not started are exported when the job is resumed.
+     */
+    @Override
+    public boolean onStopCurrentWork() {
+        stopped = true;
+        return true;
+    }
+
+    /**
+     * @param errorMessage null on success
+     * @param backupResult only for backups
+     */
+    private static void sendResult(String exportId, Export export, ExportTask exportTask, @Nullable String errorMessage, @Nullable BackupExporter.Result backupResult) {
+        Bundle bundle = new Bundle();
+        bundle.putParcelable(ExportServiceResultReceiver.RESULT_EXTRA_EXPORT_TASK, exportTask);
+        if (backupResult != null) {
+            bundle.putInt(ExportServiceResultReceiver.RESULT_EXTRA_BACKUP_NUM_TRACKS, backupResult.numTracks());
+            bundle.putLong(ExportServiceResultReceiver.RESULT_EXTRA_BACKUP_NUM_BYTES, backupResult.numBytes());
+            bundle.putLong(ExportServiceResultReceiver.RESULT_EXTRA_BACKUP_DURATION, backupResult.durationMillis());
+        }
+        int resultCode = ExportServiceResultReceiver.RESULT_CODE_SUCCESS;
+        if (errorMessage != null) {
+            bundle.putString(ExportServiceResultReceiver.EXTRA_EXPORT_ERROR_MESSAGE, errorMessage);
+            resultCode = ExportServiceResultReceiver.RESULT_CODE_ERROR;
+        }
+
+        synchronized (export) {
+            if (!export.cancelled.get()) {
+                export.results.add(new Result(resultCode, bundle));
+                if (export.resultReceiver != null) {
+                    export.resultReceiver.send(resultCode, bundle);
+                }
+            }
+        }
+        setDone(exportId, export, exportTask);
+    }
+
+    private static void setDone(String exportId, Export export, ExportTask exportTask) {
+        export.done.add(exportTask);
+        removeIfDone(exportId, export);
+    }
+
+    private static void removeIfDone(String exportId, Export export) {
+        if (export.released && export.done.size() >= export.numTasks.get()) {
+            exports.remove(exportId, export);
         }
     }
 
@@ -67,6 +307,10 @@ public class ExportService extends JobIntentService {
 
         public static final String RESULT_EXTRA_EXPORT_TASK = "result_extra_export_task";
 
+        public static final String RESULT_EXTRA_BACKUP_NUM_TRACKS = "result_extra_backup_num_tracks";
+        public static final String RESULT_EXTRA_BACKUP_NUM_BYTES = "result_extra_backup_num_bytes";
+        public static final String RESULT_EXTRA_BACKUP_DURATION = "result_extra_backup_duration";
+
         public static final String EXTRA_EXPORT_ERROR_MESSAGE = "extra_export_error_message";
 
         private final Receiver receiver;
@@ -80,14 +324,23 @@ public class ExportService extends JobIntentService {
         protected void onReceiveResult(int resultCode, Bundle resultData) {
             ExportTask exportTask = resultData.getParcelable(RESULT_EXTRA_EXPORT_TASK);
             switch (resultCode) {
-                case RESULT_CODE_SUCCESS -> receiver.onExportSuccess(exportTask);
+                case RESULT_CODE_SUCCESS -> {
+                    BackupExporter.Result backupResult = null;
+                    if (resultData.containsKey(RESULT_EXTRA_BACKUP_NUM_TRACKS)) {
+                        backupResult = new BackupExporter.Result(resultData.getInt(RESULT_EXTRA_BACKUP_NUM_TRACKS), resultData.getLong(RESULT_EXTRA_BACKUP_NUM_BYTES), resultData.getLong(RESULT_EXTRA_BACKUP_DURATION));
+                    }
+                    receiver.onExportSuccess(exportTask, backupResult);
+                }
                 case RESULT_CODE_ERROR -> receiver.onExportError(exportTask, resultData.getString(EXTRA_EXPORT_ERROR_MESSAGE));
                 default -> throw new RuntimeException("Unknown resultCode.");
             }
         }
 
         public interface Receiver {
-            default void onExportSuccess(ExportTask exportTask) {
+            /**
+             * @param backupResult only for backups
+             */
+            default void onExportSuccess(ExportTask exportTask, @Nullable BackupExporter.Result backupResult) {
             }
 
             default void onExportError(ExportTask exportTask, String errorMessage) {
@@ -20,16 +20,25 @@ public class ExportTask implements Parcelable {
 
     private final List<Track.Id> trackIds;
 
+    // One ZIP file with one file per track (see BackupExporter).
+    private final boolean backup;
+
     public ExportTask(@Nullable String filename, @NonNull TrackFileFormat trackFileFormat, @NonNull List<Track.Id> trackIds) {
+        this(filename, trackFileFormat, trackIds, false);
+    }
+
+    public ExportTask(@Nullable String filename, @NonNull TrackFileFormat trackFileFormat, @NonNull List<Track.Id> trackIds, boolean backup) {
         this.filename = filename;
         this.trackFileFormat = trackFileFormat;
         this.trackIds = trackIds;
+        this.backup = backup;
     }
 
     protected ExportTask(Parcel in) {
         filename = in.readString();
         trackFileFormat = TrackFileFormat.valueOf(in.readString());
         trackIds = in.createTypedArrayList(Track.Id.CREATOR);
+        backup = in.readInt() != 0;
     }
 
     public String getFilename() {
@@ -45,7 +54,11 @@ public class ExportTask implements Parcelable {
     }
 
     public boolean isMultiExport() {
-        return trackIds.size() > 1;
+        return backup || trackIds.size() > 1;
+    }
+
+    public boolean isBackup() {
+        return backup;
     }
 
     @Override
@@ -53,12 +66,12 @@ public class ExportTask implements Parcelable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ExportTask that = (ExportTask) o;
-        return Objects.equals(filename, that.filename) && trackFileFormat == that.trackFileFormat && Objects.equals(trackIds, that.trackIds);
+        return backup == that.backup && Objects.equals(filename, that.filename) && trackFileFormat == that.trackFileFormat && Objects.equals(trackIds, that.trackIds);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(filename, trackFileFormat, trackIds);
+        return Objects.hash(filename, trackFileFormat, trackIds, backup);
     }
 
     @Override
@@ -66,6 +79,7 @@ public class ExportTask implements Parcelable {
         dest.writeString(filename);
         dest.writeString(trackFileFormat.name());
         dest.writeTypedList(trackIds);
+        dest.writeInt(backup ? 1 : 0);
     }
 
     @Override
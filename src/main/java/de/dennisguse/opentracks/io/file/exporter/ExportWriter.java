@@ -0,0 +1,63 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.NumberFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+/**
+ * {@link PrintWriter} for the exporters with a large output buffer that writes numbers and timestamps via {@link ExportFormatter}.
+ * Like {@link PrintWriter}, it does not throw {@link java.io.IOException}s; see {@link #checkError()}.
+ */
+class ExportWriter extends PrintWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ExportFormatter formatter = new ExportFormatter();
+    private final StringBuilder buffer = new StringBuilder();
+    private char[] chars = new char[64];
+
+    ExportWriter(@NonNull OutputStream outputStream) {
+        super(new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE));
+    }
+
+    ExportFormatter getFormatter() {
+        return formatter;
+    }
+
+    void printNumber(@NonNull NumberFormat format, double value) {
+        buffer.setLength(0);
+        formatter.appendNumber(buffer, format, value);
+        print(buffer);
+    }
+
+    void printTime(@NonNull Instant time, @NonNull ZoneOffset zoneOffset) {
+        buffer.setLength(0);
+        formatter.appendTime(buffer, time, zoneOffset);
+        print(buffer);
+    }
+
+    void printTime(long timeEpochMillis, @NonNull ZoneOffset zoneOffset) {
+        buffer.setLength(0);
+        formatter.appendTime(buffer, timeEpochMillis, zoneOffset);
+        print(buffer);
+    }
+
+    /**
+     * Writes the content without creating a String.
+     */
+    void print(@NonNull StringBuilder content) {
+        int length = content.length();
+        if (length > chars.length) {
+            chars = new char[Math.max(chars.length * 2, length)];
+        }
+        content.getChars(0, length, chars, 0);
+        write(chars, 0, length);
+    }
+}
@@ -22,18 +22,14 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.text.NumberFormat;
+import java.time.Instant;
 import java.time.ZoneOffset;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
-import java.util.Objects;
-import java.util.function.Function;
-import java.util.stream.Stream;
 
 import de.dennisguse.opentracks.data.ContentProviderUtils;
-import de.dennisguse.opentracks.data.TrackPointIterator;
+import de.dennisguse.opentracks.data.TrackPointCursor;
 import de.dennisguse.opentracks.data.models.Distance;
 import de.dennisguse.opentracks.data.models.Marker;
 import de.dennisguse.opentracks.data.models.Track;
@@ -46,6 +42,8 @@ import de.dennisguse.opentracks.util.StringUtils;
  * NOTE:
  * * does not export {@link TrackPoint} without a latitude/longitude (not supported by GPX 1.1).
  * * cannot export multiple {@link Track}s - all {@link TrackPoint}s are exported as if they would belong to the first track.
+ * <p>
+ * TrackPoints are read with a {@link TrackPointCursor}; values that {@link TrackPoint} stores as float are rounded the same way.
  *
  * @author Sandor Dornbush
  * @author Rodrigo Damazio
@@ -90,7 +88,9 @@ public class GPXTrackExporter implements TrackExporter {
     private final ContentProviderUtils contentProviderUtils;
 
     private final String creator;
-    private PrintWriter printWriter;
+    private ExportWriter printWriter;
+
+    private final StringBuilder trackPointExtensionContent = new StringBuilder();
 
     public GPXTrackExporter(ContentProviderUtils contentProviderUtils, String creator) {
         this.contentProviderUtils = contentProviderUtils;
@@ -126,14 +126,12 @@ public class GPXTrackExporter implements TrackExporter {
         boolean wroteSegment = false;
         Distance trackDistance = Distance.of(0);
 
-        LinkedList<TrackPoint> sensorPoints = new LinkedList<>();
+        SensorPoints sensorPoints = new SensorPoints();
 
-        try (TrackPointIterator trackPointIterator = contentProviderUtils.getTrackPointLocationIterator(track.getId(), null)) {
-            while (trackPointIterator.hasNext()) {
+        try (TrackPointCursor trackPoint = contentProviderUtils.getTrackPointCursorView(track.getId(), null, null)) {
+            while (trackPoint.moveToNext()) {
                 if (Thread.interrupted()) throw new InterruptedException();
 
-                TrackPoint trackPoint = trackPointIterator.next();
-
                 if (!wroteTrack) {
                     writeBeginTrack(track);
                     wroteTrack = true;
@@ -201,7 +199,7 @@ public class GPXTrackExporter implements TrackExporter {
     }
 
     public void prepare(OutputStream outputStream) {
-        this.printWriter = new PrintWriter(outputStream);
+        this.printWriter = new ExportWriter(outputStream);
     }
 
     public void close() {
@@ -254,11 +252,13 @@ public class GPXTrackExporter implements TrackExporter {
     }
 
     public void writeMarker(ZoneOffset zoneOffset, Marker marker) {
-        printWriter.println("<wpt " + formatLocation(marker.getLatitude(), marker.getLongitude()) + ">");
+        printWriter.print("<wpt ");
+        writeLocation(marker.getLatitude(), marker.getLongitude());
+        printWriter.println(">");
         if (marker.hasAltitude()) {
-            printWriter.println("<ele>" + ALTITUDE_FORMAT.format(marker.getAltitude().toM()) + "</ele>");
+            writeAltitude(marker.getAltitude().toM());
         }
-        printWriter.println("<time>" + StringUtils.formatDateTimeIso8601(marker.getTime(), zoneOffset) + "</time>");
+        writeTime(marker.getTime(), zoneOffset);
         printWriter.println("<name>" + StringUtils.formatCData(marker.getName()) + "</name>");
         printWriter.println("<desc>" + StringUtils.formatCData(marker.getDescription()) + "</desc>");
         printWriter.println("<type>" + StringUtils.formatCData(marker.getCategory()) + "</type>"); //TODO This is localized; may be better to export in English only. See #1608
@@ -309,62 +309,86 @@ public class GPXTrackExporter implements TrackExporter {
         printWriter.println("</trkseg>");
     }
 
-    public Distance writeTrackPoint(ZoneOffset zoneOffset, TrackPoint trackPoint, List<TrackPoint> sensorPoints, Distance trackDistance) {
+    private Distance writeTrackPoint(ZoneOffset zoneOffset, TrackPointCursor trackPoint, SensorPoints sensorPoints, Distance trackDistance) {
         Distance cumulativeDistance;
 
-        printWriter.println("<trkpt " + formatLocation(trackPoint.getLatitude(), trackPoint.getLongitude()) + ">");
+        printWriter.print("<trkpt ");
+        writeLocation(trackPoint.getLatitude(), trackPoint.getLongitude());
+        printWriter.println(">");
 
         if (trackPoint.hasAltitude()) {
-            printWriter.println("<ele>" + ALTITUDE_FORMAT.format(trackPoint.getAltitude().toM()) + "</ele>");
+            writeAltitude((float) trackPoint.getAltitudeM());
         }
 
-        printWriter.println("<time>" + StringUtils.formatDateTimeIso8601(trackPoint.getTime(), zoneOffset) + "</time>");
+        writeTime(trackPoint.getTimeEpochMillis(), zoneOffset);
 
         {
-            String trackPointExtensionContent = "";
+            ExportFormatter formatter = printWriter.getFormatter();
+            StringBuilder content = trackPointExtensionContent;
+            content.setLength(0);
 
             if (trackPoint.hasSpeed()) {
-                trackPointExtensionContent += "<gpxtpx:speed>" + SPEED_FORMAT.format(trackPoint.getSpeed().toMPS()) + "</gpxtpx:speed>\n";
+                content.append("<gpxtpx:speed>");
+                formatter.appendNumber(content, SPEED_FORMAT, (float) trackPoint.getSpeedMPS());
+                content.append("</gpxtpx:speed>\n");
             }
 
             if (trackPoint.hasHeartRate()) {
-                trackPointExtensionContent += "<gpxtpx:hr>" + HEARTRATE_FORMAT.format(trackPoint.getHeartRate().getBPM()) + "</gpxtpx:hr>\n";
+                content.append("<gpxtpx:hr>");
+                formatter.appendNumber(content, HEARTRATE_FORMAT, trackPoint.getHeartRateBPM());
+                content.append("</gpxtpx:hr>\n");
             }
 
             if (trackPoint.hasCadence()) {
-                trackPointExtensionContent += "<gpxtpx:cad>" + CADENCE_FORMAT.format(trackPoint.getCadence().getRPM()) + "</gpxtpx:cad>\n";
+                content.append("<gpxtpx:cad>");
+                formatter.appendNumber(content, CADENCE_FORMAT, trackPoint.getCadenceRPM());
+                content.append("</gpxtpx:cad>\n");
             }
 
             if (trackPoint.hasPower()) {
-                trackPointExtensionContent += "<pwr:PowerInWatts>" + POWER_FORMAT.format(trackPoint.getPower().getW()) + "</pwr:PowerInWatts>\n";
+                content.append("<pwr:PowerInWatts>");
+                formatter.appendNumber(content, POWER_FORMAT, trackPoint.getPowerW());
+                content.append("</pwr:PowerInWatts>\n");
             }
 
-            Double cumulativeGain = cumulateSensorData(trackPoint, sensorPoints, (tp) -> tp.hasAltitudeGain() ? (double) tp.getAltitudeGain() : null);
+            Double cumulativeGain = sumNonNull(sensorPoints.altitudeGain, trackPoint.hasAltitudeGain() ? (double) trackPoint.getAltitudeGain() : null);
             if (cumulativeGain != null) {
-                trackPointExtensionContent += ("<opentracks:gain>" + ALTITUDE_FORMAT.format(cumulativeGain) + "</opentracks:gain>\n");
+                content.append("<opentracks:gain>");
+                formatter.appendNumber(content, ALTITUDE_FORMAT, cumulativeGain);
+                content.append("</opentracks:gain>\n");
             }
 
-            Double cumulativeLoss = cumulateSensorData(trackPoint, sensorPoints, (tp) -> tp.hasAltitudeLoss() ? (double) tp.getAltitudeLoss() : null);
+            Double cumulativeLoss = sumNonNull(sensorPoints.altitudeLoss, trackPoint.hasAltitudeLoss() ? (double) trackPoint.getAltitudeLoss() : null);
             if (cumulativeLoss != null) {
-                trackPointExtensionContent += ("<opentracks:loss>" + ALTITUDE_FORMAT.format(cumulativeLoss) + "</opentracks:loss>\n");
+                content.append("<opentracks:loss>");
+                formatter.appendNumber(content, ALTITUDE_FORMAT, cumulativeLoss);
+                content.append("</opentracks:loss>\n");
             }
 
             if (trackPoint.hasHorizontalAccuracy()) {
-                trackPointExtensionContent += ("<opentracks:accuracy_horizontal>" + DISTANCE_FORMAT.format(trackPoint.getHorizontalAccuracy().toM()) + "</opentracks:accuracy_horizontal>");
+                content.append("<opentracks:accuracy_horizontal>");
+                formatter.appendNumber(content, DISTANCE_FORMAT, (float) trackPoint.getHorizontalAccuracyM());
+                content.append("</opentracks:accuracy_horizontal>");
             }
             if (trackPoint.hasVerticalAccuracy()) {
-                trackPointExtensionContent += ("<opentracks:accuracy_vertical>" + DISTANCE_FORMAT.format(trackPoint.getVerticalAccuracy().toM()) + "</opentracks:accuracy_vertical>");
+                content.append("<opentracks:accuracy_vertical>");
+                formatter.appendNumber(content, DISTANCE_FORMAT, (float) trackPoint.getVerticalAccuracyM());
+                content.append("</opentracks:accuracy_vertical>");
             }
 
-            cumulativeDistance = Distance.ofOrNull(cumulateSensorData(trackPoint, sensorPoints, (tp) -> tp.hasSensorDistance() ? tp.getSensorDistance().toM() : null));
+            cumulativeDistance = Distance.ofOrNull(sumNonNull(sensorPoints.distance, trackPoint.hasSensorDistance() ? (double) (float) trackPoint.getSensorDistanceM() : null));
             if (cumulativeDistance != null) {
-                trackPointExtensionContent += ("<opentracks:distance>" + DISTANCE_FORMAT.format(cumulativeDistance.toM()) + "</opentracks:distance>\n");
-                trackPointExtensionContent += ("<cluetrust:distance>" + DISTANCE_FORMAT.format(trackDistance.plus(cumulativeDistance).toM()) + "</cluetrust:distance>\n");
+                content.append("<opentracks:distance>");
+                formatter.appendNumber(content, DISTANCE_FORMAT, cumulativeDistance.toM());
+                content.append("</opentracks:distance>\n");
+                content.append("<cluetrust:distance>");
+                formatter.appendNumber(content, DISTANCE_FORMAT, trackDistance.plus(cumulativeDistance).toM());
+                content.append("</cluetrust:distance>\n");
             }
 
-            if (!trackPointExtensionContent.isEmpty()) {
+            if (content.length() > 0) {
                 printWriter.println("<extensions><gpxtpx:TrackPointExtension>");
-                printWriter.print(trackPointExtensionContent);
+                printWriter.print(content);
                 printWriter.println("</gpxtpx:TrackPointExtension></extensions>");
             }
         }
@@ -377,15 +401,65 @@ public class GPXTrackExporter implements TrackExporter {
         return Distance.of(0);
     }
 
-    private Double cumulateSensorData(TrackPoint trackPoint, List<TrackPoint> sensorPoints, Function<TrackPoint, Double> map) {
-        return Stream.concat(sensorPoints.stream(), Stream.of(trackPoint))
-                .map(map)
-                .filter(Objects::nonNull)
-                .reduce(Double::sum)
-                .orElse(null);
+    /**
+     * The TrackPoints without location since the last written TrackPoint; their data is written with the next TrackPoint.
+     * Only the sums are kept (in order), as the cursor cannot keep TrackPoints.
+     */
+    private static class SensorPoints {
+        private Double distance;
+        private Double altitudeGain;
+        private Double altitudeLoss;
+        private boolean isEmpty = true;
+
+        void add(TrackPointCursor trackPoint) {
+            distance = sumNonNull(distance, trackPoint.hasSensorDistance() ? (double) (float) trackPoint.getSensorDistanceM() : null);
+            altitudeGain = sumNonNull(altitudeGain, trackPoint.hasAltitudeGain() ? (double) trackPoint.getAltitudeGain() : null);
+            altitudeLoss = sumNonNull(altitudeLoss, trackPoint.hasAltitudeLoss() ? (double) trackPoint.getAltitudeLoss() : null);
+            isEmpty = false;
+        }
+
+        void clear() {
+            distance = null;
+            altitudeGain = null;
+            altitudeLoss = null;
+            isEmpty = true;
+        }
+
+        boolean isEmpty() {
+            return isEmpty;
+        }
+    }
+
+    private static Double sumNonNull(Double sum, Double value) {
+        if (value == null) {
+            return sum;
+        }
+        return sum == null ? value : sum + value;
+    }
+
+    private void writeLocation(double latitude, double longitude) {
+        printWriter.print("lat=\"");
+        printWriter.printNumber(COORDINATE_FORMAT, latitude);
+        printWriter.print("\" lon=\"");
+        printWriter.printNumber(COORDINATE_FORMAT, longitude);
+        printWriter.print("\"");
+    }
+
+    private void writeAltitude(double altitude) {
+        printWriter.print("<ele>");
+        printWriter.printNumber(ALTITUDE_FORMAT, altitude);
+        printWriter.println("</ele>");
+    }
+
+    private void writeTime(Instant time, ZoneOffset zoneOffset) {
+        printWriter.print("<time>");
+        printWriter.printTime(time, zoneOffset);
+        printWriter.println("</time>");
     }
 
-    private String formatLocation(double latitude, double longitude) {
-        return "lat=\"" + COORDINATE_FORMAT.format(latitude) + "\" lon=\"" + COORDINATE_FORMAT.format(longitude) + "\"";
+    private void writeTime(long timeEpochMillis, ZoneOffset zoneOffset) {
+        printWriter.print("<time>");
+        printWriter.printTime(timeEpochMillis, zoneOffset);
+        printWriter.println("</time>");
     }
 }
@@ -25,7 +25,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.text.NumberFormat;
 import java.time.Instant;
 import java.time.ZoneOffset;
@@ -37,7 +36,7 @@ import java.util.Optional;
 
 import de.dennisguse.opentracks.R;
 import de.dennisguse.opentracks.data.ContentProviderUtils;
-import de.dennisguse.opentracks.data.TrackPointIterator;
+import de.dennisguse.opentracks.data.TrackPointCursor;
 import de.dennisguse.opentracks.data.models.ActivityType;
 import de.dennisguse.opentracks.data.models.Marker;
 import de.dennisguse.opentracks.data.models.Track;
@@ -86,7 +85,7 @@ public class KMLTrackExporter implements TrackExporter {
     private final boolean exportPhotos;
     private final ContentProviderUtils contentProviderUtils;
 
-    private PrintWriter printWriter;
+    private ExportWriter printWriter;
 
     private final ArrayList<TrackPoint.Type> trackpointTypeList = new ArrayList<>();
 
@@ -161,11 +160,10 @@ public class KMLTrackExporter implements TrackExporter {
         boolean wroteTrack = false;
         boolean wroteSegment = false;
 
-        try (TrackPointIterator trackPointIterator = contentProviderUtils.getTrackPointLocationIterator(track.getId(), null)) {
-            while (trackPointIterator.hasNext()) {
+        try (TrackPointCursor trackPoint = contentProviderUtils.getTrackPointCursorView(track.getId(), null, null)) {
+            while (trackPoint.moveToNext()) {
                 if (Thread.interrupted()) throw new InterruptedException();
 
-                TrackPoint trackPoint = trackPointIterator.next();
                 if (!wroteTrack) {
                     writeBeginTrack(track);
                     wroteTrack = true;
@@ -215,7 +213,7 @@ public class KMLTrackExporter implements TrackExporter {
 
     @VisibleForTesting
     void prepare(OutputStream outputStream) {
-        this.printWriter = new PrintWriter(outputStream);
+        this.printWriter = new ExportWriter(outputStream);
     }
 
     @VisibleForTesting
@@ -367,28 +365,41 @@ public class KMLTrackExporter implements TrackExporter {
         printWriter.println("</Track>");
     }
 
+    /**
+     * Values that {@link TrackPoint} stores as float are rounded the same way.
+     */
     @VisibleForTesting
-    void writeTrackPoint(ZoneOffset zoneOffset, TrackPoint trackPoint) {
-        printWriter.println("<when>" + getTime(zoneOffset, trackPoint.getTime()) + "</when>");
+    void writeTrackPoint(ZoneOffset zoneOffset, TrackPointCursor trackPoint) {
+        printWriter.print("<when>");
+        printWriter.printTime(trackPoint.getTimeEpochMillis(), zoneOffset);
+        printWriter.println("</when>");
 
         trackpointTypeList.add(trackPoint.getType());
 
         if (trackPoint.hasLocation()) {
-            printWriter.println("<coord>" + getCoordinates(trackPoint.getLocation(), " ") + "</coord>");
+            printWriter.print("<coord>");
+            printWriter.print(trackPoint.getLongitude());
+            printWriter.print(' ');
+            printWriter.print(trackPoint.getLatitude());
+            if (trackPoint.hasAltitude()) {
+                printWriter.print(' ');
+                printWriter.print((double) (float) trackPoint.getAltitudeM());
+            }
+            printWriter.println("</coord>");
         } else {
             printWriter.println("<coord/>");
         }
-        speedList.add(trackPoint.hasSpeed() ? (float) trackPoint.getSpeed().toMPS() : null);
+        speedList.add(trackPoint.hasSpeed() ? (float) trackPoint.getSpeedMPS() : null);
 
-        distanceList.add(trackPoint.hasSensorDistance() ? (float) trackPoint.getSensorDistance().toM() : null);
-        heartRateList.add(trackPoint.hasHeartRate() ? trackPoint.getHeartRate().getBPM() : null);
-        cadenceList.add(trackPoint.hasCadence() ? trackPoint.getCadence().getRPM() : null);
-        powerList.add(trackPoint.hasPower() ? trackPoint.getPower().getW() : null);
+        distanceList.add(trackPoint.hasSensorDistance() ? (float) trackPoint.getSensorDistanceM() : null);
+        heartRateList.add(trackPoint.hasHeartRate() ? trackPoint.getHeartRateBPM() : null);
+        cadenceList.add(trackPoint.hasCadence() ? trackPoint.getCadenceRPM() : null);
+        powerList.add(trackPoint.hasPower() ? trackPoint.getPowerW() : null);
 
         altitudeGainList.add(trackPoint.hasAltitudeGain() ? trackPoint.getAltitudeGain() : null);
         altitudeLossList.add(trackPoint.hasAltitudeLoss() ? trackPoint.getAltitudeLoss() : null);
-        accuracyHorizontal.add(trackPoint.hasHorizontalAccuracy() ? (float) trackPoint.getHorizontalAccuracy().toM() : null);
-        accuracyVertical.add(trackPoint.hasVerticalAccuracy() ? (float) trackPoint.getVerticalAccuracy().toM() : null);
+        accuracyHorizontal.add(trackPoint.hasHorizontalAccuracy() ? (float) trackPoint.getHorizontalAccuracyM() : null);
+        accuracyVertical.add(trackPoint.hasVerticalAccuracy() ? (float) trackPoint.getVerticalAccuracyM() : null);
     }
 
     private void writeSimpleArraySensorData(List<Float> list, String name) {
@@ -398,7 +409,9 @@ public class KMLTrackExporter implements TrackExporter {
             if (value == null) {
                 printWriter.println("<value />");
             } else {
-                printWriter.println("<value>" + SENSOR_DATA_FORMAT.format(value) + "</value>");
+                printWriter.print("<value>");
+                printWriter.printNumber(SENSOR_DATA_FORMAT, value);
+                printWriter.println("</value>");
             }
         }
         printWriter.println("</SimpleArrayData>");
@@ -421,7 +434,9 @@ public class KMLTrackExporter implements TrackExporter {
             printWriter.println("<styleUrl>#" + KMLTrackExporter.MARKER_STYLE + "</styleUrl>");
             writeTypeLocalized(activityType);
             printWriter.println("<Point>");
-            printWriter.println("<coordinates>" + getCoordinates(location, ",") + "</coordinates>");
+            printWriter.print("<coordinates>");
+            writeCoordinates(location, ',');
+            printWriter.println("</coordinates>");
             printWriter.println("</Point>");
             printWriter.println("</Placemark>");
         }
@@ -454,7 +469,9 @@ public class KMLTrackExporter implements TrackExporter {
         printWriter.print("<topFov>45</topFov>");
         printWriter.println("</ViewVolume>");
         printWriter.println("<Point>");
-        printWriter.println("<coordinates>" + getCoordinates(marker.getLocation(), ",") + "</coordinates>");
+        printWriter.print("<coordinates>");
+        writeCoordinates(marker.getLocation(), ',');
+        printWriter.println("</coordinates>");
         printWriter.println("</Point>");
         printWriter.println("</PhotoOverlay>");
     }
@@ -489,12 +506,14 @@ public class KMLTrackExporter implements TrackExporter {
         return location.getBearing();
     }
 
-    private static String getCoordinates(Location location, String separator) {
-        String result = location.getLongitude() + separator + location.getLatitude();
+    private void writeCoordinates(Location location, char separator) {
+        printWriter.print(location.getLongitude());
+        printWriter.print(separator);
+        printWriter.print(location.getLatitude());
         if (location.hasAltitude()) {
-            result += separator + location.getAltitude();
+            printWriter.print(separator);
+            printWriter.print(location.getAltitude());
         }
-        return result;
     }
 
     private void writeTypeLocalized(String localizedValue) {
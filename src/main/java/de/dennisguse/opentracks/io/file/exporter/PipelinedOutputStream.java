@@ -0,0 +1,167 @@
+package de.dennisguse.opentracks.io.file.exporter;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Pipelines creating an export (database reads and formatting) and writing it (e.g., via the Storage Access Framework).
+ * <p>
+ * The data is collected in chunks; full chunks are written by the given {@link Executor} while the next chunk is filled.
+ * The chunks of one stream are written in order, so one Executor can be shared by multiple streams.
+ * At most {@link #MAX_PENDING_CHUNKS} chunks are waiting to be written; afterwards, the writing thread blocks.
+ * <p>
+ * Write errors (incl. an Executor that rejects the write) are rethrown by the next call to {@link #write(byte[], int, int)}, {@link #flush()} or {@link #close()}.
+ * The chunks are always returned to the pool, so a failed write never blocks the writing thread.
+ */
+public class PipelinedOutputStream extends OutputStream {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_PENDING_CHUNKS = 4;
+
+    private final OutputStream outputStream;
+    private final Executor executor;
+
+    private final BlockingQueue<byte[]> freeChunks = new ArrayBlockingQueue<>(MAX_PENDING_CHUNKS);
+
+    private CompletableFuture<Void> lastWrite = CompletableFuture.completedFuture(null);
+    private volatile IOException writeException;
+
+    private byte[] chunk = new byte[CHUNK_SIZE];
+    private int count;
+    private boolean closed;
+
+    public PipelinedOutputStream(@NonNull OutputStream outputStream, @NonNull Executor executor) {
+        this.outputStream = outputStream;
+        this.executor = executor;
+        for (int i = 0; i < MAX_PENDING_CHUNKS; i++) {
+            freeChunks.add(new byte[CHUNK_SIZE]);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == chunk.length) {
+            submitChunk();
+        }
+        chunk[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == chunk.length) {
+                submitChunk();
+            }
+            int length = Math.min(len, chunk.length - count);
+            System.arraycopy(b, off, chunk, count, length);
+            count += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    /**
+     * Only submits the buffered data; it is written asynchronously.
+     */
+    @Override
+    public void flush() throws IOException {
+        submitChunk();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            submitChunk();
+        } finally {
+            try {
+                awaitWrites();
+            } finally {
+                outputStream.close();
+            }
+        }
+        throwIfFailed();
+    }
+
+    private void awaitWrites() throws IOException {
+        try {
+            lastWrite.get();
+        } catch (ExecutionException e) {
+            setFailed(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for pending writes.");
+        }
+    }
+
+    private void submitChunk() throws IOException {
+        throwIfFailed();
+        if (count == 0) {
+            return;
+        }
+
+        byte[] data = chunk;
+        int length = count;
+        try {
+            chunk = freeChunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a pending write.");
+        }
+        count = 0;
+
+        // Every write completes normally (also if it failed or was rejected), so the next write is not skipped and returns its chunk.
+        CompletableFuture<Void> write = new CompletableFuture<>();
+        Runnable writeChunk = () -> {
+            try {
+                if (writeException == null) {
+                    outputStream.write(data, 0, length);
+                }
+            } catch (IOException | RuntimeException e) {
+                setFailed(e);
+            } finally {
+                freeChunks.add(data);
+                write.complete(null);
+            }
+        };
+        lastWrite.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                setFailed(throwable);
+            }
+            try {
+                executor.execute(writeChunk);
+            } catch (RejectedExecutionException e) {
+                setFailed(e);
+                freeChunks.add(data);
+                write.complete(null);
+            }
+        });
+        lastWrite = write;
+    }
+
+    private void setFailed(Throwable throwable) {
+        if (writeException == null) {
+            writeException = throwable instanceof IOException ? (IOException) throwable : new IOException(throwable);
+        }
+    }
+
+    private void throwIfFailed() throws IOException {
+        IOException exception = writeException;
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
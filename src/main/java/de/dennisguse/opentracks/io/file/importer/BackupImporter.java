@@ -0,0 +1,97 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import de.dennisguse.opentracks.R;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.io.file.TrackFileFormat;
+import de.dennisguse.opentracks.io.file.exporter.BackupExporter;
+import de.dennisguse.opentracks.util.FileUtils;
+
+/**
+ * Imports a backup created by {@link BackupExporter}: each GPX, KML, KMZ and binary entry of the ZIP file is imported like a file.
+ * Entries with tracks that were already imported are skipped.
+ */
+public class BackupImporter {
+
+    private static final String TAG = BackupImporter.class.getSimpleName();
+
+    private final Context context;
+    private final Supplier<TrackImporter> trackImporterFactory;
+
+    /**
+     * @param trackImporterFactory creates a {@link TrackImporter} per entry.
+     */
+    public BackupImporter(Context context, Supplier<TrackImporter> trackImporterFactory) {
+        this.context = context;
+        this.trackImporterFactory = trackImporterFactory;
+    }
+
+    @NonNull
+    public List<Track.Id> importFile(Uri uri) throws IOException {
+        try (InputStream inputStream = context.getContentResolver().openInputStream(uri)) {
+            return importFile(inputStream);
+        }
+    }
+
+    @NonNull
+    public List<Track.Id> importFile(InputStream inputStream) throws IOException {
+        ArrayList<Track.Id> trackIds = new ArrayList<>();
+        ImportAlreadyExistsException alreadyExistsException = null;
+
+        try (ZipInputStream zipInputStream = new ZipInputStream(inputStream)) {
+            InputStream entryInputStream = new FilterInputStream(zipInputStream) {
+                @Override
+                public void close() {
+                    // The importers close their InputStreams; but that would also close our ZIP file.
+                }
+            };
+
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                if (Thread.interrupted()) {
+                    Log.d(TAG, "Thread interrupted");
+                    throw new RuntimeException(context.getString(R.string.import_thread_interrupted));
+                }
+
+                String fileExtension = FileUtils.getExtension(zipEntry.getName());
+                try {
+                    if (TrackFileFormat.GPX.getExtension().equals(fileExtension)) {
+                        trackIds.addAll(new XMLImporter(new GpxTrackImporter(context, trackImporterFactory.get())).importFile(entryInputStream));
+                    } else if (TrackFileFormat.KML_WITH_TRACKDETAIL_AND_SENSORDATA.getExtension().equals(fileExtension)) {
+                        trackIds.addAll(new XMLImporter(new KmlTrackImporter(context, trackImporterFactory.get())).importFile(entryInputStream));
+                    } else if (TrackFileFormat.KMZ_WITH_TRACKDETAIL_AND_SENSORDATA_AND_PICTURES.getExtension().equals(fileExtension)) {
+                        trackIds.addAll(new KmzTrackImporter(context, trackImporterFactory.get()).importFile(entryInputStream));
+                    } else if (TrackFileFormat.BINARY.getExtension().equals(fileExtension)) {
+                        trackIds.addAll(new BinaryTrackImporter(context, trackImporterFactory.get()).importFile(entryInputStream));
+                    } else {
+                        Log.d(TAG, "Skipping unsupported entry " + zipEntry.getName());
+                    }
+                } catch (ImportAlreadyExistsException e) {
+                    Log.d(TAG, "Track already exists: " + zipEntry.getName());
+                    alreadyExistsException = e;
+                }
+
+                zipInputStream.closeEntry();
+            }
+        }
+
+        if (trackIds.isEmpty() && alreadyExistsException != null) {
+            throw alreadyExistsException;
+        }
+        return trackIds;
+    }
+}
@@ -0,0 +1,352 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.CHANNEL_ALTITUDE;
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.CHANNEL_ALTITUDE_GAIN;
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.CHANNEL_ALTITUDE_LOSS;
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.CHANNEL_BEARING;
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.CHANNEL_CADENCE;
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.CHANNEL_HEART_RATE;
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.CHANNEL_HORIZONTAL_ACCURACY;
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.CHANNEL_POWER;
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.CHANNEL_SENSOR_DISTANCE;
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.CHANNEL_SPEED;
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.CHANNEL_VERTICAL_ACCURACY;
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.FIELD_LOCATION;
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.NUM_CHANNELS;
+import static de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter.getChannelField;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteConstraintException;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.dennisguse.opentracks.R;
+import de.dennisguse.opentracks.data.models.Altitude;
+import de.dennisguse.opentracks.data.models.Distance;
+import de.dennisguse.opentracks.data.models.Marker;
+import de.dennisguse.opentracks.data.models.Speed;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+import de.dennisguse.opentracks.io.file.exporter.BinaryTrackExporter;
+
+/**
+ * Imports files created by {@link BinaryTrackExporter}.
+ */
+public class BinaryTrackImporter {
+
+    private static final String TAG = BinaryTrackImporter.class.getSimpleName();
+
+    private static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+    private final Context context;
+    private final TrackImporter trackImporter;
+
+    private InputStream in;
+
+    // Current segment
+    private final int[] types = new int[BinaryTrackExporter.MAX_SEGMENT_SIZE];
+    private final int[] fields = new int[BinaryTrackExporter.MAX_SEGMENT_SIZE];
+    private final long[] times = new long[BinaryTrackExporter.MAX_SEGMENT_SIZE];
+    private final int[] latitudes = new int[BinaryTrackExporter.MAX_SEGMENT_SIZE];
+    private final int[] longitudes = new int[BinaryTrackExporter.MAX_SEGMENT_SIZE];
+    private final long[][] channels = new long[NUM_CHANNELS][BinaryTrackExporter.MAX_SEGMENT_SIZE];
+
+    public BinaryTrackImporter(Context context, TrackImporter trackImporter) {
+        this.context = context;
+        this.trackImporter = trackImporter;
+    }
+
+    @NonNull
+    public List<Track.Id> importFile(Uri uri) throws IOException {
+        try (InputStream inputStream = context.getContentResolver().openInputStream(uri)) {
+            return importFile(inputStream);
+        }
+    }
+
+    /**
+     * NOTE: closes the inputStream.
+     */
+    @NonNull
+    public List<Track.Id> importFile(InputStream inputStream) throws IOException {
+        try (InputStream bufferedInputStream = new BufferedInputStream(inputStream, 64 * 1024)) {
+            in = bufferedInputStream;
+            readFile();
+            return trackImporter.getTrackIds();
+        } catch (EOFException | ImportParserException e) {
+            Log.e(TAG, "Unable to import file", e);
+            trackImporter.cleanImport();
+            throw e instanceof ImportParserException importParserException ? importParserException : new ImportParserException(e);
+        } catch (SQLiteConstraintException e) {
+            Log.e(TAG, "Unable to import file", e);
+            throw new ImportAlreadyExistsException(e);
+        } catch (ImportAlreadyExistsException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Unable to import file", e);
+            trackImporter.cleanImport();
+            throw e;
+        } finally {
+            in = null;
+        }
+    }
+
+    private void readFile() throws IOException {
+        byte[] magic = new byte[BinaryTrackExporter.MAGIC.length];
+        readFully(magic);
+        if (!Arrays.equals(magic, BinaryTrackExporter.MAGIC)) {
+            throw new ImportParserException("Not a binary track file.");
+        }
+        long version = readVarint();
+        if (version != BinaryTrackExporter.VERSION) {
+            throw new ImportParserException("Unsupported version: " + version);
+        }
+
+        boolean hasTrack = false;
+        List<Marker> markers = new ArrayList<>();
+        while (true) {
+            if (Thread.interrupted()) {
+                Log.d(TAG, "Thread interrupted");
+                throw new RuntimeException(context.getString(R.string.import_thread_interrupted));
+            }
+
+            int tag = (int) readVarint();
+            switch (tag) {
+                case BinaryTrackExporter.TAG_TRACK -> {
+                    if (hasTrack) {
+                        trackImporter.addMarkers(markers);
+                        markers.clear();
+                    }
+                    trackImporter.newTrack();
+                    readTrackInfo();
+                    hasTrack = true;
+                }
+                case BinaryTrackExporter.TAG_SEGMENT -> {
+                    checkTrack(hasTrack);
+                    readSegment();
+                }
+                case BinaryTrackExporter.TAG_MARKER -> {
+                    checkTrack(hasTrack);
+                    markers.add(readMarker());
+                }
+                case BinaryTrackExporter.TAG_END -> {
+                    trackImporter.addMarkers(markers);
+                    trackImporter.finish();
+                    return;
+                }
+                default -> throw new ImportParserException("Unknown tag: " + tag);
+            }
+        }
+    }
+
+    private static void checkTrack(boolean hasTrack) {
+        if (!hasTrack) {
+            throw new ImportParserException("Data without track.");
+        }
+    }
+
+    private void readTrackInfo() throws IOException {
+        String uuid = readString();
+        String name = readString();
+        String description = readString();
+        String activityTypeLocalized = readString();
+        String activityTypeId = readString();
+        ZoneOffset zoneOffset;
+        try {
+            zoneOffset = ZoneOffset.ofTotalSeconds((int) unzigzag(readVarint()));
+        } catch (DateTimeException e) {
+            throw new ImportParserException(e);
+        }
+
+        trackImporter.setTrack(context, name, uuid, description, activityTypeLocalized, activityTypeId.isEmpty() ? null : activityTypeId, zoneOffset);
+    }
+
+    private void readSegment() throws IOException {
+        long size = readVarint();
+        if (size < 1 || size > BinaryTrackExporter.MAX_SEGMENT_SIZE) {
+            throw new ImportParserException("Invalid segment size: " + size);
+        }
+        int n = (int) size;
+
+        for (int i = 0; i < n; i++) {
+            types[i] = (int) unzigzag(readVarint());
+        }
+        for (int i = 0; i < n; i++) {
+            fields[i] = (int) readVarint();
+        }
+
+        long time = 0;
+        for (int i = 0; i < n; i++) {
+            time += unzigzag(readVarint());
+            times[i] = time;
+        }
+
+        readLocationColumn(latitudes, n);
+        readLocationColumn(longitudes, n);
+
+        for (int channel = 0; channel < NUM_CHANNELS; channel++) {
+            readChannel(channel, n);
+        }
+
+        for (int i = 0; i < n; i++) {
+            trackImporter.addTrackPoint(createTrackPoint(i));
+        }
+    }
+
+    private void readLocationColumn(int[] values, int n) throws IOException {
+        long value = 0;
+        for (int i = 0; i < n; i++) {
+            if ((fields[i] & FIELD_LOCATION) != 0) {
+                value += unzigzag(readVarint());
+                values[i] = (int) value;
+            }
+        }
+    }
+
+    private void readChannel(int channel, int n) throws IOException {
+        int field = getChannelField(channel);
+        long[] values = channels[channel];
+
+        long encoding = readVarint();
+        boolean reversed;
+        if (encoding == BinaryTrackExporter.ENCODING_XOR) {
+            reversed = false;
+        } else if (encoding == BinaryTrackExporter.ENCODING_XOR_REVERSED) {
+            reversed = true;
+        } else {
+            throw new ImportParserException("Unknown encoding: " + encoding);
+        }
+
+        long previous = 0;
+        for (int i = 0; i < n; i++) {
+            if ((fields[i] & field) != 0) {
+                long xor = readVarint();
+                values[i] = previous ^ (reversed ? Long.reverse(xor) : xor);
+                previous = values[i];
+            }
+        }
+    }
+
+    private TrackPoint createTrackPoint(int i) {
+        TrackPoint.Type type;
+        try {
+            type = TrackPoint.Type.getById(types[i]);
+        } catch (RuntimeException e) {
+            throw new ImportParserException(e);
+        }
+        TrackPoint trackPoint = new TrackPoint(type, Instant.ofEpochMilli(times[i]));
+
+        int field = fields[i];
+        if ((field & FIELD_LOCATION) != 0) {
+            trackPoint.setLatitude(toDegrees(latitudes[i]));
+            trackPoint.setLongitude(toDegrees(longitudes[i]));
+        }
+        if (hasChannel(field, CHANNEL_ALTITUDE)) trackPoint.setAltitude(Altitude.WGS84.of(getChannel(CHANNEL_ALTITUDE, i)));
+        if (hasChannel(field, CHANNEL_HORIZONTAL_ACCURACY)) trackPoint.setHorizontalAccuracy(Distance.of(getChannel(CHANNEL_HORIZONTAL_ACCURACY, i)));
+        if (hasChannel(field, CHANNEL_VERTICAL_ACCURACY)) trackPoint.setVerticalAccuracy(Distance.of(getChannel(CHANNEL_VERTICAL_ACCURACY, i)));
+        if (hasChannel(field, CHANNEL_SPEED)) trackPoint.setSpeed(Speed.of(getChannel(CHANNEL_SPEED, i)));
+        // Stored from floats: narrowing is lossless.
+        if (hasChannel(field, CHANNEL_BEARING)) trackPoint.setBearing((float) getChannel(CHANNEL_BEARING, i));
+        if (hasChannel(field, CHANNEL_HEART_RATE)) trackPoint.setHeartRate((float) getChannel(CHANNEL_HEART_RATE, i));
+        if (hasChannel(field, CHANNEL_CADENCE)) trackPoint.setCadence((float) getChannel(CHANNEL_CADENCE, i));
+        if (hasChannel(field, CHANNEL_POWER)) trackPoint.setPower((float) getChannel(CHANNEL_POWER, i));
+        if (hasChannel(field, CHANNEL_SENSOR_DISTANCE)) trackPoint.setSensorDistance(Distance.of(getChannel(CHANNEL_SENSOR_DISTANCE, i)));
+        if (hasChannel(field, CHANNEL_ALTITUDE_GAIN)) trackPoint.setAltitudeGain((float) getChannel(CHANNEL_ALTITUDE_GAIN, i));
+        if (hasChannel(field, CHANNEL_ALTITUDE_LOSS)) trackPoint.setAltitudeLoss((float) getChannel(CHANNEL_ALTITUDE_LOSS, i));
+        return trackPoint;
+    }
+
+    private static boolean hasChannel(int field, int channel) {
+        return (field & getChannelField(channel)) != 0;
+    }
+
+    private double getChannel(int channel, int i) {
+        return Double.longBitsToDouble(channels[channel][i]);
+    }
+
+    private Marker readMarker() throws IOException {
+        Marker marker = new Marker(null, Instant.ofEpochMilli(unzigzag(readVarint())));
+        marker.setName(readString());
+        marker.setDescription(readString());
+        marker.setCategory(readString());
+
+        int field = (int) readVarint();
+        if ((field & FIELD_LOCATION) == 0) {
+            throw new ImportParserException("Marker without location.");
+        }
+        marker.setLatitude(toDegrees((int) unzigzag(readVarint())));
+        marker.setLongitude(toDegrees((int) unzigzag(readVarint())));
+        if (hasChannel(field, CHANNEL_ALTITUDE)) marker.setAltitude(Altitude.WGS84.of(readDouble()));
+        if (hasChannel(field, CHANNEL_HORIZONTAL_ACCURACY)) marker.setAccuracy(Distance.of(readDouble()));
+        if (hasChannel(field, CHANNEL_BEARING)) marker.setBearing((float) readDouble());
+        return marker;
+    }
+
+    /**
+     * The database stores (int) (degrees * 1E6); e6 / 1E6 might be stored as e6 - 1.
+     */
+    private static double toDegrees(int e6) {
+        double degrees = e6 / 1E6;
+        if ((int) (degrees * 1E6) != e6) {
+            degrees = Math.nextAfter(degrees, e6 > 0 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY);
+        }
+        return degrees;
+    }
+
+    private double readDouble() throws IOException {
+        return Double.longBitsToDouble(Long.reverse(readVarint()));
+    }
+
+    private String readString() throws IOException {
+        long length = readVarint();
+        if (length > MAX_STRING_LENGTH) {
+            throw new ImportParserException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void readFully(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            int read = in.read(bytes, offset, bytes.length - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new ImportParserException("Invalid varint.");
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
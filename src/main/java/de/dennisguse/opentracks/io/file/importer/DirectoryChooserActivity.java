@@ -114,6 +114,14 @@ public abstract class DirectoryChooserActivity extends AppCompatActivity {
         }
     }
 
+    public static class ExportDirectoryChooserBackupActivity extends BaseExportDirectoryChooser {
+        @Override
+        protected Intent customizeIntent(Intent intent) {
+            intent.putExtra(ExportActivity.EXTRA_BACKUP_KEY, true);
+            return intent;
+        }
+    }
+
     public static class ImportDirectoryChooserActivity extends DirectoryChooserActivity {
 
         @Override
@@ -25,10 +25,13 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import de.dennisguse.opentracks.data.models.Altitude;
 import de.dennisguse.opentracks.data.models.Distance;
@@ -84,6 +87,53 @@ public class GpxTrackImporter extends DefaultHandler implements XMLImporter.Trac
     private static final String TAG_EXTENSION_DISTANCE = "opentracks:distance";
     private static final String TAG_EXTENSION_ACCURACY_HORIZONTAL = "opentracks:accuracy_horizontal";
     private static final String TAG_EXTENSION_ACCURACY_VERTICAL = "opentracks:accuracy_vertical";
+
+    /**
+     * The supported elements: the tag is resolved once in startElement() and kept on a stack for endElement().
+     */
+    private enum Element {
+        GPX(false, TAG_GPX),
+        MARKER(false, TAG_MARKER),
+        TRACK(false, TAG_TRACK),
+        TRACK_SEGMENT(false, TAG_TRACK_SEGMENT),
+        TRACK_POINT(false, TAG_TRACK_POINT),
+        NAME(true, TAG_NAME),
+        DESCRIPTION(true, TAG_DESCRIPTION),
+        TYPE(true, TAG_TYPE),
+        TYPE_LOCALIZED(true, TAG_TYPE_LOCALIZED),
+        TIME(true, TAG_TIME),
+        ALTITUDE(true, TAG_ALTITUDE),
+        SPEED(true, TAG_EXTENSION_SPEED, TAG_EXTENSION_SPEED_COMPAT),
+        HEARTRATE(true, TAG_EXTENSION_HEARTRATE),
+        CADENCE(true, TAG_EXTENSION_CADENCE),
+        POWER(true, TAG_EXTENSION_POWER),
+        ID(true, TAG_ID),
+        GAIN(true, TAG_EXTENSION_GAIN),
+        LOSS(true, TAG_EXTENSION_LOSS),
+        DISTANCE(true, TAG_EXTENSION_DISTANCE),
+        ACCURACY_HORIZONTAL(true, TAG_EXTENSION_ACCURACY_HORIZONTAL),
+        ACCURACY_VERTICAL(true, TAG_EXTENSION_ACCURACY_VERTICAL),
+        OTHER(false);
+
+        private final boolean hasText;
+        private final String[] tags;
+
+        Element(boolean hasText, String... tags) {
+            this.hasText = hasText;
+            this.tags = tags;
+        }
+    }
+
+    private static final Map<String, Element> ELEMENTS = new HashMap<>();
+
+    static {
+        for (Element element : Element.values()) {
+            for (String tag : element.tags) {
+                ELEMENTS.put(tag, element);
+            }
+        }
+    }
+
     private Locator locator;
 
     private final Context context;
@@ -93,8 +143,9 @@ public class GpxTrackImporter extends DefaultHandler implements XMLImporter.Trac
     // Belongs to the current track
     private final ArrayList<Marker> markers = new ArrayList<>();
 
-    // The current element content
-    private String content = "";
+    // The open elements and the current element content
+    private final Deque<Element> elements = new ArrayDeque<>();
+    private final XMLTextCollector text = new XMLTextCollector();
 
     private String name;
     private String description;
@@ -117,7 +168,8 @@ public class GpxTrackImporter extends DefaultHandler implements XMLImporter.Trac
     private String accuracyHorizontal;
     private String accuracyVertical;
 
-    private final LinkedList<TrackPoint> currentSegment = new LinkedList<>();
+    // TrackPoints are passed to the TrackImporter as soon as they are parsed.
+    private int currentSegmentSize;
 
     private final TrackImporter trackImporter;
 
@@ -133,33 +185,35 @@ public class GpxTrackImporter extends DefaultHandler implements XMLImporter.Trac
 
     @Override
     public void startElement(String uri, String localName, String tag, Attributes attributes) {
-        switch (tag) {
-            case TAG_MARKER:
-                onMarkerStart(attributes);
-                break;
-            case TAG_TRACK:
-                trackImporter.newTrack();
-                break;
-            case TAG_TRACK_SEGMENT:
-                //Nothing to do here.
-                break;
-            case TAG_TRACK_POINT:
-                onTrackPointStart(attributes);
-                break;
+        Element element = ELEMENTS.getOrDefault(tag, Element.OTHER);
+        elements.push(element);
+        if (element.hasText) {
+            text.start();
+        } else {
+            text.stop();
+        }
+
+        switch (element) {
+            case MARKER -> onMarkerStart(attributes);
+            case TRACK -> trackImporter.newTrack();
+            case TRACK_SEGMENT -> currentSegmentSize = 0;
+            case TRACK_POINT -> onTrackPointStart(attributes);
+            default -> {
+            }
         }
     }
 
     @Override
     public void characters(char[] ch, int start, int length) {
-        content += new String(ch, start, length);
+        text.append(ch, start, length);
     }
 
     @Override
     public void endElement(String uri, String localName, String tag) {
-        switch (tag) {
-            case TAG_GPX -> onFileEnd();
-            case TAG_MARKER -> onMarkerEnd();
-            case TAG_TRACK -> {
+        switch (elements.pop()) {
+            case GPX -> onFileEnd();
+            case MARKER -> onMarkerEnd();
+            case TRACK -> {
                 if (activityTypeLocalized == null ) {
                     // Backward compatibility: up v4.9.1 as <type> contained localized content.
                     activityTypeLocalized = activityType;
@@ -167,106 +221,49 @@ public class GpxTrackImporter extends DefaultHandler implements XMLImporter.Trac
                 trackImporter.setTrack(context, name, uuid, description, activityTypeLocalized, activityType, zoneOffset);
                 zoneOffset = null;
             }
-            case TAG_TRACK_SEGMENT -> onTrackSegmentEnd();
-            case TAG_TRACK_POINT -> currentSegment.add(createTrackPoint());
-            case TAG_NAME -> {
-                if (content != null) {
-                    name = content.trim();
-                }
-            }
-            case TAG_DESCRIPTION -> {
-                if (content != null) {
-                    description = content.trim();
-                }
-            }
-            case TAG_TYPE -> { //Track or Marker/WPT
-                if (content != null) {
-                    // In older  version this might be localized content.
-                    activityType = content.trim();
-                    markerType = content.trim();
-                }
-            }
-            case TAG_TYPE_LOCALIZED -> {
-                if (content != null) {
-                    activityTypeLocalized = content.trim();
-                }
-            }
-            case TAG_TIME -> {
-                if (content != null) {
-                    time = content.trim();
-                }
-            }
-            case TAG_ALTITUDE -> {
-                if (content != null) {
-                    altitude = content.trim();
-                }
-            }
-            case TAG_EXTENSION_SPEED, TAG_EXTENSION_SPEED_COMPAT -> {
-                if (content != null) {
-                    speed = content.trim();
-                }
-            }
-            case TAG_EXTENSION_HEARTRATE -> {
-                if (content != null) {
-                    heartrate = content.trim();
-                }
-            }
-            case TAG_EXTENSION_CADENCE -> {
-                if (content != null) {
-                    cadence = content.trim();
-                }
-            }
-            case TAG_EXTENSION_POWER -> {
-                if (content != null) {
-                    power = content.trim();
-                }
-            }
-            case TAG_ID -> {
-                if (content != null) {
-                    uuid = content.trim();
-                }
-            }
-            case TAG_EXTENSION_GAIN -> {
-                if (content != null) {
-                    gain = content.trim();
-                }
-            }
-            case TAG_EXTENSION_LOSS -> {
-                if (content != null) {
-                    loss = content.trim();
-                }
-            }
-            case TAG_EXTENSION_DISTANCE -> {
-                if (content != null) {
-                    sensorDistance = content.trim();
-                }
-            }
-            case TAG_EXTENSION_ACCURACY_HORIZONTAL -> {
-                if (content != null) {
-                    accuracyHorizontal = content.trim();
-                }
+            case TRACK_SEGMENT -> onTrackSegmentEnd();
+            case TRACK_POINT -> onTrackPointEnd();
+            case NAME -> name = text.getTrimmed();
+            case DESCRIPTION -> description = text.getTrimmed();
+            case TYPE -> { //Track or Marker/WPT
+                // In older  version this might be localized content.
+                activityType = text.getTrimmed();
+                markerType = activityType;
             }
-            case TAG_EXTENSION_ACCURACY_VERTICAL -> {
-                if (content != null) {
-                    accuracyVertical = content.trim();
-                }
+            case TYPE_LOCALIZED -> activityTypeLocalized = text.getTrimmed();
+            case TIME -> time = text.getTrimmed();
+            case ALTITUDE -> altitude = text.getTrimmed();
+            case SPEED -> speed = text.getTrimmed();
+            case HEARTRATE -> heartrate = text.getTrimmed();
+            case CADENCE -> cadence = text.getTrimmed();
+            case POWER -> power = text.getTrimmed();
+            case ID -> uuid = text.getTrimmed();
+            case GAIN -> gain = text.getTrimmed();
+            case LOSS -> loss = text.getTrimmed();
+            case DISTANCE -> sensorDistance = text.getTrimmed();
+            case ACCURACY_HORIZONTAL -> accuracyHorizontal = text.getTrimmed();
+            case ACCURACY_VERTICAL -> accuracyVertical = text.getTrimmed();
+            case OTHER -> {
             }
         }
 
-        content = "";
+        text.stop();
     }
 
     private void onTrackSegmentEnd() {
-        if (currentSegment.isEmpty()) {
+        if (currentSegmentSize == 0) {
             Log.w(TAG, "No TrackPoints in current segment.");
-            return;
         }
+    }
 
-        TrackPoint first = currentSegment.getFirst();
-        first.setType(TrackPoint.Type.SEGMENT_START_AUTOMATIC);
+    private void onTrackPointEnd() {
+        TrackPoint trackPoint = createTrackPoint();
+        if (currentSegmentSize == 0) {
+            trackPoint.setType(TrackPoint.Type.SEGMENT_START_AUTOMATIC);
+        }
+        currentSegmentSize++;
 
-        trackImporter.addTrackPoints(currentSegment);
-        currentSegment.clear();
+        trackImporter.addTrackPoint(trackPoint);
     }
 
 
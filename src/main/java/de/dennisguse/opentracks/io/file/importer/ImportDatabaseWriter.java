@@ -0,0 +1,51 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serializes the database writes of concurrent imports: all writes are executed (in submission order) by one thread.
+ * Thus, files can be parsed in parallel while SQLite only sees a single writer.
+ * <p>
+ * The calling thread blocks until its write was executed; exceptions of the write are rethrown to the calling thread.
+ */
+class ImportDatabaseWriter implements AutoCloseable {
+
+    private static final String TAG = ImportDatabaseWriter.class.getSimpleName();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    <T> T writeAndGet(@NonNull Callable<T> write) {
+        try {
+            return executor.submit(write).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for database write", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    void write(@NonNull Runnable write) {
+        writeAndGet(() -> {
+            write.run();
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
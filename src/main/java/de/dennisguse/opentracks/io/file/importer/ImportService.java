@@ -9,55 +9,166 @@ import android.os.ResultReceiver;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import androidx.core.app.JobIntentService;
 import androidx.documentfile.provider.DocumentFile;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import de.dennisguse.opentracks.R;
 import de.dennisguse.opentracks.data.ContentProviderUtils;
 import de.dennisguse.opentracks.data.models.Distance;
 import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.io.file.TrackFileFormat;
+import de.dennisguse.opentracks.io.file.exporter.BackupExporter;
 import de.dennisguse.opentracks.settings.PreferencesUtils;
 import de.dennisguse.opentracks.util.FileUtils;
 
+/**
+ * Imports files: multiple files are parsed concurrently, while their database writes are serialized by one {@link ImportDatabaseWriter}.
+ * The result of each file is sent individually.
+ * <p>
+ * The files are enqueued as work items of {@link #FILES_PER_WORK} files each.
+ * If the job is stopped (JobScheduler limits its execution time), the files that were not started are imported when the job is resumed.
+ */
 public class ImportService extends JobIntentService {
 
     private static final String TAG = ImportService.class.getSimpleName();
 
     private static final int JOB_ID = 2;
 
+    @VisibleForTesting
+    static final int FILES_PER_WORK = 8;
+
     private static final String EXTRA_RECEIVER = "extra_receiver";
-    private static final String EXTRA_URI = "extra_uri";
+    private static final String EXTRA_URIS = "extra_uris";
+    private static final String EXTRA_IMPORT_ID = "extra_import_id";
+    private static final String EXTRA_NUM_FILES = "extra_num_files";
+
+    // Imports by id (see enqueue()) that have files without result.
+    private static final Map<String, Import> imports = new ConcurrentHashMap<>();
 
     private ResultReceiver resultReceiver;
 
-    public static void enqueue(Context context, ImportServiceResultReceiver receiver, Uri uri) {
-        Intent intent = new Intent(context, JobService.class);
-        intent.putExtra(EXTRA_RECEIVER, receiver);
-        intent.putExtra(EXTRA_URI, uri);
-        enqueueWork(context, ImportService.class, JOB_ID, intent);
+    private volatile boolean stopped;
+
+    private static class Import {
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        private final Set<Uri> done = ConcurrentHashMap.newKeySet();
+        private final int numFiles;
+
+        private Import(int numFiles) {
+            this.numFiles = numFiles;
+        }
+    }
+
+    /**
+     * @return the id of the import (to cancel it).
+     */
+    public static String enqueue(Context context, ImportServiceResultReceiver receiver, ArrayList<Uri> uris) {
+        String importId = UUID.randomUUID().toString();
+        imports.put(importId, new Import(uris.size()));
+        for (int i = 0; i < uris.size(); i += FILES_PER_WORK) {
+            Intent intent = new Intent(context, JobService.class);
+            intent.putExtra(EXTRA_RECEIVER, receiver);
+            intent.putExtra(EXTRA_IMPORT_ID, importId);
+            intent.putExtra(EXTRA_NUM_FILES, uris.size());
+            intent.putParcelableArrayListExtra(EXTRA_URIS, new ArrayList<>(uris.subList(i, Math.min(i + FILES_PER_WORK, uris.size()))));
+            enqueueWork(context, ImportService.class, JOB_ID, intent);
+        }
+        return importId;
+    }
+
+    /**
+     * Files of the import that were not started yet are not imported anymore (they are reported as skipped).
+     */
+    public static void cancel(@NonNull String importId) {
+        Import anImport = imports.get(importId);
+        if (anImport != null) {
+            anImport.cancelled.set(true);
+        }
     }
 
     @Override
     protected void onHandleWork(@NonNull Intent intent) {
+        stopped = false;
         resultReceiver = intent.getParcelableExtra(EXTRA_RECEIVER);
-        Uri uri = intent.getParcelableExtra(EXTRA_URI);
-        importFile(DocumentFile.fromSingleUri(this, uri));
+        String importId = intent.getStringExtra(EXTRA_IMPORT_ID);
+        // If the process was restarted, the state of the import is lost.
+        Import anImport = imports.computeIfAbsent(importId, id -> new Import(intent.getIntExtra(EXTRA_NUM_FILES, 0)));
+
+        // A work item is delivered again if the job was stopped; its files that have a result are skipped.
+        List<DocumentFile> files = intent.<Uri>getParcelableArrayListExtra(EXTRA_URIS).stream()
+                .filter(uri -> !anImport.done.contains(uri))
+                .map(uri -> DocumentFile.fromSingleUri(this, uri))
+                .collect(Collectors.toList());
+        if (files.isEmpty()) {
+            return;
+        }
+
+        int numWorkers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), files.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers, runnable -> {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (ImportDatabaseWriter databaseWriter = new ImportDatabaseWriter()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (DocumentFile file : files) {
+                futures.add(executor.submit(() -> {
+                    if (anImport.cancelled.get()) {
+                        sendResult(anImport, ImportServiceResultReceiver.RESULT_CODE_ERROR, null, file, getString(R.string.import_skipped));
+                    } else if (!stopped) {
+                        importFile(anImport, file, databaseWriter);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Unable to import file", e.getCause());
+                    sendResult(anImport, ImportServiceResultReceiver.RESULT_CODE_ERROR, null, files.get(i), getString(R.string.import_unable_to_import_file, e.getCause().getMessage()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted while importing files.");
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-    private void importFile(DocumentFile file) {
+    /**
+     * The files that were not started are imported when the job is resumed.
+     */
+    @Override
+    public boolean onStopCurrentWork() {
+        stopped = true;
+        return true;
+    }
+
+    private void importFile(Import anImport, DocumentFile file, ImportDatabaseWriter databaseWriter) {
         ArrayList<Track.Id> trackIds = new ArrayList<>();
 
         String fileExtension = FileUtils.getExtension(file);
         try {
             Distance maxRecordingDistance = PreferencesUtils.getMaxRecordingDistance();
-            Distance recordingDistanceInterval = PreferencesUtils.getRecordingDistanceInterval();
             boolean preventReimport = PreferencesUtils.getPreventReimportTracks();
 
-            TrackImporter trackImporter = new TrackImporter(this, new ContentProviderUtils(this), maxRecordingDistance, preventReimport);
+            TrackImporter trackImporter = new TrackImporter(this, new ContentProviderUtils(this), maxRecordingDistance, preventReimport, databaseWriter);
 
             if (TrackFileFormat.GPX.getExtension().equals(fileExtension)) {
                 trackIds.addAll(new XMLImporter(new GpxTrackImporter(this, trackImporter)).importFile(this, file.getUri()));
@@ -65,34 +176,43 @@ public class ImportService extends JobIntentService {
                 trackIds.addAll(new XMLImporter(new KmlTrackImporter(this, trackImporter)).importFile(this, file.getUri()));
             } else if (TrackFileFormat.KMZ_WITH_TRACKDETAIL_AND_SENSORDATA_AND_PICTURES.getExtension().equals(fileExtension)) {
                 trackIds.addAll(new KmzTrackImporter(this, trackImporter).importFile(file.getUri()));
+            } else if (TrackFileFormat.BINARY.getExtension().equals(fileExtension)) {
+                trackIds.addAll(new BinaryTrackImporter(this, trackImporter).importFile(file.getUri()));
+            } else if (BackupExporter.FILE_EXTENSION.equals(fileExtension)) {
+                trackIds.addAll(new BackupImporter(this, () -> new TrackImporter(this, new ContentProviderUtils(this), maxRecordingDistance, preventReimport, databaseWriter)).importFile(file.getUri()));
             } else {
                 Log.d(TAG, "Unsupported file format.");
-                sendResult(ImportServiceResultReceiver.RESULT_CODE_ERROR, null, file, getString(R.string.import_unsupported_format));
+                sendResult(anImport, ImportServiceResultReceiver.RESULT_CODE_ERROR, null, file, getString(R.string.import_unsupported_format));
                 return;
             }
 
             if (!trackIds.isEmpty()) {
-                sendResult(ImportServiceResultReceiver.RESULT_CODE_IMPORTED, trackIds, file, getString(R.string.import_file_imported, file.getName()));
+                sendResult(anImport, ImportServiceResultReceiver.RESULT_CODE_IMPORTED, trackIds, file, getString(R.string.import_file_imported, file.getName()));
             } else {
-                sendResult(ImportServiceResultReceiver.RESULT_CODE_ERROR, trackIds, file, getString(R.string.import_unable_to_import_file, file.getName()));
+                sendResult(anImport, ImportServiceResultReceiver.RESULT_CODE_ERROR, trackIds, file, getString(R.string.import_unable_to_import_file, file.getName()));
             }
         } catch (IOException e) {
             Log.d(TAG, "Unable to import file", e);
-            sendResult(ImportServiceResultReceiver.RESULT_CODE_ERROR, null, file, getString(R.string.import_unable_to_import_file, e.getMessage()));
+            sendResult(anImport, ImportServiceResultReceiver.RESULT_CODE_ERROR, null, file, getString(R.string.import_unable_to_import_file, e.getMessage()));
         } catch (ImportParserException e) {
             Log.d(TAG, "Parser error: " + e.getMessage(), e);
-            sendResult(ImportServiceResultReceiver.RESULT_CODE_ERROR, null, file, getString(R.string.import_parser_error, e.getMessage()));
+            sendResult(anImport, ImportServiceResultReceiver.RESULT_CODE_ERROR, null, file, getString(R.string.import_parser_error, e.getMessage()));
         } catch (ImportAlreadyExistsException e) {
             Log.d(TAG, "Track already exists: " + e.getMessage(), e);
-            sendResult(ImportServiceResultReceiver.RESULT_CODE_ALREADY_EXISTS, null, file, e.getMessage());
+            sendResult(anImport, ImportServiceResultReceiver.RESULT_CODE_ALREADY_EXISTS, null, file, e.getMessage());
         }
     }
 
-    private void sendResult(int resultCode, ArrayList<Track.Id> trackId, DocumentFile file, String message) {
+    private void sendResult(Import anImport, int resultCode, ArrayList<Track.Id> trackId, DocumentFile file, String message) {
         Bundle bundle = new Bundle();
         bundle.putParcelableArrayList(ImportServiceResultReceiver.RESULT_EXTRA_LIST_TRACK_ID, trackId);
         bundle.putString(ImportServiceResultReceiver.RESULT_EXTRA_FILENAME, file.getName());
         bundle.putString(ImportServiceResultReceiver.RESULT_EXTRA_MESSAGE, message);
         resultReceiver.send(resultCode, bundle);
+
+        anImport.done.add(file.getUri());
+        if (anImport.done.size() >= anImport.numFiles) {
+            imports.values().remove(anImport);
+        }
     }
 }
@@ -1,6 +1,7 @@
 package de.dennisguse.opentracks.io.file.importer;
 
 import android.app.Application;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 
@@ -25,8 +26,7 @@ public class ImportViewModel extends AndroidViewModel implements ImportServiceRe
     private MutableLiveData<Summary> importData;
     private final ImportServiceResultReceiver resultReceiver;
     private final Summary summary;
-    private boolean cancel = false;
-    private final List<DocumentFile> filesToImport = new ArrayList<>();
+    private String importId;
 
     public ImportViewModel(@NonNull Application application) {
         super(application);
@@ -43,7 +43,9 @@ public class ImportViewModel extends AndroidViewModel implements ImportServiceRe
     }
 
     void cancel() {
-        cancel = true;
+        if (importId != null) {
+            ImportService.cancel(importId);
+        }
     }
 
     private void loadData(List<DocumentFile> documentFiles) {
@@ -55,16 +57,14 @@ public class ImportViewModel extends AndroidViewModel implements ImportServiceRe
         nestedFileList.forEach(fileList::addAll);
 
         summary.totalCount = fileList.size();
-        filesToImport.addAll(fileList);
-        importNextFile();
-    }
-
-    private void importNextFile() {
-        if (cancel || filesToImport.isEmpty()) {
+        if (fileList.isEmpty()) {
             return;
         }
-        ImportService.enqueue(getApplication(), resultReceiver, filesToImport.get(0).getUri());
-        filesToImport.remove(0);
+
+        ArrayList<Uri> uris = fileList.stream()
+                .map(DocumentFile::getUri)
+                .collect(Collectors.toCollection(ArrayList::new));
+        importId = ImportService.enqueue(getApplication(), resultReceiver, uris);
     }
 
     @Override
@@ -92,7 +92,6 @@ public class ImportViewModel extends AndroidViewModel implements ImportServiceRe
         }
 
         importData.postValue(summary);
-        importNextFile();
     }
 
     static class Summary {
@@ -28,9 +28,13 @@ import org.xml.sax.helpers.DefaultHandler;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import de.dennisguse.opentracks.data.models.Distance;
 import de.dennisguse.opentracks.data.models.Marker;
@@ -85,6 +89,45 @@ public class KmlTrackImporter extends DefaultHandler implements XMLImporter.Trac
     // Until v4.13.0, was in contradiction with KML2.3 standard; keeping backward compatibility.
     public static final String EXTENDED_DATA_TYPE_HEART_RATE_LEGACY = "heart_rate";
 
+    /**
+     * The supported elements: the tag is resolved once in startElement() and kept on a stack for endElement().
+     */
+    private enum Element {
+        KML(false, TAG_KML),
+        PLACEMARK(false, TAG_PLACEMARK, TAG_PHOTO_OVERLAY),
+        COORDINATES(true, TAG_COORDINATES),
+        MULTI_TRACK(false, TAG_MULTI_TRACK, TAG_KML22_MULTI_TRACK),
+        TRACK(false, TAG_TRACK, TAG_KML22_TRACK),
+        COORD(true, TAG_COORD, TAG_KML22_COORD),
+        DATA(false, TAG_EXTENDED_DATA, TAG_SIMPLE_ARRAY_DATA, TAG_KML22_SIMPLE_ARRAY_DATA),
+        VALUE(true, TAG_VALUE, TAG_KML22_VALUE),
+        NAME(true, TAG_NAME),
+        UUID(true, TAG_UUID),
+        DESCRIPTION(true, TAG_DESCRIPTION),
+        WHEN(true, TAG_WHEN),
+        STYLE_URL(true, TAG_STYLE_URL),
+        HREF(true, TAG_HREF),
+        OTHER(false);
+
+        private final boolean hasText;
+        private final String[] tags;
+
+        Element(boolean hasText, String... tags) {
+            this.hasText = hasText;
+            this.tags = tags;
+        }
+    }
+
+    private static final Map<String, Element> ELEMENTS = new HashMap<>();
+
+    static {
+        for (Element element : Element.values()) {
+            for (String tag : element.tags) {
+                ELEMENTS.put(tag, element);
+            }
+        }
+    }
+
     private Locator locator;
 
     private final Context context;
@@ -110,8 +153,9 @@ public class KmlTrackImporter extends DefaultHandler implements XMLImporter.Trac
 
     private final ArrayList<Marker> markers = new ArrayList<>();
 
-    // The current element content
-    private String content = "";
+    // The open elements and the current element content
+    private final Deque<Element> elements = new ArrayDeque<>();
+    private final XMLTextCollector text = new XMLTextCollector();
 
     private String name;
     private String description;
@@ -138,98 +182,80 @@ public class KmlTrackImporter extends DefaultHandler implements XMLImporter.Trac
 
     @Override
     public void startElement(String uri, String localName, String tag, Attributes attributes) throws SAXException {
-        switch (tag) {
-            case TAG_PLACEMARK, TAG_PHOTO_OVERLAY ->
+        Element element = ELEMENTS.getOrDefault(tag, Element.OTHER);
+        elements.push(element);
+        if (element.hasText) {
+            text.start();
+        } else {
+            text.stop();
+        }
+
+        switch (element) {
+            case PLACEMARK ->
                 // Note that a track is contained in a Placemark, calling onMarkerStart will clear various track variables like name, category, and description.
                     onMarkerStart();
-            case TAG_MULTI_TRACK, TAG_KML22_MULTI_TRACK -> trackImporter.newTrack();
-            case TAG_TRACK, TAG_KML22_TRACK -> {
+            case MULTI_TRACK -> trackImporter.newTrack();
+            case TRACK -> {
                 if (trackImporter == null) {
                     throw new SAXException("Missing " + TAG_MULTI_TRACK);
                 }
                 onTrackSegmentStart();
             }
-            case TAG_EXTENDED_DATA, TAG_SIMPLE_ARRAY_DATA, TAG_KML22_SIMPLE_ARRAY_DATA ->
-                    dataType = attributes.getValue(ATTRIBUTE_NAME);
+            case DATA -> dataType = attributes.getValue(ATTRIBUTE_NAME);
+            default -> {
+            }
         }
     }
 
     @Override
     public void characters(char[] ch, int start, int length) {
-        content += new String(ch, start, length);
+        text.append(ch, start, length);
     }
 
     @Override
     public void endElement(String uri, String localName, String tag) throws SAXException {
-        switch (tag) {
-            case TAG_KML -> onFileEnd();
-            case TAG_PLACEMARK, TAG_PHOTO_OVERLAY ->
+        switch (elements.pop()) {
+            case KML -> onFileEnd();
+            case PLACEMARK ->
                 // Note that a track is contained in a Placemark, calling onMarkerEnd is save since markerType is not set for a track.
                     onMarkerEnd();
-            case TAG_COORDINATES -> onMarkerLocationEnd();
-            case TAG_MULTI_TRACK, TAG_KML22_MULTI_TRACK -> {
+            case COORDINATES -> onMarkerLocationEnd();
+            case MULTI_TRACK -> {
                 trackImporter.setTrack(context, name, uuid, description, activityTypeLocalized, activityType, zoneOffset);
                 zoneOffset = null;
             }
-            case TAG_TRACK, TAG_KML22_TRACK -> onTrackSegmentEnd();
-            case TAG_COORD, TAG_KML22_COORD -> onCoordEnded();
-            case TAG_VALUE, TAG_KML22_VALUE -> {
+            case TRACK -> onTrackSegmentEnd();
+            case COORD -> onCoordEnded();
+            case VALUE -> {
                 switch (dataType) {
-                    case KMLTrackExporter.EXTENDED_DATA_ACTIVITY_TYPE -> {
-                        if (content != null) {
-                            activityType = content.trim();
-                        }
-                    }
-                    case KMLTrackExporter.EXTENDED_DATA_TYPE_LOCALIZED -> {
-                        if (content != null) {
-                            activityTypeLocalized = content.trim();
-                        }
-                    }
+                    case KMLTrackExporter.EXTENDED_DATA_ACTIVITY_TYPE -> activityType = text.getTrimmed();
+                    case KMLTrackExporter.EXTENDED_DATA_TYPE_LOCALIZED -> activityTypeLocalized = text.getTrimmed();
                     default -> onExtendedDataValueEnd();
                 }
             }
-            case TAG_NAME -> {
-                if (content != null) {
-                    name = content.trim();
-                }
-            }
-            case TAG_UUID -> {
-                if (content != null) {
-                    uuid = content.trim();
-                }
-            }
-            case TAG_DESCRIPTION -> {
-                if (content != null) {
-                    description = content.trim();
-                }
-            }
-            case TAG_WHEN -> {
-                if (content != null) {
-                    try {
-                        OffsetDateTime time = StringUtils.parseTime(content.trim());
-                        if (zoneOffset == null) {
-                            zoneOffset = time.getOffset();
-                        }
-                        whenList.add(time.toInstant());
-                    } catch (Exception e) {
-                        throw new ParsingException(createErrorMessage(String.format(Locale.US, "Unable to parse time: %s", content.trim())), e);
+            case NAME -> name = text.getTrimmed();
+            case UUID -> uuid = text.getTrimmed();
+            case DESCRIPTION -> description = text.getTrimmed();
+            case WHEN -> {
+                String when = text.getTrimmed();
+                try {
+                    OffsetDateTime time = StringUtils.parseTime(when);
+                    if (zoneOffset == null) {
+                        zoneOffset = time.getOffset();
                     }
+                    whenList.add(time.toInstant());
+                } catch (Exception e) {
+                    throw new ParsingException(createErrorMessage(String.format(Locale.US, "Unable to parse time: %s", when)), e);
                 }
             }
-            case TAG_STYLE_URL -> {
-                if (content != null) {
-                    markerType = content.trim();
-                }
-            }
-            case TAG_HREF -> {
-                if (content != null) {
-                    photoUrl = content.trim();
-                }
+            case STYLE_URL -> markerType = text.getTrimmed();
+            case HREF -> photoUrl = text.getTrimmed();
+            case DATA, OTHER -> {
             }
         }
 
         // Reset element content
-        content = "";
+        text.stop();
     }
 
     private void onMarkerStart() {
@@ -275,15 +301,13 @@ public class KmlTrackImporter extends DefaultHandler implements XMLImporter.Trac
     }
 
     private void onMarkerLocationEnd() {
-        if (content != null) {
-            String[] parts = content.trim().split(",");
-            if (parts.length != 2 && parts.length != 3) {
-                return;
-            }
-            longitude = parts[0];
-            latitude = parts[1];
-            altitude = parts.length == 3 ? parts[2] : null;
+        String[] parts = text.getTrimmed().split(",");
+        if (parts.length != 2 && parts.length != 3) {
+            return;
         }
+        longitude = parts[0];
+        latitude = parts[1];
+        altitude = parts.length == 3 ? parts[2] : null;
     }
 
     private void onTrackSegmentStart() {
@@ -371,7 +395,7 @@ public class KmlTrackImporter extends DefaultHandler implements XMLImporter.Trac
     }
 
     private void onCoordEnded() {
-        String[] parts = content.trim().split(" ");
+        String[] parts = text.getTrimmed().split(" ");
         if (parts.length == 2 || parts.length == 3) {
             longitude = parts[0];
             latitude = parts[1];
@@ -409,19 +433,17 @@ public class KmlTrackImporter extends DefaultHandler implements XMLImporter.Trac
     }
 
     private void onExtendedDataValueEnd() throws SAXException {
+        String content = text.getTrimmed();
         if (dataType.equals(KMLTrackExporter.EXTENDED_DATA_TYPE_TRACKPOINT)) {
-            trackpointTypeList.add(content != null ? content.trim() : null);
+            trackpointTypeList.add(content);
             return;
         }
         Float value = null;
-        if (content != null) {
-            content = content.trim();
-            if (!content.isEmpty()) {
-                try {
-                    value = Float.parseFloat(content);
-                } catch (NumberFormatException e) {
-                    throw new SAXException(createErrorMessage("Unable to parse value:" + content), e);
-                }
+        if (!content.isEmpty()) {
+            try {
+                value = Float.parseFloat(content);
+            } catch (NumberFormatException e) {
+                throw new SAXException(createErrorMessage("Unable to parse value:" + content), e);
             }
         }
         switch (dataType) {
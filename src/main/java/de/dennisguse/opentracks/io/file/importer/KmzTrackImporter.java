@@ -28,8 +28,13 @@ import java.io.FileOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -41,6 +46,9 @@ import de.dennisguse.opentracks.util.FileUtils;
 
 /**
  * Imports a KMZ file.
+ * <p>
+ * The archive is read once: image entries are spooled to a staging directory while the KML entry is parsed.
+ * As the tracks' ids are only known after parsing, the images referenced by the markers are moved to the tracks' photo directories afterwards; the remaining images are deleted.
  *
  * @author Jimmy Shih
  */
@@ -62,47 +70,66 @@ public class KmzTrackImporter {
 
     @NonNull
     public List<Track.Id> importFile(Uri fileUri) throws IOException {
-        List<Track.Id> trackIds = findAndParseKmlFile(fileUri);
-
-        List<Track.Id> trackIdsWithImages = new ArrayList<>();
+        try (InputStream inputStream = context.getContentResolver().openInputStream(fileUri)) {
+            return importFile(inputStream);
+        }
+    }
 
-        for (Track.Id trackId : trackIds) {
-            if (copyKmzImages(fileUri, trackId)) {
-                trackIdsWithImages.add(trackId);
-                deleteOrphanImages(trackId);
-            } else {
-                return new ArrayList<>();
+    /**
+     * NOTE: closes the inputStream.
+     */
+    @NonNull
+    public List<Track.Id> importFile(InputStream inputStream) throws IOException {
+        // On the same file system as the tracks' photo directories, so images can be moved.
+        File stagingDir = new File(FileUtils.getPhotoDir(context), ".import-" + UUID.randomUUID());
+        try {
+            List<Track.Id> trackIds = readKmz(inputStream, stagingDir);
+            Map<String, File> movedImages = new HashMap<>();
+            for (Track.Id trackId : trackIds) {
+                moveMarkerImages(trackId, stagingDir, movedImages);
             }
+            return trackIds;
+        } finally {
+            deleteStagingDir(stagingDir);
         }
-
-        return trackIdsWithImages;
     }
 
     /**
-     * Copies all images that are inside KMZ to OpenTracks external storage.
-     *
-     * @return false if there are errors or true otherwise.
+     * Parses the KML entry and spools all images to stagingDir.
      */
-    private boolean copyKmzImages(Uri uri, Track.Id trackId) throws IOException {
-        try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-             ZipInputStream zipInputStream = new ZipInputStream(inputStream)) {
+    private List<Track.Id> readKmz(InputStream inputStream, File stagingDir) throws IOException {
+        try (ZipInputStream zipInputStream = new ZipInputStream(inputStream)) {
             ZipEntry zipEntry;
+            ArrayList<Track.Id> trackIds = new ArrayList<>();
 
             while ((zipEntry = zipInputStream.getNextEntry()) != null) {
                 if (Thread.interrupted()) {
                     Log.d(TAG, "Thread interrupted");
-                    return false;
+                    throw new RuntimeException(context.getString(R.string.import_thread_interrupted));
                 }
 
                 String fileName = zipEntry.getName();
-                if (hasImageExtension(fileName)) {
-                    readAndSaveImageFile(zipInputStream, trackId, importNameForFilename(fileName));
+                if (fileName.endsWith(KML_FILE_EXTENSION)) {
+                    List<Track.Id> trackId = parseKml(zipInputStream);
+                    if (trackId.isEmpty()) {
+                        Log.d(TAG, "Unable to parse kml in kmz");
+                        throw new ImportParserException(context.getString(R.string.import_unable_to_import_file, fileName));
+                    }
+                    trackIds.addAll(trackId);
+                } else if (hasImageExtension(fileName)) {
+                    readAndSaveImageFile(zipInputStream, stagingDir, importNameForFilename(fileName));
                 }
 
                 zipInputStream.closeEntry();
             }
-
-            return true;
+            if (trackIds.isEmpty()) {
+                Log.d(TAG, "Unable to find doc.kml in kmz");
+                throw new ImportParserException(context.getString(R.string.import_no_kml_file_found));
+            }
+            return trackIds;
+        } catch (ImportParserException | ImportAlreadyExistsException e) {
+            Log.e(TAG, "Unable to import file", e);
+            throw e;
         }
     }
 
@@ -144,70 +171,51 @@ public class KmzTrackImporter {
         return KMZ_IMAGES_EXT.contains(fileExt);
     }
 
-    private List<Track.Id> findAndParseKmlFile(Uri uri) throws IOException {
-        try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-             ZipInputStream zipInputStream = new ZipInputStream(inputStream)) {
-            ZipEntry zipEntry;
-            ArrayList<Track.Id> trackIds = new ArrayList<>();
-
-            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
-                if (Thread.interrupted()) {
-                    Log.d(TAG, "Thread interrupted");
-                    throw new RuntimeException(context.getString(R.string.import_thread_interrupted));
-                }
-
-                String fileName = zipEntry.getName();
-                if (fileName.endsWith(KML_FILE_EXTENSION)) {
-                    List<Track.Id> trackId = parseKml(zipInputStream);
-                    if (trackId.isEmpty()) {
-                        Log.d(TAG, "Unable to parse kml in kmz");
-                        throw new ImportParserException(context.getString(R.string.import_unable_to_import_file, fileName));
-                    }
-                    trackIds.addAll(trackId);
-                }
-
-                zipInputStream.closeEntry();
-            }
-            if (trackIds.isEmpty()) {
-                Log.d(TAG, "Unable to find doc.kml in kmz");
-                throw new ImportParserException(context.getString(R.string.import_no_kml_file_found));
-            }
-            return trackIds;
-        } catch (ImportParserException | ImportAlreadyExistsException e) {
-            Log.e(TAG, "Unable to import file", e);
-            throw e;
-        }
-    }
-
     /**
-     * Deletes all images that remained in external storage that doesn't have a marker associated.
+     * Moves the staged images that are referenced by the track's markers to the track's photo directory.
+     * Images that were already moved for another track are copied.
      *
-     * @param trackId the id of the Track.
+     * @param trackId     the id of the Track.
+     * @param movedImages the already moved images by name; is updated.
      */
-    private void deleteOrphanImages(Track.Id trackId) {
-        // 1.- Gets all photo names in the markers of the track identified by id.
+    private void moveMarkerImages(Track.Id trackId, File stagingDir, Map<String, File> movedImages) throws IOException {
         ContentProviderUtils contentProviderUtils = new ContentProviderUtils(context);
-        List<Marker> markers = contentProviderUtils.getMarkers(trackId);
-        List<String> photosName = new ArrayList<>();
-        for (Marker marker : markers) {
-            if (marker.hasPhoto()) {
-                String photoUrl = Uri.decode(marker.getPhotoUrl());
-                photosName.add(photoUrl.substring(photoUrl.lastIndexOf(File.separatorChar) + 1));
+        for (Marker marker : contentProviderUtils.getMarkers(trackId)) {
+            if (!marker.hasPhoto()) {
+                continue;
+            }
+            String photoUrl = Uri.decode(marker.getPhotoUrl());
+            String photoName = photoUrl.substring(photoUrl.lastIndexOf(File.separatorChar) + 1);
+
+            File moved = movedImages.get(photoName);
+            File staged = new File(stagingDir, photoName);
+            if (moved == null && !staged.exists()) {
+                Log.w(TAG, "Image of marker not found in kmz: " + photoName);
+                continue;
             }
-        }
 
-        // 2.- Deletes all orphan photos from external storage.
-        File dir = FileUtils.getPhotoDir(context, trackId);
-        if (dir.exists() && dir.isDirectory()) {
-            for (File file : dir.listFiles()) {
-                if (!photosName.contains(file.getName())) {
-                    file.delete();
+            File target = new File(FileUtils.getPhotoDir(context, trackId), photoName);
+            if (moved != null) {
+                if (!moved.equals(target)) {
+                    Files.copy(moved.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
                 }
+                continue;
             }
-            if (dir.listFiles().length == 0) {
-                dir.delete();
+            if (!staged.renameTo(target)) {
+                Files.copy(staged.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            movedImages.put(photoName, target);
+        }
+    }
+
+    private void deleteStagingDir(File stagingDir) {
+        File[] files = stagingDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
             }
         }
+        stagingDir.delete();
     }
 
     private List<Track.Id> parseKml(ZipInputStream zipInputStream) throws IOException {
@@ -224,18 +232,18 @@ public class KmzTrackImporter {
     }
 
     /**
-     * Reads an image file (zipInputStream) and save it in a file called fileName inside photo folder.
+     * Reads an image file (zipInputStream) and save it in a file called fileName inside dir.
      *
      * @param zipInputStream the zip input stream
-     * @param trackId        the track's id which image belongs to.
+     * @param dir            the directory
      * @param fileName       the file name
      */
-    private void readAndSaveImageFile(ZipInputStream zipInputStream, Track.Id trackId, String fileName) throws IOException {
-        if (trackId == null || "".equals(fileName)) {
+    private void readAndSaveImageFile(ZipInputStream zipInputStream, File dir, String fileName) throws IOException {
+        if ("".equals(fileName)) {
             return;
         }
 
-        File dir = FileUtils.getPhotoDir(context, trackId);
+        dir.mkdirs();
         File file = new File(dir, fileName);
         if (!file.toPath().normalize().startsWith(dir.toPath().normalize()))
         {
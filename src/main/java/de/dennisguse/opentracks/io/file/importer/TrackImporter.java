@@ -6,39 +6,52 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import java.io.File;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 import de.dennisguse.opentracks.R;
 import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.TrackFingerprint;
+import de.dennisguse.opentracks.data.TrackPointCursor;
+import de.dennisguse.opentracks.data.TrackPointsLod;
 import de.dennisguse.opentracks.data.models.ActivityType;
 import de.dennisguse.opentracks.data.models.Distance;
 import de.dennisguse.opentracks.data.models.Marker;
 import de.dennisguse.opentracks.data.models.Speed;
 import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.data.models.TrackPoint;
-import de.dennisguse.opentracks.stats.TrackStatisticsUpdater;
+import de.dennisguse.opentracks.stats.ParallelTrackStatisticsCalculator;
 import de.dennisguse.opentracks.ui.markers.MarkerUtils;
 import de.dennisguse.opentracks.util.FileUtils;
 import de.dennisguse.opentracks.util.LocationUtils;
 
 /**
  * Handles logic to import:
- * 1. addTrackPoints()
+ * 1. addTrackPoint()
  * 2. addMarkers();
  * 3. setTrack();
  * 4. newTrack(); //stores current track to databse
  * 5. if needed go to 1.
  * 6. finish()
  * <p>
+ * TrackPoints are streamed: while they arrive in time order, they are adjusted using only the previous TrackPoint and written in batches of {@link #BATCH_SIZE}.
+ * Thus, memory usage does not depend on the number of TrackPoints.
+ * If TrackPoints arrive out of order, the values derived so far are discarded, the remaining TrackPoints are written unadjusted, and the track is sorted by the database (external sort) when it is finished.
+ * Until then, the TrackPoints belong to a placeholder track that is hidden (see {@link ContentProviderUtils#insertImportingTrack(Track)}) and deleted if the import fails.
+ * <p>
+ * If re-import is prevented, known tracks are detected by UUID and by {@link TrackFingerprint} when the track is finished (the hash of the first TrackPoints is only confirmed by all TrackPoints).
+ * <p>
  * NOTE: This class modifies the parameter.
  * Do not re-use these objects anywhere else.
  */
@@ -46,24 +59,54 @@ public class TrackImporter {
 
     private static final String TAG = TrackImporter.class.getSimpleName();
 
+    @VisibleForTesting
+    static final int BATCH_SIZE = 1000;
+
     private final Context context;
     private final ContentProviderUtils contentProviderUtils;
 
     private final Distance maxRecordingDistance;
     private final boolean preventReimport;
 
+    @Nullable
+    private final ImportDatabaseWriter databaseWriter;
+
+    private final ParallelTrackStatisticsCalculator trackStatisticsCalculator = new ParallelTrackStatisticsCalculator();
+
     private final List<Track.Id> trackIds = new ArrayList<>();
 
     // Current track
     private Track track;
-    private final List<TrackPoint> trackPoints = new LinkedList<>();
     private final List<Marker> markers = new LinkedList<>();
 
+    // Current track: TrackPoints
+    private Track.Id placeholderTrackId;
+    private final List<TrackPoint> batch = new ArrayList<>(BATCH_SIZE);
+    private int numTrackPoints;
+    private TrackPoint previous;
+    private boolean ordered = true;
+    // Values set by adjustTrackPoint() (by index of the TrackPoint) while the TrackPoints arrive in order.
+    private final BitSet derivedSpeed = new BitSet();
+    private final BitSet derivedBearing = new BitSet();
+    private final BitSet derivedType = new BitSet();
+    private ParallelTrackStatisticsCalculator.Accumulator trackStatisticsAccumulator = trackStatisticsCalculator.newAccumulator();
+
+    // Current track: content fingerprint
+    private TrackFingerprint fingerprint = new TrackFingerprint();
+
     public TrackImporter(Context context, ContentProviderUtils contentProviderUtils, Distance maxRecordingDistance, boolean preventReimport) {
+        this(context, contentProviderUtils, maxRecordingDistance, preventReimport, null);
+    }
+
+    /**
+     * @param databaseWriter if present, all database writes are executed by it (for importing multiple files concurrently).
+     */
+    TrackImporter(Context context, ContentProviderUtils contentProviderUtils, Distance maxRecordingDistance, boolean preventReimport, @Nullable ImportDatabaseWriter databaseWriter) {
         this.context = context;
         this.contentProviderUtils = contentProviderUtils;
         this.maxRecordingDistance = maxRecordingDistance;
         this.preventReimport = preventReimport;
+        this.databaseWriter = databaseWriter;
     }
 
     void newTrack() {
@@ -72,16 +115,39 @@ public class TrackImporter {
         }
 
         track = null;
-        trackPoints.clear();
+        resetTrackPoints();
+        resetFingerprint();
         markers.clear();
     }
 
     void addTrackPoint(TrackPoint trackPoint) {
-        this.trackPoints.add(trackPoint);
+        fingerprint.add(trackPoint);
+
+        storeTrackPoint(trackPoint);
+    }
+
+    private void storeTrackPoint(TrackPoint trackPoint) {
+        if (ordered && previous != null && trackPoint.getTime().isBefore(previous.getTime())) {
+            Log.i(TAG, "TrackPoints are not ordered by time; sorting after " + numTrackPoints + " TrackPoints.");
+            ordered = false;
+            restoreTrackPoints();
+        }
+
+        if (ordered) {
+            trackPoint = adjustTrackPoint(numTrackPoints, previous, trackPoint);
+            trackStatisticsAccumulator.add(trackPoint);
+            previous = trackPoint;
+        }
+
+        addToBatch(trackPoint);
+        numTrackPoints++;
     }
 
-    void addTrackPoints(List<TrackPoint> trackPoints) {
-        this.trackPoints.addAll(trackPoints);
+    private void addToBatch(TrackPoint trackPoint) {
+        batch.add(trackPoint);
+        if (batch.size() >= BATCH_SIZE) {
+            writeBatch();
+        }
     }
 
     void addMarkers(List<Marker> markers) {
@@ -120,99 +186,214 @@ public class TrackImporter {
     }
 
     private void finishTrack() {
-        if (trackPoints.isEmpty()) {
+        if (numTrackPoints == 0) {
             throw new ImportParserException("Cannot import track without any locations.");
         }
 
-        // Store Track
-        if (contentProviderUtils.getTrack(track.getUuid()) != null) {
-            if (preventReimport) {
-                throw new ImportAlreadyExistsException(context.getString(R.string.import_prevent_reimport));
-            }
+        TrackFingerprint trackFingerprint = !fingerprint.isEmpty() ? fingerprint : null;
 
-            //TODO This is a workaround until we have proper UI.
-            track.setUuid(UUID.randomUUID());
+        // Store TrackPoints
+        writeBatch();
+        if (!ordered) {
+            sortTrackPoints();
         }
 
-        trackPoints.sort((o1, o2) -> {
-            if (o1.getTime().isBefore(o2.getTime())) {
-                return -1;
+        Track.Id trackId = placeholderTrackId;
+        track.setId(trackId);
+        track.setTrackStatistics(trackStatisticsAccumulator.getTrackStatistics());
+        updateMarkers(trackId);
+        for (Marker marker : markers)
+            marker.setTrackId(trackId); //TODO Should happen in bulkInsertMarkers
+
+        // Store Markers and Track (this makes the track visible); checking for re-import within the same write, so concurrent imports of the same track are detected.
+        boolean stored = writeAndGet(() -> {
+            if (preventReimport && trackFingerprint != null && contentProviderUtils.getTrackIdByFingerprint(trackFingerprint) != null) {
+                return false;
             }
-            if (o1.getTime().isAfter(o2.getTime())) {
-                return 1;
+            if (contentProviderUtils.getTrack(track.getUuid()) != null) {
+                if (preventReimport) {
+                    return false;
+                }
+
+                //TODO This is a workaround until we have proper UI.
+                track.setUuid(UUID.randomUUID());
             }
-            return 0;
+            contentProviderUtils.bulkInsertMarkers(markers, trackId);
+            contentProviderUtils.finishImportingTrack(track, trackFingerprint != null ? trackFingerprint.get() : null);
+            return true;
         });
+        if (!stored) {
+            deletePlaceholderTrack();
+            throw new ImportAlreadyExistsException(context.getString(R.string.import_prevent_reimport));
+        }
+        new TrackPointsLod(contentProviderUtils).rebuildAsync(trackId);
 
-        adjustTrackPoints();
+        //Clear up.
+        placeholderTrackId = null;
+        resetTrackPoints();
+        resetFingerprint();
+        markers.clear();
 
-        TrackStatisticsUpdater updater = new TrackStatisticsUpdater();
-        updater.addTrackPoints(trackPoints);
-        track.setTrackStatistics(updater.getTrackStatistics());
+        trackIds.add(trackId);
+    }
 
-        Track.Id trackId = contentProviderUtils.insertTrack(track);
+    private void resetTrackPoints() {
+        batch.clear();
+        numTrackPoints = 0;
+        previous = null;
+        ordered = true;
+        clearDerived();
+        trackStatisticsAccumulator = trackStatisticsCalculator.newAccumulator();
+    }
 
-        // Store TrackPoints
-        contentProviderUtils.bulkInsertTrackPoint(trackPoints, trackId);
+    private void clearDerived() {
+        derivedSpeed.clear();
+        derivedBearing.clear();
+        derivedType.clear();
+    }
 
-        // Store Markers
-        updateMarkers(trackId);
-        for (Marker marker : markers)
-            marker.setTrackId(trackId); //TODO Should happen in bulkInsertMarkers
+    private void resetFingerprint() {
+        fingerprint = new TrackFingerprint();
+    }
 
-        contentProviderUtils.bulkInsertMarkers(markers, trackId);
+    private void deletePlaceholderTrack() {
+        if (placeholderTrackId != null) {
+            Track.Id trackId = placeholderTrackId;
+            write(() -> contentProviderUtils.deleteTrack(context, trackId));
+            placeholderTrackId = null;
+        }
+    }
 
-        //Clear up.
-        trackPoints.clear();
-        markers.clear();
+    /**
+     * Writes the batch; the first batch creates the placeholder track.
+     */
+    private void writeBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (placeholderTrackId == null) {
+            Track placeholder = new Track(ZoneOffset.UTC);
+            placeholder.setUuid(UUID.randomUUID());
+            placeholderTrackId = writeAndGet(() -> contentProviderUtils.insertImportingTrack(placeholder));
+        }
+        Track.Id trackId = placeholderTrackId;
+        write(() -> contentProviderUtils.bulkInsertTrackPoint(batch, trackId));
+        batch.clear();
+    }
 
-        trackIds.add(trackId);
+    private void write(Runnable write) {
+        if (databaseWriter == null) {
+            write.run();
+        } else {
+            databaseWriter.write(write);
+        }
+    }
+
+    private <T> T writeAndGet(Supplier<T> write) {
+        if (databaseWriter == null) {
+            return write.get();
+        }
+        return databaseWriter.writeAndGet(write::get);
     }
 
     /**
-     * If not present: calculate data from the previous trackPoint (if present)
-     * NOTE: Modifies content of trackPoints.
+     * Replaces the TrackPoints that were adjusted while they arrived in order by the values that were read (in a new placeholder track).
+     * Thus, after sorting, speed, bearing, and type are derived from the actual predecessor of each TrackPoint.
      */
-    private void adjustTrackPoints() {
-        for (int i = 0; i < trackPoints.size(); i++) {
-            TrackPoint current = trackPoints.get(i);
-
-            if (current.hasLocation()) {
-                Instant time = current.getTime();
-                if (current.getLatitude() == 100) {
-                    //TODO Remove by 31st December 2021.
-                    trackPoints.set(i, new TrackPoint(TrackPoint.Type.SEGMENT_END_MANUAL, time));
-                } else if (current.getLatitude() == 200) {
-                    //TODO Remove by 31st December 2021.
-                    trackPoints.set(i, new TrackPoint(TrackPoint.Type.SEGMENT_START_MANUAL, time));
-                    //TODO Delete location
-                } else if (!LocationUtils.isValidLocation(current.getLocation())) {
-                    throw new ImportParserException("Invalid location detected: " + current);
+    private void restoreTrackPoints() {
+        writeBatch();
+        Track.Id adjustedTrackId = placeholderTrackId;
+        placeholderTrackId = null;
+
+        try (TrackPointCursor trackPointCursor = contentProviderUtils.getTrackPointCursorView(adjustedTrackId, null, null)) {
+            int index = 0;
+            while (trackPointCursor.moveToNext()) {
+                TrackPoint trackPoint = trackPointCursor.toTrackPoint();
+                trackPoint.setId(null);
+                if (derivedSpeed.get(index)) {
+                    trackPoint.setSpeed(null);
+                }
+                if (derivedBearing.get(index)) {
+                    trackPoint.setBearing(null);
                 }
+                if (derivedType.get(index)) {
+                    trackPoint.setType(TrackPoint.Type.TRACKPOINT);
+                }
+                addToBatch(trackPoint);
+                index++;
+            }
+        } finally {
+            write(() -> contentProviderUtils.deleteTrack(context, adjustedTrackId));
+        }
+        clearDerived();
+    }
+
+    /**
+     * Reads the unordered TrackPoints sorted by time (the database sorts using the (trackid, time) index), adjusts them, and moves them to a new placeholder track.
+     */
+    private void sortTrackPoints() {
+        Track.Id unorderedTrackId = placeholderTrackId;
+        placeholderTrackId = null;
+        resetTrackPoints();
+
+        try (TrackPointCursor trackPointCursor = contentProviderUtils.getTrackPointCursorViewOrderedByTime(unorderedTrackId)) {
+            while (trackPointCursor.moveToNext()) {
+                TrackPoint trackPoint = trackPointCursor.toTrackPoint();
+                trackPoint.setId(null);
+                storeTrackPoint(trackPoint);
             }
+        } finally {
+            write(() -> contentProviderUtils.deleteTrack(context, unorderedTrackId));
         }
+        writeBatch();
+    }
 
-        for (int i = 1; i < trackPoints.size(); i++) {
-            TrackPoint previous = trackPoints.get(i - 1);
-            TrackPoint current = trackPoints.get(i);
+    /**
+     * If not present: calculate data from the previous trackPoint (if present)
+     * NOTE: Modifies content of trackPoint.
+     *
+     * @param index the index of the TrackPoint within the track (to record which values were derived)
+     * @return the adjusted TrackPoint (might be a new instance).
+     */
+    private TrackPoint adjustTrackPoint(int index, @Nullable TrackPoint previous, TrackPoint current) {
+        if (current.hasLocation()) {
+            Instant time = current.getTime();
+            if (current.getLatitude() == 100) {
+                //TODO Remove by 31st December 2021.
+                current = new TrackPoint(TrackPoint.Type.SEGMENT_END_MANUAL, time);
+            } else if (current.getLatitude() == 200) {
+                //TODO Remove by 31st December 2021.
+                current = new TrackPoint(TrackPoint.Type.SEGMENT_START_MANUAL, time);
+                //TODO Delete location
+            } else if (!LocationUtils.isValidLocation(current.getLocation())) {
+                deletePlaceholderTrack();
+                throw new ImportParserException("Invalid location detected: " + current);
+            }
+        }
 
-            if (current.hasSensorDistance() || (previous.hasLocation() && current.hasLocation())) {
-                Distance distanceToPrevious = current.distanceToPrevious(previous);
-                if (!current.hasSpeed()) {
-                    Duration timeDifference = Duration.between(previous.getTime(), current.getTime());
-                    current.setSpeed(Speed.of(distanceToPrevious, timeDifference));
-                }
+        if (previous != null && (current.hasSensorDistance() || (previous.hasLocation() && current.hasLocation()))) {
+            Distance distanceToPrevious = current.distanceToPrevious(previous);
+            if (!current.hasSpeed()) {
+                Duration timeDifference = Duration.between(previous.getTime(), current.getTime());
+                current.setSpeed(Speed.of(distanceToPrevious, timeDifference));
+                derivedSpeed.set(index);
+            }
 
-                if (!current.hasBearing()) {
-                    previous.bearingTo(current)
-                            .ifPresent(current::setBearing);
-                }
+            if (!current.hasBearing()) {
+                TrackPoint adjusted = current;
+                previous.bearingTo(current)
+                        .ifPresent(bearing -> {
+                            adjusted.setBearing(bearing);
+                            derivedBearing.set(index);
+                        });
+            }
 
-                if (current.getType().equals(TrackPoint.Type.TRACKPOINT) && distanceToPrevious.greaterThan(maxRecordingDistance)) {
-                    current.setType(TrackPoint.Type.SEGMENT_START_AUTOMATIC);
-                }
+            if (current.getType().equals(TrackPoint.Type.TRACKPOINT) && distanceToPrevious.greaterThan(maxRecordingDistance)) {
+                current.setType(TrackPoint.Type.SEGMENT_START_AUTOMATIC);
+                derivedType.set(index);
             }
         }
+        return current;
     }
 
     /**
@@ -248,8 +429,12 @@ public class TrackImporter {
         return Collections.unmodifiableList(trackIds);
     }
 
+    /**
+     * Deletes all imported tracks including the track that is currently imported.
+     */
     public void cleanImport() {
-        contentProviderUtils.deleteTracks(context, trackIds);
+        deletePlaceholderTrack();
+        write(() -> contentProviderUtils.deleteTracks(context, trackIds));
     }
 
 }
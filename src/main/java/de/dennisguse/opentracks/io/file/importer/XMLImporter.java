@@ -47,13 +47,17 @@ public class XMLImporter {
             return parser.getImportTrackIds();
         } catch (SAXException | ParserConfigurationException | ParsingException e) {
             Log.e(TAG, "Unable to import file", e);
-            if (parser.getImportTrackIds().size() > 0) {
-                parser.cleanImport();
-            }
+            parser.cleanImport();
             throw new ImportParserException(e);
         } catch (SQLiteConstraintException e) {
             Log.e(TAG, "Unable to import file", e);
             throw new ImportAlreadyExistsException(e);
+        } catch (ImportAlreadyExistsException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Unable to import file", e);
+            parser.cleanImport();
+            throw e;
         }
     }
 
@@ -0,0 +1,63 @@
+package de.dennisguse.opentracks.io.file.importer;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Collects the text content of the current XML element for SAX parsers.
+ * <p>
+ * SAX may deliver the text of one element in many chunks (e.g., large CDATA blocks); the chunks are copied into a reusable buffer and a String is only created once the element ends.
+ * Text is only collected between {@link #start()} and {@link #stop()}, so whitespace between elements and the text of unsupported elements is skipped.
+ */
+final class XMLTextCollector {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private char[] buffer = new char[INITIAL_CAPACITY];
+    private int length;
+    private boolean collecting;
+
+    /**
+     * Starts collecting the text of an element; previously collected text is discarded.
+     */
+    void start() {
+        length = 0;
+        collecting = true;
+    }
+
+    void stop() {
+        length = 0;
+        collecting = false;
+    }
+
+    /**
+     * To be called from {@link org.xml.sax.ContentHandler#characters(char[], int, int)}.
+     */
+    void append(char[] ch, int start, int count) {
+        if (!collecting) {
+            return;
+        }
+        if (length + count > buffer.length) {
+            char[] newBuffer = new char[Math.max(buffer.length * 2, length + count)];
+            System.arraycopy(buffer, 0, newBuffer, 0, length);
+            buffer = newBuffer;
+        }
+        System.arraycopy(ch, start, buffer, length, count);
+        length += count;
+    }
+
+    /**
+     * @return the collected text without leading and trailing whitespace (same as {@link String#trim()}).
+     */
+    @NonNull
+    String getTrimmed() {
+        int begin = 0;
+        int end = length;
+        while (begin < end && buffer[begin] <= ' ') {
+            begin++;
+        }
+        while (end > begin && buffer[end - 1] <= ' ') {
+            end--;
+        }
+        return begin == end ? "" : new String(buffer, begin, end - begin);
+    }
+}
@@ -0,0 +1,130 @@
+package de.dennisguse.opentracks.services;
+
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+import de.dennisguse.opentracks.stats.TrackStatistics;
+
+/**
+ * Group-commit buffer for {@link TrackPoint}s of the currently recorded track.
+ * <p>
+ * Instead of one SQLite transaction (and one notifyChange) per stored {@link TrackPoint} plus one per statistics update,
+ * TrackPoints are collected and written with a single bulk insert followed by a single statistics update.
+ * <p>
+ * Durability window: at most {@link #maxTrackPoints} TrackPoints or {@link #maxDelay} (measured by TrackPoint time) are kept in memory.
+ * This is the maximum data that is lost if the process gets killed; the delay is configured by the user (see {@link de.dennisguse.opentracks.settings.PreferencesUtils#getRecordingWriteDelay()}).
+ * Callers must force a {@link #flush(TrackStatistics)} on segment boundaries, idle and when the recording stops.
+ */
+class TrackPointWriteBuffer {
+
+    private static final String TAG = TrackPointWriteBuffer.class.getSimpleName();
+
+    static final int DEFAULT_MAX_TRACKPOINTS = 10;
+
+    private final ContentProviderUtils contentProviderUtils;
+    private final Track.Id trackId;
+
+    private final int maxTrackPoints;
+    private final Duration maxDelay;
+
+    private final List<TrackPoint> pending = new ArrayList<>();
+    // Statistics of the last flush that were not yet written.
+    private TrackStatistics pendingTrackStatistics;
+
+    TrackPointWriteBuffer(@NonNull ContentProviderUtils contentProviderUtils, @NonNull Track.Id trackId, int maxTrackPoints, @NonNull Duration maxDelay) {
+        if (maxTrackPoints < 1) {
+            throw new IllegalArgumentException("maxTrackPoints must be at least 1");
+        }
+        this.contentProviderUtils = contentProviderUtils;
+        this.trackId = trackId;
+        this.maxTrackPoints = maxTrackPoints;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * @return true if the durability window is exhausted and the buffer should be flushed.
+     */
+    boolean add(@NonNull TrackPoint trackPoint) {
+        pending.add(trackPoint);
+        return isFull();
+    }
+
+    boolean isFull() {
+        if (pending.isEmpty()) {
+            return false;
+        }
+        if (pending.size() >= maxTrackPoints) {
+            return true;
+        }
+
+        Duration buffered = Duration.between(pending.get(0).getTime(), pending.get(pending.size() - 1).getTime());
+        return buffered.compareTo(maxDelay) >= 0;
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    int size() {
+        return pending.size();
+    }
+
+    Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * @return true if all TrackPoints and the statistics of the last flush are written.
+     */
+    boolean isFlushed() {
+        return pending.isEmpty() && pendingTrackStatistics == null;
+    }
+
+    /**
+     * Writes all pending TrackPoints in one transaction and afterwards the track statistics.
+     * If writing fails, the TrackPoints and the statistics are kept and the caller has to retry with {@link #flush()}.
+     *
+     * @param trackStatistics the statistics including all pending TrackPoints.
+     * @return true if everything was written.
+     */
+    boolean flush(@NonNull TrackStatistics trackStatistics) {
+        pendingTrackStatistics = trackStatistics;
+        return flush();
+    }
+
+    /**
+     * Retries to write the pending TrackPoints and the statistics of the last {@link #flush(TrackStatistics)}.
+     *
+     * @return true if everything was written.
+     */
+    boolean flush() {
+        try {
+            if (!pending.isEmpty()) {
+                contentProviderUtils.bulkInsertTrackPoint(pending, trackId);
+                pending.clear();
+            }
+
+            if (pendingTrackStatistics != null) {
+                contentProviderUtils.updateTrackStatistics(trackId, pendingTrackStatistics);
+                pendingTrackStatistics = null;
+            }
+            return true;
+        } catch (SQLiteException e) {
+            /*
+             * Insert failed, most likely because of SqlLite error code 5 (SQLite_BUSY).
+             * bulkInsert is transactional: nothing was written, so keep the TrackPoints for the next flush.
+             */
+            Log.w(TAG, "SQLiteException; keeping " + pending.size() + " TrackPoints for next flush.", e);
+            return false;
+        }
+    }
+}
@@ -2,7 +2,6 @@ package de.dennisguse.opentracks.services;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.database.sqlite.SQLiteException;
 import android.os.Handler;
 import android.util.Log;
 import android.util.Pair;
@@ -12,9 +11,13 @@ import androidx.annotation.VisibleForTesting;
 
 import java.time.Duration;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 import de.dennisguse.opentracks.R;
 import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.TrackPointsLod;
 import de.dennisguse.opentracks.data.models.ActivityType;
 import de.dennisguse.opentracks.data.models.Distance;
 import de.dennisguse.opentracks.data.models.Track;
@@ -33,7 +36,15 @@ public class TrackRecordingManager implements SharedPreferences.OnSharedPreferen
 
     private static final AltitudeCorrectionManager ALTITUDE_CORRECTION_MANAGER = new AltitudeCorrectionManager();
 
+    @VisibleForTesting
+    static final Duration FLUSH_RETRY_DELAY = Duration.ofSeconds(1);
+
+    // When the recording ends, the write buffer is written synchronously (blocking the caller for at most FINAL_FLUSH_ATTEMPTS * FINAL_FLUSH_RETRY_DELAY).
+    private static final int FINAL_FLUSH_ATTEMPTS = 10;
+    private static final Duration FINAL_FLUSH_RETRY_DELAY = Duration.ofMillis(100);
+
     private final Runnable ON_IDLE = this::onIdle;
+    private final Runnable ON_FLUSH = this::flushWriteBuffer;
 
     private final ContentProviderUtils contentProviderUtils;
     private final Context context;
@@ -43,12 +54,19 @@ public class TrackRecordingManager implements SharedPreferences.OnSharedPreferen
 
     private final TrackPointCreator trackPointCreator;
 
+    private final int writeBufferMaxTrackPoints;
+
     private Distance recordingDistanceInterval;
     private Distance maxRecordingDistance;
     private Duration idleDuration;
+    // Applies to the next recorded track.
+    private Duration writeDelay;
 
     private Track.Id trackId;
     private TrackStatisticsUpdater trackStatisticsUpdater;
+    private TrackPointWriteBuffer writeBuffer;
+    // Write buffers of ended tracks whose final flush failed; retried until written.
+    private final List<TrackPointWriteBuffer> unflushedWriteBuffers = new ArrayList<>();
 
     private TrackPoint lastTrackPoint;
     private TrackPoint lastTrackPointUIWithSpeed;
@@ -57,12 +75,21 @@ public class TrackRecordingManager implements SharedPreferences.OnSharedPreferen
     private TrackPoint lastStoredTrackPoint;
     private TrackPoint lastStoredTrackPointWithLocation;
 
-    TrackRecordingManager(Context context, TrackPointCreator trackPointCreator, IdleObserver idleObserver, Handler handler) {
+    /**
+     * @param writeBufferMaxTrackPoints maximal number of recorded TrackPoints kept in memory before being written to the database.
+     */
+    TrackRecordingManager(Context context, TrackPointCreator trackPointCreator, IdleObserver idleObserver, Handler handler, int writeBufferMaxTrackPoints) {
+        this(context, new ContentProviderUtils(context), trackPointCreator, idleObserver, handler, writeBufferMaxTrackPoints);
+    }
+
+    @VisibleForTesting
+    TrackRecordingManager(Context context, ContentProviderUtils contentProviderUtils, TrackPointCreator trackPointCreator, IdleObserver idleObserver, Handler handler, int writeBufferMaxTrackPoints) {
         this.context = context;
         this.idleObserver = idleObserver;
         this.trackPointCreator = trackPointCreator;
         this.handler = handler;
-        contentProviderUtils = new ContentProviderUtils(context);
+        this.contentProviderUtils = contentProviderUtils;
+        this.writeBufferMaxTrackPoints = writeBufferMaxTrackPoints;
     }
 
     Track.Id startNewTrack() {
@@ -74,6 +101,7 @@ public class TrackRecordingManager implements SharedPreferences.OnSharedPreferen
         track.setId(trackId);
 
         trackStatisticsUpdater = new TrackStatisticsUpdater();
+        writeBuffer = new TrackPointWriteBuffer(contentProviderUtils, trackId, writeBufferMaxTrackPoints, writeDelay);
 
         onNewTrackPoint(segmentStartTrackPoint);
 
@@ -99,6 +127,7 @@ public class TrackRecordingManager implements SharedPreferences.OnSharedPreferen
         }
 
         trackStatisticsUpdater = new TrackStatisticsUpdater(track.getTrackStatistics());
+        writeBuffer = new TrackPointWriteBuffer(contentProviderUtils, trackId, writeBufferMaxTrackPoints, writeDelay);
         onNewTrackPoint(trackPointCreator.createSegmentStartManual());
 
         reset();
@@ -106,14 +135,29 @@ public class TrackRecordingManager implements SharedPreferences.OnSharedPreferen
         return true;
     }
 
-    void endCurrentTrack() {
+    synchronized void endCurrentTrack() {
         TrackPoint segmentEnd = trackPointCreator.createSegmentEnd();
+        // Forces a flush of the write buffer.
         insertTrackPoint(segmentEnd, true);
 
+        if (!writeBuffer.isFlushed()) {
+            unflushedWriteBuffers.add(writeBuffer);
+        }
+
+        Track.Id endedTrackId = trackId;
         trackId = null;
         trackStatisticsUpdater = null;
+        writeBuffer = null;
 
         reset();
+
+        // The service may be destroyed right after (removing all pending retries).
+        if (!drainWriteBuffers()) {
+            Log.e(TAG, "Could not write the last TrackPoints of track " + endedTrackId.id() + "; retrying while the service is running.");
+            handler.postDelayed(ON_FLUSH, FLUSH_RETRY_DELAY.toMillis());
+        }
+
+        new TrackPointsLod(contentProviderUtils).rebuildAsync(endedTrackId);
     }
 
     Pair<Track, Pair<TrackPoint, SensorDataSet>> getDataForUI() {
@@ -245,23 +289,84 @@ public class TrackRecordingManager implements SharedPreferences.OnSharedPreferen
     }
 
     private void insertTrackPointHelper(@NonNull TrackPoint trackPoint) {
-        try {
-            contentProviderUtils.insertTrackPoint(trackPoint, trackId);
-            trackStatisticsUpdater.addTrackPoint(trackPoint);
-
-            contentProviderUtils.updateTrackStatistics(trackId, trackStatisticsUpdater.getTrackStatistics());
-            lastStoredTrackPoint = trackPoint;
-            if (trackPoint.hasLocation()) {
-                lastStoredTrackPointWithLocation = lastStoredTrackPoint;
+        trackStatisticsUpdater.addTrackPoint(trackPoint);
+        lastStoredTrackPoint = trackPoint;
+        if (trackPoint.hasLocation()) {
+            lastStoredTrackPointWithLocation = lastStoredTrackPoint;
+        }
+
+        boolean wasEmpty = writeBuffer.isEmpty();
+        boolean isFull = writeBuffer.add(trackPoint);
+
+        // Segment boundaries and idle must be visible in the database immediately.
+        if (isFull || trackPoint.isSegmentManualStart() || trackPoint.isSegmentManualEnd() || trackPoint.isIdleTriggered()) {
+            flushWriteBuffer();
+        } else if (wasEmpty) {
+            // Bound the crash-loss window also if no further TrackPoints are stored.
+            handler.postDelayed(ON_FLUSH, writeBuffer.getMaxDelay().toMillis());
+        }
+    }
+
+    /**
+     * Writes all buffered TrackPoints and the current TrackStatistics to the database.
+     * If this fails, it is retried after {@link #FLUSH_RETRY_DELAY}.
+     */
+    @VisibleForTesting(otherwise = VisibleForTesting.PACKAGE_PRIVATE)
+    public synchronized void flushWriteBuffer() {
+        handler.removeCallbacks(ON_FLUSH);
+        if (!flushWriteBuffers()) {
+            handler.postDelayed(ON_FLUSH, FLUSH_RETRY_DELAY.toMillis());
+        }
+    }
+
+    /**
+     * Writes all buffered TrackPoints (also of ended tracks) synchronously; if this fails, it is retried up to {@link #FINAL_FLUSH_ATTEMPTS} times.
+     * To be used if the retries via the handler may not happen anymore (i.e., the service is stopped).
+     *
+     * @return true if all TrackPoints are written.
+     */
+    synchronized boolean drainWriteBuffers() {
+        handler.removeCallbacks(ON_FLUSH);
+        for (int attempt = 1; !flushWriteBuffers(); attempt++) {
+            if (attempt >= FINAL_FLUSH_ATTEMPTS) {
+                return false;
+            }
+            try {
+                Thread.sleep(FINAL_FLUSH_RETRY_DELAY.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if everything was written.
+     */
+    private boolean flushWriteBuffers() {
+        boolean flushed = true;
+
+        Iterator<TrackPointWriteBuffer> unflushed = unflushedWriteBuffers.iterator();
+        while (unflushed.hasNext()) {
+            if (unflushed.next().flush()) {
+                unflushed.remove();
+            } else {
+                flushed = false;
             }
-        } catch (SQLiteException e) {
-            // TODO Remove; if this is a problem; use a synchronized method.
-            /*
-             * Insert failed, most likely because of SqlLite error code 5 (SQLite_BUSY).
-             * This is expected to happen extremely rarely (if our listener gets invoked twice at about the same time).
-             */
-            Log.w(TAG, "SQLiteException", e);
         }
+
+        if (writeBuffer != null && trackStatisticsUpdater != null) {
+            flushed &= writeBuffer.flush(trackStatisticsUpdater.getTrackStatistics());
+        }
+        return flushed;
+    }
+
+    /**
+     * @return true if all stored TrackPoints (also of ended tracks) are written to the database.
+     */
+    synchronized boolean isFlushed() {
+        return unflushedWriteBuffers.isEmpty() && (writeBuffer == null || writeBuffer.isFlushed());
     }
 
     private void reset() {
@@ -284,6 +389,9 @@ public class TrackRecordingManager implements SharedPreferences.OnSharedPreferen
         if (PreferencesUtils.isKey(R.string.idle_duration_key, key)) {
             idleDuration = PreferencesUtils.getIdleDurationTimeout();
         }
+        if (PreferencesUtils.isKey(R.string.recording_write_delay_key, key)) {
+            writeDelay = PreferencesUtils.getRecordingWriteDelay();
+        }
     }
 
     public TrackPoint getLastStoredTrackPointWithLocation() {
@@ -113,7 +113,7 @@ public class TrackRecordingService extends Service implements TrackPointCreator.
         recordingDataObservable = new MutableLiveData<>(NOT_RECORDING);
 
         trackPointCreator = new TrackPointCreator(this);
-        trackRecordingManager = new TrackRecordingManager(this, trackPointCreator, this, handler);
+        trackRecordingManager = new TrackRecordingManager(this, trackPointCreator, this, handler, TrackPointWriteBuffer.DEFAULT_MAX_TRACKPOINTS);
 
         voiceAnnouncementManager = new VoiceAnnouncementManager(this);
         notificationManager = new TrackRecordingServiceNotificationManager(this);
@@ -127,6 +127,10 @@ public class TrackRecordingService extends Service implements TrackPointCreator.
         if (isRecording()) {
             endCurrentTrack();
         }
+        // Pending retries are removed below.
+        if (!trackRecordingManager.isFlushed() && !trackRecordingManager.drainWriteBuffers()) {
+            Log.e(TAG, "Could not write all recorded TrackPoints; they are lost.");
+        }
         if (isSensorStarted()) {
             stopSensors();
         }
@@ -0,0 +1,171 @@
+package de.dennisguse.opentracks.services;
+
+import android.app.job.JobService;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.ResultReceiver;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.JobIntentService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.models.Track;
+
+/**
+ * Maintenance job: recomputes the stored statistics of tracks (e.g., after recording-related settings or the computation changed).
+ */
+public class TrackStatisticsRecomputeService extends JobIntentService {
+
+    private static final String TAG = TrackStatisticsRecomputeService.class.getSimpleName();
+
+    private static final int JOB_ID = 4;
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final String EXTRA_RECEIVER = "extra_receiver";
+
+    private static final String EXTRA_TRACK_IDS = "extra_track_ids";
+
+    private static volatile TrackStatisticsRecomputer currentRecomputer;
+
+    private volatile TrackRecordingService trackRecordingService;
+
+    /**
+     * @param receiver if present, receives progress and result.
+     * @param trackIds the tracks to recompute; null for all tracks.
+     */
+    public static void enqueue(Context context, @Nullable TrackStatisticsRecomputeResultReceiver receiver, @Nullable ArrayList<Track.Id> trackIds) {
+        Intent intent = new Intent(context, JobService.class);
+        intent.putExtra(EXTRA_RECEIVER, receiver);
+        intent.putParcelableArrayListExtra(EXTRA_TRACK_IDS, trackIds);
+        enqueueWork(context, TrackStatisticsRecomputeService.class, JOB_ID, intent);
+    }
+
+    /**
+     * Cancels the running recomputation (if any).
+     */
+    public static void cancel() {
+        TrackStatisticsRecomputer recomputer = currentRecomputer;
+        if (recomputer != null) {
+            recomputer.cancel();
+        }
+    }
+
+    @Override
+    protected void onHandleWork(@NonNull Intent intent) {
+        ResultReceiver resultReceiver = intent.getParcelableExtra(EXTRA_RECEIVER);
+        ArrayList<Track.Id> trackIds = intent.getParcelableArrayListExtra(EXTRA_TRACK_IDS);
+
+        ContentProviderUtils contentProviderUtils = new ContentProviderUtils(this);
+        List<Track.Id> toBeRecomputed = trackIds != null ? trackIds : contentProviderUtils.getTrackIds();
+
+        // The recording status is needed to skip the track that is being recorded.
+        CountDownLatch connected = new CountDownLatch(1);
+        TrackRecordingServiceConnection connection = new TrackRecordingServiceConnection((service, unused) -> {
+            trackRecordingService = service;
+            connected.countDown();
+        });
+        connection.bindWithStart(this);
+
+        TrackStatisticsRecomputer recomputer = new TrackStatisticsRecomputer(contentProviderUtils);
+        currentRecomputer = recomputer;
+        TrackStatisticsRecomputer.Result result;
+        try {
+            if (!connected.await(CONNECT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                Log.e(TAG, "Could not connect to the TrackRecordingService; not recomputing.");
+                return;
+            }
+            result = recomputer.recompute(toBeRecomputed, (done, total) -> {
+                if (resultReceiver == null) {
+                    return;
+                }
+                Bundle bundle = new Bundle();
+                bundle.putInt(TrackStatisticsRecomputeResultReceiver.RESULT_EXTRA_DONE, done);
+                bundle.putInt(TrackStatisticsRecomputeResultReceiver.RESULT_EXTRA_TOTAL, total);
+                resultReceiver.send(TrackStatisticsRecomputeResultReceiver.RESULT_CODE_PROGRESS, bundle);
+            }, this::getRecordingStatus);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            currentRecomputer = null;
+            connection.unbind(this);
+            trackRecordingService = null;
+        }
+
+        if (resultReceiver == null) {
+            return;
+        }
+        Bundle bundle = new Bundle();
+        bundle.putInt(TrackStatisticsRecomputeResultReceiver.RESULT_EXTRA_TRACKS, result.numTracks());
+        bundle.putLong(TrackStatisticsRecomputeResultReceiver.RESULT_EXTRA_TRACKPOINTS, result.numTrackPoints());
+        bundle.putLong(TrackStatisticsRecomputeResultReceiver.RESULT_EXTRA_DURATION, result.duration().toMillis());
+        bundle.putBoolean(TrackStatisticsRecomputeResultReceiver.RESULT_EXTRA_CANCELLED, result.cancelled());
+        resultReceiver.send(TrackStatisticsRecomputeResultReceiver.RESULT_CODE_FINISHED, bundle);
+    }
+
+    @NonNull
+    private RecordingStatus getRecordingStatus() {
+        TrackRecordingService service = trackRecordingService;
+        RecordingStatus recordingStatus = service != null ? service.getRecordingStatusObservable().getValue() : null;
+        return recordingStatus != null ? recordingStatus : TrackRecordingService.STATUS_DEFAULT;
+    }
+
+    @Override
+    public boolean onStopCurrentWork() {
+        cancel();
+        return false;
+    }
+
+    public static class TrackStatisticsRecomputeResultReceiver extends ResultReceiver {
+
+        public static final int RESULT_CODE_FINISHED = 1;
+        public static final int RESULT_CODE_PROGRESS = 2;
+
+        static final String RESULT_EXTRA_DONE = "result_extra_done";
+        static final String RESULT_EXTRA_TOTAL = "result_extra_total";
+        static final String RESULT_EXTRA_TRACKS = "result_extra_tracks";
+        static final String RESULT_EXTRA_TRACKPOINTS = "result_extra_trackpoints";
+        static final String RESULT_EXTRA_DURATION = "result_extra_duration";
+        static final String RESULT_EXTRA_CANCELLED = "result_extra_cancelled";
+
+        private final Receiver receiver;
+
+        public TrackStatisticsRecomputeResultReceiver(Handler handler, @NonNull Receiver receiver) {
+            super(handler);
+            this.receiver = receiver;
+        }
+
+        @Override
+        protected void onReceiveResult(int resultCode, Bundle resultData) {
+            switch (resultCode) {
+                case RESULT_CODE_PROGRESS ->
+                        receiver.onRecomputeProgress(resultData.getInt(RESULT_EXTRA_DONE), resultData.getInt(RESULT_EXTRA_TOTAL));
+                case RESULT_CODE_FINISHED ->
+                        receiver.onRecomputeFinished(new TrackStatisticsRecomputer.Result(
+                                resultData.getInt(RESULT_EXTRA_TRACKS),
+                                resultData.getLong(RESULT_EXTRA_TRACKPOINTS),
+                                Duration.ofMillis(resultData.getLong(RESULT_EXTRA_DURATION)),
+                                resultData.getBoolean(RESULT_EXTRA_CANCELLED)));
+                default -> throw new RuntimeException("Unknown resultCode.");
+            }
+        }
+
+        public interface Receiver {
+            default void onRecomputeProgress(int done, int total) {
+            }
+
+            void onRecomputeFinished(TrackStatisticsRecomputer.Result result);
+        }
+    }
+}
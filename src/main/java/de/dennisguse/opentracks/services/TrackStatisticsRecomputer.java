@@ -0,0 +1,189 @@
+package de.dennisguse.opentracks.services;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import de.dennisguse.opentracks.data.ContentProviderUtils;
+import de.dennisguse.opentracks.data.TrackPointIterator;
+import de.dennisguse.opentracks.data.models.Track;
+import de.dennisguse.opentracks.stats.ParallelTrackStatisticsCalculator;
+import de.dennisguse.opentracks.stats.TrackStatistics;
+
+/**
+ * Recomputes the stored {@link TrackStatistics} of tracks from their TrackPoints.
+ * <p>
+ * Tracks are streamed via {@link TrackPointIterator} by multiple workers concurrently; the segments of a track are computed by {@link ParallelTrackStatisticsCalculator}.
+ * The calling thread collects the results and writes them in batches (one transaction each).
+ */
+public class TrackStatisticsRecomputer {
+
+    private static final String TAG = TrackStatisticsRecomputer.class.getSimpleName();
+
+    @VisibleForTesting
+    static final int BATCH_SIZE = 50;
+
+    private final ContentProviderUtils contentProviderUtils;
+    private final int numWorkers;
+
+    private final ParallelTrackStatisticsCalculator trackStatisticsCalculator = new ParallelTrackStatisticsCalculator();
+
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    public TrackStatisticsRecomputer(@NonNull ContentProviderUtils contentProviderUtils) {
+        this(contentProviderUtils, Runtime.getRuntime().availableProcessors());
+    }
+
+    public TrackStatisticsRecomputer(@NonNull ContentProviderUtils contentProviderUtils, int numWorkers) {
+        this.contentProviderUtils = contentProviderUtils;
+        this.numWorkers = Math.max(1, numWorkers);
+    }
+
+    /**
+     * Stops as soon as possible; already recomputed statistics are still stored.
+     * Can be called from any thread.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    @NonNull
+    public Result recompute(@NonNull List<Track.Id> trackIds, @Nullable ProgressListener progressListener) {
+        return recompute(trackIds, progressListener, () -> TrackRecordingService.STATUS_DEFAULT);
+    }
+
+    /**
+     * Blocks until all tracks were recomputed or {@link #cancel()} was called.
+     * Tracks without TrackPoints are skipped.
+     * The track that is being recorded is skipped as well (checked before reading and before writing); its statistics are maintained by the recording.
+     */
+    @NonNull
+    public Result recompute(@NonNull List<Track.Id> trackIds, @Nullable ProgressListener progressListener, @NonNull Supplier<RecordingStatus> recordingStatus) {
+        long startTime = System.nanoTime();
+        int numTracks = 0;
+        long numTrackPoints = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(numWorkers, Math.max(1, trackIds.size())), runnable -> {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletionService<Recomputed> completionService = new ExecutorCompletionService<>(executor);
+            for (Track.Id trackId : trackIds) {
+                completionService.submit(() -> isRecording(trackId, recordingStatus) ? null : recompute(trackId));
+            }
+
+            Map<Track.Id, TrackStatistics> batch = new LinkedHashMap<>();
+            for (int done = 1; done <= trackIds.size() && !cancelled.get(); done++) {
+                Recomputed recomputed = completionService.take().get();
+                if (recomputed != null) {
+                    batch.put(recomputed.trackId(), recomputed.trackStatistics());
+                    numTrackPoints += recomputed.numTrackPoints();
+                    numTracks++;
+                }
+
+                if (batch.size() >= BATCH_SIZE || done == trackIds.size()) {
+                    write(batch, recordingStatus);
+                    if (progressListener != null) {
+                        progressListener.onProgress(done, trackIds.size());
+                    }
+                }
+            }
+            // Store what was done before cancelling.
+            write(batch, recordingStatus);
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted while recomputing track statistics.");
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not recompute track statistics", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Result result = new Result(numTracks, numTrackPoints, Duration.ofNanos(System.nanoTime() - startTime), cancelled.get());
+        Log.i(TAG, "Recomputed " + result.numTracks() + " tracks (" + result.numTrackPoints() + " TrackPoints) in " + result.duration().toMillis() + "ms: "
+                + result.getTracksPerSecond() + " tracks/s, " + result.getTrackPointsPerSecond() + " TrackPoints/s" + (result.cancelled() ? " (cancelled)" : ""));
+        return result;
+    }
+
+    @Nullable
+    private Recomputed recompute(Track.Id trackId) {
+        ParallelTrackStatisticsCalculator.Accumulator accumulator = trackStatisticsCalculator.newAccumulator();
+        int numTrackPoints = 0;
+        try (TrackPointIterator trackPointIterator = contentProviderUtils.getUncachedTrackPointIterator(trackId, null)) {
+            while (trackPointIterator.hasNext()) {
+                if (cancelled.get()) {
+                    return null;
+                }
+                accumulator.add(trackPointIterator.next());
+                numTrackPoints++;
+            }
+        }
+
+        if (numTrackPoints == 0) {
+            return null;
+        }
+        return new Recomputed(trackId, accumulator.getTrackStatistics(), numTrackPoints);
+    }
+
+    private void write(Map<Track.Id, TrackStatistics> batch, Supplier<RecordingStatus> recordingStatus) {
+        // Recording might have been resumed meanwhile.
+        batch.keySet().removeIf(trackId -> isRecording(trackId, recordingStatus));
+        if (batch.isEmpty()) {
+            return;
+        }
+        contentProviderUtils.updateTrackStatistics(batch);
+        batch.clear();
+    }
+
+    private static boolean isRecording(Track.Id trackId, Supplier<RecordingStatus> recordingStatus) {
+        if (trackId.equals(recordingStatus.get().trackId())) {
+            Log.i(TAG, "Skipping track " + trackId.id() + " as it is being recorded.");
+            return true;
+        }
+        return false;
+    }
+
+    private record Recomputed(Track.Id trackId, TrackStatistics trackStatistics, int numTrackPoints) {
+    }
+
+    public record Result(int numTracks, long numTrackPoints, Duration duration, boolean cancelled) {
+
+        public float getTracksPerSecond() {
+            return perSecond(numTracks);
+        }
+
+        public float getTrackPointsPerSecond() {
+            return perSecond(numTrackPoints);
+        }
+
+        private float perSecond(long count) {
+            long millis = Math.max(1, duration.toMillis());
+            return count * 1000f / millis;
+        }
+    }
+
+    public interface ProgressListener {
+        /**
+         * @param done  number of tracks that were processed (and stored)
+         * @param total number of tracks to process
+         */
+        void onProgress(int done, int total);
+    }
+}
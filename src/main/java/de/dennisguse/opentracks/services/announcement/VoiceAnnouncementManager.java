@@ -29,7 +29,7 @@ import java.time.Duration;
 
 import de.dennisguse.opentracks.R;
 import de.dennisguse.opentracks.data.ContentProviderUtils;
-import de.dennisguse.opentracks.data.TrackPointIterator;
+import de.dennisguse.opentracks.data.TrackPointCursor;
 import de.dennisguse.opentracks.data.models.Distance;
 import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.data.models.TrackPoint;
@@ -148,13 +148,11 @@ public class VoiceAnnouncementManager implements SharedPreferences.OnSharedPrefe
             startTrackPointId = null;
         }
 
-        TrackPointIterator trackPointIterator = new TrackPointIterator(contentProviderUtils, track.getId(), startTrackPointId);
-        startTrackPointId = intervalStatistics.addTrackPoints(trackPointIterator);
-        IntervalStatistics.Interval lastInterval = intervalStatistics.getLastInterval();
-        SensorStatistics sensorStatistics = null;
-        if (track.getId() != null) {
-            sensorStatistics = contentProviderUtils.getSensorStats(track.getId());
+        try (TrackPointCursor trackPointCursor = contentProviderUtils.getTrackPointCursorView(track.getId(), startTrackPointId, TrackPointCursor.PROJECTION_STATISTICS)) {
+            startTrackPointId = intervalStatistics.addTrackPoints(trackPointCursor);
         }
+        IntervalStatistics.Interval lastInterval = intervalStatistics.getLastInterval();
+        SensorStatistics sensorStatistics = track.getTrackStatistics().getSensorStatistics();
 
         return VoiceAnnouncementUtils.createStatistics(context, track, sensorDataSet, PreferencesUtils.getUnitSystem(), PreferencesUtils.isReportSpeed(track), lastInterval, sensorStatistics);
     }
@@ -4,43 +4,197 @@ import android.content.Context;
 import android.location.Location;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.core.location.LocationCompat;
 import androidx.core.location.altitude.AltitudeConverterCompat;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import de.dennisguse.opentracks.data.models.Altitude;
 import de.dennisguse.opentracks.data.models.TrackPoint;
 
 /**
+ * Converts WGS84 altitudes to EGM2008 (i.e., above mean sea level).
+ * <p>
+ * The geoid undulation is looked up via Android's AltitudeConverterCompat on a single long-lived worker thread
+ * (it does IO and cannot be used on the main thread).
+ * Undulations are cached process-wide in a grid of {@link #CELLS_PER_DEGREE} cells per degree, so subsequent TrackPoints in the same cell do not need the worker at all.
+ * <p>
  * More infos regarding Android 34's <a href="https://issuetracker.google.com/issues/195660815#comment1">AltitudeConverter</a>.
  */
 public class AltitudeCorrectionManager {
 
     private static final String TAG = AltitudeCorrectionManager.class.getSimpleName();
 
+    /**
+     * Grid resolution (~1.1km in latitude); the geoid changes only by centimeters within one cell.
+     */
+    @VisibleForTesting
+    static final int CELLS_PER_DEGREE = 100;
+
+    private static final int MAX_CACHED_CELLS = 4096;
+
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Map<Long, Double> UNDULATION_CACHE = new LinkedHashMap<>(MAX_CACHED_CELLS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Entry<Long, Double> eldest) {
+            return size() > MAX_CACHED_CELLS;
+        }
+    };
+
     public void correctAltitude(Context context, TrackPoint trackPoint) {
-        if (!trackPoint.hasLocation() || !trackPoint.hasAltitude()) {
+        if (!needsCorrection(trackPoint)) {
             return;
         }
 
-        // TODO The following is doing IO and should not be done in main thread.
-        // AltitudeConverterCompat uses internally a RoomDatabase that cannot be access from main thread and thus fails on version <= 34.
-        Thread t = new Thread(() -> {
-            try {
-                Location loc = trackPoint.getLocation();
-                AltitudeConverterCompat.addMslAltitudeToLocation(context, loc);
-                trackPoint.setAltitude(Altitude.EGM2008.of(LocationCompat.getMslAltitudeMeters(loc)));
-            } catch (IOException e) {
-                Log.w(TAG, "Android's AltitudeConverterCompat failed with " + e.getMessage());
+        long cell = getCell(trackPoint.getLatitude(), trackPoint.getLongitude());
+        Double undulation = getCachedUndulation(cell);
+        if (undulation == null) {
+            Map<Long, Double> loaded = loadUndulations(context, List.of(cell));
+            undulation = loaded.get(cell);
+        }
+
+        apply(trackPoint, undulation);
+    }
+
+    /**
+     * Corrects all TrackPoints in one pass: all missing grid cells are loaded with one task on the worker.
+     */
+    public void correctAltitudes(Context context, List<TrackPoint> trackPoints) {
+        List<Long> missingCells = new ArrayList<>();
+        synchronized (UNDULATION_CACHE) {
+            for (TrackPoint trackPoint : trackPoints) {
+                if (!needsCorrection(trackPoint)) {
+                    continue;
+                }
+                long cell = getCell(trackPoint.getLatitude(), trackPoint.getLongitude());
+                if (!UNDULATION_CACHE.containsKey(cell) && !missingCells.contains(cell)) {
+                    missingCells.add(cell);
+                }
             }
-        });
-        t.start();
+        }
+
+        Map<Long, Double> loaded = missingCells.isEmpty() ? Map.of() : loadUndulations(context, missingCells);
 
+        for (TrackPoint trackPoint : trackPoints) {
+            if (!needsCorrection(trackPoint)) {
+                continue;
+            }
+            long cell = getCell(trackPoint.getLatitude(), trackPoint.getLongitude());
+            Double undulation = loaded.get(cell);
+            if (undulation == null) {
+                undulation = getCachedUndulation(cell);
+            }
+            apply(trackPoint, undulation);
+        }
+    }
+
+    private static boolean needsCorrection(TrackPoint trackPoint) {
+        return trackPoint.hasLocation() && trackPoint.hasAltitude() && !(trackPoint.getAltitude() instanceof Altitude.EGM2008);
+    }
+
+    private static void apply(TrackPoint trackPoint, @Nullable Double undulation) {
+        if (undulation == null) {
+            return;
+        }
+        trackPoint.setAltitude(Altitude.EGM2008.of(trackPoint.getAltitude().toM() - undulation));
+    }
+
+    @Nullable
+    private static Double getCachedUndulation(long cell) {
+        synchronized (UNDULATION_CACHE) {
+            return UNDULATION_CACHE.get(cell);
+        }
+    }
+
+    /**
+     * Loads the undulation for the given cells on the worker and blocks until done.
+     * Cells that could not be loaded are missing in the result.
+     */
+    @NonNull
+    private static Map<Long, Double> loadUndulations(Context context, List<Long> cells) {
         try {
-            t.join();  // wait for thread to finish
+            return WORKER.submit(() -> {
+                Map<Long, Double> result = new HashMap<>();
+                for (long cell : cells) {
+                    Double undulation = getCachedUndulation(cell);
+                    if (undulation == null) {
+                        undulation = computeUndulation(context, cell);
+                    }
+                    if (undulation != null) {
+                        result.put(cell, undulation);
+                    }
+                }
+                synchronized (UNDULATION_CACHE) {
+                    UNDULATION_CACHE.putAll(result);
+                }
+                return result;
+            }).get();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Android's AltitudeConverterCompat failed with " + e.getMessage());
         } catch (InterruptedException e) {
             Log.w(TAG, "Android's AltitudeConverterCompat failed with " + e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+        return Map.of();
+    }
+
+    /**
+     * @return geoid undulation (WGS84 ellipsoid minus EGM2008 geoid) at the cell's center.
+     */
+    @Nullable
+    private static Double computeUndulation(Context context, long cell) {
+        Location location = new Location(TAG);
+        location.setLatitude(getCellLatitude(cell));
+        location.setLongitude(getCellLongitude(cell));
+        location.setAltitude(0);
+        try {
+            AltitudeConverterCompat.addMslAltitudeToLocation(context, location);
+            return -LocationCompat.getMslAltitudeMeters(location);
+        } catch (IOException e) {
+            Log.w(TAG, "Android's AltitudeConverterCompat failed with " + e.getMessage());
+            return null;
+        }
+    }
+
+    @VisibleForTesting
+    static long getCell(double latitude, double longitude) {
+        int latitudeIndex = (int) Math.round(latitude * CELLS_PER_DEGREE);
+        int longitudeIndex = (int) Math.round(longitude * CELLS_PER_DEGREE);
+        // -180 and 180 are the same meridian
+        if (longitudeIndex == 180 * CELLS_PER_DEGREE) {
+            longitudeIndex = -180 * CELLS_PER_DEGREE;
+        }
+        return ((long) latitudeIndex << 32) | (longitudeIndex & 0xFFFFFFFFL);
+    }
+
+    private static double getCellLatitude(long cell) {
+        return (double) (int) (cell >> 32) / CELLS_PER_DEGREE;
+    }
+
+    private static double getCellLongitude(long cell) {
+        return (double) (int) cell / CELLS_PER_DEGREE;
+    }
+
+    @VisibleForTesting
+    static void clearCache() {
+        synchronized (UNDULATION_CACHE) {
+            UNDULATION_CACHE.clear();
         }
     }
-}
\ No newline at end of file
+}
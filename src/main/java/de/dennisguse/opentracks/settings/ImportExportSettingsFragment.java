@@ -51,7 +51,8 @@ public class ImportExportSettingsFragment extends PreferenceFragmentCompat {
                 TrackFileFormat.KMZ_WITH_TRACKDETAIL_AND_SENSORDATA,
                 TrackFileFormat.KML_WITH_TRACKDETAIL_AND_SENSORDATA,
                 TrackFileFormat.GPX,
-                TrackFileFormat.CSV);
+                TrackFileFormat.CSV,
+                TrackFileFormat.BINARY);
         ListPreference listPreference = findPreference(getString(R.string.export_trackfileformat_key));
         listPreference.setEntries(options.values().toArray(new String[0]));
         listPreference.setEntryValues(options.keySet().toArray(new String[0]));
@@ -681,6 +681,36 @@ public class PreferencesUtils {
         return entries;
     }
 
+    /**
+     * @return maximal time recorded TrackPoints are kept in memory before being written to the database.
+     */
+    public static Duration getRecordingWriteDelay() {
+        final int DEFAULT = Integer.parseInt(resources.getString(R.string.recording_write_delay_default));
+        int value = getInt(R.string.recording_write_delay_key, DEFAULT);
+        return Duration.ofSeconds(value);
+    }
+
+    static String[] getRecordingWriteDelayEntries() {
+        String[] entryValues = resources.getStringArray(R.array.recording_write_delay_values);
+        String[] entries = new String[entryValues.length];
+
+        final int writeDelayDefault = Integer.parseInt(resources.getString(R.string.recording_write_delay_default));
+
+        for (int i = 0; i < entryValues.length; i++) {
+            int value = Integer.parseInt(entryValues[i]);
+
+            if (resources.getString(R.string.recording_write_delay_off).equals(entryValues[i])) {
+                entries[i] = resources.getString(R.string.value_off);
+            } else if (value == writeDelayDefault) {
+                entries[i] = resources.getString(R.string.value_int_seconds, value);
+            } else {
+                entries[i] = value < 60 ? resources.getString(R.string.value_integer_second, value) : resources.getString(R.string.value_integer_minute, value / 60);
+            }
+        }
+
+        return entries;
+    }
+
 
     public static boolean shouldInstantExportAfterWorkout() {
         final boolean INSTANT_POST_WORKOUT_EXPORT_DEFAULT = resources.getBoolean(R.bool.post_workout_export_enabled_default);
@@ -1,6 +1,10 @@
 package de.dennisguse.opentracks.settings;
 
+import android.content.Context;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
 
 import androidx.preference.ListPreference;
 import androidx.preference.PreferenceFragmentCompat;
@@ -8,6 +12,7 @@ import androidx.preference.PreferenceFragmentCompat;
 import de.dennisguse.opentracks.R;
 import de.dennisguse.opentracks.data.models.Distance;
 import de.dennisguse.opentracks.data.models.DistanceFormatter;
+import de.dennisguse.opentracks.services.TrackStatisticsRecomputeService;
 
 public class RecordingSettingsFragment extends PreferenceFragmentCompat {
 
@@ -37,6 +42,20 @@ public class RecordingSettingsFragment extends PreferenceFragmentCompat {
                             return getString(R.string.settings_recording_max_recording_distance_summary, formatter.formatDistance(distance));
                         }
                 );
+
+        findPreference(getString(R.string.settings_recompute_statistics_key))
+                .setOnPreferenceClickListener(preference -> {
+                    recomputeStatistics();
+                    return true;
+                });
+    }
+
+    private void recomputeStatistics() {
+        // The job might outlive this fragment.
+        Context context = requireContext().getApplicationContext();
+        Toast.makeText(context, R.string.settings_recording_recompute_statistics_started, Toast.LENGTH_SHORT).show();
+        TrackStatisticsRecomputeService.enqueue(context, new TrackStatisticsRecomputeService.TrackStatisticsRecomputeResultReceiver(new Handler(Looper.getMainLooper()),
+                result -> Toast.makeText(context, context.getString(R.string.settings_recording_recompute_statistics_done, result.numTracks()), Toast.LENGTH_LONG).show()), null);
     }
 
     @Override
@@ -57,5 +76,8 @@ public class RecordingSettingsFragment extends PreferenceFragmentCompat {
 
         ListPreference idleDuration = findPreference(getString(R.string.idle_duration_key));
         idleDuration.setEntries(PreferencesUtils.getIdleDurationEntries());
+
+        ListPreference writeDelay = findPreference(getString(R.string.recording_write_delay_key));
+        writeDelay.setEntries(PreferencesUtils.getRecordingWriteDelayEntries());
     }
 }
@@ -0,0 +1,211 @@
+package de.dennisguse.opentracks.stats;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import de.dennisguse.opentracks.data.models.HeartRate;
+import de.dennisguse.opentracks.data.models.Power;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+
+/**
+ * Computes the {@link TrackStatistics} of a complete track using all cores.
+ * <p>
+ * {@link TrackStatisticsUpdater} resets at every {@link TrackPoint.Type#SEGMENT_START_MANUAL} and after every {@link TrackPoint.Type#SEGMENT_END_MANUAL}.
+ * Thus, the TrackPoints in between can be processed independently by one TrackStatisticsUpdater each on a {@link ForkJoinPool}.
+ * The results are merged in order, so the result is equal to adding all TrackPoints to one TrackStatisticsUpdater.
+ * Some values span segments:
+ * <ul>
+ * <li>a segment without heart rate keeps the previous segment's average heart rate,</li>
+ * <li>the average power is a running average over the whole track; it is computed in order besides the segments (see {@link AveragePower}),</li>
+ * <li>the sensor statistics are merged with {@link SensorStatisticsUpdater#merge(SensorStatisticsUpdater)}.</li>
+ * </ul>
+ * <p>
+ * TrackPoints are added one by one (see {@link Accumulator}), so tracks can be streamed from a parser or a cursor.
+ */
+public class ParallelTrackStatisticsCalculator {
+
+    // TrackPoints of a segment are handed to the pool in chunks of this size.
+    @VisibleForTesting
+    static final int CHUNK_SIZE = 10000;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ParallelTrackStatisticsCalculator() {
+        this(ForkJoinPool.commonPool(), CHUNK_SIZE);
+    }
+
+    @VisibleForTesting
+    ParallelTrackStatisticsCalculator(@NonNull ForkJoinPool pool, int chunkSize) {
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param trackPoints all TrackPoints of a track (sorted by time)
+     */
+    @NonNull
+    public TrackStatistics calculate(@NonNull List<TrackPoint> trackPoints) {
+        Accumulator accumulator = newAccumulator();
+        trackPoints.forEach(accumulator::add);
+        return accumulator.getTrackStatistics();
+    }
+
+    @NonNull
+    public Accumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    /**
+     * Receives the TrackPoints of one track in order.
+     * While the caller reads the next TrackPoints, each segment is computed on the pool: chunks of the same segment one after another, different segments concurrently.
+     * Only the TrackPoints that were not yet processed are kept in memory.
+     * <p>
+     * Not thread-safe: to be used by one thread.
+     */
+    public class Accumulator {
+
+        private final List<Segment> segments = new ArrayList<>();
+
+        private CompletableFuture<TrackStatisticsUpdater> segment;
+        private CompletableFuture<AveragePower> averagePower = CompletableFuture.completedFuture(new AveragePower());
+        private List<TrackPoint> chunk = new ArrayList<>();
+        // If not null, the current segment was started by the previous SEGMENT_END_MANUAL.
+        private Instant segmentStartTime;
+
+        private Accumulator() {
+        }
+
+        public void add(@NonNull TrackPoint trackPoint) {
+            if (trackPoint.isSegmentManualStart()) {
+                closeSegment();
+                segmentStartTime = null;
+            }
+
+            chunk.add(trackPoint);
+
+            if (trackPoint.isSegmentManualEnd()) {
+                closeSegment();
+                segmentStartTime = trackPoint.getTime();
+            } else if (chunk.size() >= chunkSize) {
+                submitChunk();
+            }
+        }
+
+        /**
+         * Blocks until all TrackPoints are processed.
+         */
+        @NonNull
+        public TrackStatistics getTrackStatistics() {
+            closeSegment();
+
+            // Merging must happen in order (floating-point sums are not associative).
+            // Like TrackStatisticsUpdater, merge every segment when it is completed and the current segment at the end.
+            List<Power> averagePowers = averagePower.join().segments;
+            TrackStatistics trackStatistics = new TrackStatistics();
+            SensorStatisticsUpdater sensorStatisticsUpdater = new SensorStatisticsUpdater();
+            HeartRate averageHeartRate = null;
+            for (int i = 0; i < segments.size(); i++) {
+                TrackStatisticsUpdater updater = segments.get(i).updater().join();
+                // If the next segment was started by this segment's SEGMENT_END_MANUAL, it continues this updater's current segment.
+                boolean continued = i + 1 < segments.size() && segments.get(i + 1).startedBySegmentEnd();
+
+                List<TrackStatistics> segmentStatistics = new ArrayList<>();
+                if (updater.getCompletedSegments().isInitialized()) {
+                    segmentStatistics.add(updater.getCompletedSegments());
+                }
+                if (updater.getCurrentSegment().isInitialized() && !continued) {
+                    segmentStatistics.add(updater.getCurrentSegment());
+                }
+                for (TrackStatistics statistics : segmentStatistics) {
+                    if (!statistics.hasAverageHeartRate()) {
+                        statistics.setAverageHeartRate(averageHeartRate);
+                    }
+                    averageHeartRate = statistics.getAverageHeartRate();
+                    statistics.setAveragePower(averagePowers.get(i));
+
+                    trackStatistics.merge(statistics);
+                }
+                sensorStatisticsUpdater.merge(updater.getSensorStatisticsUpdater());
+            }
+            trackStatistics.setSensorStatistics(sensorStatisticsUpdater.getSensorStatistics());
+            return trackStatistics;
+        }
+
+        private void submitChunk() {
+            boolean segmentStart = segment == null;
+            if (segmentStart) {
+                Instant startTime = segmentStartTime;
+                segment = CompletableFuture.supplyAsync(() -> startTime != null ? new TrackStatisticsUpdater(startTime) : new TrackStatisticsUpdater(), pool);
+            }
+
+            List<TrackPoint> trackPoints = chunk;
+            chunk = new ArrayList<>();
+            segment = segment.thenApplyAsync(updater -> {
+                updater.addTrackPoints(trackPoints);
+                return updater;
+            }, pool);
+            averagePower = averagePower.thenApplyAsync(power -> power.add(trackPoints, segmentStart), pool);
+        }
+
+        private void closeSegment() {
+            if (!chunk.isEmpty()) {
+                submitChunk();
+            }
+            if (segment != null) {
+                segments.add(new Segment(segment, segmentStartTime != null));
+                averagePower = averagePower.thenApply(AveragePower::closeSegment);
+                segment = null;
+            }
+        }
+    }
+
+    private record Segment(CompletableFuture<TrackStatisticsUpdater> updater, boolean startedBySegmentEnd) {
+    }
+
+    /**
+     * The average power of {@link TrackStatisticsUpdater} is not reset with segments.
+     * So it is computed for all TrackPoints in order (only a few operations per TrackPoint).
+     */
+    private static class AveragePower {
+
+        // The average power at the end of each segment; null if there was no power so far.
+        private final List<Power> segments = new ArrayList<>();
+
+        private float averagePowerW;
+        private Duration totalPowerDuration = Duration.ZERO;
+        private Power average;
+
+        // The segment's last TrackPoint
+        private TrackPoint lastTrackPoint;
+
+        private AveragePower add(@NonNull List<TrackPoint> trackPoints, boolean segmentStart) {
+            if (segmentStart) {
+                lastTrackPoint = null;
+            }
+            for (TrackPoint trackPoint : trackPoints) {
+                if (trackPoint.hasPower() && lastTrackPoint != null) {
+                    Duration trackPointDuration = Duration.between(lastTrackPoint.getTime(), trackPoint.getTime());
+
+                    averagePowerW = TrackStatisticsUpdater.average(averagePowerW, totalPowerDuration, trackPointDuration, trackPoint.getPower().getW());
+                    totalPowerDuration = totalPowerDuration.plus(trackPointDuration);
+                    average = Power.of(averagePowerW);
+                }
+                lastTrackPoint = trackPoint;
+            }
+            return this;
+        }
+
+        private AveragePower closeSegment() {
+            segments.add(average);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package de.dennisguse.opentracks.stats;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import de.dennisguse.opentracks.data.models.Cadence;
+import de.dennisguse.opentracks.data.models.HeartRate;
+import de.dennisguse.opentracks.data.models.Power;
+import de.dennisguse.opentracks.data.models.TrackPoint;
+
+/**
+ * Computes the {@link SensorStatistics} of a track as new {@link TrackPoint}s are added.
+ * The result is the same as the one of CustomContentProvider.SENSOR_STATS_QUERY (used for tracks without stored sensor statistics):
+ * every TrackPoint is weighted by the time until the next TrackPoint (none if the next TrackPoint is a {@link TrackPoint.Type#SEGMENT_START_MANUAL});
+ * TrackPoints of type {@link TrackPoint.Type#SEGMENT_START_MANUAL} are ignored.
+ * <p>
+ * Consecutive parts of a track can be computed independently and merged in order (see {@link #merge(SensorStatisticsUpdater)}).
+ */
+public class SensorStatisticsUpdater {
+
+    // Sums of value * weight (ms); null if no TrackPoint had a value.
+    private Double heartRateSum;
+    private Double cadenceSum;
+    private Double powerSum;
+    // Sum of all weights (ms); also of TrackPoints without sensor data.
+    private long weightMillis;
+
+    private HeartRate maxHeartRate;
+    private Cadence maxCadence;
+    private Power maxPower;
+
+    // The first TrackPoint: resolves the weight of the previous part's last TrackPoint on merge.
+    private Instant firstTime;
+    private boolean firstIsSegmentManualStart;
+
+    // The last TrackPoint (if not ignored); its weight is known with the next TrackPoint.
+    private TrackPoint last;
+
+    public SensorStatisticsUpdater() {
+    }
+
+    /**
+     * Continues with previously computed statistics (e.g., when resuming a track).
+     * Only the averages are stored; so they are weighted with the given duration.
+     */
+    public SensorStatisticsUpdater(@Nullable SensorStatistics sensorStatistics, @NonNull Duration weight) {
+        if (sensorStatistics == null) {
+            return;
+        }
+        weightMillis = weight.toMillis();
+        if (sensorStatistics.avgHeartRate() != null) {
+            heartRateSum = (double) sensorStatistics.avgHeartRate().getBPM() * weightMillis;
+        }
+        if (sensorStatistics.avgCadence() != null) {
+            cadenceSum = (double) sensorStatistics.avgCadence().getRPM() * weightMillis;
+        }
+        if (sensorStatistics.avgPower() != null) {
+            powerSum = (double) sensorStatistics.avgPower().getW() * weightMillis;
+        }
+        maxHeartRate = sensorStatistics.maxHeartRate();
+        maxCadence = sensorStatistics.maxCadence();
+        maxPower = sensorStatistics.maxPower();
+    }
+
+    public SensorStatisticsUpdater(@NonNull SensorStatisticsUpdater toCopy) {
+        heartRateSum = toCopy.heartRateSum;
+        cadenceSum = toCopy.cadenceSum;
+        powerSum = toCopy.powerSum;
+        weightMillis = toCopy.weightMillis;
+        maxHeartRate = toCopy.maxHeartRate;
+        maxCadence = toCopy.maxCadence;
+        maxPower = toCopy.maxPower;
+        firstTime = toCopy.firstTime;
+        firstIsSegmentManualStart = toCopy.firstIsSegmentManualStart;
+        last = toCopy.last;
+    }
+
+    public void addTrackPoint(@NonNull TrackPoint trackPoint) {
+        if (firstTime == null) {
+            firstTime = trackPoint.getTime();
+            firstIsSegmentManualStart = trackPoint.isSegmentManualStart();
+        }
+
+        addLast(trackPoint.getTime(), trackPoint.isSegmentManualStart());
+
+        if (trackPoint.isSegmentManualStart()) {
+            return;
+        }
+
+        if (trackPoint.hasHeartRate() && (maxHeartRate == null || trackPoint.getHeartRate().getBPM() > maxHeartRate.getBPM())) {
+            maxHeartRate = trackPoint.getHeartRate();
+        }
+        if (trackPoint.hasCadence() && (maxCadence == null || trackPoint.getCadence().getRPM() > maxCadence.getRPM())) {
+            maxCadence = trackPoint.getCadence();
+        }
+        if (trackPoint.hasPower() && (maxPower == null || trackPoint.getPower().getW() > maxPower.getW())) {
+            maxPower = trackPoint.getPower();
+        }
+        last = trackPoint;
+    }
+
+    /**
+     * Appends the statistics of the TrackPoints that follow the ones added so far.
+     */
+    public void merge(@NonNull SensorStatisticsUpdater next) {
+        if (next.firstTime == null) {
+            return;
+        }
+        if (firstTime == null) {
+            firstTime = next.firstTime;
+            firstIsSegmentManualStart = next.firstIsSegmentManualStart;
+        }
+
+        addLast(next.firstTime, next.firstIsSegmentManualStart);
+
+        heartRateSum = sum(heartRateSum, next.heartRateSum);
+        cadenceSum = sum(cadenceSum, next.cadenceSum);
+        powerSum = sum(powerSum, next.powerSum);
+        weightMillis += next.weightMillis;
+
+        if (next.maxHeartRate != null && (maxHeartRate == null || next.maxHeartRate.getBPM() > maxHeartRate.getBPM())) {
+            maxHeartRate = next.maxHeartRate;
+        }
+        if (next.maxCadence != null && (maxCadence == null || next.maxCadence.getRPM() > maxCadence.getRPM())) {
+            maxCadence = next.maxCadence;
+        }
+        if (next.maxPower != null && (maxPower == null || next.maxPower.getW() > maxPower.getW())) {
+            maxPower = next.maxPower;
+        }
+        last = next.last;
+    }
+
+    /**
+     * The last TrackPoint is not weighted (yet).
+     */
+    @NonNull
+    public SensorStatistics getSensorStatistics() {
+        return new SensorStatistics(
+                maxHeartRate,
+                heartRateSum != null && weightMillis > 0 ? HeartRate.of((float) (heartRateSum / weightMillis)) : null,
+                maxCadence,
+                cadenceSum != null && weightMillis > 0 ? Cadence.of((float) (cadenceSum / weightMillis)) : null,
+                maxPower,
+                powerSum != null && weightMillis > 0 ? Power.of((float) (powerSum / weightMillis)) : null
+        );
+    }
+
+    /**
+     * Weights the last TrackPoint with the time until the given next TrackPoint.
+     */
+    private void addLast(@NonNull Instant nextTime, boolean nextIsSegmentManualStart) {
+        if (last == null) {
+            return;
+        }
+
+        long weight = nextIsSegmentManualStart ? 0 : Math.max(0, Duration.between(last.getTime(), nextTime).toMillis());
+        if (last.hasHeartRate()) {
+            heartRateSum = sum(heartRateSum, (double) last.getHeartRate().getBPM() * weight);
+        }
+        if (last.hasCadence()) {
+            cadenceSum = sum(cadenceSum, (double) last.getCadence().getRPM() * weight);
+        }
+        if (last.hasPower()) {
+            powerSum = sum(powerSum, (double) last.getPower().getW() * weight);
+        }
+        weightMillis += weight;
+        last = null;
+    }
+
+    private static Double sum(Double sum, Double value) {
+        if (sum == null) {
+            return value;
+        }
+        return value == null ? sum : sum + value;
+    }
+}
@@ -66,6 +66,8 @@ public class TrackStatistics {
     // The average heart rate seen on this track
     private HeartRate avgHeartRate = null;
     private Power avgPower = null;
+    // As stored with the track (see SensorStatisticsUpdater); null if not known.
+    private SensorStatistics sensorStatistics = null;
 
     private boolean isIdle;
 
@@ -79,6 +81,15 @@ public class TrackStatistics {
      * @param other another statistics data object to copy from
      */
     public TrackStatistics(TrackStatistics other) {
+        set(other);
+    }
+
+    /**
+     * Overwrites all values with those of another object (without allocating).
+     *
+     * @param other another statistics data object to copy from
+     */
+    public void set(TrackStatistics other) {
         startTime = other.startTime;
         stopTime = other.stopTime;
         totalDistance = other.totalDistance;
@@ -90,6 +101,7 @@ public class TrackStatistics {
         totalAltitudeLoss_m = other.totalAltitudeLoss_m;
         avgHeartRate = other.avgHeartRate;
         avgPower = other.avgPower;
+        sensorStatistics = other.sensorStatistics;
         isIdle = other.isIdle;
     }
 
@@ -152,6 +164,9 @@ public class TrackStatistics {
             }
         }
 
+        // Cannot be combined from the averages; use SensorStatisticsUpdater.merge().
+        sensorStatistics = null;
+
         totalDistance = totalDistance.plus(other.totalDistance);
         totalTime = totalTime.plus(other.totalTime);
         movingTime = movingTime.plus(other.movingTime);
@@ -194,6 +209,7 @@ public class TrackStatistics {
         setMaxSpeed(Speed.zero());
         setTotalAltitudeGain(null);
         setTotalAltitudeLoss(null);
+        sensorStatistics = null;
 
         isIdle = false;
     }
@@ -305,6 +321,18 @@ public class TrackStatistics {
         return avgPower;
     }
 
+    /**
+     * @return null if not known (e.g., tracks recorded before the sensor statistics were stored).
+     */
+    @Nullable
+    public SensorStatistics getSensorStatistics() {
+        return sensorStatistics;
+    }
+
+    public void setSensorStatistics(@Nullable SensorStatistics sensorStatistics) {
+        this.sensorStatistics = sensorStatistics;
+    }
+
     /**
      * Gets the average speed.
      * This calculation only takes into account the displacement until the last point that was accounted for in statistics.
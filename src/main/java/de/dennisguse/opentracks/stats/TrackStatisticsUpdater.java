@@ -19,6 +19,7 @@ package de.dennisguse.opentracks.stats;
 import androidx.annotation.NonNull;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 
 import de.dennisguse.opentracks.data.models.Distance;
@@ -48,11 +49,19 @@ public class TrackStatisticsUpdater {
     private float averagePowerW;
     private Duration totalPowerDuration = Duration.ZERO;
 
+    // The whole track's sensor statistics (not reset with segments)
+    private final SensorStatisticsUpdater sensorStatisticsUpdater;
+
     // The current segment's statistics
     private final TrackStatistics currentSegment;
     // Current segment's last trackPoint
     private TrackPoint lastTrackPoint;
 
+    // Incremented whenever a TrackPoint is added; used to refresh the view lazily.
+    private long version = 0;
+    private final TrackStatistics view = new TrackStatistics();
+    private long viewVersion = -1;
+
     public TrackStatisticsUpdater() {
         this(new TrackStatistics());
     }
@@ -60,13 +69,23 @@ public class TrackStatisticsUpdater {
     public TrackStatisticsUpdater(TrackStatistics trackStatistics) {
         this.trackStatistics = trackStatistics;
         this.currentSegment = new TrackStatistics();
+        this.sensorStatisticsUpdater = new SensorStatisticsUpdater(trackStatistics.getSensorStatistics(), trackStatistics.getTotalTime());
 
         resetAverageHeartRate();
     }
 
+    /**
+     * Starts with a segment that was already started at segmentStartTime (i.e., the state after a {@link TrackPoint.Type#SEGMENT_END_MANUAL}).
+     */
+    TrackStatisticsUpdater(@NonNull Instant segmentStartTime) {
+        this();
+        currentSegment.reset(segmentStartTime);
+    }
+
     public TrackStatisticsUpdater(TrackStatisticsUpdater toCopy) {
         this.currentSegment = new TrackStatistics(toCopy.currentSegment);
         this.trackStatistics = new TrackStatistics(toCopy.trackStatistics);
+        this.sensorStatisticsUpdater = new SensorStatisticsUpdater(toCopy.sensorStatisticsUpdater);
 
         this.lastTrackPoint = toCopy.lastTrackPoint;
         resetAverageHeartRate();
@@ -76,14 +95,68 @@ public class TrackStatisticsUpdater {
         // Take a snapshot - we don't want anyone messing with our trackStatistics
         TrackStatistics stats = new TrackStatistics(trackStatistics);
         stats.merge(currentSegment);
+        stats.setSensorStatistics(sensorStatisticsUpdater.getSensorStatistics());
         return stats;
     }
 
+    /**
+     * Writes the current statistics into an existing object (e.g., to reuse it for every TrackPoint).
+     *
+     * @return snapshot
+     */
+    public TrackStatistics getTrackStatistics(@NonNull TrackStatistics snapshot) {
+        snapshot.set(trackStatistics);
+        snapshot.merge(currentSegment);
+        snapshot.setSensorStatistics(sensorStatisticsUpdater.getSensorStatistics());
+        return snapshot;
+    }
+
+    /**
+     * Current statistics without copying: the returned object is owned by this updater and is only updated if TrackPoints were added since the last call.
+     * It must not be modified and is only valid until the next {@link #addTrackPoint(TrackPoint)}; use {@link #getTrackStatistics()} to keep a copy.
+     */
+    public TrackStatistics getTrackStatisticsView() {
+        if (viewVersion != version) {
+            getTrackStatistics(view);
+            viewVersion = version;
+        }
+        return view;
+    }
+
+    /**
+     * @return a number that changes whenever the statistics change.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    SensorStatisticsUpdater getSensorStatisticsUpdater() {
+        return sensorStatisticsUpdater;
+    }
+
+    /**
+     * The merged completed segments; not a copy.
+     */
+    TrackStatistics getCompletedSegments() {
+        return trackStatistics;
+    }
+
+    /**
+     * The current segment; not a copy.
+     */
+    TrackStatistics getCurrentSegment() {
+        return currentSegment;
+    }
+
     public void addTrackPoints(List<TrackPoint> trackPoints) {
         trackPoints.stream().forEachOrdered(this::addTrackPoint);
     }
 
     public void addTrackPoint(TrackPoint trackPoint) {
+        version++;
+
+        sensorStatisticsUpdater.addTrackPoint(trackPoint);
+
         if (trackPoint.isSegmentManualStart()) {
             reset(trackPoint);
         }
@@ -113,21 +186,19 @@ public class TrackStatisticsUpdater {
         // Update heart rate
         if (trackPoint.hasHeartRate() && lastTrackPoint != null) {
             Duration trackPointDuration = Duration.between(lastTrackPoint.getTime(), trackPoint.getTime());
-            Duration newTotalDuration = totalHeartRateDuration.plus(trackPointDuration);
 
-            averageHeartRateBPM = (totalHeartRateDuration.toMillis() * averageHeartRateBPM + trackPointDuration.toMillis() * trackPoint.getHeartRate().getBPM()) / newTotalDuration.toMillis();
-            totalHeartRateDuration = newTotalDuration;
+            averageHeartRateBPM = average(averageHeartRateBPM, totalHeartRateDuration, trackPointDuration, trackPoint.getHeartRate().getBPM());
+            totalHeartRateDuration = totalHeartRateDuration.plus(trackPointDuration);
 
             currentSegment.setAverageHeartRate(HeartRate.of(averageHeartRateBPM));
         }
 
-        // Update power
+        // Update power (not reset with segments)
         if (trackPoint.hasPower() && lastTrackPoint != null) {
             Duration trackPointDuration = Duration.between(lastTrackPoint.getTime(), trackPoint.getTime());
-            Duration newTotalDuration = totalPowerDuration.plus(trackPointDuration);
 
-            averagePowerW = (totalPowerDuration.toMillis() * averagePowerW + trackPointDuration.toMillis() * trackPoint.getPower().getW()) / newTotalDuration.toMillis();
-            totalPowerDuration = newTotalDuration;
+            averagePowerW = average(averagePowerW, totalPowerDuration, trackPointDuration, trackPoint.getPower().getW());
+            totalPowerDuration = totalPowerDuration.plus(trackPointDuration);
 
             currentSegment.setAveragePower(Power.of(averagePowerW));
         }
@@ -191,6 +262,13 @@ public class TrackStatisticsUpdater {
         totalHeartRateDuration = Duration.ZERO;
     }
 
+    /**
+     * Duration-weighted running average as computed for heart rate and power.
+     */
+    static float average(float average, Duration totalDuration, Duration duration, float value) {
+        return (totalDuration.toMillis() * average + duration.toMillis() * value) / totalDuration.plus(duration).toMillis();
+    }
+
     /**
      * Updates a speed reading while assuming the user is moving.
      */
@@ -6,6 +6,7 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
+import de.dennisguse.opentracks.data.TrackPointCursor;
 import de.dennisguse.opentracks.data.TrackPointIterator;
 import de.dennisguse.opentracks.data.models.Distance;
 import de.dennisguse.opentracks.data.models.HeartRate;
@@ -44,34 +45,65 @@ public class IntervalStatistics {
 
         while (trackPointIterator.hasNext()) {
             trackPoint = trackPointIterator.next();
-            trackStatisticsUpdater.addTrackPoint(trackPoint);
+            newIntervalAdded |= addTrackPoint(trackPoint);
+        }
 
-            if (trackStatisticsUpdater.getTrackStatistics().getTotalDistance().plus(interval.distance).greaterOrEqualThan(distanceInterval)) {
-                interval.add(trackStatisticsUpdater.getTrackStatistics(), trackPoint);
+        return complete(newIntervalAdded, trackPoint);
+    }
 
-                double adjustFactor = distanceInterval.dividedBy(interval.distance);
-                Interval adjustedInterval = new Interval(interval, adjustFactor);
+    /**
+     * Complete intervals with the track points from the cursor (reading {@link TrackPointCursor#PROJECTION_STATISTICS} is enough).
+     *
+     * @return the last track point's id used to compute the intervals.
+     */
+    public TrackPoint.Id addTrackPoints(TrackPointCursor trackPointCursor) {
+        boolean newIntervalAdded = false;
+        TrackPoint trackPoint = null;
 
-                intervalList.set(intervalList.size() - 1, adjustedInterval);
+        while (trackPointCursor.moveToNext()) {
+            trackPoint = trackPointCursor.toTrackPoint();
+            newIntervalAdded |= addTrackPoint(trackPoint);
+        }
 
-                interval = new Interval(interval.distance.minus(adjustedInterval.distance), interval.time.minus(adjustedInterval.time));
-                trackStatisticsUpdater = new TrackStatisticsUpdater();
-                trackStatisticsUpdater.addTrackPoint(trackPoint);
+        return complete(newIntervalAdded, trackPoint);
+    }
 
-                lastInterval = new Interval(interval);
-                intervalList.add(lastInterval);
+    /**
+     * @return true if an interval was completed.
+     */
+    private boolean addTrackPoint(TrackPoint trackPoint) {
+        trackStatisticsUpdater.addTrackPoint(trackPoint);
 
-                newIntervalAdded = true;
-            }
+        // The view is not copied for every TrackPoint.
+        if (!trackStatisticsUpdater.getTrackStatisticsView().getTotalDistance().plus(interval.distance).greaterOrEqualThan(distanceInterval)) {
+            return false;
         }
 
+        interval.add(trackStatisticsUpdater.getTrackStatisticsView(), trackPoint);
+
+        double adjustFactor = distanceInterval.dividedBy(interval.distance);
+        Interval adjustedInterval = new Interval(interval, adjustFactor);
+
+        intervalList.set(intervalList.size() - 1, adjustedInterval);
+
+        interval = new Interval(interval.distance.minus(adjustedInterval.distance), interval.time.minus(adjustedInterval.time));
+        trackStatisticsUpdater = new TrackStatisticsUpdater();
+        trackStatisticsUpdater.addTrackPoint(trackPoint);
+
+        lastInterval = new Interval(interval);
+        intervalList.add(lastInterval);
+
+        return true;
+    }
+
+    private TrackPoint.Id complete(boolean newIntervalAdded, @Nullable TrackPoint lastTrackPoint) {
         if (newIntervalAdded) {
-            lastInterval.add(trackStatisticsUpdater.getTrackStatistics(), null);
+            lastInterval.add(trackStatisticsUpdater.getTrackStatisticsView(), null);
         } else {
-            lastInterval.set(trackStatisticsUpdater.getTrackStatistics());
+            lastInterval.set(trackStatisticsUpdater.getTrackStatisticsView());
         }
 
-        return trackPoint != null ? trackPoint.getId() : null;
+        return lastTrackPoint != null ? lastTrackPoint.getId() : null;
     }
 
     public List<Interval> getIntervalList() {
@@ -21,7 +21,6 @@ import de.dennisguse.opentracks.data.TrackPointIterator;
 import de.dennisguse.opentracks.data.models.Distance;
 import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.data.models.TrackPoint;
-import de.dennisguse.opentracks.data.tables.TrackPointsColumns;
 import de.dennisguse.opentracks.settings.UnitSystem;
 
 /**
@@ -37,7 +36,7 @@ public class IntervalStatisticsModel extends AndroidViewModel {
     private Distance distanceInterval;
     private final ContentResolver contentResolver;
     private ContentObserver trackPointsTableObserver;
-    private TrackPoint.Id lastTrackPointId;
+    private volatile TrackPoint.Id lastTrackPointId;
 
     private final Executor executor = Executors.newSingleThreadExecutor();
     private HandlerThread handlerThread;
@@ -78,13 +77,22 @@ public class IntervalStatisticsModel extends AndroidViewModel {
             loadIntervalStatistics(trackId);
         }
 
+        if (trackPointsTableObserver != null) {
+            contentResolver.unregisterContentObserver(trackPointsTableObserver);
+        }
         trackPointsTableObserver = new ContentObserver(handler) {
             @Override
             public void onChange(boolean selfChange, Uri uri) {
+                TrackPoint.Id lastInsertedTrackPointId = ContentProviderUtils.parseLastInsertedTrackPointId(uri);
+                TrackPoint.Id localLastTrackPointId = lastTrackPointId;
+                if (lastInsertedTrackPointId != null && localLastTrackPointId != null && lastInsertedTrackPointId.id() <= localLastTrackPointId.id()) {
+                    // Already loaded.
+                    return;
+                }
                 loadIntervalStatistics(trackId);
             }
         };
-        contentResolver.registerContentObserver(TrackPointsColumns.CONTENT_URI_BY_TRACKID, false, trackPointsTableObserver);
+        contentResolver.registerContentObserver(ContentProviderUtils.getTrackPointsUri(trackId), false, trackPointsTableObserver);
 
         return intervalsLiveData;
     }
@@ -9,6 +9,7 @@ import android.os.Handler;
 import android.provider.DocumentsContract;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.documentfile.provider.DocumentFile;
 
 import java.io.FileNotFoundException;
@@ -16,15 +17,18 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import de.dennisguse.opentracks.data.ContentProviderUtils;
 import de.dennisguse.opentracks.data.models.Track;
 import de.dennisguse.opentracks.io.file.TrackFileFormat;
 import de.dennisguse.opentracks.io.file.TrackFilenameGenerator;
+import de.dennisguse.opentracks.io.file.exporter.BackupExporter;
 import de.dennisguse.opentracks.io.file.exporter.ExportService;
 import de.dennisguse.opentracks.io.file.exporter.ExportService.ExportServiceResultReceiver;
 import de.dennisguse.opentracks.io.file.exporter.ExportTask;
+import de.dennisguse.opentracks.io.file.exporter.PipelinedOutputStream;
 import de.dennisguse.opentracks.io.file.exporter.TrackExporter;
 import de.dennisguse.opentracks.settings.PreferencesUtils;
 import de.dennisguse.opentracks.settings.SettingsActivity;
@@ -52,7 +56,10 @@ public class ExportUtils {
         }
     }
 
-    public static void exportTrack(Context context, DocumentFile directory, ExportTask exportTask) {
+    /**
+     * @param writeExecutor writes the file while the export is created (see {@link PipelinedOutputStream}).
+     */
+    public static void exportTrack(Context context, DocumentFile directory, ExportTask exportTask, @NonNull Executor writeExecutor) {
         ContentProviderUtils contentProviderUtils = new ContentProviderUtils(context);
         List<Track> tracks = exportTask.getTrackIds().stream().map(contentProviderUtils::getTrack).collect(Collectors.toList());
         Uri exportDocumentFileUri;
@@ -68,17 +75,64 @@ public class ExportUtils {
         }
 
         TrackExporter trackExporter = exportTask.getTrackFileFormat().createTrackExporter(context, contentProviderUtils);
-        try (OutputStream outputStream = context.getContentResolver().openOutputStream(exportDocumentFileUri, "wt")) {
-            if (!trackExporter.writeTrack(tracks, outputStream)) {
-                if (!DocumentFile.fromSingleUri(context, exportDocumentFileUri).delete()) {
-                    throw new RuntimeException("Unable to delete exportDocumentFile");
+        boolean exported = false;
+        try {
+            try (OutputStream outputStream = new PipelinedOutputStream(context.getContentResolver().openOutputStream(exportDocumentFileUri, "wt"), writeExecutor)) {
+                if (!trackExporter.writeTrack(tracks, outputStream)) {
+                    throw new RuntimeException("Unable to export track");
                 }
-                throw new RuntimeException("Unable to export track");
             }
+            exported = true;
         } catch (FileNotFoundException e) {
             throw new RuntimeException("Unable to open exportDocumentFile " + exportDocumentFileUri, e);
         } catch (IOException e) {
             throw new RuntimeException("Unable to close exportDocumentFile output stream", e);
+        } finally {
+            // Also if the export was cancelled (interrupted).
+            if (!exported) {
+                deleteExportDocumentFile(context, exportDocumentFileUri);
+            }
+        }
+    }
+
+    private static void deleteExportDocumentFile(Context context, Uri exportDocumentFileUri) {
+        DocumentFile exportDocumentFile = DocumentFile.fromSingleUri(context, exportDocumentFileUri);
+        if (exportDocumentFile != null && exportDocumentFile.exists() && !exportDocumentFile.delete()) {
+            Log.e(TAG, "Unable to delete exportDocumentFile " + exportDocumentFileUri);
+        }
+    }
+
+    /**
+     * @param exportTask a backup (see {@link ExportTask#isBackup()})
+     * @param writeExecutor writes the file while the backup is created (see {@link PipelinedOutputStream}).
+     */
+    @NonNull
+    public static BackupExporter.Result exportBackup(Context context, DocumentFile directory, ExportTask exportTask, @NonNull Executor writeExecutor) {
+        String filename = BackupExporter.getFilename(exportTask.getFilename());
+        Uri exportDocumentFileUri = getExportDocumentFileUri(context, filename, BackupExporter.MIME_TYPE, directory);
+        if (exportDocumentFileUri == null) {
+            throw new RuntimeException("Couldn't create document file for backup");
+        }
+
+        BackupExporter backupExporter = new BackupExporter(context, new ContentProviderUtils(context), exportTask.getTrackFileFormat());
+        boolean exported = false;
+        try {
+            BackupExporter.Result result;
+            try (OutputStream outputStream = new PipelinedOutputStream(context.getContentResolver().openOutputStream(exportDocumentFileUri, "wt"), writeExecutor)) {
+                result = backupExporter.writeBackup(exportTask.getTrackIds(), outputStream);
+            }
+            exported = true;
+            return result;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write backup", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Unable to write backup", e);
+        } finally {
+            // Also on RuntimeExceptions (e.g., of a TrackExporter) and if closing the file failed.
+            if (!exported) {
+                deleteExportDocumentFile(context, exportDocumentFileUri);
+            }
         }
     }
 
@@ -104,9 +158,13 @@ public class ExportUtils {
     }
 
     private static Uri getExportDocumentFileUri(Context context, String exportFileName, TrackFileFormat trackFileFormat, DocumentFile directory) {
+        return getExportDocumentFileUri(context, exportFileName, trackFileFormat.getMimeType(), directory);
+    }
+
+    private static Uri getExportDocumentFileUri(Context context, String exportFileName, String mimeType, DocumentFile directory) {
         Uri exportDocumentFileUri = findFile(context, directory.getUri(), exportFileName);
         if (exportDocumentFileUri == null) {
-            final DocumentFile file = directory.createFile(trackFileFormat.getMimeType(), exportFileName);
+            final DocumentFile file = directory.createFile(mimeType, exportFileName);
             if (file != null) {
                 exportDocumentFileUri = file.getUri();
             }